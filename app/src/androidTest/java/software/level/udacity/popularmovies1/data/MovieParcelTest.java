@@ -0,0 +1,71 @@
+package software.level.udacity.popularmovies1.data;
+
+import android.os.Parcel;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.*;
+
+/**
+ * Parcels movies with and without details on a device, where Parcel isn't a stub
+ */
+@RunWith(AndroidJUnit4.class)
+public class MovieParcelTest {
+
+    @Test
+    public void parcel_keepsEveryFieldOfAMovieFromAList() {
+        Movie movie = new Movie();
+        movie.moviedb_id = 278;
+        movie.title = "The Shawshank Redemption";
+        movie.poster_path = "/9O7gLzmreU0nGkIB6K3BsJbzvNv.jpg";
+        movie.release_date = "1994-09-23";
+        movie.overview = "Framed in the 1940s for the double murder of his wife and her lover.";
+        movie.popularity = 6.741296;
+        movie.vote_average = 8.5;
+        movie.vote_count = 8358;
+
+        Movie copy = roundTrip(movie);
+
+        assertEquals(278, copy.moviedb_id);
+        assertEquals(movie.title, copy.title);
+        assertEquals(movie.poster_path, copy.poster_path);
+        assertNull(copy.backdrop_path);
+        assertEquals(movie.release_date, copy.release_date);
+        assertEquals(movie.overview, copy.overview);
+        assertEquals(movie.popularity, copy.popularity, 0);
+        assertEquals(movie.vote_average, copy.vote_average, 0);
+        assertEquals(movie.vote_count, copy.vote_count);
+        assertFalse(MovieRepository.hasDetails(copy));
+    }
+
+    @Test
+    public void parcel_keepsTheDetails() {
+        Movie movie = new Movie();
+        movie.moviedb_id = 550;
+        movie.title = "Fight Club";
+        movie.runtime = 139;
+        movie.tagline = "";
+        movie.homepage = "http://www.foxmovies.com/movies/fight-club";
+
+        Movie copy = roundTrip(movie);
+
+        assertTrue(MovieRepository.hasDetails(copy));
+        assertEquals(139, copy.runtime);
+        assertEquals("", copy.tagline);
+        assertEquals(movie.homepage, copy.homepage);
+        assertNull(copy.overview);
+    }
+
+    private static Movie roundTrip(Movie movie) {
+        Parcel parcel = Parcel.obtain();
+        try {
+            new MovieParcel(movie).writeToParcel(parcel, 0);
+            parcel.setDataPosition(0);
+            return MovieParcel.CREATOR.createFromParcel(parcel).movie;
+        } finally {
+            parcel.recycle();
+        }
+    }
+}
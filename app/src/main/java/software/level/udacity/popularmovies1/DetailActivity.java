@@ -2,32 +2,50 @@ package software.level.udacity.popularmovies1;
 
 import android.content.Context;
 import android.content.Intent;
-import android.os.AsyncTask;
 import android.support.v7.app.AppCompatActivity;
 import android.os.Bundle;
+import android.support.v4.view.ViewCompat;
+import android.text.TextUtils;
 import android.util.Log;
 import android.view.View;
 import android.widget.ImageView;
-import android.widget.ProgressBar;
 import android.widget.TextView;
 
 import com.squareup.picasso.Picasso;
 
-import org.json.JSONException;
-
 import java.io.IOException;
-import java.net.URL;
-import java.util.ArrayList;
+import java.util.concurrent.Executor;
 
+import software.level.udacity.popularmovies1.data.DataStream;
 import software.level.udacity.popularmovies1.data.Movie;
-import software.level.udacity.popularmovies1.data.MovieParser;
-import software.level.udacity.popularmovies1.utilities.MovieRequestType;
+import software.level.udacity.popularmovies1.data.MovieParcel;
+import software.level.udacity.popularmovies1.data.MovieRepository;
+import software.level.udacity.popularmovies1.utilities.CancellationToken;
+import software.level.udacity.popularmovies1.utilities.ConnectionManager;
+import software.level.udacity.popularmovies1.utilities.ImagePipeline;
+import software.level.udacity.popularmovies1.utilities.MainThreadExecutor;
 import software.level.udacity.popularmovies1.utilities.NetworkUtils;
+import software.level.udacity.popularmovies1.utilities.PosterSizeResolver;
+import software.level.udacity.popularmovies1.utilities.TaskScheduler;
+import software.level.udacity.popularmovies1.utilities.Tracer;
 
 public class DetailActivity extends AppCompatActivity {
 
     private static final String TAG = DetailActivity.class.getSimpleName();
 
+    // Movie that was tapped, as a MovieParcel
+    public static final String EXTRA_MOVIE = "movie";
+
+    // Size of the poster the tapped grid cell shows, shown while the larger poster loads
+    public static final String EXTRA_GRID_POSTER_SIZE = "grid_poster_size";
+
+    private String mGridPosterSize;
+    private String mPosterSize;
+
+    // Poster that was loaded into the view, so that updates of the details don't load it again
+    private String mShownPosterPath;
+    private boolean mPosterShown;
+
     private int mMovieId;
     private TextView mTitleTextView;
     private ImageView mPosterImageView;
@@ -35,13 +53,30 @@ public class DetailActivity extends AppCompatActivity {
     private TextView mRunTime;
     private TextView mRating;
     private TextView mOverview;
-    private ProgressBar mProgressBar;
+
+    // Cancelled when the activity is destroyed so that no results are delivered to it after
+    private final CancellationToken mLifecycleToken = new CancellationToken();
+
+    // Updates of the movie, delivered on the main thread
+    private DataStream.Subscription mMovieSubscription;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_detail);
 
+        // Traces how long it takes until every detail is on screen
+        Tracer.getInstance().startPending(Tracer.Span.DETAIL_SCREEN);
+
+        // Sizes the connection pool before anything connects
+        ConnectionManager.installConnectionPool();
+
+        // Repeat requests are served from the response cache when possible
+        NetworkUtils.installResponseCache(this);
+
+        // Posters are loaded through the app's own memory, bitmap and disk caches
+        ImagePipeline.install(this);
+
         // Get references for all the views
         mTitleTextView = (TextView)findViewById(R.id.tv_movie_title_detail);
         mYearTextView = (TextView)findViewById(R.id.tv_movie_year);
@@ -51,26 +86,117 @@ public class DetailActivity extends AppCompatActivity {
 
         mPosterImageView = (ImageView)findViewById(R.id.iv_movie_poster_detail);
 
-        // Extract the id of the movie from the passed extra text
+        MovieRepository repository = MovieRepository.getInstance(this);
+
+        // The movie that was tapped is kept in memory, it may have been dropped from memory or
+        // the app restarted since the grid showed it
         Intent startingIntent = getIntent();
 
         if(startingIntent != null) {
-            if(startingIntent.hasExtra(Intent.EXTRA_TEXT)) {
-                mMovieId = startingIntent.getIntExtra(Intent.EXTRA_TEXT, 0);
+            MovieParcel movieParcel = startingIntent.getParcelableExtra(EXTRA_MOVIE);
+            if(movieParcel != null) {
+                mMovieId = movieParcel.movie.moviedb_id;
+                repository.offerMovie(movieParcel.movie);
+            }
+            mGridPosterSize = startingIntent.getStringExtra(EXTRA_GRID_POSTER_SIZE);
+        }
+
+        // The poster of the grid cell moves into this view
+        ViewCompat.setTransitionName(mPosterImageView, PosterLoader.getTransitionName(mMovieId));
+
+        // Pick the poster size that fits the poster view on this device and connection
+        float posterWidth = getResources().getDimension(R.dimen.detail_poster_width);
+        mPosterSize = new PosterSizeResolver(this).resolve(Math.round(posterWidth));
+
+        // Show what the grid already loaded right away, the details are filled in once loaded
+        // here or by the hydrator on the grid, whichever finishes first
+        Executor mainThreadExecutor = new MainThreadExecutor();
+        mMovieSubscription = repository.observeMovie(mMovieId, mainThreadExecutor,
+                mLifecycleToken, new DataStream.Observer<Movie>() {
+                    @Override
+                    public void onChanged(Movie movie) {
+                        showMovie(movie);
+                    }
+                });
+
+        // Only the fields a detail request adds are missing, unless the grid loaded them already
+        Movie cachedMovie = repository.getCachedMovie(mMovieId);
+        if(cachedMovie == null || !MovieRepository.hasDetails(cachedMovie)) {
+            FetchMovieDataTask task = new FetchMovieDataTask(this);
+            TaskScheduler.getInstance().submit(TaskScheduler.Priority.DETAIL, mLifecycleToken, task);
+        }
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+
+        // Nobody will see the details if the user already left the screen
+        mLifecycleToken.cancel();
+        mMovieSubscription.cancel();
+
+        // The poster can be reused once it isn't cached anymore
+        PosterLoader.clear(mPosterImageView);
+    }
+
+    /**
+     * Update the views with the movie data. Fields that are only returned by a detail request
+     * are left empty until the details have been loaded.
+     * @param movie Movie to display
+     */
+    private void showMovie(Movie movie) {
+        showPoster(movie.poster_path);
+
+        String rating = String.valueOf(movie.vote_average) + "/10";
+
+        mTitleTextView.setText(movie.title);
+        mRating.setText(rating);
+        mOverview.setText(movie.overview);
+
+        if(movie.release_date != null) {
+            String year = movie.release_date.split("-")[0];
+            mYearTextView.setText(year);
+        }
+
+        if(MovieRepository.hasDetails(movie)) {
+            String runTime = String.valueOf(movie.runtime) + " min";
+            mRunTime.setText(runTime);
+
+            Tracer.getInstance().endPending(Tracer.Span.DETAIL_SCREEN, movie.moviedb_id);
+        }
+    }
+
+    /**
+     * Shows the poster unless it is already shown. The first movie is delivered before the
+     * screen is drawn, so the bitmap the grid cell shows is in the view from the first frame and
+     * during the transition. A larger poster is only loaded if the view is wider than the grid
+     * poster, and replaces it once downloaded.
+     * @param posterPath API supplied poster_path
+     */
+    private void showPoster(String posterPath) {
+        if(mPosterShown && TextUtils.equals(posterPath, mShownPosterPath)) {
+            return;
+        }
+        mPosterShown = true;
+        mShownPosterPath = posterPath;
+
+        if(PosterLoader.showCached(mPosterImageView, posterPath, mGridPosterSize)) {
+            if(PosterSizeResolver.isSmaller(mGridPosterSize, mPosterSize)) {
+                PosterLoader.upgrade(mPosterImageView, posterPath, mPosterSize, Picasso.Priority.HIGH);
             }
+            return;
         }
 
-        FetchMovieDataTask task = new FetchMovieDataTask(this);
-        task.execute();
+        PosterLoader.load(mPosterImageView, posterPath, mPosterSize, mGridPosterSize, Picasso.Priority.HIGH);
     }
 
     /**
-     * AsyncTask that fetches movie data and parses it in the background before returning
-     * to the main thread to update the RecyclerView with the data.
+     * Task that fetches movie data and parses it in the background. The details reach the
+     * views through the movie observer once they are cached, so there is nothing to do after.
      */
-    public class FetchMovieDataTask extends AsyncTask<Void, Void, Movie> {
+    public class FetchMovieDataTask extends TaskScheduler.Task<Movie> {
 
-        // The custom URL builder requires a context to be able to pull the api key from the strings
+        // The repository requires a context to be able to build the API requests
         private Context mContext;
 
         /**
@@ -81,84 +207,24 @@ public class DetailActivity extends AppCompatActivity {
             mContext = context;
         }
 
-        /**
-         * Set the visibility of the progress bar prior to executing the background task
-         */
-        @Override
-        protected void onPreExecute() {
-            super.onPreExecute();
-            //mProgressBar.setVisibility(View.VISIBLE);
-        }
-
         /**
          * Downloads movie detail data
-         * @param voids No parameters are passed to the task
+         * @param token Token of the task, cancelled when the result is no longer wanted
          * @return The movie object with all details
          */
         @Override
-        protected Movie doInBackground(Void... voids) {
-
-            URL requestURL = NetworkUtils.buildURL(mContext, MovieRequestType.DETAILS, mMovieId);
+        protected Movie doInBackground(CancellationToken token) {
 
             try {
-                // Execute the API call
-                String response = NetworkUtils.getResponseFromHttpUrl(requestURL);
-                Log.d(TAG, "Response: " + response);
-
-                // Parse the JSON data into an ArrayList of Movie objects
-                ArrayList<Movie> movies = MovieParser.parseMovieData(response, MovieRequestType.DETAILS);
+                // Only loads the details if they haven't been loaded already
+                return MovieRepository.getInstance(mContext).getMovieDetails(mMovieId);
 
-                Movie movie = null;
-                try {
-                    movie = movies.get(0);
-                } catch (IndexOutOfBoundsException e) {
-                    Log.e(TAG, e.toString());
-                }
-
-                return movie;
-
-            } catch (IOException |JSONException e) {
+            } catch (IOException e) {
                 Log.e(TAG, e.toString());
             }
 
             return null;
         }
-
-        /**
-         * Now that the data has been returned, update the view with all the data
-         * @param movie Movie data returned from the background task
-         */
-        @Override
-        protected void onPostExecute(Movie movie) {
-            super.onPostExecute(movie);
-
-            //mProgressBar.setVisibility(View.INVISIBLE);
-
-            if(movie != null) {
-                /* This is not the most efficient implementation since we already have a lot of the
-                   data from the other activity and it should just be passed in a parcelable object.
-                 */
-                String imageSize = mContext.getResources().getString(R.string.api_image_size);
-
-                URL imageURL = NetworkUtils.buildImageURL(movie.poster_path, imageSize);
-
-                Picasso.with(mContext)
-                        .load(imageURL.toString())
-                        .placeholder(R.drawable.poster_placeholder)
-                        .into(mPosterImageView);
-
-                String rating = String.valueOf(movie.vote_average) + "/10";
-                String year = movie.release_date.split("-")[0];
-                String runTime = String.valueOf(movie.runtime) + " min";
-
-                mTitleTextView.setText(movie.title);
-                mYearTextView.setText(year);
-                mRunTime.setText(runTime);
-                mRating.setText(rating);
-                mOverview.setText(movie.overview);
-            }
-
-        }
     }
 
 
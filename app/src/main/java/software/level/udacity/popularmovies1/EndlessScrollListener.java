@@ -0,0 +1,62 @@
+package software.level.udacity.popularmovies1;
+
+import android.support.v7.widget.GridLayoutManager;
+import android.support.v7.widget.RecyclerView;
+
+/**
+ * Scroll listener that asks for more data once the user scrolls within a number of rows of the
+ * end of the grid, so the next page is usually loaded before the user gets there.
+ */
+public abstract class EndlessScrollListener extends RecyclerView.OnScrollListener {
+
+    // Layout manager of the RecyclerView being watched
+    private final GridLayoutManager mLayoutManager;
+
+    // How many rows before the end of the grid the next page should be requested
+    private final int mPrefetchRows;
+
+    /**
+     * Create a new EndlessScrollListener
+     * @param layoutManager Layout manager of the RecyclerView the listener is added to
+     * @param prefetchRows How many rows before the end of the grid to request the next page
+     */
+    public EndlessScrollListener(GridLayoutManager layoutManager, int prefetchRows) {
+        mLayoutManager = layoutManager;
+        mPrefetchRows = prefetchRows;
+    }
+
+    /**
+     * Checks how close the last visible item is to the end of the grid every time the grid is
+     * scrolled. This is also called after a layout, which covers grids that aren't full yet.
+     *
+     * @param recyclerView The RecyclerView that scrolled
+     * @param dx Horizontal scroll distance
+     * @param dy Vertical scroll distance
+     */
+    @Override
+    public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+        // Scrolling back up never gets us closer to the end
+        if(dy < 0) {
+            return;
+        }
+
+        int itemCount = mLayoutManager.getItemCount();
+        int lastVisiblePosition = mLayoutManager.findLastVisibleItemPosition();
+
+        if(itemCount == 0 || lastVisiblePosition == RecyclerView.NO_POSITION) {
+            return;
+        }
+
+        int prefetchItems = mPrefetchRows * mLayoutManager.getSpanCount();
+
+        if(lastVisiblePosition + prefetchItems >= itemCount - 1) {
+            onLoadMore();
+        }
+    }
+
+    /**
+     * Called when the user is close enough to the end of the grid that the next page should be
+     * loaded. This may be called repeatedly while the page is loading.
+     */
+    public abstract void onLoadMore();
+}
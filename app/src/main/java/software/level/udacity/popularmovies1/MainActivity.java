@@ -2,32 +2,72 @@ package software.level.udacity.popularmovies1;
 
 import android.content.Context;
 import android.content.Intent;
-import android.os.AsyncTask;
+import android.support.v4.app.ActivityCompat;
+import android.support.v4.app.ActivityOptionsCompat;
+import android.support.v4.view.MenuItemCompat;
 import android.support.v7.app.AppCompatActivity;
 import android.os.Bundle;
 import android.support.v7.widget.GridLayoutManager;
 import android.support.v7.widget.RecyclerView;
+import android.support.v7.widget.SearchView;
 import android.util.Log;
 import android.view.Menu;
 import android.view.MenuItem;
 import android.view.View;
+import android.widget.ImageView;
 import android.widget.ProgressBar;
 
-import org.json.JSONException;
-
+import java.io.File;
 import java.io.IOException;
-import java.net.URL;
-import java.util.ArrayList;
+import java.util.concurrent.Executor;
 
+import software.level.udacity.popularmovies1.data.CategoryLoader;
+import software.level.udacity.popularmovies1.data.DataStream;
+import software.level.udacity.popularmovies1.data.DetailHydrator;
 import software.level.udacity.popularmovies1.data.Movie;
-import software.level.udacity.popularmovies1.data.MovieParser;
+import software.level.udacity.popularmovies1.data.MovieListUpdate;
+import software.level.udacity.popularmovies1.data.MovieParcel;
+import software.level.udacity.popularmovies1.data.MovieQuery;
+import software.level.udacity.popularmovies1.data.MoviePage;
+import software.level.udacity.popularmovies1.data.MovieRepository;
+import software.level.udacity.popularmovies1.data.MovieSearch;
+import software.level.udacity.popularmovies1.data.RefreshScheduler;
+import software.level.udacity.popularmovies1.data.MovieTable;
+import software.level.udacity.popularmovies1.utilities.CancellationToken;
+import software.level.udacity.popularmovies1.utilities.ConnectionManager;
+import software.level.udacity.popularmovies1.utilities.ImagePipeline;
+import software.level.udacity.popularmovies1.utilities.MainThreadExecutor;
+import software.level.udacity.popularmovies1.utilities.MetricsRegistry;
 import software.level.udacity.popularmovies1.utilities.MovieRequestType;
 import software.level.udacity.popularmovies1.utilities.NetworkUtils;
+import software.level.udacity.popularmovies1.utilities.PosterSizeResolver;
+import software.level.udacity.popularmovies1.utilities.TaskScheduler;
+import software.level.udacity.popularmovies1.utilities.Tracer;
 
-public class MainActivity extends AppCompatActivity implements MovieAdapter.MovieOnClickHandler {
+public class MainActivity extends AppCompatActivity implements MovieAdapter.MovieOnClickHandler,
+        MovieSearch.Listener {
 
     private static final String TAG = MainActivity.class.getSimpleName();
 
+    // File in the cache directory that traced spans are exported to
+    private static final String TRACE_FILE_NAME = "trace.tsv";
+
+    // Lists that can be picked from the menu, loaded at startup so any of them shows right away
+    private static final MovieRequestType[] MENU_REQUEST_TYPES = {
+            MovieRequestType.POPULAR,
+            MovieRequestType.TOP_RATED,
+            MovieRequestType.NOW_PLAYING,
+            MovieRequestType.UPCOMING
+    };
+
+    // Menu item of each of MENU_REQUEST_TYPES
+    private static final int[] MENU_ITEM_IDS = {
+            R.id.action_popular,
+            R.id.action_toprated,
+            R.id.action_now_playing,
+            R.id.action_upcoming
+    };
+
     // Reference to the RecyclerView that holds all the movie posters
     private RecyclerView mRecyclerView;
 
@@ -40,6 +80,69 @@ public class MainActivity extends AppCompatActivity implements MovieAdapter.Movi
     // Reference to the menu for keeping track of what is selected
     private Menu mMenu;
 
+    // Picks the size posters are loaded at
+    private PosterSizeResolver mPosterSizeResolver;
+
+    // Warms the image cache for the rows the user is scrolling towards
+    private PosterPrefetcher mPosterPrefetcher;
+
+    // Loads the details of the movies around the visible rows before they are tapped
+    private DetailHydrator mDetailHydrator;
+
+    // How many rows past the visible part of the grid have their details loaded
+    private int mDetailHydrationRows;
+
+    // Loads the lists in the menu that aren't being shown
+    private CategoryLoader mCategoryLoader;
+
+    // Refreshes the pages of the shown list that went stale, while they are being shown
+    private RefreshScheduler mRefreshScheduler;
+
+    // Searches the loaded movies as the user types, asking the API when they aren't enough
+    private MovieSearch mMovieSearch;
+
+    // Text being searched for, empty when the selected list is shown
+    private String mSearchQuery = "";
+
+    // Menu item holding the search field, null until the menu is created
+    private MenuItem mSearchItem;
+
+    // True while the next page of movies is being loaded
+    private boolean mLoadingNextPage;
+
+    // Cancelled when the activity is destroyed so that no results are delivered to it after
+    private final CancellationToken mLifecycleToken = new CancellationToken();
+
+    // The load of the list that is being shown, cancelled when the user switches lists
+    private TaskScheduler.Job mFetchMovieDataJob;
+
+    // Job reading the saved movies of the selected list, null when none is running
+    private TaskScheduler.Job mShowSavedMoviesJob;
+
+    // Updates of the list are delivered on the main thread
+    private final Executor mMainThreadExecutor = new MainThreadExecutor();
+
+    // Updates of the selected list, replaced when the user switches lists
+    private DataStream.Subscription mListSubscription;
+
+    // Shows the movies of the selected list as pages are loaded and the list is refreshed
+    private final DataStream.Observer<MovieListUpdate> mListObserver = new DataStream.Observer<MovieListUpdate>() {
+        @Override
+        public void onChanged(MovieListUpdate update) {
+            // Search results are shown instead, the list is shown again once the search ends
+            if(isSearching()) {
+                return;
+            }
+
+            if(update.change == MovieListUpdate.Change.APPENDED) {
+                mMovieAdapter.addMovieData(update.added);
+            } else {
+                // The adapter changes the table it is given, the update is shared
+                mMovieAdapter.setMovieData(update.movies.copy());
+            }
+        }
+    };
+
     // Set the default request type
     private final MovieRequestType mDefaultMovieRequestType = MovieRequestType.POPULAR;
 
@@ -48,14 +151,95 @@ public class MainActivity extends AppCompatActivity implements MovieAdapter.Movi
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_movies);
 
+        // Traces how long it takes until the first poster is on screen
+        Tracer.getInstance().startPending(Tracer.Span.FIRST_POSTER);
+
+        // Sizes the connection pool before anything connects
+        ConnectionManager.installConnectionPool();
+
+        // Repeat requests are served from the response cache when possible
+        NetworkUtils.installResponseCache(this);
+
+        // Posters are loaded through the app's own memory, bitmap and disk caches
+        ImagePipeline.install(this);
+
         // Do the initial setup on the RecyclerView
         configureRecyclerView();
 
+        mMovieSearch = new MovieSearch(MovieRepository.getInstance(this), TaskScheduler.getInstance());
+        mRefreshScheduler = RefreshScheduler.getInstance(this);
+
         // ProgressBar is shown when data is loading
         mProgressBar = (ProgressBar) findViewById(R.id.pb_movies_loading);
 
-        // Fetch the movie data
-        fetchMovieData();
+        // Show what is already in memory or was saved last time, then fetch the movie data
+        showMovieData();
+
+        // Load the other lists behind the one that is shown so switching to them is instant
+        mCategoryLoader = CategoryLoader.getInstance(this);
+        mCategoryLoader.load(MENU_REQUEST_TYPES, 0, getResources().getInteger(R.integer.category_preload_pages));
+    }
+
+    @Override
+    protected void onResume() {
+        super.onResume();
+
+        // Whatever is shown stays on screen while the pages that went stale since are refreshed
+        if(!isSearching()) {
+            mRefreshScheduler.revalidate(getSelectedMovieRequestType(), 0);
+        }
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+
+        // Drops anything still queued or loading for this activity
+        mLifecycleToken.cancel();
+        mPosterPrefetcher.cancelAll();
+        mDetailHydrator.cancelAll();
+        mCategoryLoader.cancelAll();
+        mRefreshScheduler.cancelAll();
+        mMovieSearch.cancel();
+        if(mListSubscription != null) {
+            mListSubscription.cancel();
+        }
+
+        // Recycles every cell so the posters they show can be reused
+        mRecyclerView.setAdapter(null);
+
+        // Stats are only for looking at debug builds, and only once the user leaves the screen
+        // rather than on every rotation
+        if(BuildConfig.DEBUG && isFinishing()) {
+            Log.d(TAG, "Image caches: " + ImagePipeline.getInstance().getStatsSummary());
+            Log.d(TAG, "Connections: " + ConnectionManager.getInstance().getStatsSummary());
+            Log.d(TAG, "Requests: " + MetricsRegistry.getInstance().getSummary());
+
+            exportTrace();
+        }
+    }
+
+    /**
+     * Writes the spans traced so far to a file in the cache directory in the background, where
+     * they can be pulled from the device to look at latency percentiles
+     */
+    private void exportTrace() {
+        final File traceFile = new File(getCacheDir(), TRACE_FILE_NAME);
+
+        // Not tied to the lifecycle token since the activity is going away
+        TaskScheduler.getInstance().submit(TaskScheduler.Priority.PREFETCH, new CancellationToken(),
+                new TaskScheduler.Task<Void>() {
+                    @Override
+                    protected Void doInBackground(CancellationToken token) throws IOException {
+                        Tracer.getInstance().export(traceFile);
+                        return null;
+                    }
+
+                    @Override
+                    protected void onError(Exception e) {
+                        Log.e(TAG, "Could not export trace: " + e);
+                    }
+                });
     }
 
     /**
@@ -69,12 +253,10 @@ public class MainActivity extends AppCompatActivity implements MovieAdapter.Movi
             return mDefaultMovieRequestType;
         }
 
-        if(mMenu.findItem(R.id.action_popular).isChecked()) {
-            return MovieRequestType.POPULAR;
-        }
-
-        if(mMenu.findItem(R.id.action_toprated).isChecked()) {
-            return MovieRequestType.TOP_RATED;
+        for(int i = 0; i < MENU_ITEM_IDS.length; i++) {
+            if(mMenu.findItem(MENU_ITEM_IDS[i]).isChecked()) {
+                return MENU_REQUEST_TYPES[i];
+            }
         }
 
         return mDefaultMovieRequestType;
@@ -89,7 +271,7 @@ public class MainActivity extends AppCompatActivity implements MovieAdapter.Movi
         mRecyclerView = (RecyclerView) findViewById(R.id.rv_movies);
 
         // Depending on the screen orientation we can show a different number of columns
-        int columns = getResources().getInteger(R.integer.movie_columns);
+        final int columns = getResources().getInteger(R.integer.movie_columns);
 
         // Initialize the layout manager and set the RecyclerView to use it
         GridLayoutManager gridLayoutManager = new GridLayoutManager(this, columns);
@@ -101,14 +283,226 @@ public class MainActivity extends AppCompatActivity implements MovieAdapter.Movi
         // Create the adapter and set it
         mMovieAdapter = new MovieAdapter(this);
         mRecyclerView.setAdapter(mMovieAdapter);
+
+        // Posters are loaded at the size that fits a cell. The grid fills the screen so the
+        // screen width is used until the grid has been measured.
+        mPosterSizeResolver = new PosterSizeResolver(this);
+        int screenWidth = getResources().getDisplayMetrics().widthPixels;
+        mMovieAdapter.setPosterSize(mPosterSizeResolver.resolve(screenWidth / columns));
+
+        mRecyclerView.addOnLayoutChangeListener(new View.OnLayoutChangeListener() {
+            @Override
+            public void onLayoutChange(View view, int left, int top, int right, int bottom,
+                                       int oldLeft, int oldTop, int oldRight, int oldBottom) {
+                int width = right - left;
+                if(width > 0 && width != oldRight - oldLeft) {
+                    mMovieAdapter.setPosterSize(mPosterSizeResolver.resolve(width / columns));
+                }
+            }
+        });
+
+        // Load the next page of movies before the user reaches the end of the grid
+        int prefetchRows = getResources().getInteger(R.integer.movie_prefetch_rows);
+        mRecyclerView.addOnScrollListener(new EndlessScrollListener(gridLayoutManager, prefetchRows) {
+            @Override
+            public void onLoadMore() {
+                fetchNextPage();
+            }
+        });
+
+        // Load the posters of the rows the user is scrolling towards before they are visible
+        int posterPrefetchRows = getResources().getInteger(R.integer.poster_prefetch_rows);
+        mPosterPrefetcher = new PosterPrefetcher(this, gridLayoutManager, mMovieAdapter, posterPrefetchRows);
+        mRecyclerView.addOnScrollListener(mPosterPrefetcher);
+
+        // Load the details of the movies around the visible rows whenever the grid settles
+        mDetailHydrator = DetailHydrator.getInstance(this);
+        mDetailHydrationRows = getResources().getInteger(R.integer.detail_hydration_rows);
+        mRecyclerView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+                // Called without a scroll distance after a layout, such as when data arrived
+                if(dy == 0) {
+                    hydrateVisibleMovies();
+                }
+            }
+
+            @Override
+            public void onScrollStateChanged(RecyclerView recyclerView, int newState) {
+                if(newState == RecyclerView.SCROLL_STATE_IDLE) {
+                    hydrateVisibleMovies();
+                }
+            }
+        });
+    }
+
+    /**
+     * Asks the hydrator for the details of the visible movies, followed by the movies in the
+     * rows below and then above them
+     */
+    private void hydrateVisibleMovies() {
+        GridLayoutManager layoutManager = (GridLayoutManager) mRecyclerView.getLayoutManager();
+        int first = layoutManager.findFirstVisibleItemPosition();
+        int last = layoutManager.findLastVisibleItemPosition();
+
+        if(first == RecyclerView.NO_POSITION || last == RecyclerView.NO_POSITION) {
+            return;
+        }
+
+        int nearItems = mDetailHydrationRows * layoutManager.getSpanCount();
+        int start = Math.max(0, first - nearItems);
+        int end = Math.min(mMovieAdapter.getItemCount() - 1, last + nearItems);
+
+        int[] ids = new int[end - start + 1];
+        int count = 0;
+        for(int position = first; position <= end; position++) {
+            ids[count++] = mMovieAdapter.getMovieId(position);
+        }
+        for(int position = first - 1; position >= start; position--) {
+            ids[count++] = mMovieAdapter.getMovieId(position);
+        }
+
+        mDetailHydrator.hydrate(ids);
+    }
+
+    /**
+     * Follows the selected list, which shows its movies right away if it has been loaded and
+     * every page that is loaded after. If the list itself hasn't been loaded, the snapshot
+     * saved the last time it was loaded is read in the background and shown while the list is
+     * loaded from the network. Without a snapshot the movies we already have are sorted to
+     * match the list instead.
+     */
+    private void showMovieData() {
+        MovieRequestType requestType = getSelectedMovieRequestType();
+        MovieRepository repository = MovieRepository.getInstance(this);
+
+        // Posters and details of the list that was shown before are no longer needed
+        mPosterPrefetcher.cancelAll();
+        mDetailHydrator.cancelAll();
+
+        // The saved movies of the list that was shown before are no longer needed either
+        if(mShowSavedMoviesJob != null) {
+            mShowSavedMoviesJob.cancel();
+            mShowSavedMoviesJob = null;
+        }
+
+        if(mListSubscription != null) {
+            mListSubscription.cancel();
+        }
+        mListSubscription = repository.observeMovies(requestType, 0, mMainThreadExecutor, mLifecycleToken,
+                mListObserver);
+
+        // The loaded movies were handed to the observer already, they are replaced in place
+        // if any of their pages is stale and gets refreshed
+        if(repository.getLoadedPageCount(requestType, 0) > 0) {
+            mRefreshScheduler.revalidate(requestType, 0);
+            return;
+        }
+
+        // Submitted first so that the saved movies are usually on screen well before the list
+        // comes back from the network
+        ShowSavedMoviesTask task = new ShowSavedMoviesTask(this, requestType);
+        mShowSavedMoviesJob = TaskScheduler.getInstance().submit(TaskScheduler.Priority.LIST, mLifecycleToken, task);
+
+        fetchMovieData();
+    }
+
+    /**
+     * Shows the movies matching the query in place of the selected list, or the selected list
+     * again once the query is cleared
+     * @param query Text in the search field
+     */
+    private void showSearchResults(String query) {
+        String trimmed = query.trim();
+        if(trimmed.equals(mSearchQuery)) {
+            return;
+        }
+
+        mSearchQuery = trimmed;
+
+        if(!isSearching()) {
+            mMovieSearch.cancel();
+            showMovieData();
+            return;
+        }
+
+        // Posters and details of what was shown before are no longer needed
+        mPosterPrefetcher.cancelAll();
+        mDetailHydrator.cancelAll();
+
+        mMovieAdapter.setMovieData(mMovieSearch.search(trimmed, mLifecycleToken, this));
+    }
+
+    /**
+     * Shows the movies the API found for the query, along with the movies found before
+     * @param query The query the movies were found for
+     * @param movies Every movie matching the query, best match first
+     */
+    @Override
+    public void onSearchResults(String query, MovieTable movies) {
+        if(query.equals(mSearchQuery)) {
+            mMovieAdapter.setMovieData(movies);
+        }
+    }
+
+    /**
+     * Checks if search results are shown instead of the selected list
+     * @return True while there is text in the search field
+     */
+    private boolean isSearching() {
+        return !mSearchQuery.isEmpty();
+    }
+
+    /**
+     * Clears and closes the search field without showing the selected list again
+     */
+    private void endSearch() {
+        mSearchQuery = "";
+        mMovieSearch.cancel();
+
+        if(mSearchItem != null) {
+            MenuItemCompat.collapseActionView(mSearchItem);
+        }
     }
 
     /**
      * Kicks off the loading of movie data from The Movie Database
      */
     private void fetchMovieData() {
-        FetchMovieDataTask task = new FetchMovieDataTask(this);
-        task.execute(getSelectedMovieRequestType());
+        // The list that was loading before is no longer going to be shown
+        if(mFetchMovieDataJob != null) {
+            mFetchMovieDataJob.cancel();
+        }
+
+        // Set the visibility of the progress bar, unless there are already movies to look at
+        if(mMovieAdapter.getItemCount() == 0) {
+            mProgressBar.setVisibility(View.VISIBLE);
+        }
+
+        FetchMovieDataTask task = new FetchMovieDataTask(this, getSelectedMovieRequestType());
+        mFetchMovieDataJob = TaskScheduler.getInstance().submit(TaskScheduler.Priority.LIST, mLifecycleToken, task);
+    }
+
+    /**
+     * Kicks off the loading of the next page of movies unless a page is already loading or
+     * there are no more pages
+     */
+    private void fetchNextPage() {
+        MovieRequestType requestType = getSelectedMovieRequestType();
+
+        // Search results are not paged
+        if(isSearching()) {
+            return;
+        }
+
+        if(mLoadingNextPage || !MovieRepository.getInstance(this).hasMorePages(requestType)) {
+            return;
+        }
+
+        mLoadingNextPage = true;
+
+        FetchNextPageTask task = new FetchNextPageTask(this, requestType);
+        TaskScheduler.getInstance().submit(TaskScheduler.Priority.LIST, mLifecycleToken, task);
     }
 
     /**
@@ -122,13 +516,32 @@ public class MainActivity extends AppCompatActivity implements MovieAdapter.Movi
         getMenuInflater().inflate(R.menu.movies, menu);
 
         // Set the default sort method to checked
-        if(mDefaultMovieRequestType == MovieRequestType.POPULAR) {
-            menu.findItem(R.id.action_popular).setChecked(true);
+        for(int i = 0; i < MENU_REQUEST_TYPES.length; i++) {
+            if(MENU_REQUEST_TYPES[i] == mDefaultMovieRequestType) {
+                menu.findItem(MENU_ITEM_IDS[i]).setChecked(true);
+            }
         }
 
-        if(mDefaultMovieRequestType == MovieRequestType.TOP_RATED) {
-            menu.findItem(R.id.action_toprated).setChecked(true);
-        }
+        // Search the movies as the user types
+        mSearchItem = menu.findItem(R.id.action_search);
+        final SearchView searchView = (SearchView) MenuItemCompat.getActionView(mSearchItem);
+        searchView.setQueryHint(getString(R.string.search_hint));
+        searchView.setOnQueryTextListener(new SearchView.OnQueryTextListener() {
+            @Override
+            public boolean onQueryTextSubmit(String query) {
+                showSearchResults(query);
+
+                // Hides the keyboard so the results can be seen
+                searchView.clearFocus();
+                return true;
+            }
+
+            @Override
+            public boolean onQueryTextChange(String newText) {
+                showSearchResults(newText);
+                return true;
+            }
+        });
 
         // Store a reference to the menu so we can figure out which items are checked later
         mMenu = menu;
@@ -148,25 +561,17 @@ public class MainActivity extends AppCompatActivity implements MovieAdapter.Movi
     public boolean onOptionsItemSelected(MenuItem item) {
         int id = item.getItemId();
 
-        // Popular sort method selected
-        if(id == R.id.action_popular) {
-            // If the popular sort order wasn't already selected then update the data
-            if(getSelectedMovieRequestType() != MovieRequestType.POPULAR) {
-                Log.i(TAG, "Popular was not already selected, updating data");
-                item.setChecked(true);
-                fetchMovieData();
+        for(int i = 0; i < MENU_ITEM_IDS.length; i++) {
+            if(id != MENU_ITEM_IDS[i]) {
+                continue;
             }
 
-            return true;
-        }
-
-        // Top rated sort method selected
-        if(id == R.id.action_toprated) {
-            // If the top rated sort order wasn't already selected then update the data
-            if(getSelectedMovieRequestType() != MovieRequestType.TOP_RATED) {
-                Log.i(TAG, "Top rated was not already selected, updating data");
+            // If the list wasn't already selected, or search results are shown, then update the data
+            if(getSelectedMovieRequestType() != MENU_REQUEST_TYPES[i] || isSearching()) {
+                Log.i(TAG, MENU_REQUEST_TYPES[i] + " was not already shown, updating data");
                 item.setChecked(true);
-                fetchMovieData();
+                endSearch();
+                showMovieData();
             }
 
             return true;
@@ -177,74 +582,199 @@ public class MainActivity extends AppCompatActivity implements MovieAdapter.Movi
 
     /**
      * Handles selection of movie from the RecyclerView. Creates an intent to load the detail
-     * activity and passes along the id of the movie that was selected.
+     * activity and passes along the movie that was selected, so the detail screen can show it
+     * without loading it. The poster moves from the grid to the detail screen on devices that
+     * support shared element transitions.
      * @param movie The movie that was selected passed by the ViewHolder
+     * @param posterView View showing the poster of the movie in the grid
      */
     @Override
-    public void onClickMovie(Movie movie) {
+    public void onClickMovie(Movie movie, ImageView posterView) {
         Intent detailIntent = new Intent(this, DetailActivity.class);
-        detailIntent.putExtra(Intent.EXTRA_TEXT, movie.moviedb_id);
+        detailIntent.putExtra(DetailActivity.EXTRA_MOVIE, new MovieParcel(movie));
+
+        // The detail screen looks up the bitmap the cell shows in the memory cache by this size,
+        // the cell may still show a smaller size than the grid loads now
+        String shownSize = PosterLoader.getShownSize(posterView);
+        if(shownSize == null) {
+            shownSize = mMovieAdapter.getPosterSize(this);
+        }
+        detailIntent.putExtra(DetailActivity.EXTRA_GRID_POSTER_SIZE, shownSize);
 
-        startActivity(detailIntent);
+        ActivityOptionsCompat options = ActivityOptionsCompat.makeSceneTransitionAnimation(this,
+                posterView, PosterLoader.getTransitionName(movie.moviedb_id));
+        ActivityCompat.startActivity(this, detailIntent, options.toBundle());
     }
 
     /**
-     * AsyncTask that fetches movie data and parses it in the background before returning
-     * to the main thread to update the RecyclerView with the data.
+     * Task that fetches movie data and parses it in the background. The movies reach the
+     * RecyclerView through the list observer, this only hides the progress bar once done.
      */
-    public class FetchMovieDataTask extends AsyncTask<MovieRequestType, Void, ArrayList<Movie>> {
+    public class FetchMovieDataTask extends TaskScheduler.Task<MovieTable> {
 
-        // The custom URL builder requires a context to be able to pull the api key from the strings
+        // The repository requires a context to be able to build the API requests
         private Context mContext;
 
+        // The request type being loaded
+        private MovieRequestType mRequestType;
+
         /**
          * Create a new FetchMovieDataTask
          * @param context Context from the creating activity
+         * @param requestType Any list in the menu can be fetched
          */
-        public FetchMovieDataTask(Context context) {
+        public FetchMovieDataTask(Context context, MovieRequestType requestType) {
             mContext = context;
+            mRequestType = requestType;
         }
 
         /**
-         * Set the visibility of the progress bar prior to executing the background task
+         * Downloads data from the Movie Database and parses it in the background
+         * @param token Token of the task, cancelled when the result is no longer wanted
+         * @return MovieTable containing the movies for the downloaded data
          */
         @Override
-        protected void onPreExecute() {
-            super.onPreExecute();
-            mProgressBar.setVisibility(View.VISIBLE);
+        protected MovieTable doInBackground(CancellationToken token) {
+
+            try {
+                // Loads the movies from the API unless another screen already loaded them
+                return MovieRepository.getInstance(mContext).getMovies(mRequestType);
+
+            } catch (IOException e) {
+                Log.e(TAG, e.toString());
+            }
+
+            return null;
         }
 
         /**
-         * Downloads data from the Movie Database and parses it in the background
-         * @param movieRequestTypes Either POPULAR or TOP_RATED movies can be fetched
-         * @return Parsed ArrayList containing Movie objects for the downloaded data
+         * The movies have been handed to the list observer by now, or loading failed and we
+         * keep showing what we have
+         * @param movies MovieTable of new movie data returned from the background task
+         */
+        @Override
+        protected void onPostExecute(MovieTable movies) {
+            mFetchMovieDataJob = null;
+            mProgressBar.setVisibility(View.INVISIBLE);
+        }
+
+        /**
+         * Loading failed in a way that wasn't expected, keep showing what we have
+         * @param e The exception thrown by the background task
          */
         @Override
-        protected ArrayList<Movie> doInBackground(MovieRequestType... movieRequestTypes) {
+        protected void onError(Exception e) {
+            Log.e(TAG, e.toString());
+            onPostExecute(null);
+        }
+    }
+
+    /**
+     * Task that reads the movies saved the last time a list was loaded, or sorts the movies we
+     * already have to match the list if there is no snapshot, and shows them until the list
+     * itself has been loaded.
+     */
+    public class ShowSavedMoviesTask extends TaskScheduler.Task<MovieTable> {
 
-            // Generate the request URL
-            URL requestURL = null;
-            MovieRequestType requestType = movieRequestTypes[0];
+        // The repository requires a context to be able to find the snapshots
+        private Context mContext;
+
+        // The request type to show the saved movies of
+        private MovieRequestType mRequestType;
 
-            if(requestType == MovieRequestType.POPULAR) {
-                requestURL = NetworkUtils.buildURL(mContext, MovieRequestType.POPULAR);
+        /**
+         * Create a new ShowSavedMoviesTask
+         * @param context Context from the creating activity
+         * @param requestType Any list in the menu
+         */
+        public ShowSavedMoviesTask(Context context, MovieRequestType requestType) {
+            mContext = context;
+            mRequestType = requestType;
+        }
+
+        /**
+         * Reads the snapshot from disk in the background
+         * @param token Token of the task, cancelled when the result is no longer wanted
+         * @return The movies to show, or null if there are none
+         */
+        @Override
+        protected MovieTable doInBackground(CancellationToken token) {
+            MovieRepository repository = MovieRepository.getInstance(mContext);
+
+            MovieTable snapshotMovies = repository.getSnapshotMovies(mRequestType);
+            if(snapshotMovies != null) {
+                return snapshotMovies;
             }
 
-            if(requestType == MovieRequestType.TOP_RATED) {
-                requestURL = NetworkUtils.buildURL(mContext, MovieRequestType.TOP_RATED);
+            MovieTable loadedMovies = repository.queryLoadedMovies(MovieQuery.forRequestType(mRequestType));
+            return loadedMovies.isEmpty() ? null : loadedMovies;
+        }
+
+        /**
+         * Shows the saved movies unless the list itself was loaded in the meantime, in which
+         * case the list observer already shows it
+         * @param movies The movies to show, or null if there are none
+         */
+        @Override
+        protected void onPostExecute(MovieTable movies) {
+            mShowSavedMoviesJob = null;
+
+            if(movies == null || isSearching() || getSelectedMovieRequestType() != mRequestType) {
+                return;
+            }
+            if(MovieRepository.getInstance(mContext).getLoadedPageCount(mRequestType, 0) > 0) {
+                return;
             }
 
-            try {
-                // Execute the API call
-                String response = NetworkUtils.getResponseFromHttpUrl(requestURL);
-                Log.d(TAG, "Response: " + response);
+            mMovieAdapter.setMovieData(movies);
+            mProgressBar.setVisibility(View.INVISIBLE);
+        }
 
-                // Parse the JSON data into an ArrayList of Movie objects
-                ArrayList<Movie> movies = MovieParser.parseMovieData(response, requestType);
+        /**
+         * Reading failed in a way that wasn't expected, the list is still loaded from the network
+         * @param e The exception thrown by the background task
+         */
+        @Override
+        protected void onError(Exception e) {
+            Log.e(TAG, e.toString());
+            mShowSavedMoviesJob = null;
+        }
+    }
+
+    /**
+     * Task that fetches the next page of movie data in the background. The list observer
+     * appends the page to the RecyclerView.
+     */
+    public class FetchNextPageTask extends TaskScheduler.Task<MoviePage> {
+
+        // The repository requires a context to be able to build the API requests
+        private Context mContext;
 
-                return movies;
+        // The request type the page belongs to
+        private MovieRequestType mRequestType;
+
+        /**
+         * Create a new FetchNextPageTask
+         * @param context Context from the creating activity
+         * @param requestType Any list in the menu can be fetched
+         */
+        public FetchNextPageTask(Context context, MovieRequestType requestType) {
+            mContext = context;
+            mRequestType = requestType;
+        }
 
-            } catch (IOException|JSONException e) {
+        /**
+         * Downloads the next page of data from the Movie Database and parses it in the background
+         * @param token Token of the task, cancelled when the result is no longer wanted
+         * @return The page of movies, or null if there are no more pages
+         */
+        @Override
+        protected MoviePage doInBackground(CancellationToken token) {
+
+            try {
+                return MovieRepository.getInstance(mContext).loadNextPage(mRequestType);
+
+            } catch (IOException e) {
                 Log.e(TAG, e.toString());
             }
 
@@ -252,16 +782,23 @@ public class MainActivity extends AppCompatActivity implements MovieAdapter.Movi
         }
 
         /**
-         * Now that the data has been returned, update the RecyclerView on the main thread
-         * with the new movie data
-         * @param movies ArrayList of new movie data returned from the background task
+         * Allows the page after this one to be loaded. The page has been handed to the list
+         * observer if the user is still looking at the same list.
+         * @param moviePage The page returned from the background task
          */
         @Override
-        protected void onPostExecute(ArrayList<Movie> movies) {
-            super.onPostExecute(movies);
+        protected void onPostExecute(MoviePage moviePage) {
+            mLoadingNextPage = false;
+        }
 
-            mMovieAdapter.setMovieData(movies);
-            mProgressBar.setVisibility(View.INVISIBLE);
+        /**
+         * Loading failed in a way that wasn't expected, allow the page to be loaded again
+         * @param e The exception thrown by the background task
+         */
+        @Override
+        protected void onError(Exception e) {
+            Log.e(TAG, e.toString());
+            onPostExecute(null);
         }
     }
 }
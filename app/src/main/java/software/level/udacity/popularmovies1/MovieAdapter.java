@@ -1,5 +1,8 @@
 package software.level.udacity.popularmovies1;
 
+import android.content.Context;
+import android.support.v4.view.ViewCompat;
+import android.support.v7.util.DiffUtil;
 import android.support.v7.widget.RecyclerView;
 import android.util.Log;
 import android.view.LayoutInflater;
@@ -10,11 +13,14 @@ import android.widget.TextView;
 
 import com.squareup.picasso.Picasso;
 
-import java.net.URL;
 import java.util.ArrayList;
 
 import software.level.udacity.popularmovies1.data.Movie;
-import software.level.udacity.popularmovies1.utilities.NetworkUtils;
+import software.level.udacity.popularmovies1.data.MovieTable;
+import software.level.udacity.popularmovies1.utilities.CancellationToken;
+import software.level.udacity.popularmovies1.utilities.ImageUrlCache;
+import software.level.udacity.popularmovies1.utilities.TaskScheduler;
+import software.level.udacity.popularmovies1.utilities.Tracer;
 
 /**
  * Adapter used by the RecyclerView to display the grid layout
@@ -25,8 +31,32 @@ public class MovieAdapter extends RecyclerView.Adapter<MovieAdapter.MovieAdapter
 
     private static final String TAG = MovieAdapter.class.getSimpleName();
 
-    // ArrayList that holds all of the movie data in Movie objects
-    private ArrayList<Movie> mMovieData;
+    // Table that holds all of the movie data in columns
+    private MovieTable mMovieData;
+
+    // Reusable view of a row of mMovieData used while binding
+    private final Movie mBindMovie = new Movie();
+
+    // Data that is being compared against mMovieData in the background, null when idle
+    private MovieTable mPendingMovieData;
+
+    // Movies added while the comparison is running, appended once it has been applied
+    private ArrayList<Movie> mPendingAppends;
+
+    // Incremented every time the data is replaced so stale comparisons can be ignored
+    private int mDiffGeneration;
+
+    // Comparison that is running in the background, null if none was started yet
+    private TaskScheduler.Job mDiffJob;
+
+    // When the data that is being applied was set, used to trace how long updates take
+    private long mUpdateStartNanos;
+
+    // Size posters are loaded at, null until set
+    private String mPosterSize;
+
+    // Size posters were loaded at before the size last changed, null if it never changed
+    private String mPreviousPosterSize;
 
     // Reference to the onClickHandler class that handles selection of movies
     private MovieOnClickHandler mMovieOnClickHandler;
@@ -71,19 +101,86 @@ public class MovieAdapter extends RecyclerView.Adapter<MovieAdapter.MovieAdapter
      */
     @Override
     public void onBindViewHolder(MovieAdapterViewHolder holder, int position) {
-        Movie movie = mMovieData.get(position);
+        Movie movie = mMovieData.read(position, mBindMovie);
         ImageView imageView = holder.mImageView;
 
-        // String resource holds the api image size
-        String imageSize = imageView.getResources().getString(R.string.api_image_size);
+        String imageSize = getPosterSize(imageView.getContext());
 
-        // Load the poster image when we bind the view
-        URL imageURL = NetworkUtils.buildImageURL(movie.poster_path, imageSize);
+        // The poster moves to the detail screen when the movie is opened
+        ViewCompat.setTransitionName(imageView, PosterLoader.getTransitionName(movie.moviedb_id));
 
-        Picasso.with(holder.mImageView.getContext())
-                .load(imageURL.toString())
-                .placeholder(R.drawable.poster_placeholder)
-                .into(holder.mImageView);
+        // Load the poster image when we bind the view. Visible posters go ahead of anything the
+        // PosterPrefetcher asked for.
+        PosterLoader.load(imageView, movie.poster_path, imageSize, mPreviousPosterSize, Picasso.Priority.HIGH);
+    }
+
+    /**
+     * Stops loading the poster of a cell that scrolled away and lets go of its bitmap, so that
+     * cells sitting in the recycled view pool don't keep posters from being reused.
+     *
+     * @param holder The ViewHolder that is being recycled
+     */
+    @Override
+    public void onViewRecycled(MovieAdapterViewHolder holder) {
+        super.onViewRecycled(holder);
+        PosterLoader.clear(holder.mImageView);
+    }
+
+    /**
+     * Set the size posters are loaded at, rebinding the posters that are already shown if it
+     * changed. Posters already loaded at a smaller size are shown until the new size loads.
+     * @param posterSize Size to pass to ImageUrlCache.get
+     */
+    public void setPosterSize(String posterSize) {
+        if(posterSize.equals(mPosterSize)) {
+            return;
+        }
+
+        mPreviousPosterSize = mPosterSize;
+        mPosterSize = posterSize;
+
+        if(getItemCount() > 0) {
+            notifyItemRangeChanged(0, getItemCount());
+        }
+    }
+
+    /**
+     * Gets the size posters are loaded at
+     * @param context Context used to look up the default size
+     * @return The size set with setPosterSize, or the default size if none has been set
+     */
+    public String getPosterSize(Context context) {
+        if(mPosterSize == null) {
+            return context.getResources().getString(R.string.api_image_size);
+        }
+        return mPosterSize;
+    }
+
+    /**
+     * Gets the URL that the poster at the position is loaded from when it is bound
+     * @param context Context used to look up the image size
+     * @param position The position of the item within the adapter's data set
+     * @return The poster URL or null if the position is out of range
+     */
+    public String getPosterUrl(Context context, int position) {
+        if(position < 0 || position >= getItemCount()) {
+            return null;
+        }
+
+        String imageSize = getPosterSize(context);
+        return ImageUrlCache.getInstance().get(mMovieData.getPosterPath(position), imageSize);
+    }
+
+    /**
+     * Gets the Movie Database id of the movie at the position
+     * @param position The position of the item within the adapter's data set
+     * @return The id or 0 if the position is out of range
+     */
+    public int getMovieId(int position) {
+        if(position < 0 || position >= getItemCount()) {
+            return 0;
+        }
+        return mMovieData.getId(position);
     }
 
     /**
@@ -101,12 +198,132 @@ public class MovieAdapter extends RecyclerView.Adapter<MovieAdapter.MovieAdapter
     }
 
     /**
-     * Set the movie data and refresh the ViewHolder to display the new data
-     * @param movieData An ArrayList of Movie objects
+     * Set the movie data and refresh the ViewHolders that changed. The difference between the
+     * current and new data is calculated in the background, after which only the items that
+     * were inserted, removed, moved or changed are updated.
+     * @param movieData A MovieTable that the adapter can take ownership of
      */
-    public void setMovieData(ArrayList<Movie> movieData) {
-        mMovieData = movieData;
-        notifyDataSetChanged();
+    public void setMovieData(MovieTable movieData) {
+        mUpdateStartNanos = System.nanoTime();
+        mDiffGeneration++;
+
+        // A comparison against data that is being replaced is no longer needed
+        if(mDiffJob != null) {
+            mDiffJob.cancel();
+            mDiffJob = null;
+        }
+        mPendingMovieData = null;
+        mPendingAppends = null;
+
+        // Nothing to compare against, so every item has to be bound anyway
+        if(mMovieData == null || mMovieData.isEmpty() || movieData == null) {
+            mMovieData = movieData;
+            notifyDataSetChanged();
+            Tracer.getInstance().end(Tracer.Span.ADAPTER_UPDATE, mUpdateStartNanos, getItemCount());
+            return;
+        }
+
+        mPendingMovieData = movieData;
+        mPendingAppends = new ArrayList<>();
+
+        // The grid is what the user is looking at, so the comparison runs in the list lane and
+        // the shared scheduler applies the result on the main thread
+        CalculateDiffTask task = new CalculateDiffTask(mDiffGeneration, mMovieData.copy(), mPendingMovieData);
+        mDiffJob = TaskScheduler.getInstance().submit(TaskScheduler.Priority.LIST, new CancellationToken(), task);
+    }
+
+    /**
+     * Add movies to the end of the data set and only bind the new items. If new data is still
+     * being compared against the current data the movies are added once that is finished.
+     * @param movieData An ArrayList of Movie objects to add
+     */
+    public void addMovieData(ArrayList<Movie> movieData) {
+        if(mPendingMovieData != null) {
+            mPendingAppends.addAll(movieData);
+            return;
+        }
+
+        if(mMovieData == null) {
+            setMovieData(MovieTable.of(movieData));
+            return;
+        }
+
+        // Movies that are already in the grid only update their existing row
+        long startNanos = System.nanoTime();
+        int positionStart = mMovieData.size();
+        int inserted = mMovieData.addAll(movieData);
+        notifyItemRangeInserted(positionStart, inserted);
+        Tracer.getInstance().end(Tracer.Span.ADAPTER_UPDATE, startNanos, inserted);
+    }
+
+    /**
+     * Task that calculates the difference between two lists of movies in the background
+     * and applies it to the adapter on the main thread.
+     */
+    private class CalculateDiffTask extends TaskScheduler.Task<DiffUtil.DiffResult> {
+
+        // Used to tell if newer data was set while the difference was being calculated
+        private final int mGeneration;
+
+        private final MovieTable mOldMovies;
+        private final MovieTable mNewMovies;
+
+        CalculateDiffTask(int generation, MovieTable oldMovies, MovieTable newMovies) {
+            mGeneration = generation;
+            mOldMovies = oldMovies;
+            mNewMovies = newMovies;
+        }
+
+        @Override
+        protected DiffUtil.DiffResult doInBackground(CancellationToken token) {
+            return DiffUtil.calculateDiff(new MovieDiffCallback(mOldMovies, mNewMovies));
+        }
+
+        @Override
+        protected void onPostExecute(DiffUtil.DiffResult diffResult) {
+            // Newer data has been set since, this result is no longer needed
+            if(mGeneration != mDiffGeneration) {
+                return;
+            }
+
+            ArrayList<Movie> appends = finishPending();
+            diffResult.dispatchUpdatesTo(MovieAdapter.this);
+            Tracer.getInstance().end(Tracer.Span.ADAPTER_UPDATE, mUpdateStartNanos, getItemCount());
+
+            if(!appends.isEmpty()) {
+                addMovieData(appends);
+            }
+        }
+
+        @Override
+        protected void onError(Exception e) {
+            if(mGeneration != mDiffGeneration) {
+                return;
+            }
+
+            // Without the difference every item is bound again
+            Log.e(TAG, "Failed to compare movie lists", e);
+            ArrayList<Movie> appends = finishPending();
+            notifyDataSetChanged();
+            Tracer.getInstance().end(Tracer.Span.ADAPTER_UPDATE, mUpdateStartNanos, getItemCount());
+
+            if(!appends.isEmpty()) {
+                addMovieData(appends);
+            }
+        }
+
+        /**
+         * Makes the new movies the current data and clears the pending state
+         * @return Movies that were added while the comparison was running
+         */
+        private ArrayList<Movie> finishPending() {
+            ArrayList<Movie> appends = mPendingAppends;
+            mPendingMovieData = null;
+            mPendingAppends = null;
+            mDiffJob = null;
+            mMovieData = mNewMovies;
+            return appends;
+        }
     }
 
     /**
@@ -138,11 +355,17 @@ public class MovieAdapter extends RecyclerView.Adapter<MovieAdapter.MovieAdapter
         @Override
         public void onClick(View view) {
             // Retrieve the Movie object that was selected
-            int postion = getAdapterPosition();
-            Movie selectedMovie = mMovieData.get(postion);
+            int position = getAdapterPosition();
+
+            // The item was removed or the data is being replaced, so there is nothing to open
+            if(position == RecyclerView.NO_POSITION) {
+                return;
+            }
+
+            Movie selectedMovie = mMovieData.get(position);
 
-            // Call the click handler with the selected movie object
-            mMovieOnClickHandler.onClickMovie(selectedMovie);
+            // Call the click handler with the selected movie object and the poster it shows
+            mMovieOnClickHandler.onClickMovie(selectedMovie, mImageView);
         }
     }
 
@@ -150,6 +373,6 @@ public class MovieAdapter extends RecyclerView.Adapter<MovieAdapter.MovieAdapter
      * Interface that defines what a movie click handler object should implement
      */
     public interface MovieOnClickHandler {
-        void onClickMovie(Movie movie);
+        void onClickMovie(Movie movie, ImageView posterView);
     }
 }
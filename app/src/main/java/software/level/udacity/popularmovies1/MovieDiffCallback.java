@@ -0,0 +1,48 @@
+package software.level.udacity.popularmovies1;
+
+import android.support.v7.util.DiffUtil;
+import android.text.TextUtils;
+
+import software.level.udacity.popularmovies1.data.MovieTable;
+
+/**
+ * Compares two lists of movies for DiffUtil. Movies are matched by their Movie Database id and
+ * only need to be rebound if a field that the grid displays has changed.
+ */
+public class MovieDiffCallback extends DiffUtil.Callback {
+
+    private final MovieTable mOldMovies;
+    private final MovieTable mNewMovies;
+
+    /**
+     * Create a new MovieDiffCallback
+     * @param oldMovies Movies currently displayed
+     * @param newMovies Movies that will be displayed
+     */
+    public MovieDiffCallback(MovieTable oldMovies, MovieTable newMovies) {
+        mOldMovies = oldMovies;
+        mNewMovies = newMovies;
+    }
+
+    @Override
+    public int getOldListSize() {
+        return mOldMovies.size();
+    }
+
+    @Override
+    public int getNewListSize() {
+        return mNewMovies.size();
+    }
+
+    @Override
+    public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
+        return mOldMovies.getId(oldItemPosition) == mNewMovies.getId(newItemPosition);
+    }
+
+    @Override
+    public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
+        // The poster is the only thing shown in the grid
+        return TextUtils.equals(mOldMovies.getPosterPath(oldItemPosition),
+                mNewMovies.getPosterPath(newItemPosition));
+    }
+}
@@ -0,0 +1,194 @@
+package software.level.udacity.popularmovies1;
+
+import android.graphics.Bitmap;
+import android.widget.ImageView;
+
+import com.squareup.picasso.Callback;
+import com.squareup.picasso.NetworkPolicy;
+import com.squareup.picasso.Picasso;
+
+import software.level.udacity.popularmovies1.utilities.ImagePipeline;
+import software.level.udacity.popularmovies1.utilities.ImageUrlCache;
+import software.level.udacity.popularmovies1.utilities.PosterSizeResolver;
+import software.level.udacity.popularmovies1.utilities.Tracer;
+
+/**
+ * Loads posters into ImageViews. When a smaller size of the same poster was loaded before, it is
+ * shown from the cache while the requested size downloads instead of the placeholder.
+ *
+ * The ImagePipeline is told which bitmap each view shows so that bitmaps are only reused once
+ * no view shows them anymore. Views also remember the size of the poster they show, so that a
+ * screen the poster is handed to can show the very same bitmap from the memory cache.
+ */
+public final class PosterLoader {
+
+    private PosterLoader() {
+    }
+
+    /**
+     * Load a poster into the view
+     * @param imageView View to show the poster in
+     * @param posterPath API supplied poster_path
+     * @param size Size of the poster to load
+     * @param cachedSize Smaller size that may already be cached, or null
+     * @param priority Priority of the download
+     */
+    public static void load(final ImageView imageView, final String posterPath, final String size,
+                            String cachedSize, final Picasso.Priority priority) {
+        final Picasso picasso = Picasso.with(imageView.getContext());
+        final String url = ImageUrlCache.getInstance().get(posterPath, size);
+
+        // Whatever the view showed is replaced by the placeholder below
+        onCleared(imageView);
+
+        if(cachedSize == null || !PosterSizeResolver.isSmaller(cachedSize, size)) {
+            picasso.load(url)
+                    .priority(priority)
+                    .placeholder(R.drawable.poster_placeholder)
+                    .into(imageView, shownCallback(imageView, size));
+            return;
+        }
+
+        String cachedUrl = ImageUrlCache.getInstance().get(posterPath, cachedSize);
+
+        // Only looks in the caches, the smaller poster is never downloaded just to be replaced
+        final Callback cachedCallback = shownCallback(imageView, cachedSize);
+        picasso.load(cachedUrl)
+                .networkPolicy(NetworkPolicy.OFFLINE)
+                .placeholder(R.drawable.poster_placeholder)
+                .noFade()
+                .into(imageView, new Callback() {
+                    @Override
+                    public void onSuccess() {
+                        cachedCallback.onSuccess();
+                        upgrade(imageView, posterPath, size, priority);
+                    }
+
+                    @Override
+                    public void onError() {
+                        picasso.load(url)
+                                .priority(priority)
+                                .placeholder(R.drawable.poster_placeholder)
+                                .into(imageView, shownCallback(imageView, size));
+                    }
+                });
+    }
+
+    /**
+     * Shows a poster that is in the memory cache right away, without going through Picasso. The
+     * view shows the same bitmap as any other view showing the poster at that size, so nothing
+     * is decoded.
+     * @param imageView View to show the poster in
+     * @param posterPath API supplied poster_path
+     * @param size Size the poster was loaded at, such as the size another view shows it at
+     * @return True if the poster was shown, false if it isn't in the memory cache
+     */
+    public static boolean showCached(ImageView imageView, String posterPath, String size) {
+        ImagePipeline pipeline = ImagePipeline.getInstance();
+        if(pipeline == null || posterPath == null || size == null) {
+            return false;
+        }
+
+        Bitmap bitmap = pipeline.getMemoryCache().getPoster(posterPath, size);
+        if(bitmap == null) {
+            return false;
+        }
+
+        // Nothing that was on its way to the view may replace the poster
+        Picasso.with(imageView.getContext()).cancelRequest(imageView);
+        onCleared(imageView);
+
+        imageView.setImageBitmap(bitmap);
+        pipeline.onBitmapShown(imageView);
+        imageView.setTag(R.id.tag_shown_poster_size, size);
+        return true;
+    }
+
+    /**
+     * Loads a larger size of the poster the view shows, which keeps being shown until the larger
+     * one is ready
+     * @param imageView View that shows a smaller size of the poster
+     * @param posterPath API supplied poster_path
+     * @param size Size of the poster to load
+     * @param priority Priority of the download
+     */
+    public static void upgrade(ImageView imageView, String posterPath, String size, Picasso.Priority priority) {
+        String url = ImageUrlCache.getInstance().get(posterPath, size);
+
+        Picasso.with(imageView.getContext())
+                .load(url)
+                .priority(priority)
+                .placeholder(imageView.getDrawable())
+                .noFade()
+                .into(imageView, shownCallback(imageView, size));
+    }
+
+    /**
+     * Gets the size of the poster the view shows
+     * @param imageView View that was loaded into
+     * @return The size, or null if the view doesn't show a poster yet
+     */
+    public static String getShownSize(ImageView imageView) {
+        return (String) imageView.getTag(R.id.tag_shown_poster_size);
+    }
+
+    /**
+     * Name that the grid cell and the detail screen give the poster of a movie, so that the
+     * poster moves from one to the other when the movie is opened
+     * @param movieId Movie Database id of the movie
+     * @return The transition name
+     */
+    public static String getTransitionName(int movieId) {
+        return "poster_" + movieId;
+    }
+
+    /**
+     * Stops loading into the view and lets go of the poster it shows, used when the view goes
+     * away
+     * @param imageView View that showed a poster
+     */
+    public static void clear(ImageView imageView) {
+        Picasso.with(imageView.getContext()).cancelRequest(imageView);
+        onCleared(imageView);
+    }
+
+    /**
+     * Records that the view no longer shows the poster it showed
+     * @param imageView View that is being cleared
+     */
+    private static void onCleared(ImageView imageView) {
+        imageView.setTag(R.id.tag_shown_poster_size, null);
+
+        ImagePipeline pipeline = ImagePipeline.getInstance();
+        if(pipeline != null) {
+            pipeline.onBitmapCleared(imageView);
+        }
+    }
+
+    /**
+     * Creates the callback for a load into the view, which records what the view shows once
+     * the poster is in it
+     * @param imageView View that is loaded into
+     * @param size Size of the poster that is loaded
+     * @return The callback
+     */
+    private static Callback shownCallback(final ImageView imageView, final String size) {
+        return new Callback() {
+            @Override
+            public void onSuccess() {
+                ImagePipeline pipeline = ImagePipeline.getInstance();
+                if(pipeline != null) {
+                    pipeline.onBitmapShown(imageView);
+                }
+                imageView.setTag(R.id.tag_shown_poster_size, size);
+
+                // Only records anything for the first poster after the grid was opened
+                Tracer.getInstance().endPending(Tracer.Span.FIRST_POSTER, Tracer.NO_TAG);
+            }
+
+            @Override
+            public void onError() {
+            }
+        };
+    }
+}
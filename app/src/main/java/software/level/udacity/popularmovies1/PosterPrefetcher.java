@@ -0,0 +1,194 @@
+package software.level.udacity.popularmovies1;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.support.v7.widget.GridLayoutManager;
+import android.support.v7.widget.RecyclerView;
+
+import com.squareup.picasso.Picasso;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Scroll listener that loads the posters of the rows just past the visible part of the grid
+ * into Picasso's memory cache, so they are drawn without a placeholder once they scroll into
+ * view. Posters are only prefetched in the direction the user is scrolling, nothing is
+ * prefetched while the user flings faster than the posters could be used, and prefetches for
+ * rows that are no longer close to the visible part of the grid are cancelled.
+ *
+ * Prefetches are made at a low priority so Picasso always loads the posters of visible cells
+ * first.
+ */
+public class PosterPrefetcher extends RecyclerView.OnScrollListener {
+
+    // Faster than this many screen heights per second the user is skipping past rows
+    private static final float MAX_PREFETCH_SCREENS_PER_SECOND = 2f;
+
+    // Scroll events further apart than this start a new velocity measurement
+    private static final long VELOCITY_RESET_MILLIS = 100;
+
+    private final Context mContext;
+
+    // Layout manager of the RecyclerView being watched
+    private final GridLayoutManager mLayoutManager;
+
+    // Adapter that knows the poster of each position
+    private final MovieAdapter mAdapter;
+
+    // How many rows past the visible part of the grid are prefetched
+    private final int mPrefetchRows;
+
+    // Tag of each prefetch that has been started, keyed by poster URL
+    private final HashMap<String, Object> mPrefetches = new HashMap<>();
+
+    // Reused while working out which posters should be prefetched
+    private final HashSet<String> mWanted = new HashSet<>();
+
+    // Direction of the last scroll, 1 for down and -1 for up
+    private int mDirection = 1;
+
+    // Used to measure the scroll velocity
+    private long mLastScrollTime;
+    private float mVelocity;
+
+    /**
+     * Create a new PosterPrefetcher
+     * @param context Context used to get Picasso
+     * @param layoutManager Layout manager of the RecyclerView the listener is added to
+     * @param adapter Adapter of the RecyclerView the listener is added to
+     * @param prefetchRows How many rows past the visible part of the grid to prefetch
+     */
+    public PosterPrefetcher(Context context, GridLayoutManager layoutManager, MovieAdapter adapter, int prefetchRows) {
+        mContext = context.getApplicationContext();
+        mLayoutManager = layoutManager;
+        mAdapter = adapter;
+        mPrefetchRows = prefetchRows;
+    }
+
+    /**
+     * Keeps track of the scroll direction and velocity, and moves the prefetched rows along
+     * with the grid unless the user is scrolling too fast for them to be useful
+     *
+     * @param recyclerView The RecyclerView that scrolled
+     * @param dx Horizontal scroll distance
+     * @param dy Vertical scroll distance
+     */
+    @Override
+    public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+        long now = SystemClock.uptimeMillis();
+        long elapsed = now - mLastScrollTime;
+        mLastScrollTime = now;
+
+        if(dy != 0) {
+            mDirection = dy > 0 ? 1 : -1;
+        }
+
+        if(elapsed > 0 && elapsed < VELOCITY_RESET_MILLIS) {
+            mVelocity = Math.abs(dy) * 1000f / elapsed;
+        } else {
+            mVelocity = 0;
+        }
+
+        // Still cancel what is out of range so the bandwidth goes to the rows being skipped to
+        boolean skipping = mVelocity > recyclerView.getHeight() * MAX_PREFETCH_SCREENS_PER_SECOND;
+        updatePrefetches(!skipping);
+    }
+
+    /**
+     * Prefetches around wherever the grid came to rest
+     *
+     * @param recyclerView The RecyclerView whose scroll state changed
+     * @param newState The new scroll state
+     */
+    @Override
+    public void onScrollStateChanged(RecyclerView recyclerView, int newState) {
+        if(newState == RecyclerView.SCROLL_STATE_IDLE) {
+            mVelocity = 0;
+            updatePrefetches(true);
+        }
+    }
+
+    /**
+     * Cancels all prefetches, used when the grid goes away or shows a different list
+     */
+    public void cancelAll() {
+        Picasso picasso = Picasso.with(mContext);
+        for(Object tag : mPrefetches.values()) {
+            picasso.cancelTag(tag);
+        }
+        mPrefetches.clear();
+    }
+
+    /**
+     * Cancels prefetches that are no longer close to the visible rows and starts prefetches for
+     * the rows past the visible ones in the direction of scrolling
+     * @param startNew False to only cancel prefetches
+     */
+    private void updatePrefetches(boolean startNew) {
+        int first = mLayoutManager.findFirstVisibleItemPosition();
+        int last = mLayoutManager.findLastVisibleItemPosition();
+        int itemCount = mAdapter.getItemCount();
+
+        if(first == RecyclerView.NO_POSITION || last == RecyclerView.NO_POSITION || itemCount == 0) {
+            cancelAll();
+            return;
+        }
+
+        int prefetchItems = mPrefetchRows * mLayoutManager.getSpanCount();
+        int start;
+        int end;
+        if(mDirection > 0) {
+            start = last + 1;
+            end = Math.min(itemCount - 1, last + prefetchItems);
+        } else {
+            start = Math.max(0, first - prefetchItems);
+            end = first - 1;
+        }
+
+        mWanted.clear();
+        for(int position = start; position <= end; position++) {
+            String url = mAdapter.getPosterUrl(mContext, position);
+            if(url != null) {
+                mWanted.add(url);
+            }
+        }
+
+        Picasso picasso = Picasso.with(mContext);
+
+        // Out of range prefetches are cancelled, finished ones are already cached so this is
+        // harmless for them
+        Iterator<Map.Entry<String, Object>> iterator = mPrefetches.entrySet().iterator();
+        while(iterator.hasNext()) {
+            Map.Entry<String, Object> prefetch = iterator.next();
+            if(!mWanted.contains(prefetch.getKey())) {
+                picasso.cancelTag(prefetch.getValue());
+                iterator.remove();
+            }
+        }
+
+        if(!startNew) {
+            return;
+        }
+
+        // Start with the row closest to the visible ones
+        for(int i = 0; i <= end - start; i++) {
+            int position = mDirection > 0 ? start + i : end - i;
+            String url = mAdapter.getPosterUrl(mContext, position);
+
+            if(url == null || mPrefetches.containsKey(url)) {
+                continue;
+            }
+
+            Object tag = new Object();
+            mPrefetches.put(url, tag);
+
+            picasso.load(url)
+                    .priority(Picasso.Priority.LOW)
+                    .tag(tag)
+                    .fetch();
+        }
+    }
+}
@@ -0,0 +1,222 @@
+package software.level.udacity.popularmovies1.data;
+
+import android.content.Context;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+
+import software.level.udacity.popularmovies1.utilities.CancellationToken;
+import software.level.udacity.popularmovies1.utilities.MovieRequestType;
+import software.level.udacity.popularmovies1.utilities.TaskScheduler;
+
+/**
+ * Loads the first pages of several lists in the background, a few lists at a time, so that
+ * switching to any of them shows movies right away. The lists are loaded through the
+ * repository, which keeps a single copy of every movie no matter how many lists it shows up
+ * in, and shares the load with a screen that asks for the same page at the same time.
+ *
+ * Lists are loaded in the prefetch lane of the scheduler so they never hold up a list the user
+ * is waiting on. The pages of a single list are loaded one after another since each page is
+ * added to the end of the pages before it.
+ */
+public class CategoryLoader {
+
+    // Number of lists that can be loading at the same time
+    private static final int DEFAULT_MAX_CONCURRENT = 2;
+
+    private static CategoryLoader sInstance;
+
+    // Where the lists are loaded through and cached in
+    private final MovieRepository mRepository;
+
+    private final TaskScheduler mScheduler;
+
+    private final int mMaxConcurrent;
+
+    // Lists waiting to be loaded in the order they were asked for, guarded by this
+    private final ArrayDeque<ListLoad> mPending = new ArrayDeque<>();
+
+    // Jobs of the lists that are being loaded by key, guarded by this
+    private final HashMap<String, TaskScheduler.Job> mRunning = new HashMap<>();
+
+    // Cancels every load that was started, replaced by cancelAll, guarded by this
+    private CancellationToken mToken = new CancellationToken();
+
+    /**
+     * Get the shared loader
+     * @param context Context used to create the loader the first time
+     * @return The shared loader
+     */
+    public static synchronized CategoryLoader getInstance(Context context) {
+        if(sInstance == null) {
+            sInstance = new CategoryLoader(MovieRepository.getInstance(context),
+                    TaskScheduler.getInstance(), DEFAULT_MAX_CONCURRENT);
+        }
+        return sInstance;
+    }
+
+    /**
+     * Create a new CategoryLoader
+     * @param repository Repository the lists are loaded through and cached in
+     * @param scheduler Scheduler the loads run on
+     * @param maxConcurrent Number of lists that can be loading at the same time
+     */
+    public CategoryLoader(MovieRepository repository, TaskScheduler scheduler, int maxConcurrent) {
+        mRepository = repository;
+        mScheduler = scheduler;
+        mMaxConcurrent = maxConcurrent;
+    }
+
+    /**
+     * Loads the first pages of the lists after any lists that were asked for before. Lists
+     * that already have the pages loaded, or are already waiting or loading, are skipped.
+     * @param requestTypes List request types, the most wanted first
+     * @param movieId Id of the movie the lists belong to, ignored by lists that don't need one
+     * @param pages Number of pages to load of each list
+     */
+    public synchronized void load(MovieRequestType[] requestTypes, int movieId, int pages) {
+        for(MovieRequestType requestType : requestTypes) {
+            ListLoad load = new ListLoad(requestType, movieId, pages);
+
+            if(mRunning.containsKey(load.mKey) || isPending(load.mKey) || load.isDone()) {
+                continue;
+            }
+
+            mPending.add(load);
+        }
+
+        startLoads();
+    }
+
+    /**
+     * Drops the lists waiting to be loaded and cancels the loads that are running
+     */
+    public synchronized void cancelAll() {
+        mPending.clear();
+        mRunning.clear();
+        mToken.cancel();
+        mToken = new CancellationToken();
+    }
+
+    /**
+     * Number of lists that are waiting or being loaded
+     * @return Number of lists that haven't been loaded yet
+     */
+    public synchronized int getOutstandingCount() {
+        return mPending.size() + mRunning.size();
+    }
+
+    /**
+     * Checks if a list is waiting to be loaded. Must be called while holding the lock.
+     * @param key Key of the list
+     * @return True if the list is in mPending
+     */
+    private boolean isPending(String key) {
+        for(ListLoad pending : mPending) {
+            if(pending.mKey.equals(key)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Starts loads for pending lists until the maximum number of loads are running. Must be
+     * called while holding the lock.
+     */
+    private void startLoads() {
+        while(mRunning.size() < mMaxConcurrent && !mPending.isEmpty()) {
+            ListLoad load = mPending.poll();
+            TaskScheduler.Job job = mScheduler.submit(TaskScheduler.Priority.PREFETCH, mToken,
+                    new LoadTask(load, mToken));
+            mRunning.put(load.mKey, job);
+        }
+    }
+
+    /**
+     * Marks a load as finished and starts the next one
+     * @param key Key of the list that was loaded
+     * @param token Token the load was started with
+     */
+    private synchronized void onLoadFinished(String key, CancellationToken token) {
+        // Everything was cancelled while the result was on its way
+        if(token != mToken) {
+            return;
+        }
+
+        mRunning.remove(key);
+        startLoads();
+    }
+
+    /**
+     * The pages of a list that should be loaded
+     */
+    private final class ListLoad {
+
+        final MovieRequestType mRequestType;
+        final int mMovieId;
+        final int mPages;
+        final String mKey;
+
+        ListLoad(MovieRequestType requestType, int movieId, int pages) {
+            mRequestType = requestType;
+            mMovieId = requestType.needsMovieId() ? movieId : 0;
+            mPages = pages;
+            mKey = requestType.name() + "/" + mMovieId;
+        }
+
+        /**
+         * Checks if the repository already has the pages, or every page the list has
+         * @return True if nothing needs to be loaded
+         */
+        boolean isDone() {
+            return mRepository.getLoadedPageCount(mRequestType, mMovieId) >= mPages
+                    || !mRepository.hasMorePages(mRequestType, mMovieId);
+        }
+    }
+
+    /**
+     * Loads the pages of a single list into the repository
+     */
+    private final class LoadTask extends TaskScheduler.Task<Void> {
+
+        private final ListLoad mLoad;
+        private final CancellationToken mStartToken;
+
+        LoadTask(ListLoad load, CancellationToken startToken) {
+            mLoad = load;
+            mStartToken = startToken;
+        }
+
+        @Override
+        protected Void doInBackground(CancellationToken token) throws IOException {
+            // Shares the load of the first page with a screen that is showing the list
+            if(mRepository.getLoadedPageCount(mLoad.mRequestType, mLoad.mMovieId) == 0) {
+                mRepository.getMovies(mLoad.mRequestType, mLoad.mMovieId);
+            }
+
+            while(!mLoad.isDone()) {
+                CancellationToken.throwIfCurrentCancelled();
+                mRepository.loadNextPage(mLoad.mRequestType, mLoad.mMovieId);
+            }
+
+            return null;
+        }
+
+        @Override
+        protected void onPostExecute(Void result) {
+            onLoadFinished(mLoad.mKey, mStartToken);
+        }
+
+        /**
+         * The list is loaded again when it is selected if this failed, so the failure is only
+         * used to move on to the next list
+         * @param e The exception thrown by the background task
+         */
+        @Override
+        protected void onError(Exception e) {
+            onLoadFinished(mLoad.mKey, mStartToken);
+        }
+    }
+}
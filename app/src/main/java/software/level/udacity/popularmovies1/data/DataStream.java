@@ -0,0 +1,225 @@
+package software.level.udacity.popularmovies1.data;
+
+import java.util.ArrayList;
+import java.util.concurrent.Executor;
+
+import software.level.udacity.popularmovies1.utilities.CancellationToken;
+
+/**
+ * A value that changes over time, such as a list that gets more pages or a movie that gets its
+ * details. Observers are handed the current value as soon as they subscribe, so a screen can
+ * show what is cached before anything is loaded, followed by every change after that.
+ *
+ * Every observer gets its values on its own executor, one at a time. A value that is emitted
+ * while the previous one is still waiting to be delivered is combined with it, so an observer
+ * that falls behind gets a single value that covers both rather than a growing backlog.
+ *
+ * Values can be emitted from any thread. Subscribing and cancelling must happen on the thread
+ * the observer's executor runs on, which is the main thread in the app.
+ *
+ * @param <T> Type of the values
+ */
+public class DataStream<T> {
+
+    /**
+     * Interface that defines how observers are told about new values
+     */
+    public interface Observer<T> {
+        void onChanged(T value);
+    }
+
+    /**
+     * Interface that defines how an observer stops getting values
+     */
+    public interface Subscription {
+        void cancel();
+    }
+
+    // Newest value, null until the first one is emitted, guarded by this
+    private T mLatest;
+
+    // Observers that haven't cancelled, guarded by this
+    private final ArrayList<Observation> mObservations = new ArrayList<>();
+
+    /**
+     * Create a stream without a value
+     */
+    public DataStream() {
+        this(null);
+    }
+
+    /**
+     * Create a stream with a value
+     * @param initial Value handed to observers until another is emitted, or null for none
+     */
+    public DataStream(T initial) {
+        mLatest = initial;
+    }
+
+    /**
+     * Starts delivering values to the observer. The current value, if there is one, is
+     * delivered before this returns.
+     * @param executor Executor the values are delivered on
+     * @param token Token that stops the deliveries when cancelled, usually the token of the
+     *              activity
+     * @param observer Told about every value
+     * @return Subscription that stops the deliveries
+     */
+    public Subscription subscribe(Executor executor, CancellationToken token, Observer<T> observer) {
+        Observation observation = new Observation(executor, token, observer);
+
+        synchronized (this) {
+            mObservations.add(observation);
+            if(mLatest != null) {
+                observation.mPending = replay(mLatest);
+            }
+        }
+
+        observation.deliver();
+        return observation;
+    }
+
+    /**
+     * Hands a new value to every observer
+     * @param value The new value
+     */
+    public void emit(T value) {
+        ArrayList<Observation> scheduled = new ArrayList<>();
+
+        synchronized (this) {
+            mLatest = value;
+
+            for(Observation observation : mObservations) {
+                if(observation.mToken.isCancelled()) {
+                    continue;
+                }
+
+                observation.mPending = observation.mPending == null
+                        ? value : combine(observation.mPending, value);
+
+                // A delivery that is already on its way picks up the combined value
+                if(!observation.mScheduled) {
+                    observation.mScheduled = true;
+                    scheduled.add(observation);
+                }
+            }
+        }
+
+        for(Observation observation : scheduled) {
+            observation.mExecutor.execute(observation);
+        }
+    }
+
+    /**
+     * Gets the newest value without subscribing
+     * @return The newest value, or null if there is none
+     */
+    public synchronized T getLatest() {
+        return mLatest;
+    }
+
+    /**
+     * Number of observers that haven't cancelled
+     * @return Number of subscriptions
+     */
+    public synchronized int getSubscriberCount() {
+        return mObservations.size();
+    }
+
+    /**
+     * Combines a value that hasn't been delivered yet with a newer one. By default the older
+     * value is dropped, streams whose values describe changes rather than state override this.
+     * @param older Value that is waiting to be delivered
+     * @param newer Value that was just emitted
+     * @return Value that covers both
+     */
+    protected T combine(T older, T newer) {
+        return newer;
+    }
+
+    /**
+     * Turns the newest value into the first value of a new observer, which hasn't seen any of
+     * the values before it
+     * @param latest Newest value
+     * @return Value delivered when subscribing
+     */
+    protected T replay(T latest) {
+        return latest;
+    }
+
+    /**
+     * Called after the last observer cancelled, on the thread that cancelled it
+     */
+    protected void onInactive() {
+    }
+
+    /**
+     * An observer and the value waiting to be delivered to it
+     */
+    private final class Observation implements Subscription, Runnable {
+
+        private final Executor mExecutor;
+        private final CancellationToken mToken;
+        private final Observer<T> mObserver;
+
+        // Guarded by the stream
+        private T mPending;
+        private boolean mScheduled;
+        private boolean mCancelled;
+
+        Observation(Executor executor, CancellationToken token, Observer<T> observer) {
+            mExecutor = executor;
+            mToken = token;
+            mObserver = observer;
+        }
+
+        @Override
+        public void run() {
+            deliver();
+        }
+
+        /**
+         * Delivers the pending value, if any, on the calling thread
+         */
+        void deliver() {
+            T value;
+            synchronized (DataStream.this) {
+                value = mCancelled ? null : mPending;
+                mPending = null;
+                mScheduled = false;
+            }
+
+            if(value == null) {
+                return;
+            }
+
+            // Whoever subscribed is gone, so the stream can stop keeping track of it
+            if(mToken.isCancelled()) {
+                cancel();
+                return;
+            }
+
+            mObserver.onChanged(value);
+        }
+
+        @Override
+        public void cancel() {
+            boolean inactive;
+
+            synchronized (DataStream.this) {
+                if(mCancelled) {
+                    return;
+                }
+                mCancelled = true;
+                mPending = null;
+
+                mObservations.remove(this);
+                inactive = mObservations.isEmpty();
+            }
+
+            if(inactive) {
+                onInactive();
+            }
+        }
+    }
+}
@@ -0,0 +1,238 @@
+package software.level.udacity.popularmovies1.data;
+
+import android.content.Context;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import software.level.udacity.popularmovies1.utilities.CancellationToken;
+import software.level.udacity.popularmovies1.utilities.RateLimiter;
+import software.level.udacity.popularmovies1.utilities.TaskScheduler;
+
+/**
+ * Loads the details of the movies around the visible part of the grid in the background, so
+ * that opening a detail screen almost always finds the runtime and other detail fields in the
+ * repository already.
+ *
+ * Only a few detail requests run at once and they run in the prefetch lane of the scheduler, so
+ * they never hold up a list the user is waiting on. Requests are also rate limited to stay well
+ * within the API's request quota, leaving room for the requests the user makes. A request that
+ * has to wait for the rate limit is queued with a delay instead of waiting on a worker, and its
+ * permit is handed back if it is cancelled before it starts.
+ */
+public class DetailHydrator {
+
+    // The API allows around 40 requests every 10 seconds, hydration may use half of that
+    private static final int PERMITS_PER_PERIOD = 20;
+    private static final long PERIOD_MILLIS = 10 * 1000;
+
+    // Number of requests that can be made at once after the hydrator has been idle
+    private static final int BURST = 4;
+
+    // Number of detail requests that can be running at the same time
+    private static final int DEFAULT_MAX_CONCURRENT = 2;
+
+    private static DetailHydrator sInstance;
+
+    // Where the details are loaded through and cached in
+    private final MovieRepository mRepository;
+
+    private final TaskScheduler mScheduler;
+
+    private final RateLimiter mRateLimiter;
+
+    private final int mMaxConcurrent;
+
+    // Ids waiting to be loaded, most wanted first, guarded by this
+    private final ArrayDeque<Integer> mPending = new ArrayDeque<>();
+
+    // Requests of the ids that are being loaded or waiting for their permit, guarded by this
+    private final HashMap<Integer, HydrateTask> mRunning = new HashMap<>();
+
+    // Cancels every request that was started, replaced by cancelAll, guarded by this
+    private CancellationToken mToken = new CancellationToken();
+
+    /**
+     * Get the shared hydrator, which shares its rate limit across all screens
+     * @param context Context used to create the hydrator the first time
+     * @return The shared hydrator
+     */
+    public static synchronized DetailHydrator getInstance(Context context) {
+        if(sInstance == null) {
+            RateLimiter rateLimiter = new RateLimiter(PERMITS_PER_PERIOD, PERIOD_MILLIS, BURST,
+                    TaskScheduler.SYSTEM_CLOCK);
+            sInstance = new DetailHydrator(MovieRepository.getInstance(context),
+                    TaskScheduler.getInstance(), rateLimiter, DEFAULT_MAX_CONCURRENT);
+        }
+        return sInstance;
+    }
+
+    /**
+     * Create a new DetailHydrator
+     * @param repository Repository the details are loaded through and cached in
+     * @param scheduler Scheduler the requests run on
+     * @param rateLimiter Limits how often a request can be made
+     * @param maxConcurrent Number of requests that can be running at the same time
+     */
+    public DetailHydrator(MovieRepository repository, TaskScheduler scheduler, RateLimiter rateLimiter,
+                          int maxConcurrent) {
+        mRepository = repository;
+        mScheduler = scheduler;
+        mRateLimiter = rateLimiter;
+        mMaxConcurrent = maxConcurrent;
+    }
+
+    /**
+     * Replaces the movies waiting to be hydrated. Requests for movies that were asked for
+     * earlier but aren't in the new ids are cancelled. Duplicate ids and movies whose details
+     * are already cached are skipped.
+     * @param ids Movie Database ids, the most wanted first
+     */
+    public synchronized void hydrate(int[] ids) {
+        mPending.clear();
+
+        HashSet<Integer> seen = new HashSet<>();
+        for(int id : ids) {
+            seen.add(id);
+        }
+
+        Iterator<Map.Entry<Integer, HydrateTask>> iterator = mRunning.entrySet().iterator();
+        while(iterator.hasNext()) {
+            Map.Entry<Integer, HydrateTask> running = iterator.next();
+            if(!seen.contains(running.getKey())) {
+                running.getValue().cancel();
+                iterator.remove();
+            }
+        }
+
+        seen.clear();
+        for(int id : ids) {
+            if(!seen.add(id) || mRunning.containsKey(id)) {
+                continue;
+            }
+
+            Movie cached = mRepository.getCachedMovie(id);
+            if(cached != null && MovieRepository.hasDetails(cached)) {
+                continue;
+            }
+
+            mPending.add(id);
+        }
+
+        startRequests();
+    }
+
+    /**
+     * Drops the movies waiting to be hydrated and cancels the requests that are running
+     */
+    public synchronized void cancelAll() {
+        mPending.clear();
+        for(HydrateTask task : mRunning.values()) {
+            task.cancel();
+        }
+        mRunning.clear();
+        mToken.cancel();
+        mToken = new CancellationToken();
+    }
+
+    /**
+     * Number of movies that are waiting or being loaded
+     * @return Number of movies that haven't been hydrated yet
+     */
+    public synchronized int getOutstandingCount() {
+        return mPending.size() + mRunning.size();
+    }
+
+    /**
+     * Starts requests for pending ids until the maximum number of requests are running. Must be
+     * called while holding the lock.
+     */
+    private void startRequests() {
+        while(mRunning.size() < mMaxConcurrent && !mPending.isEmpty()) {
+            int id = mPending.poll();
+
+            // The request starts once its permit can be used
+            HydrateTask task = new HydrateTask(id, mToken);
+            task.mJob = mScheduler.submitDelayed(TaskScheduler.Priority.PREFETCH, mToken, task,
+                    mRateLimiter.reserve());
+            mRunning.put(id, task);
+        }
+    }
+
+    /**
+     * Marks a request as finished and starts the next one
+     * @param task The request that finished
+     */
+    private synchronized void onRequestFinished(HydrateTask task) {
+        // Everything was cancelled while the result was on its way
+        if(task.mStartToken != mToken) {
+            return;
+        }
+
+        // The id may have been asked for again since, in which case a newer request runs for it
+        if(mRunning.get(task.mId) == task) {
+            mRunning.remove(task.mId);
+        }
+        startRequests();
+    }
+
+    /**
+     * Loads the details of a single movie into the repository
+     */
+    private final class HydrateTask extends TaskScheduler.Task<Movie> {
+
+        private final int mId;
+        private final CancellationToken mStartToken;
+
+        // Set once the request either starts or is cancelled, so its permit is used or handed
+        // back exactly once
+        private final AtomicBoolean mSettled = new AtomicBoolean();
+
+        // Job the request runs as, guarded by the hydrator
+        TaskScheduler.Job mJob;
+
+        HydrateTask(int id, CancellationToken startToken) {
+            mId = id;
+            mStartToken = startToken;
+        }
+
+        /**
+         * Cancels the request, handing its permit back if it hadn't started yet
+         */
+        void cancel() {
+            mJob.cancel();
+            if(mSettled.compareAndSet(false, true)) {
+                mRateLimiter.cancelReservation();
+            }
+        }
+
+        @Override
+        protected Movie doInBackground(CancellationToken token) throws Exception {
+            // Cancelled and its permit handed back just as it was about to start
+            if(!mSettled.compareAndSet(false, true)) {
+                throw new CancellationException("Hydrating " + mId + " was cancelled");
+            }
+            return mRepository.getMovieDetails(mId);
+        }
+
+        @Override
+        protected void onPostExecute(Movie movie) {
+            onRequestFinished(this);
+        }
+
+        /**
+         * The detail screen loads the movie itself if hydrating it failed, so the failure is
+         * only used to move on to the next movie
+         * @param e The exception thrown by the background task
+         */
+        @Override
+        protected void onError(Exception e) {
+            onRequestFinished(this);
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package software.level.udacity.popularmovies1.data;
+
+import java.util.ArrayList;
+
+/**
+ * A change to a list of movies, as delivered to the observers of the list. The same update is
+ * handed to every observer, so the movies are copied before anything changes them.
+ */
+public class MovieListUpdate {
+
+    /**
+     * What happened to the list
+     */
+    public enum Change {
+        /**
+         * The list was loaded or refreshed, its movies replace whatever was shown before
+         */
+        REPLACED,
+
+        /**
+         * Movies were added to the end of the list
+         */
+        APPENDED
+    }
+
+    public final Change change;
+
+    // Every movie in the list after the change
+    public final MovieTable movies;
+
+    // Movies that were added to the end of the list, empty unless the change is APPENDED
+    public final ArrayList<Movie> added;
+
+    private MovieListUpdate(Change change, MovieTable movies, ArrayList<Movie> added) {
+        this.change = change;
+        this.movies = movies;
+        this.added = added;
+    }
+
+    /**
+     * Creates an update for a list that was loaded or refreshed
+     * @param movies Every movie in the list, not changed after this
+     * @return The update
+     */
+    public static MovieListUpdate replaced(MovieTable movies) {
+        return new MovieListUpdate(Change.REPLACED, movies, new ArrayList<Movie>());
+    }
+
+    /**
+     * Creates an update for movies that were added to the end of a list
+     * @param movies Every movie in the list, not changed after this
+     * @param added Movies that were added, not changed after this
+     * @return The update
+     */
+    public static MovieListUpdate appended(MovieTable movies, ArrayList<Movie> added) {
+        return new MovieListUpdate(Change.APPENDED, movies, added);
+    }
+
+    /**
+     * Combines an update that hasn't been delivered yet with a newer one. Appends that follow
+     * each other stay an append, anything else replaces the list with its newest movies.
+     * @param older Update that is waiting to be delivered
+     * @param newer Update that was just made
+     * @return Update that covers both
+     */
+    static MovieListUpdate combine(MovieListUpdate older, MovieListUpdate newer) {
+        if(older.change == Change.APPENDED && newer.change == Change.APPENDED) {
+            ArrayList<Movie> added = new ArrayList<>(older.added.size() + newer.added.size());
+            added.addAll(older.added);
+            added.addAll(newer.added);
+            return appended(newer.movies, added);
+        }
+
+        return replaced(newer.movies);
+    }
+
+    /**
+     * Turns the update into one for an observer that hasn't seen the list before
+     * @return This update if it replaces the list, otherwise one that does
+     */
+    MovieListUpdate asReplacement() {
+        return change == Change.REPLACED ? this : replaced(movies);
+    }
+}
@@ -0,0 +1,14 @@
+package software.level.udacity.popularmovies1.data;
+
+import java.util.ArrayList;
+
+/**
+ * One page of a movie list retrieved from The Movie Database
+ */
+public class MoviePage {
+
+    public int page;
+    public int total_pages;
+    public ArrayList<Movie> movies;
+
+}
@@ -0,0 +1,184 @@
+package software.level.udacity.popularmovies1.data;
+
+import android.os.Parcel;
+import android.os.Parcelable;
+
+/**
+ * Carries a Movie in an Intent so the screen it is handed to can show it without loading it
+ * again. Movie itself stays free of the Android framework so that it can be benchmarked on the
+ * JVM, which is why the parceling lives here.
+ *
+ * Fields are written by hand in a fixed order. Strings that are null are left out entirely and
+ * marked in a single int of flags, and the fields only a detail request fills in are only
+ * written when the movie has them. The fields go through {@link Writer} and {@link Reader} rather
+ * than straight to the Parcel so that the layout can be checked on the JVM, where Parcel is a
+ * stub.
+ */
+public class MovieParcel implements Parcelable {
+
+    // Flags of the fields that are written, the other fields are null
+    private static final int HAS_TITLE = 1;
+    private static final int HAS_POSTER_PATH = 1 << 1;
+    private static final int HAS_BACKDROP_PATH = 1 << 2;
+    private static final int HAS_RELEASE_DATE = 1 << 3;
+    private static final int HAS_OVERVIEW = 1 << 4;
+    private static final int HAS_HOMEPAGE = 1 << 5;
+
+    // The runtime and tagline are written, which only a detail request fills in
+    private static final int HAS_DETAILS = 1 << 6;
+
+    public final Movie movie;
+
+    /**
+     * Create a new MovieParcel
+     * @param movie Movie to carry, not changed by parceling
+     */
+    public MovieParcel(Movie movie) {
+        this.movie = movie;
+    }
+
+    @Override
+    public int describeContents() {
+        return 0;
+    }
+
+    @Override
+    public void writeToParcel(final Parcel dest, int flags) {
+        write(movie, new Writer() {
+            @Override
+            public void writeInt(int value) {
+                dest.writeInt(value);
+            }
+
+            @Override
+            public void writeDouble(double value) {
+                dest.writeDouble(value);
+            }
+
+            @Override
+            public void writeString(String value) {
+                dest.writeString(value);
+            }
+        });
+    }
+
+    /**
+     * Writes the fields of a movie in a fixed order
+     * @param movie Movie to write
+     * @param dest Where the fields go
+     */
+    static void write(Movie movie, Writer dest) {
+        int present = 0;
+        present |= movie.title != null ? HAS_TITLE : 0;
+        present |= movie.poster_path != null ? HAS_POSTER_PATH : 0;
+        present |= movie.backdrop_path != null ? HAS_BACKDROP_PATH : 0;
+        present |= movie.release_date != null ? HAS_RELEASE_DATE : 0;
+        present |= movie.overview != null ? HAS_OVERVIEW : 0;
+        present |= movie.homepage != null ? HAS_HOMEPAGE : 0;
+        present |= MovieRepository.hasDetails(movie) ? HAS_DETAILS : 0;
+
+        dest.writeInt(movie.moviedb_id);
+        dest.writeInt(present);
+
+        writeString(dest, present, HAS_TITLE, movie.title);
+        writeString(dest, present, HAS_POSTER_PATH, movie.poster_path);
+        writeString(dest, present, HAS_BACKDROP_PATH, movie.backdrop_path);
+        writeString(dest, present, HAS_RELEASE_DATE, movie.release_date);
+        writeString(dest, present, HAS_OVERVIEW, movie.overview);
+        writeString(dest, present, HAS_HOMEPAGE, movie.homepage);
+
+        dest.writeDouble(movie.popularity);
+        dest.writeDouble(movie.vote_average);
+        dest.writeInt(movie.vote_count);
+
+        if((present & HAS_DETAILS) != 0) {
+            dest.writeInt(movie.runtime);
+            dest.writeString(movie.tagline);
+        }
+    }
+
+    /**
+     * Reads a movie in the order write wrote it
+     * @param source Fields of the movie, positioned at the start
+     * @return The movie
+     */
+    static Movie read(Reader source) {
+        Movie movie = new Movie();
+
+        movie.moviedb_id = source.readInt();
+        int present = source.readInt();
+
+        movie.title = readString(source, present, HAS_TITLE);
+        movie.poster_path = readString(source, present, HAS_POSTER_PATH);
+        movie.backdrop_path = readString(source, present, HAS_BACKDROP_PATH);
+        movie.release_date = readString(source, present, HAS_RELEASE_DATE);
+        movie.overview = readString(source, present, HAS_OVERVIEW);
+        movie.homepage = readString(source, present, HAS_HOMEPAGE);
+
+        movie.popularity = source.readDouble();
+        movie.vote_average = source.readDouble();
+        movie.vote_count = source.readInt();
+
+        if((present & HAS_DETAILS) != 0) {
+            movie.runtime = source.readInt();
+            movie.tagline = source.readString();
+        }
+
+        return movie;
+    }
+
+    private static void writeString(Writer dest, int present, int flag, String value) {
+        if((present & flag) != 0) {
+            dest.writeString(value);
+        }
+    }
+
+    private static String readString(Reader source, int present, int flag) {
+        return (present & flag) != 0 ? source.readString() : null;
+    }
+
+    /**
+     * Destination of the fields of a movie, a Parcel outside of tests
+     */
+    interface Writer {
+        void writeInt(int value);
+        void writeDouble(double value);
+        void writeString(String value);
+    }
+
+    /**
+     * Source of the fields of a movie, a Parcel outside of tests
+     */
+    interface Reader {
+        int readInt();
+        double readDouble();
+        String readString();
+    }
+
+    public static final Parcelable.Creator<MovieParcel> CREATOR = new Parcelable.Creator<MovieParcel>() {
+        @Override
+        public MovieParcel createFromParcel(final Parcel source) {
+            return new MovieParcel(read(new Reader() {
+                @Override
+                public int readInt() {
+                    return source.readInt();
+                }
+
+                @Override
+                public double readDouble() {
+                    return source.readDouble();
+                }
+
+                @Override
+                public String readString() {
+                    return source.readString();
+                }
+            }));
+        }
+
+        @Override
+        public MovieParcel[] newArray(int size) {
+            return new MovieParcel[size];
+        }
+    };
+}
@@ -1,11 +1,16 @@
 package software.level.udacity.popularmovies1.data;
 
-import android.util.Log;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
 
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
 
 import software.level.udacity.popularmovies1.utilities.MovieRequestType;
@@ -19,6 +24,9 @@ public class MovieParser {
 
     public static final String TAG = MovieParser.class.getSimpleName();
 
+    // All responses from The Movie Database are UTF-8 encoded
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
     /**
      * Parses JSON data from any Movie Database request any creates an ArrayList that contains
      * all of the movies. If a details for a single movie are request then the ArrayList will
@@ -32,7 +40,7 @@ public class MovieParser {
 
         JSONObject jsonObject = new JSONObject(jsonData);
 
-        if(requestType == MovieRequestType.POPULAR || requestType == MovieRequestType.TOP_RATED) {
+        if(requestType.isList()) {
 
             // If the data contains a "results" item then we will parse the array of movie data
             if(jsonObject.has("results")) {
@@ -55,6 +63,69 @@ public class MovieParser {
         return movieData;
     }
 
+    /**
+     * Parses JSON data straight from the response stream without building a JSONObject tree
+     * or buffering the whole body into a String. Produces the same result as
+     * {@link #parseMovieData(String, MovieRequestType)}.
+     * @param in Stream containing the body of the API response, not closed by this method
+     * @param requestType MovieDB request type
+     * @return ArrayList containing parsed Movie objects
+     * @throws IOException If the stream could not be read or does not contain the expected JSON
+     */
+    public static ArrayList<Movie> parseMovieData(InputStream in, MovieRequestType requestType) throws IOException {
+        return parseMoviePage(in, requestType).movies;
+    }
+
+    /**
+     * Parses JSON data straight from the response stream along with the paging information of
+     * list requests. Detail requests are returned as a single page holding one movie.
+     * @param in Stream containing the body of the API response, not closed by this method
+     * @param requestType MovieDB request type
+     * @return MoviePage containing parsed Movie objects
+     * @throws IOException If the stream could not be read or does not contain the expected JSON
+     */
+    public static MoviePage parseMoviePage(InputStream in, MovieRequestType requestType) throws IOException {
+        MoviePage moviePage = new MoviePage();
+        moviePage.page = 1;
+        moviePage.total_pages = 1;
+        moviePage.movies = new ArrayList<>();
+
+        JsonReader reader = new JsonReader(new InputStreamReader(in, UTF_8));
+
+        try {
+            if(requestType.isList()) {
+                reader.beginObject();
+                while(reader.hasNext()) {
+                    String name = reader.nextName();
+
+                    if(name.equals("results") && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                        reader.beginArray();
+                        while(reader.hasNext()) {
+                            moviePage.movies.add(readMovieObject(reader, requestType));
+                        }
+                        reader.endArray();
+                    } else if(name.equals("page") && reader.peek() == JsonToken.NUMBER) {
+                        moviePage.page = reader.nextInt();
+                    } else if(name.equals("total_pages") && reader.peek() == JsonToken.NUMBER) {
+                        moviePage.total_pages = reader.nextInt();
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                reader.endObject();
+            }
+
+            if(requestType == MovieRequestType.DETAILS) {
+                moviePage.movies.add(readMovieObject(reader, requestType));
+            }
+        } catch (IllegalStateException e) {
+            // JsonReader reports unexpected tokens as an IllegalStateException
+            throw new IOException("Unexpected JSON structure", e);
+        }
+
+        return moviePage;
+    }
+
     /**
      * Create a Movie object with the returned JSON data
      * @param result JSONObject containing the movie data result
@@ -72,14 +143,122 @@ public class MovieParser {
         movie.vote_average = result.getDouble("vote_average");
         movie.vote_count = result.getInt("vote_count");
         movie.overview = result.getString("overview");
+        movie.release_date = result.getString("release_date");
 
         // If we have a detail request then there are additional fields we can grab
         if(requestType == MovieRequestType.DETAILS) {
             movie.runtime = result.getInt("runtime");
-            movie.release_date = result.getString("release_date");
+            movie.tagline = result.getString("tagline");
+            movie.homepage = result.getString("homepage");
         }
 
         return movie;
     }
 
+    /**
+     * Create a Movie object by reading the fields of the JSON object at the current position
+     * of the reader. Unknown fields are skipped without being materialized.
+     * @param reader JsonReader positioned at the start of a movie object
+     * @param requestType MovieDB request type
+     * @return Movie object with all fields extracted
+     */
+    private static Movie readMovieObject(JsonReader reader, MovieRequestType requestType) throws IOException {
+        Movie movie = new Movie();
+
+        // If we have a detail request then there are additional fields we can grab
+        boolean details = requestType == MovieRequestType.DETAILS;
+
+        reader.beginObject();
+        while(reader.hasNext()) {
+            String name = reader.nextName();
+
+            if(reader.peek() == JsonToken.NULL && !isStringField(name)) {
+                reader.skipValue();
+                continue;
+            }
+
+            switch(name) {
+                case "title":
+                    movie.title = nextString(reader);
+                    break;
+                case "poster_path":
+                    movie.poster_path = nextString(reader);
+                    break;
+                case "backdrop_path":
+                    movie.backdrop_path = nextString(reader);
+                    break;
+                case "id":
+                    movie.moviedb_id = reader.nextInt();
+                    break;
+                case "popularity":
+                    movie.popularity = reader.nextDouble();
+                    break;
+                case "vote_average":
+                    movie.vote_average = reader.nextDouble();
+                    break;
+                case "vote_count":
+                    movie.vote_count = reader.nextInt();
+                    break;
+                case "overview":
+                    movie.overview = nextString(reader);
+                    break;
+                case "runtime":
+                    if(details) {
+                        movie.runtime = reader.nextInt();
+                    } else {
+                        reader.skipValue();
+                    }
+                    break;
+                case "release_date":
+                    movie.release_date = nextString(reader);
+                    break;
+                case "tagline":
+                    if(details) {
+                        movie.tagline = nextString(reader);
+                    } else {
+                        reader.skipValue();
+                    }
+                    break;
+                case "homepage":
+                    if(details) {
+                        movie.homepage = nextString(reader);
+                    } else {
+                        reader.skipValue();
+                    }
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
+
+        return movie;
+    }
+
+    /**
+     * Checks if the field is one that is stored as a String on the Movie object
+     * @param name Name of the JSON field
+     * @return True if the field holds a String value
+     */
+    private static boolean isStringField(String name) {
+        return name.equals("title") || name.equals("poster_path") || name.equals("backdrop_path")
+                || name.equals("overview") || name.equals("release_date")
+                || name.equals("tagline") || name.equals("homepage");
+    }
+
+    /**
+     * Reads the next value as a String. JSON nulls are returned as "null" to match the behavior
+     * of JSONObject.getString() used by the tree parser.
+     * @param reader JsonReader positioned at a string or null value
+     * @return The String value
+     */
+    private static String nextString(JsonReader reader) throws IOException {
+        if(reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return "null";
+        }
+        return reader.nextString();
+    }
+
 }
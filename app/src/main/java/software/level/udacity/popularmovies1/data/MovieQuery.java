@@ -0,0 +1,53 @@
+package software.level.udacity.popularmovies1.data;
+
+import software.level.udacity.popularmovies1.utilities.MovieRequestType;
+
+/**
+ * Describes how movies that are already loaded should be sorted and filtered
+ */
+public class MovieQuery {
+
+    // Minimum number of votes for a movie to be considered top rated, so a movie with a single
+    // perfect vote doesn't end up at the top
+    private static final int TOP_RATED_MIN_VOTE_COUNT = 100;
+
+    /**
+     * Fields that movies can be sorted by. Movies are always sorted highest first.
+     */
+    public enum SortOrder {
+        POPULARITY,
+        VOTE_AVERAGE,
+        VOTE_COUNT,
+        RELEASE_DATE
+    }
+
+    public SortOrder sortOrder = SortOrder.POPULARITY;
+
+    // Movies with fewer votes are left out
+    public int minVoteCount;
+
+    // Inclusive range of release years, 0 leaves that end of the range open
+    public int minYear;
+    public int maxYear;
+
+    /**
+     * Creates the query that best matches the order of a list from the API
+     * @param requestType List that doesn't belong to a movie, such as POPULAR
+     * @return Query that orders loaded movies the same way as the list
+     */
+    public static MovieQuery forRequestType(MovieRequestType requestType) {
+        MovieQuery query = new MovieQuery();
+
+        if(requestType == MovieRequestType.TOP_RATED) {
+            query.sortOrder = SortOrder.VOTE_AVERAGE;
+            query.minVoteCount = TOP_RATED_MIN_VOTE_COUNT;
+        }
+
+        // The newest movies are the closest to the upcoming list
+        if(requestType == MovieRequestType.UPCOMING) {
+            query.sortOrder = SortOrder.RELEASE_DATE;
+        }
+
+        return query;
+    }
+}
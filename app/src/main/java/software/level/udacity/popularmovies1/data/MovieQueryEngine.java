@@ -0,0 +1,266 @@
+package software.level.udacity.popularmovies1.data;
+
+import java.util.Arrays;
+
+/**
+ * Sorts and filters the movies in a MovieTable without touching the network. Each sort order is
+ * computed once and kept as a permutation of the rows of the table. When rows are appended to
+ * the table only the new rows are sorted and merged into the permutation, and filters are a
+ * single scan over the permutation.
+ *
+ * Not thread safe, callers have to guard the engine together with its table.
+ */
+public class MovieQueryEngine {
+
+    private final MovieTable mTable;
+
+    // Rows of the table in sorted order for each sort order, null until first needed
+    private final int[][] mPermutations = new int[MovieQuery.SortOrder.values().length][];
+
+    // Number of rows each permutation covers
+    private final int[] mPermutationSizes = new int[mPermutations.length];
+
+    // Release date of each row as yyyymmdd, 0 if unknown
+    private int[] mReleaseDates = new int[0];
+    private int mReleaseDatesSize;
+
+    // Update count of the table when the permutations were computed
+    private int mUpdateCount;
+
+    /**
+     * Create a MovieQueryEngine
+     * @param table Table to query, rows may be appended to it between queries
+     */
+    public MovieQueryEngine(MovieTable table) {
+        mTable = table;
+        mUpdateCount = table.getUpdateCount();
+    }
+
+    /**
+     * Finds the rows of the table that match the query
+     * @param query Sort order and filters
+     * @return Matching rows in sorted order
+     */
+    public int[] query(MovieQuery query) {
+        int[] sorted = sortedRows(query.sortOrder);
+        int size = mTable.size();
+
+        boolean filterYears = query.minYear > 0 || query.maxYear > 0;
+        if(filterYears) {
+            updateReleaseDates();
+        }
+
+        int[] result = new int[size];
+        int count = 0;
+
+        for(int i = 0; i < size; i++) {
+            int row = sorted[i];
+
+            if(mTable.getVoteCount(row) < query.minVoteCount) {
+                continue;
+            }
+
+            if(filterYears) {
+                int year = mReleaseDates[row] / 10000;
+                if(year == 0
+                        || (query.minYear > 0 && year < query.minYear)
+                        || (query.maxYear > 0 && year > query.maxYear)) {
+                    continue;
+                }
+            }
+
+            result[count++] = row;
+        }
+
+        return count == size ? result : Arrays.copyOf(result, count);
+    }
+
+    /**
+     * Gets the permutation for the sort order, bringing it up to date with the table first
+     * @param sortOrder Sort order
+     * @return Every row of the table in sorted order
+     */
+    private int[] sortedRows(MovieQuery.SortOrder sortOrder) {
+        int size = mTable.size();
+
+        // Values of existing rows changed, so none of the permutations can be trusted
+        if(mUpdateCount != mTable.getUpdateCount()) {
+            mUpdateCount = mTable.getUpdateCount();
+            Arrays.fill(mPermutationSizes, 0);
+            mReleaseDatesSize = 0;
+        }
+
+        int ordinal = sortOrder.ordinal();
+        int sortedSize = mPermutationSizes[ordinal];
+
+        if(mPermutations[ordinal] != null && sortedSize == size) {
+            return mPermutations[ordinal];
+        }
+
+        if(sortOrder == MovieQuery.SortOrder.RELEASE_DATE) {
+            updateReleaseDates();
+        }
+
+        // Sort only the rows that were added since the last time
+        int[] added = new int[size - sortedSize];
+        for(int i = 0; i < added.length; i++) {
+            added[i] = sortedSize + i;
+        }
+        sort(added, sortOrder);
+
+        int[] permutation = new int[size];
+        if(sortedSize == 0) {
+            System.arraycopy(added, 0, permutation, 0, added.length);
+        } else {
+            merge(mPermutations[ordinal], sortedSize, added, permutation, sortOrder);
+        }
+
+        mPermutations[ordinal] = permutation;
+        mPermutationSizes[ordinal] = size;
+
+        return permutation;
+    }
+
+    /**
+     * Parses the release date of rows that haven't been parsed yet
+     */
+    private void updateReleaseDates() {
+        int size = mTable.size();
+        if(mReleaseDatesSize == size) {
+            return;
+        }
+
+        if(mReleaseDates.length < size) {
+            mReleaseDates = Arrays.copyOf(mReleaseDates, Math.max(size, mReleaseDates.length * 2));
+        }
+
+        for(int row = mReleaseDatesSize; row < size; row++) {
+            mReleaseDates[row] = parseDate(mTable.getReleaseDate(row));
+        }
+        mReleaseDatesSize = size;
+    }
+
+    /**
+     * Compares two rows for the sort order. Rows with equal values keep their table order so
+     * the sort is stable.
+     * @return Negative if row a comes first
+     */
+    private int compare(int a, int b, MovieQuery.SortOrder sortOrder) {
+        int result;
+
+        switch(sortOrder) {
+            case VOTE_AVERAGE:
+                result = Double.compare(mTable.getVoteAverage(b), mTable.getVoteAverage(a));
+                break;
+            case VOTE_COUNT:
+                result = compareInts(mTable.getVoteCount(b), mTable.getVoteCount(a));
+                break;
+            case RELEASE_DATE:
+                result = compareInts(mReleaseDates[b], mReleaseDates[a]);
+                break;
+            case POPULARITY:
+            default:
+                result = Double.compare(mTable.getPopularity(b), mTable.getPopularity(a));
+                break;
+        }
+
+        return result != 0 ? result : compareInts(a, b);
+    }
+
+    /**
+     * Sorts rows in place with a merge sort so nothing is boxed
+     * @param rows Rows to sort
+     * @param sortOrder Sort order
+     */
+    private void sort(int[] rows, MovieQuery.SortOrder sortOrder) {
+        if(rows.length < 2) {
+            return;
+        }
+
+        int[] scratch = new int[rows.length];
+
+        for(int width = 1; width < rows.length; width *= 2) {
+            for(int start = 0; start < rows.length; start += width * 2) {
+                int middle = Math.min(start + width, rows.length);
+                int end = Math.min(start + width * 2, rows.length);
+
+                int left = start;
+                int right = middle;
+                int target = start;
+
+                while(left < middle && right < end) {
+                    if(compare(rows[left], rows[right], sortOrder) <= 0) {
+                        scratch[target++] = rows[left++];
+                    } else {
+                        scratch[target++] = rows[right++];
+                    }
+                }
+                while(left < middle) {
+                    scratch[target++] = rows[left++];
+                }
+                while(right < end) {
+                    scratch[target++] = rows[right++];
+                }
+            }
+
+            System.arraycopy(scratch, 0, rows, 0, rows.length);
+        }
+    }
+
+    /**
+     * Merges two sorted runs of rows
+     */
+    private void merge(int[] sorted, int sortedSize, int[] added, int[] target, MovieQuery.SortOrder sortOrder) {
+        int i = 0;
+        int j = 0;
+        int k = 0;
+
+        while(i < sortedSize && j < added.length) {
+            if(compare(sorted[i], added[j], sortOrder) <= 0) {
+                target[k++] = sorted[i++];
+            } else {
+                target[k++] = added[j++];
+            }
+        }
+        while(i < sortedSize) {
+            target[k++] = sorted[i++];
+        }
+        while(j < added.length) {
+            target[k++] = added[j++];
+        }
+    }
+
+    private static int compareInts(int a, int b) {
+        return a < b ? -1 : (a == b ? 0 : 1);
+    }
+
+    /**
+     * Turns a yyyy-mm-dd date into a number that sorts the same way
+     * @param date Release date from the API
+     * @return The date as yyyymmdd, or 0 if it couldn't be parsed
+     */
+    private static int parseDate(String date) {
+        if(date == null || date.length() < 4) {
+            return 0;
+        }
+
+        int value = 0;
+        int digits = 0;
+
+        for(int i = 0; i < date.length() && digits < 8; i++) {
+            char c = date.charAt(i);
+            if(c >= '0' && c <= '9') {
+                value = value * 10 + (c - '0');
+                digits++;
+            }
+        }
+
+        // Pad dates that only have a year or a month
+        while(digits < 8) {
+            value *= 10;
+            digits++;
+        }
+
+        return value;
+    }
+}
@@ -0,0 +1,1004 @@
+package software.level.udacity.popularmovies1.data;
+
+import android.content.Context;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+
+import software.level.udacity.popularmovies1.utilities.CancellationToken;
+import software.level.udacity.popularmovies1.utilities.MovieRequestType;
+import software.level.udacity.popularmovies1.utilities.TaskScheduler;
+
+/**
+ * Single place that the list and detail screens get movie data from. Movies are kept in memory
+ * so that the detail screen can show a movie from the grid right away, and concurrent requests
+ * for the same data share a single fetch. Screens observe lists and movies through DataStreams,
+ * which hand them what is cached right away and every page or detail that is loaded after.
+ *
+ * The blocking methods should only be called from a background thread.
+ */
+public class MovieRepository {
+
+    // Maximum number of movies that are kept in memory
+    private static final int MAX_CACHED_MOVIES = 500;
+
+    // Number of loaded movies past which the ones that are in no list and no longer cached are
+    // dropped from mLoadedMovies and the search index
+    private static final int MAX_LOADED_MOVIES = 2000;
+
+    private static MovieRepository sInstance;
+
+    // Directory in the app's files directory that list snapshots are kept in
+    private static final String SNAPSHOT_DIRECTORY = "snapshots";
+
+    // Where movie data is loaded from when it isn't cached
+    private final DataSource mDataSource;
+
+    // Where the first page of each list is saved for the next cold start, may be null
+    private final MovieSnapshotStore mSnapshots;
+
+    // Source of time for when each page was loaded
+    private final TaskScheduler.Clock mClock;
+
+    // Movies by moviedb_id in least recently used order, guarded by this
+    private final LinkedHashMap<Integer, Movie> mMovies =
+            new LinkedHashMap<Integer, Movie>(64, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Integer, Movie> eldest) {
+                    return size() > MAX_CACHED_MOVIES;
+                }
+            };
+
+    // Pages loaded so far for each list, keyed by listKey, guarded by this
+    private final HashMap<String, PagedList> mLists = new HashMap<>();
+
+    // Every movie from every list that has been loaded, once no matter how many lists it is
+    // in, guarded by this. Rebuilt by trimLoadedMovies once it grows past mTrimLoadedAt.
+    private MovieTable mLoadedMovies = new MovieTable();
+
+    // Sorts and filters mLoadedMovies, guarded by this
+    private MovieQueryEngine mQueryEngine = new MovieQueryEngine(mLoadedMovies);
+
+    // Text of every movie that went through cache, which covers mLoadedMovies, guarded by this
+    private MovieSearchIndex mSearchIndex = new MovieSearchIndex();
+
+    // Size of mLoadedMovies or the search index at which they are trimmed, guarded by this
+    private int mTrimLoadedAt = MAX_LOADED_MOVIES;
+
+    // Streams of the lists that are being observed, keyed by listKey, guarded by this
+    private final HashMap<String, ListStream> mListStreams = new HashMap<>();
+
+    // Streams of the movies that are being observed, keyed by moviedb_id, guarded by this
+    private final HashMap<Integer, MovieStream> mMovieStreams = new HashMap<>();
+
+    // Fetches that are currently running, keyed by page or movie id
+    private final ConcurrentHashMap<Object, FutureTask<?>> mInFlight = new ConcurrentHashMap<>();
+
+    /**
+     * Get the shared repository
+     * @param context Context used to create the repository the first time
+     * @return The repository shared by all screens
+     */
+    public static synchronized MovieRepository getInstance(Context context) {
+        if(sInstance == null) {
+            File snapshotDirectory = new File(context.getFilesDir(), SNAPSHOT_DIRECTORY);
+            sInstance = new MovieRepository(new NetworkMovieDataSource(context),
+                    new MovieSnapshotStore(snapshotDirectory));
+        }
+        return sInstance;
+    }
+
+    /**
+     * Create a new MovieRepository
+     * @param dataSource Where movie data is loaded from when it isn't cached
+     */
+    public MovieRepository(DataSource dataSource) {
+        this(dataSource, null);
+    }
+
+    /**
+     * Create a new MovieRepository that saves the first page of each list it loads
+     * @param dataSource Where movie data is loaded from when it isn't cached
+     * @param snapshots Where the first page of each list is saved, or null to not save them
+     */
+    public MovieRepository(DataSource dataSource, MovieSnapshotStore snapshots) {
+        this(dataSource, snapshots, TaskScheduler.SYSTEM_CLOCK);
+    }
+
+    /**
+     * Create a new MovieRepository that saves the first page of each list it loads
+     * @param dataSource Where movie data is loaded from when it isn't cached
+     * @param snapshots Where the first page of each list is saved, or null to not save them
+     * @param clock Source of time for when each page was loaded
+     */
+    public MovieRepository(DataSource dataSource, MovieSnapshotStore snapshots, TaskScheduler.Clock clock) {
+        mDataSource = dataSource;
+        mSnapshots = snapshots;
+        mClock = clock;
+    }
+
+    /**
+     * Gets the pages of movies that have been loaded for the request type, loading the first
+     * page if nothing has been loaded yet
+     * @param requestType List that doesn't belong to a movie, such as POPULAR
+     * @return Copy of the movies for the request type
+     * @throws IOException If the movies had to be loaded and loading failed
+     */
+    public MovieTable getMovies(MovieRequestType requestType) throws IOException {
+        return getMovies(requestType, 0);
+    }
+
+    /**
+     * Gets the pages of movies that have been loaded for the list, loading the first page if
+     * nothing has been loaded yet
+     * @param requestType Any list request type
+     * @param movieId Id of the movie the list belongs to, ignored by lists that don't need one
+     * @return Copy of the movies of the list
+     * @throws IOException If the movies had to be loaded and loading failed
+     */
+    public MovieTable getMovies(MovieRequestType requestType, int movieId) throws IOException {
+        synchronized (this) {
+            PagedList list = mLists.get(listKey(requestType, movieId));
+            if(list != null) {
+                return list.table.copy();
+            }
+        }
+
+        return loadMovies(requestType, movieId);
+    }
+
+    /**
+     * Gets the pages of movies that have been loaded for the request type without loading
+     * anything
+     * @param requestType List that doesn't belong to a movie, such as POPULAR
+     * @return Copy of the movies for the request type, or null if nothing has been loaded
+     */
+    public MovieTable getCachedMovies(MovieRequestType requestType) {
+        return getCachedMovies(requestType, 0);
+    }
+
+    /**
+     * Gets the pages of movies that have been loaded for the list without loading anything
+     * @param requestType Any list request type
+     * @param movieId Id of the movie the list belongs to, ignored by lists that don't need one
+     * @return Copy of the movies of the list, or null if nothing has been loaded
+     */
+    public synchronized MovieTable getCachedMovies(MovieRequestType requestType, int movieId) {
+        PagedList list = mLists.get(listKey(requestType, movieId));
+        return list != null ? list.table.copy() : null;
+    }
+
+    /**
+     * Follows the pages of movies of the list without loading anything. The movies that have
+     * been loaded are delivered before this returns, after which the observer is told about
+     * every page that is loaded and every time the list is refreshed, no matter who loaded it.
+     * Must be called on the thread the executor runs on.
+     * @param requestType Any list request type
+     * @param movieId Id of the movie the list belongs to, ignored by lists that don't need one
+     * @param executor Executor the updates are delivered on
+     * @param token Token that stops the updates when cancelled
+     * @param observer Told about every update of the list
+     * @return Subscription that stops the updates
+     */
+    public DataStream.Subscription observeMovies(MovieRequestType requestType, int movieId, Executor executor,
+                                                 CancellationToken token,
+                                                 DataStream.Observer<MovieListUpdate> observer) {
+        String listKey = listKey(requestType, movieId);
+        ListStream stream;
+
+        synchronized (this) {
+            stream = mListStreams.get(listKey);
+            if(stream == null) {
+                PagedList list = mLists.get(listKey);
+                stream = new ListStream(listKey, list != null ? MovieListUpdate.replaced(list.table.copy()) : null);
+                mListStreams.put(listKey, stream);
+            }
+        }
+
+        return stream.subscribe(executor, token, observer);
+    }
+
+    /**
+     * Follows a movie without loading anything. The movie is delivered before this returns if
+     * it is in memory, after which the observer is told every time it is loaded again, such
+     * as when its details come in. Every update is a copy of the movie as it was at that
+     * moment, so it can be read on any thread while the cached movie keeps changing. Must be
+     * called on the thread the executor runs on.
+     * @param id Movie Database id of the movie
+     * @param executor Executor the movie is delivered on
+     * @param token Token that stops the updates when cancelled
+     * @param observer Told about every update of the movie
+     * @return Subscription that stops the updates
+     */
+    public DataStream.Subscription observeMovie(int id, Executor executor, CancellationToken token,
+                                                DataStream.Observer<Movie> observer) {
+        MovieStream stream;
+
+        synchronized (this) {
+            stream = mMovieStreams.get(id);
+            if(stream == null) {
+                Movie cached = mMovies.get(id);
+                stream = new MovieStream(id, cached != null ? copyOf(cached) : null);
+                mMovieStreams.put(id, stream);
+            }
+        }
+
+        return stream.subscribe(executor, token, observer);
+    }
+
+    /**
+     * Gets the number of pages that have been loaded for the list
+     * @param requestType Any list request type
+     * @param movieId Id of the movie the list belongs to, ignored by lists that don't need one
+     * @return Number of pages, 0 if nothing has been loaded
+     */
+    public synchronized int getLoadedPageCount(MovieRequestType requestType, int movieId) {
+        PagedList list = mLists.get(listKey(requestType, movieId));
+        return list != null ? list.loadedPages : 0;
+    }
+
+    /**
+     * Gets how long ago a page of the list was loaded or last refreshed
+     * @param requestType Any list request type
+     * @param movieId Id of the movie the list belongs to, ignored by lists that don't need one
+     * @param page Page number, starting at 1
+     * @return Age of the page in milliseconds, or -1 if the page hasn't been loaded
+     */
+    public synchronized long getPageAge(MovieRequestType requestType, int movieId, int page) {
+        PagedList list = mLists.get(listKey(requestType, movieId));
+        if(list == null || page < 1 || page > list.loadedPages) {
+            return -1;
+        }
+        return mClock.uptimeMillis() - list.pageLoadedAt.get(page - 1);
+    }
+
+    /**
+     * Gets the movies that were saved the last time the list was loaded, which may be from a
+     * previous run of the app. Meant for showing something while the list is loaded, the
+     * movies are not treated as a loaded list. Movies that are already in memory are kept as
+     * they are since they are at least as new as the snapshot. Reads the snapshot from disk
+     * before taking the lock, so it has to be called off the main thread.
+     * @param requestType List that doesn't belong to a movie, such as POPULAR
+     * @return The saved movies, or null if there is no snapshot
+     */
+    public MovieTable getSnapshotMovies(MovieRequestType requestType) {
+        MoviePage snapshot = mSnapshots != null ? mSnapshots.read(requestType) : null;
+        if(snapshot == null || snapshot.movies.isEmpty()) {
+            return null;
+        }
+
+        synchronized (this) {
+            for(Movie movie : snapshot.movies) {
+                if(!mMovies.containsKey(movie.moviedb_id)) {
+                    mMovies.put(movie.moviedb_id, movie);
+                    mSearchIndex.add(movie);
+                }
+                if(!mLoadedMovies.contains(movie.moviedb_id)) {
+                    addLoadedMovie(movie);
+                }
+            }
+        }
+
+        return MovieTable.of(snapshot.movies);
+    }
+
+    /**
+     * Sorts and filters every movie that has been loaded so far, from any list, without
+     * loading anything
+     * @param query Sort order and filters
+     * @return The matching movies in sorted order
+     */
+    public synchronized MovieTable queryLoadedMovies(MovieQuery query) {
+        return mLoadedMovies.select(mQueryEngine.query(query));
+    }
+
+    /**
+     * Searches the title, tagline and overview of every movie that has been loaded so far,
+     * from any list, without loading anything
+     * @param query Text the user typed
+     * @param limit Maximum number of movies to return
+     * @return The matching movies, best match first
+     */
+    public synchronized MovieTable searchLoadedMovies(String query, int limit) {
+        int[] ids = mSearchIndex.search(query, limit);
+
+        int[] rows = new int[ids.length];
+        int count = 0;
+        for(int id : ids) {
+            int row = mLoadedMovies.indexOf(id);
+            if(row != -1) {
+                rows[count++] = row;
+            }
+        }
+
+        return mLoadedMovies.select(Arrays.copyOf(rows, count));
+    }
+
+    /**
+     * Asks the API for movies matching the query. The movies found are kept along with the
+     * movies of the lists, so searchLoadedMovies finds them from then on.
+     * @param query Text the user typed
+     * @return Number of movies the API found
+     * @throws IOException If the search failed
+     */
+    public int searchRemote(final String query) throws IOException {
+        return coalesce("search:" + query, new Callable<Integer>() {
+            @Override
+            public Integer call() throws IOException {
+                MoviePage fetched = mDataSource.searchMovies(query, 1);
+
+                synchronized (MovieRepository.this) {
+                    for(Movie movie : fetched.movies) {
+                        addLoadedMovie(cache(movie));
+                    }
+                }
+
+                return fetched.movies.size();
+            }
+        });
+    }
+
+    /**
+     * Loads the first page of movies for the request type even if it is already cached. Any
+     * pages that were loaded after the first one are dropped.
+     * @param requestType List that doesn't belong to a movie, such as POPULAR
+     * @return Copy of the movies for the request type
+     * @throws IOException If loading failed
+     */
+    public MovieTable loadMovies(MovieRequestType requestType) throws IOException {
+        return loadMovies(requestType, 0);
+    }
+
+    /**
+     * Loads the first page of movies for the list even if it is already cached. Any pages that
+     * were loaded after the first one are dropped.
+     * @param requestType Any list request type
+     * @param movieId Id of the movie the list belongs to, ignored by lists that don't need one
+     * @return Copy of the movies of the list
+     * @throws IOException If loading failed
+     */
+    public MovieTable loadMovies(final MovieRequestType requestType, final int movieId) throws IOException {
+        final String listKey = listKey(requestType, movieId);
+
+        MovieTable firstPage = coalesce(pageKey(listKey, 1), new Callable<MovieTable>() {
+            @Override
+            public MovieTable call() throws IOException {
+                MoviePage fetched = mDataSource.fetchMoviePage(requestType, movieId, 1);
+
+                MovieTable loaded;
+                synchronized (MovieRepository.this) {
+                    PagedList list = new PagedList();
+                    mLists.put(listKey, list);
+                    list.append(fetched, mClock.uptimeMillis());
+                    loaded = list.table.copy();
+
+                    // Nobody changes the loaded table, everyone gets a copy of it
+                    ListStream stream = mListStreams.get(listKey);
+                    if(stream != null) {
+                        stream.emit(MovieListUpdate.replaced(loaded));
+                    }
+                }
+
+                // Lists of a movie are only looked at from its detail screen, so they aren't
+                // worth keeping across cold starts
+                if(!requestType.needsMovieId()) {
+                    saveSnapshot(requestType, fetched);
+                }
+                return loaded;
+            }
+        });
+
+        // Everyone waiting on the same load gets the same table, so hand each their own copy
+        return firstPage.copy();
+    }
+
+    /**
+     * Loads the page after the last page that was loaded for the request type. Movies that
+     * already showed up on an earlier page are left out of the result.
+     * @param requestType List that doesn't belong to a movie, such as POPULAR
+     * @return The page that was loaded, or null if all pages have already been loaded
+     * @throws IOException If loading failed
+     */
+    public MoviePage loadNextPage(MovieRequestType requestType) throws IOException {
+        return loadNextPage(requestType, 0);
+    }
+
+    /**
+     * Loads the page after the last page that was loaded for the list. Movies that already
+     * showed up on an earlier page are left out of the result.
+     * @param requestType Any list request type
+     * @param movieId Id of the movie the list belongs to, ignored by lists that don't need one
+     * @return The page that was loaded, or null if all pages have already been loaded
+     * @throws IOException If loading failed
+     */
+    public MoviePage loadNextPage(final MovieRequestType requestType, final int movieId) throws IOException {
+        final String listKey = listKey(requestType, movieId);
+        final int page;
+        synchronized (this) {
+            PagedList list = mLists.get(listKey);
+            if(list == null) {
+                page = 1;
+            } else if(list.loadedPages < list.totalPages) {
+                page = list.loadedPages + 1;
+            } else {
+                return null;
+            }
+        }
+
+        // The first page is loaded the way loadMovies loads it, so that both share one fetch
+        if(page == 1) {
+            return firstPageOf(loadMovies(requestType, movieId), listKey);
+        }
+
+        return coalesce(pageKey(listKey, page), new Callable<MoviePage>() {
+            @Override
+            public MoviePage call() throws IOException {
+                MoviePage fetched = mDataSource.fetchMoviePage(requestType, movieId, page);
+
+                synchronized (MovieRepository.this) {
+                    PagedList list = mLists.get(listKey);
+
+                    // The list was refreshed or dropped while this page was loading so it no
+                    // longer fits
+                    if(list == null || list.loadedPages != page - 1) {
+                        MoviePage empty = new MoviePage();
+                        empty.page = page;
+                        empty.total_pages = list != null ? list.totalPages : page;
+                        empty.movies = new ArrayList<>();
+                        return empty;
+                    }
+
+                    MoviePage added = list.append(fetched, mClock.uptimeMillis());
+
+                    ListStream stream = mListStreams.get(listKey);
+                    if(stream != null && !added.movies.isEmpty()) {
+                        stream.emit(MovieListUpdate.appended(list.table.copy(), new ArrayList<>(added.movies)));
+                    }
+
+                    return added;
+                }
+            }
+        });
+    }
+
+    /**
+     * Describes the first page of a list that loadMovies loaded as the page loadNextPage returns
+     * @param firstPage Movies loadMovies returned
+     * @param listKey Key of the list
+     * @return The first page with all of its movies
+     */
+    private MoviePage firstPageOf(MovieTable firstPage, String listKey) {
+        MoviePage loaded = new MoviePage();
+        loaded.page = 1;
+        loaded.movies = firstPage.toList();
+
+        synchronized (this) {
+            PagedList list = mLists.get(listKey);
+            loaded.total_pages = list != null ? list.totalPages : 1;
+        }
+
+        return loaded;
+    }
+
+    /**
+     * Loads a page of the list again and puts its movies where the page was, keeping the pages
+     * before and after it. Observers of the list are handed the list with the new page. Nothing
+     * changes if the list was refreshed or dropped while the page was loading.
+     * @param requestType Any list request type
+     * @param movieId Id of the movie the list belongs to, ignored by lists that don't need one
+     * @param page Page that has been loaded before, starting at 1
+     * @throws IOException If loading failed
+     */
+    public void refreshPage(final MovieRequestType requestType, final int movieId, final int page) throws IOException {
+        final String listKey = listKey(requestType, movieId);
+
+        // Not shared with loads of the page, which add the page rather than replace it
+        coalesce("refresh:" + pageKey(listKey, page), new Callable<Void>() {
+            @Override
+            public Void call() throws IOException {
+                PagedList before;
+                synchronized (MovieRepository.this) {
+                    before = mLists.get(listKey);
+                }
+
+                MoviePage fetched = mDataSource.fetchMoviePage(requestType, movieId, page);
+
+                synchronized (MovieRepository.this) {
+                    PagedList list = mLists.get(listKey);
+                    if(list == null || list != before || page > list.loadedPages) {
+                        return null;
+                    }
+
+                    list.replace(page, fetched, mClock.uptimeMillis());
+
+                    ListStream stream = mListStreams.get(listKey);
+                    if(stream != null) {
+                        stream.emit(MovieListUpdate.replaced(list.table.copy()));
+                    }
+                }
+
+                if(page == 1 && !requestType.needsMovieId()) {
+                    saveSnapshot(requestType, fetched);
+                }
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Checks if there are pages for the request type that haven't been loaded yet
+     * @param requestType List that doesn't belong to a movie, such as POPULAR
+     * @return True if loadNextPage would load another page
+     */
+    public boolean hasMorePages(MovieRequestType requestType) {
+        return hasMorePages(requestType, 0);
+    }
+
+    /**
+     * Checks if there are pages for the list that haven't been loaded yet
+     * @param requestType Any list request type
+     * @param movieId Id of the movie the list belongs to, ignored by lists that don't need one
+     * @return True if loadNextPage would load another page
+     */
+    public synchronized boolean hasMorePages(MovieRequestType requestType, int movieId) {
+        PagedList list = mLists.get(listKey(requestType, movieId));
+        return list == null || list.loadedPages < list.totalPages;
+    }
+
+    /**
+     * Gets a movie that is already in memory without loading anything. The movie may be
+     * missing the fields that are only returned by a detail request.
+     * @param id Movie Database id of the movie
+     * @return The movie or null if it isn't in memory
+     */
+    public synchronized Movie getCachedMovie(int id) {
+        return mMovies.get(id);
+    }
+
+    /**
+     * Keeps a movie that another screen handed over, such as the movie that was tapped in the
+     * grid, so that it doesn't have to be loaded again. A movie that is already in memory is at
+     * least as new, so only the details are taken from the handed over movie if the one in
+     * memory doesn't have them.
+     * @param movie Movie that was handed over
+     * @return The cached instance of the movie
+     */
+    public synchronized Movie offerMovie(Movie movie) {
+        Movie cached = mMovies.get(movie.moviedb_id);
+
+        if(cached == null) {
+            mMovies.put(movie.moviedb_id, movie);
+            mSearchIndex.add(movie);
+            return movie;
+        }
+
+        if(hasDetails(movie) && !hasDetails(cached)) {
+            cached.runtime = movie.runtime;
+            cached.tagline = movie.tagline;
+            cached.homepage = movie.homepage;
+            mSearchIndex.add(cached);
+            emitMovie(cached);
+        }
+
+        return cached;
+    }
+
+    /**
+     * Gets a movie with all of its details, loading the details if they haven't been loaded yet
+     * @param id Movie Database id of the movie
+     * @return The movie with all details
+     * @throws IOException If the details had to be loaded and loading failed
+     */
+    public Movie getMovieDetails(final int id) throws IOException {
+        synchronized (this) {
+            Movie movie = mMovies.get(id);
+            if(movie != null && hasDetails(movie)) {
+                return movie;
+            }
+        }
+
+        return coalesce(id, new Callable<Movie>() {
+            @Override
+            public Movie call() throws IOException {
+                Movie details = mDataSource.fetchMovieDetails(id);
+
+                synchronized (MovieRepository.this) {
+                    return cache(details);
+                }
+            }
+        });
+    }
+
+    /**
+     * Checks if the movie has the fields that are only returned by a detail request
+     * @param movie Movie to check
+     * @return True if the details have been loaded
+     */
+    public static boolean hasDetails(Movie movie) {
+        // The parser only fills in the tagline for detail requests
+        return movie.tagline != null;
+    }
+
+    /**
+     * Adds a movie to the movies that have been loaded, trimming them if they grew too large.
+     * The movie must already be in a list or cached so that it is kept.
+     * @param movie Movie that was just loaded
+     */
+    private void addLoadedMovie(Movie movie) {
+        mLoadedMovies.add(movie);
+
+        if(mLoadedMovies.size() > mTrimLoadedAt || mSearchIndex.size() > mTrimLoadedAt) {
+            trimLoadedMovies();
+        }
+    }
+
+    /**
+     * Drops the movies that are in no list and have been evicted from the cache from the loaded
+     * movies and rebuilds the search index for the movies that are left. Searches and queries
+     * of loaded movies no longer find the dropped movies, just like the cache doesn't have them.
+     * Must be called while holding the lock.
+     */
+    private void trimLoadedMovies() {
+        MovieTable kept = new MovieTable(Math.min(mLoadedMovies.size(), MAX_LOADED_MOVIES));
+        MovieSearchIndex searchIndex = new MovieSearchIndex();
+
+        Movie movie = new Movie();
+        for(int row = 0; row < mLoadedMovies.size(); row++) {
+            int id = mLoadedMovies.getId(row);
+            if(mMovies.containsKey(id) || isInList(id)) {
+                mLoadedMovies.read(row, movie);
+                kept.add(movie);
+                searchIndex.add(movie);
+            }
+        }
+
+        mLoadedMovies = kept;
+        mQueryEngine = new MovieQueryEngine(kept);
+        mSearchIndex = searchIndex;
+
+        // Lists that are still shown can hold more movies than the limit
+        mTrimLoadedAt = Math.max(MAX_LOADED_MOVIES, kept.size() * 2);
+    }
+
+    /**
+     * Checks if a movie is in any of the lists that have been loaded. Must be called while
+     * holding the lock.
+     * @param id Movie Database id of the movie
+     * @return True if a list holds the movie
+     */
+    private boolean isInList(int id) {
+        for(PagedList list : mLists.values()) {
+            if(list.table.contains(id)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Adds a movie to the in-memory cache. If the movie is already cached the existing object is
+     * updated in place so that everyone holding on to it sees the new data, and details that
+     * were already loaded are kept. Either way the movie is added to the search index and
+     * handed to anyone observing it.
+     * @param movie Movie that was just loaded
+     * @return The cached instance of the movie
+     */
+    private Movie cache(Movie movie) {
+        Movie cached = mMovies.get(movie.moviedb_id);
+
+        if(cached == null) {
+            mMovies.put(movie.moviedb_id, movie);
+            mSearchIndex.add(movie);
+            emitMovie(movie);
+            return movie;
+        }
+
+        cached.title = movie.title;
+        cached.poster_path = movie.poster_path;
+        cached.backdrop_path = movie.backdrop_path;
+        cached.popularity = movie.popularity;
+        cached.vote_average = movie.vote_average;
+        cached.vote_count = movie.vote_count;
+        cached.overview = movie.overview;
+
+        if(hasDetails(movie)) {
+            cached.runtime = movie.runtime;
+            cached.release_date = movie.release_date;
+            cached.tagline = movie.tagline;
+            cached.homepage = movie.homepage;
+        }
+
+        mSearchIndex.add(cached);
+        emitMovie(cached);
+        return cached;
+    }
+
+    /**
+     * Hands a movie that was just cached to anyone observing it. Observers get a copy that is
+     * made while holding the lock, since the cached instance is changed in place by later loads
+     * on other threads. Must be called while holding the lock.
+     * @param movie The cached instance of the movie
+     */
+    private void emitMovie(Movie movie) {
+        MovieStream stream = mMovieStreams.get(movie.moviedb_id);
+        if(stream != null) {
+            stream.emit(copyOf(movie));
+        }
+    }
+
+    /**
+     * Copies every field of a movie
+     * @param movie Movie to copy
+     * @return New movie with the same fields
+     */
+    private static Movie copyOf(Movie movie) {
+        Movie copy = new Movie();
+        copy.moviedb_id = movie.moviedb_id;
+        copy.title = movie.title;
+        copy.poster_path = movie.poster_path;
+        copy.backdrop_path = movie.backdrop_path;
+        copy.release_date = movie.release_date;
+        copy.overview = movie.overview;
+        copy.homepage = movie.homepage;
+        copy.tagline = movie.tagline;
+        copy.runtime = movie.runtime;
+        copy.popularity = movie.popularity;
+        copy.vote_average = movie.vote_average;
+        copy.vote_count = movie.vote_count;
+        return copy;
+    }
+
+    /**
+     * Saves the first page of a list for the next cold start. Failing to save only means the
+     * next cold start has to wait for the network, so errors are ignored.
+     * @param requestType List that doesn't belong to a movie, such as POPULAR
+     * @param firstPage First page of the list as it was loaded
+     */
+    private void saveSnapshot(MovieRequestType requestType, MoviePage firstPage) {
+        if(mSnapshots == null) {
+            return;
+        }
+
+        try {
+            mSnapshots.write(requestType, firstPage);
+        } catch (IOException e) {
+            // The previous snapshot, if any, is still in place
+        }
+    }
+
+    /**
+     * Key that the pages of a list are kept under
+     * @param requestType Any list request type
+     * @param movieId Id of the movie the list belongs to, ignored by lists that don't need one
+     * @return Key for the list
+     */
+    private static String listKey(MovieRequestType requestType, int movieId) {
+        if(requestType.needsMovieId()) {
+            return requestType.name() + "/" + movieId;
+        }
+        return requestType.name();
+    }
+
+    /**
+     * Key used to coalesce requests for a page of a list
+     * @param listKey Key of the list
+     * @param page Page number
+     * @return Key for the page
+     */
+    private static String pageKey(String listKey, int page) {
+        return listKey + "#" + page;
+    }
+
+    /**
+     * Runs the loader unless a load for the same key is already running, in which case this
+     * waits for the running load and shares its result. If the running load is cancelled by
+     * the task that started it, the load is started again for the tasks that still want it.
+     * @param key Key identifying what is being loaded
+     * @param loader Loads the data
+     * @return Result of the load
+     * @throws IOException If the load failed
+     */
+    @SuppressWarnings("unchecked")
+    private <T> T coalesce(Object key, Callable<T> loader) throws IOException {
+        FutureTask<T> task = new FutureTask<>(loader);
+        FutureTask<T> running = (FutureTask<T>) mInFlight.putIfAbsent(key, task);
+
+        if(running == null) {
+            running = task;
+            try {
+                task.run();
+            } finally {
+                mInFlight.remove(key, task);
+            }
+        }
+
+        try {
+            return running.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if(cause instanceof CancellationException && running != task) {
+                CancellationToken.throwIfCurrentCancelled();
+                return coalesce(key, loader);
+            }
+            if(cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if(cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException(cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for " + key, e);
+        }
+    }
+
+    /**
+     * The pages of a list that have been loaded so far. Only accessed while holding the lock
+     * on the repository.
+     */
+    private final class PagedList {
+
+        MovieTable table = new MovieTable();
+        int loadedPages;
+        int totalPages = 1;
+
+        // Ids of the movies of each page as the API returned them, including movies of earlier
+        // pages. The movies themselves are only kept in the table.
+        final ArrayList<int[]> pages = new ArrayList<>();
+
+        // When each page was loaded, in clock milliseconds
+        final ArrayList<Long> pageLoadedAt = new ArrayList<>();
+
+        /**
+         * Adds the movies of the next page to the list, leaving out movies that are already in
+         * the list since results can shift between pages while paging through them
+         * @param fetched Page that was just loaded
+         * @param now Time the page was loaded at
+         * @return The page with only the movies that were added
+         */
+        MoviePage append(MoviePage fetched, long now) {
+            MoviePage added = new MoviePage();
+            added.page = fetched.page;
+            added.total_pages = fetched.total_pages;
+            added.movies = new ArrayList<>(fetched.movies.size());
+
+            int[] pageIds = new int[fetched.movies.size()];
+            for(int i = 0; i < pageIds.length; i++) {
+                Movie movie = fetched.movies.get(i);
+                if(!table.contains(movie.moviedb_id)) {
+                    table.add(movie);
+                    addLoadedMovie(movie);
+                    added.movies.add(cache(movie));
+                }
+                pageIds[i] = movie.moviedb_id;
+            }
+
+            pages.add(pageIds);
+            pageLoadedAt.add(now);
+            loadedPages++;
+            totalPages = fetched.total_pages;
+
+            return added;
+        }
+
+        /**
+         * Swaps the movies of a page that was loaded again and rebuilds the table from all of
+         * the pages, so movies that moved between pages show up only once and in page order
+         * @param page Page number, starting at 1
+         * @param fetched Page that was just loaded again
+         * @param now Time the page was loaded at
+         */
+        void replace(int page, MoviePage fetched, long now) {
+            Movie[] pageMovies = new Movie[fetched.movies.size()];
+            int[] pageIds = new int[pageMovies.length];
+            for(int i = 0; i < pageIds.length; i++) {
+                pageMovies[i] = cache(fetched.movies.get(i));
+                addLoadedMovie(pageMovies[i]);
+                pageIds[i] = pageMovies[i].moviedb_id;
+            }
+
+            pages.set(page - 1, pageIds);
+            pageLoadedAt.set(page - 1, now);
+
+            // Pages past the new total were loaded, so they are still there to be scrolled to
+            totalPages = Math.max(fetched.total_pages, loadedPages);
+
+            // Movies of the other pages are read from the old table, the new page from the fetch
+            MovieTable previous = table;
+            table = new MovieTable(previous.size());
+            Movie movie = new Movie();
+            for(int p = 0; p < pages.size(); p++) {
+                if(p == page - 1) {
+                    for(Movie pageMovie : pageMovies) {
+                        if(!table.contains(pageMovie.moviedb_id)) {
+                            table.add(pageMovie);
+                        }
+                    }
+                    continue;
+                }
+
+                for(int id : pages.get(p)) {
+                    int row = previous.indexOf(id);
+                    if(!table.contains(id) && row != -1) {
+                        table.add(previous.read(row, movie));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Updates of a list, dropped from mListStreams once nobody observes them
+     */
+    private final class ListStream extends DataStream<MovieListUpdate> {
+
+        private final String mListKey;
+
+        ListStream(String listKey, MovieListUpdate initial) {
+            super(initial);
+            mListKey = listKey;
+        }
+
+        @Override
+        protected MovieListUpdate combine(MovieListUpdate older, MovieListUpdate newer) {
+            return MovieListUpdate.combine(older, newer);
+        }
+
+        @Override
+        protected MovieListUpdate replay(MovieListUpdate latest) {
+            return latest.asReplacement();
+        }
+
+        @Override
+        protected void onInactive() {
+            synchronized (MovieRepository.this) {
+                if(mListStreams.get(mListKey) == this && getSubscriberCount() == 0) {
+                    mListStreams.remove(mListKey);
+                }
+            }
+        }
+    }
+
+    /**
+     * Updates of a movie, dropped from mMovieStreams once nobody observes them
+     */
+    private final class MovieStream extends DataStream<Movie> {
+
+        private final int mId;
+
+        MovieStream(int id, Movie initial) {
+            super(initial);
+            mId = id;
+        }
+
+        @Override
+        protected void onInactive() {
+            synchronized (MovieRepository.this) {
+                if(mMovieStreams.get(mId) == this && getSubscriberCount() == 0) {
+                    mMovieStreams.remove(mId);
+                }
+            }
+        }
+    }
+
+    /**
+     * Interface that defines where the repository loads movie data from
+     */
+    public interface DataSource {
+        MoviePage fetchMoviePage(MovieRequestType requestType, int movieId, int page) throws IOException;
+        MoviePage searchMovies(String query, int page) throws IOException;
+        Movie fetchMovieDetails(int id) throws IOException;
+    }
+}
@@ -0,0 +1,160 @@
+package software.level.udacity.popularmovies1.data;
+
+import java.util.HashSet;
+import java.util.Locale;
+
+import software.level.udacity.popularmovies1.utilities.CancellationToken;
+import software.level.udacity.popularmovies1.utilities.TaskScheduler;
+
+/**
+ * Searches movies as the user types. The movies that are already loaded are searched right
+ * away, which takes well under a millisecond. Only when they don't give enough results is the
+ * API asked as well, and only once the query stopped changing for a moment, so typing a title
+ * makes a single request rather than one for every letter. The request is queued with the
+ * debounce as its delay and cancelled by the next keystroke, so waiting for typing to stop
+ * never takes up a worker.
+ *
+ * Must be used from the thread results are delivered on, which is the main thread in the app.
+ */
+public class MovieSearch {
+
+    // How long the query has to stay the same before the API is asked
+    private static final long DEFAULT_DEBOUNCE_MILLIS = 350;
+
+    // Maximum number of movies shown for a query
+    private static final int DEFAULT_MAX_RESULTS = 60;
+
+    // With fewer movies than this found locally the API is asked as well
+    private static final int MIN_LOCAL_RESULTS = 10;
+
+    // Shorter queries match too much to be worth asking the API about
+    private static final int MIN_REMOTE_QUERY_LENGTH = 3;
+
+    private final MovieRepository mRepository;
+    private final TaskScheduler mScheduler;
+    private final long mDebounceMillis;
+    private final int mMaxResults;
+
+    // Queries the API has already answered, in lower case
+    private final HashSet<String> mSearchedRemotely = new HashSet<>();
+
+    // The query that was searched last
+    private String mQuery = "";
+
+    // The request to the API for mQuery, null if there is none
+    private TaskScheduler.Job mRemoteJob;
+
+    /**
+     * Create a new MovieSearch
+     * @param repository Repository that is searched
+     * @param scheduler Scheduler the requests to the API run on
+     */
+    public MovieSearch(MovieRepository repository, TaskScheduler scheduler) {
+        this(repository, scheduler, DEFAULT_DEBOUNCE_MILLIS, DEFAULT_MAX_RESULTS);
+    }
+
+    /**
+     * Create a new MovieSearch
+     * @param repository Repository that is searched
+     * @param scheduler Scheduler the requests to the API run on, whose clock times the debounce
+     * @param debounceMillis How long the query has to stay the same before the API is asked
+     * @param maxResults Maximum number of movies returned for a query
+     */
+    public MovieSearch(MovieRepository repository, TaskScheduler scheduler, long debounceMillis, int maxResults) {
+        mRepository = repository;
+        mScheduler = scheduler;
+        mDebounceMillis = debounceMillis;
+        mMaxResults = maxResults;
+    }
+
+    /**
+     * Searches the loaded movies. If they don't give enough results the API is asked once the
+     * query stays the same for a moment, and the listener gets the results again with the
+     * movies the API found. A request for the previous query that hasn't finished is cancelled.
+     * @param query Text the user typed
+     * @param token Token that cancels the request, usually the token of the activity
+     * @param listener Told about the results once the API answered
+     * @return The loaded movies matching the query, best match first
+     */
+    public MovieTable search(String query, CancellationToken token, Listener listener) {
+        cancel();
+        mQuery = query;
+
+        MovieTable local = mRepository.searchLoadedMovies(query, mMaxResults);
+
+        String key = query.trim().toLowerCase(Locale.US);
+        if(local.size() < MIN_LOCAL_RESULTS && key.length() >= MIN_REMOTE_QUERY_LENGTH
+                && !mSearchedRemotely.contains(key)) {
+            mRemoteJob = mScheduler.submitDelayed(TaskScheduler.Priority.LIST, token,
+                    new RemoteSearchTask(query, key, listener), mDebounceMillis);
+        }
+
+        return local;
+    }
+
+    /**
+     * Cancels the request to the API for the last query, if any
+     */
+    public void cancel() {
+        if(mRemoteJob != null) {
+            mRemoteJob.cancel();
+            mRemoteJob = null;
+        }
+        mQuery = "";
+    }
+
+    /**
+     * Interface that defines what is told about the results of the API
+     */
+    public interface Listener {
+        void onSearchResults(String query, MovieTable movies);
+    }
+
+    /**
+     * Asks the API once the debounce has passed and searches the loaded movies again, which now
+     * include the movies that were found
+     */
+    private final class RemoteSearchTask extends TaskScheduler.Task<MovieTable> {
+
+        private final String mTaskQuery;
+        private final String mKey;
+        private final Listener mListener;
+
+        RemoteSearchTask(String query, String key, Listener listener) {
+            mTaskQuery = query;
+            mKey = key;
+            mListener = listener;
+        }
+
+        @Override
+        protected MovieTable doInBackground(CancellationToken token) throws Exception {
+            mRepository.searchRemote(mTaskQuery);
+            return mRepository.searchLoadedMovies(mTaskQuery, mMaxResults);
+        }
+
+        @Override
+        protected void onPostExecute(MovieTable movies) {
+            mSearchedRemotely.add(mKey);
+
+            // The query changed since, a newer search is on its way
+            if(!mTaskQuery.equals(mQuery)) {
+                return;
+            }
+
+            mRemoteJob = null;
+            mListener.onSearchResults(mTaskQuery, movies);
+        }
+
+        /**
+         * The movies that were found locally are still shown, so a failed search is only
+         * retried when the query is typed again
+         * @param e The exception thrown by the background task
+         */
+        @Override
+        protected void onError(Exception e) {
+            if(mTaskQuery.equals(mQuery)) {
+                mRemoteJob = null;
+            }
+        }
+    }
+}
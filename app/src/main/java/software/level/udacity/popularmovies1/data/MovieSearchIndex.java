@@ -0,0 +1,514 @@
+package software.level.udacity.popularmovies1.data;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * Inverted index over the title, tagline and overview of movies, so that movies which are
+ * already loaded can be searched as the user types without asking the API.
+ *
+ * Every word of a query has to match a word of the movie, either exactly, as the start of a
+ * longer word, or with a typo or two for longer words. Matches in the title count the most and
+ * matches in the overview the least. The text score is then blended with the popularity and
+ * vote average of the movie, so well known movies come first among similar matches.
+ *
+ * Movies are added one at a time as they are loaded, and adding a movie again re-indexes it if
+ * its text changed, such as when its tagline arrives with its details. Thread safe.
+ */
+public class MovieSearchIndex {
+
+    // How much a word counts depending on where in the movie it was found
+    private static final float TITLE_WEIGHT = 3f;
+    private static final float TAGLINE_WEIGHT = 2f;
+    private static final float OVERVIEW_WEIGHT = 1f;
+
+    // How much a word counts depending on how well it matched the word of the query
+    private static final float EXACT_MATCH = 1f;
+    private static final float PREFIX_MATCH = 0.75f;
+    private static final float TYPO_MATCH = 0.5f;
+
+    // Shares of the final score, adding up to 1
+    private static final float TEXT_SHARE = 0.7f;
+    private static final float POPULARITY_SHARE = 0.2f;
+    private static final float VOTE_SHARE = 0.1f;
+
+    // Query words this long may have a typo, and two typos from the second length on
+    private static final int ONE_TYPO_LENGTH = 4;
+    private static final int TWO_TYPOS_LENGTH = 8;
+
+    // Words shorter than this are not indexed unless they are numbers
+    private static final int MIN_WORD_LENGTH = 2;
+
+    // Postings of every word in sorted order, so the words starting with a prefix are a range
+    private final TreeMap<String, Postings> mWords = new TreeMap<>();
+
+    // Document of each movie by moviedb_id
+    private final HashMap<Integer, Integer> mDocuments = new HashMap<>();
+
+    // Columns of the documents
+    private int[] mIds = new int[0];
+    private float[] mPopularity = new float[0];
+    private float[] mVoteAverage = new float[0];
+    private String[][] mDocumentWords = new String[0][];
+    private int[] mTextHashes = new int[0];
+    private int mDocumentCount;
+
+    // Log of the highest popularity seen, used to bring popularity into the range 0 to 1
+    private float mMaxLogPopularity;
+
+    // Scratch space of a search, one slot per document, all zero between searches
+    private float[] mWordScores = new float[0];
+    private float[] mTextScores = new float[0];
+    private int[] mMatchedWords = new int[0];
+
+    // Scratch rows of the edit distance calculation
+    private int[] mRow = new int[0];
+    private int[] mPreviousRow = new int[0];
+    private int[] mRowBeforePrevious = new int[0];
+
+    /**
+     * Adds a movie to the index or updates it if it was added before
+     * @param movie Movie to add
+     */
+    public synchronized void add(Movie movie) {
+        Integer existing = mDocuments.get(movie.moviedb_id);
+        int document;
+
+        int textHash = textHash(movie);
+        if(existing != null) {
+            document = existing;
+
+            // Only the numbers changed, which doesn't touch the postings
+            if(mTextHashes[document] == textHash) {
+                setNumbers(document, movie);
+                return;
+            }
+
+            for(String word : mDocumentWords[document]) {
+                Postings postings = mWords.get(word);
+                postings.remove(document);
+                if(postings.mSize == 0) {
+                    mWords.remove(word);
+                }
+            }
+        } else {
+            if(mDocumentCount == mIds.length) {
+                allocate(Math.max(16, mDocumentCount * 2));
+            }
+            document = mDocumentCount++;
+            mDocuments.put(movie.moviedb_id, document);
+            mIds[document] = movie.moviedb_id;
+        }
+
+        setNumbers(document, movie);
+        mTextHashes[document] = textHash;
+
+        // Each word is posted once with the weight of the most important field it is in
+        HashMap<String, Float> weights = new HashMap<>();
+        addWords(weights, movie.title, TITLE_WEIGHT);
+        addWords(weights, movie.tagline, TAGLINE_WEIGHT);
+        addWords(weights, movie.overview, OVERVIEW_WEIGHT);
+
+        String[] documentWords = new String[weights.size()];
+        int i = 0;
+        for(Map.Entry<String, Float> entry : weights.entrySet()) {
+            Postings postings = mWords.get(entry.getKey());
+            if(postings == null) {
+                postings = new Postings();
+                mWords.put(entry.getKey(), postings);
+            }
+            postings.add(document, entry.getValue());
+            documentWords[i++] = entry.getKey();
+        }
+        mDocumentWords[document] = documentWords;
+    }
+
+    /**
+     * Number of movies in the index
+     * @return Number of movies
+     */
+    public synchronized int size() {
+        return mDocumentCount;
+    }
+
+    /**
+     * Finds the movies matching every word of the query
+     * @param query Text the user typed
+     * @param limit Maximum number of movies to return
+     * @return The moviedb_id of the matching movies, best match first
+     */
+    public synchronized int[] search(String query, int limit) {
+        ArrayList<String> queryWords = new ArrayList<>();
+        tokenize(query, queryWords, 1);
+        if(queryWords.isEmpty() || limit <= 0) {
+            return new int[0];
+        }
+
+        // Documents that matched the first word, the only ones that can match all of them
+        IntList candidates = new IntList();
+        IntList touched = new IntList();
+
+        for(int w = 0; w < queryWords.size(); w++) {
+            String queryWord = queryWords.get(w);
+            touched.mSize = 0;
+
+            scorePrefixMatches(queryWord, touched);
+            if(queryWord.length() >= ONE_TYPO_LENGTH) {
+                scoreTypoMatches(queryWord, touched);
+            }
+
+            for(int i = 0; i < touched.mSize; i++) {
+                int document = touched.mValues[i];
+
+                // Only documents that matched every word so far are kept
+                if(mMatchedWords[document] == w) {
+                    if(w == 0) {
+                        candidates.add(document);
+                    }
+                    mTextScores[document] += mWordScores[document];
+                    mMatchedWords[document]++;
+                }
+                mWordScores[document] = 0;
+            }
+        }
+
+        int[] results = topMatches(candidates, queryWords.size(), limit);
+
+        for(int i = 0; i < candidates.mSize; i++) {
+            int document = candidates.mValues[i];
+            mTextScores[document] = 0;
+            mMatchedWords[document] = 0;
+        }
+
+        return results;
+    }
+
+    /**
+     * Scores the documents containing the word or a word starting with it
+     * @param queryWord Word of the query
+     * @param touched Where documents that got a score are added
+     */
+    private void scorePrefixMatches(String queryWord, IntList touched) {
+        NavigableMap<String, Postings> matches = mWords.subMap(queryWord, true, queryWord + Character.MAX_VALUE, false);
+
+        for(Map.Entry<String, Postings> entry : matches.entrySet()) {
+            float quality = entry.getKey().length() == queryWord.length() ? EXACT_MATCH : PREFIX_MATCH;
+            score(entry.getValue(), quality, touched);
+        }
+    }
+
+    /**
+     * Scores the documents containing a word that is a typo or two away from the word. Only
+     * words with the same first letter are looked at, which keeps this fast for large indexes.
+     * @param queryWord Word of the query, at least ONE_TYPO_LENGTH long
+     * @param touched Where documents that got a score are added
+     */
+    private void scoreTypoMatches(String queryWord, IntList touched) {
+        int maxTypos = queryWord.length() >= TWO_TYPOS_LENGTH ? 2 : 1;
+        char first = queryWord.charAt(0);
+
+        NavigableMap<String, Postings> sameFirstLetter = mWords.subMap(String.valueOf(first), true,
+                first + String.valueOf(Character.MAX_VALUE), false);
+
+        for(Map.Entry<String, Postings> entry : sameFirstLetter.entrySet()) {
+            String word = entry.getKey();
+            if(Math.abs(word.length() - queryWord.length()) > maxTypos || word.startsWith(queryWord)) {
+                continue;
+            }
+
+            int typos = distance(queryWord, word, maxTypos);
+            if(typos <= maxTypos) {
+                score(entry.getValue(), TYPO_MATCH / typos, touched);
+            }
+        }
+    }
+
+    /**
+     * Keeps the best score of each document for the current query word
+     */
+    private void score(Postings postings, float quality, IntList touched) {
+        for(int i = 0; i < postings.mSize; i++) {
+            int document = postings.mDocuments[i];
+            float score = postings.mWeights[i] * quality;
+
+            if(mWordScores[document] == 0) {
+                touched.add(document);
+            }
+            if(score > mWordScores[document]) {
+                mWordScores[document] = score;
+            }
+        }
+    }
+
+    /**
+     * Blends the text scores of the documents that matched every word with their popularity
+     * and vote average and picks the best ones
+     * @param candidates Documents that matched at least the first word
+     * @param wordCount Number of words in the query
+     * @param limit Maximum number of results
+     * @return The moviedb_id of the best documents, best first
+     */
+    private int[] topMatches(IntList candidates, int wordCount, int limit) {
+        float maxTextScore = wordCount * TITLE_WEIGHT * EXACT_MATCH;
+
+        // Min-heap of the best documents so far, the worst of them at the top
+        int[] heap = new int[Math.min(limit, candidates.mSize)];
+        float[] heapScores = new float[heap.length];
+        int heapSize = 0;
+
+        for(int i = 0; i < candidates.mSize; i++) {
+            int document = candidates.mValues[i];
+            if(mMatchedWords[document] != wordCount) {
+                continue;
+            }
+
+            float popularity = mMaxLogPopularity > 0 ? mPopularity[document] / mMaxLogPopularity : 0;
+            float score = TEXT_SHARE * mTextScores[document] / maxTextScore
+                    + POPULARITY_SHARE * popularity
+                    + VOTE_SHARE * mVoteAverage[document] / 10;
+
+            if(heapSize < heap.length) {
+                heap[heapSize] = document;
+                heapScores[heapSize] = score;
+                siftUp(heap, heapScores, heapSize++);
+            } else if(score > heapScores[0]) {
+                heap[0] = document;
+                heapScores[0] = score;
+                siftDown(heap, heapScores, heapSize);
+            }
+        }
+
+        // Taking the worst off the heap each time fills the results from the back
+        int[] results = new int[heapSize];
+        for(int i = heapSize - 1; i >= 0; i--) {
+            results[i] = mIds[heap[0]];
+            heap[0] = heap[i];
+            heapScores[0] = heapScores[i];
+            siftDown(heap, heapScores, i);
+        }
+
+        return results;
+    }
+
+    private static void siftUp(int[] heap, float[] scores, int index) {
+        while(index > 0) {
+            int parent = (index - 1) / 2;
+            if(scores[parent] <= scores[index]) {
+                return;
+            }
+            swap(heap, scores, parent, index);
+            index = parent;
+        }
+    }
+
+    private static void siftDown(int[] heap, float[] scores, int size) {
+        int index = 0;
+        while(true) {
+            int smallest = index;
+            int left = index * 2 + 1;
+            int right = left + 1;
+
+            if(left < size && scores[left] < scores[smallest]) {
+                smallest = left;
+            }
+            if(right < size && scores[right] < scores[smallest]) {
+                smallest = right;
+            }
+            if(smallest == index) {
+                return;
+            }
+
+            swap(heap, scores, smallest, index);
+            index = smallest;
+        }
+    }
+
+    private static void swap(int[] heap, float[] scores, int a, int b) {
+        int document = heap[a];
+        heap[a] = heap[b];
+        heap[b] = document;
+
+        float score = scores[a];
+        scores[a] = scores[b];
+        scores[b] = score;
+    }
+
+    /**
+     * Number of single letter insertions, deletions, substitutions and swaps of neighbouring
+     * letters that turn one word into the other
+     * @param a First word
+     * @param b Second word
+     * @param max Highest distance that is of interest
+     * @return The distance, or max + 1 if it is larger than max
+     */
+    private int distance(String a, String b, int max) {
+        int columns = b.length() + 1;
+        if(mRow.length < columns) {
+            mRow = new int[columns];
+            mPreviousRow = new int[columns];
+            mRowBeforePrevious = new int[columns];
+        }
+
+        for(int j = 0; j < columns; j++) {
+            mPreviousRow[j] = j;
+        }
+
+        for(int i = 1; i <= a.length(); i++) {
+            mRow[0] = i;
+            int rowMin = i;
+
+            for(int j = 1; j < columns; j++) {
+                int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+                int value = Math.min(Math.min(mRow[j - 1] + 1, mPreviousRow[j] + 1), mPreviousRow[j - 1] + cost);
+
+                if(i > 1 && j > 1 && a.charAt(i - 1) == b.charAt(j - 2) && a.charAt(i - 2) == b.charAt(j - 1)) {
+                    value = Math.min(value, mRowBeforePrevious[j - 2] + 1);
+                }
+
+                mRow[j] = value;
+                rowMin = Math.min(rowMin, value);
+            }
+
+            // Every path through the rest of the table costs at least this much
+            if(rowMin > max) {
+                return max + 1;
+            }
+
+            int[] oldest = mRowBeforePrevious;
+            mRowBeforePrevious = mPreviousRow;
+            mPreviousRow = mRow;
+            mRow = oldest;
+        }
+
+        return Math.min(mPreviousRow[columns - 1], max + 1);
+    }
+
+    private void setNumbers(int document, Movie movie) {
+        float logPopularity = (float) Math.log1p(Math.max(0, movie.popularity));
+        mPopularity[document] = logPopularity;
+        mVoteAverage[document] = (float) movie.vote_average;
+        mMaxLogPopularity = Math.max(mMaxLogPopularity, logPopularity);
+    }
+
+    private void allocate(int capacity) {
+        mIds = Arrays.copyOf(mIds, capacity);
+        mPopularity = Arrays.copyOf(mPopularity, capacity);
+        mVoteAverage = Arrays.copyOf(mVoteAverage, capacity);
+        mDocumentWords = Arrays.copyOf(mDocumentWords, capacity);
+        mTextHashes = Arrays.copyOf(mTextHashes, capacity);
+        mWordScores = Arrays.copyOf(mWordScores, capacity);
+        mTextScores = Arrays.copyOf(mTextScores, capacity);
+        mMatchedWords = Arrays.copyOf(mMatchedWords, capacity);
+    }
+
+    private static int textHash(Movie movie) {
+        int hash = movie.title != null ? movie.title.hashCode() : 0;
+        hash = hash * 31 + (movie.tagline != null ? movie.tagline.hashCode() : 0);
+        hash = hash * 31 + (movie.overview != null ? movie.overview.hashCode() : 0);
+        return hash;
+    }
+
+    private static void addWords(HashMap<String, Float> weights, String text, float weight) {
+        if(text == null) {
+            return;
+        }
+
+        ArrayList<String> words = new ArrayList<>();
+        tokenize(text, words, MIN_WORD_LENGTH);
+
+        for(String word : words) {
+            Float existing = weights.get(word);
+            if(existing == null || existing < weight) {
+                weights.put(word, weight);
+            }
+        }
+    }
+
+    /**
+     * Splits text into lower case words without accents
+     * @param text Text to split
+     * @param words Where the distinct words are added
+     * @param minLength Words shorter than this are left out unless they are numbers
+     */
+    static void tokenize(String text, ArrayList<String> words, int minLength) {
+        String normalized = Normalizer.normalize(text, Normalizer.Form.NFD);
+        StringBuilder word = new StringBuilder();
+        boolean digits = true;
+
+        for(int i = 0; i <= normalized.length(); i++) {
+            char c = i < normalized.length() ? normalized.charAt(i) : ' ';
+
+            // Accents are separate marks after decomposing, dropping them leaves the plain letter
+            if(Character.getType(c) == Character.NON_SPACING_MARK) {
+                continue;
+            }
+
+            if(Character.isLetterOrDigit(c)) {
+                word.append(Character.toLowerCase(c));
+                digits &= Character.isDigit(c);
+                continue;
+            }
+
+            if(word.length() >= minLength || (word.length() > 0 && digits)) {
+                String finished = word.toString();
+                if(!words.contains(finished)) {
+                    words.add(finished);
+                }
+            }
+            word.setLength(0);
+            digits = true;
+        }
+    }
+
+    /**
+     * The documents a word is in along with the weight of the word in each
+     */
+    private static final class Postings {
+
+        int[] mDocuments = new int[2];
+        float[] mWeights = new float[2];
+        int mSize;
+
+        void add(int document, float weight) {
+            if(mSize == mDocuments.length) {
+                mDocuments = Arrays.copyOf(mDocuments, mSize * 2);
+                mWeights = Arrays.copyOf(mWeights, mSize * 2);
+            }
+            mDocuments[mSize] = document;
+            mWeights[mSize] = weight;
+            mSize++;
+        }
+
+        void remove(int document) {
+            for(int i = 0; i < mSize; i++) {
+                if(mDocuments[i] == document) {
+                    mSize--;
+                    mDocuments[i] = mDocuments[mSize];
+                    mWeights[i] = mWeights[mSize];
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Growable array of ints
+     */
+    private static final class IntList {
+
+        int[] mValues = new int[16];
+        int mSize;
+
+        void add(int value) {
+            if(mSize == mValues.length) {
+                mValues = Arrays.copyOf(mValues, mSize * 2);
+            }
+            mValues[mSize++] = value;
+        }
+    }
+}
@@ -0,0 +1,264 @@
+package software.level.udacity.popularmovies1.data;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import software.level.udacity.popularmovies1.utilities.MovieRequestType;
+
+/**
+ * Keeps the last list of movies that was loaded for each request type in a small binary file
+ * so that the grid can be shown on a cold start before anything has come back from the
+ * network. A snapshot is a single page, so it is read into memory with one read and parsed
+ * from there, which has to happen off the main thread. Snapshots are written to a temporary
+ * file that is renamed over the old snapshot so a crash part way through a write leaves the
+ * previous snapshot in place.
+ */
+public class MovieSnapshotStore {
+
+    // Identifies a snapshot file, "PMSN"
+    private static final int MAGIC = 0x504D534E;
+
+    // Bumped whenever the layout of the file changes, older files are ignored
+    private static final int VERSION = 1;
+
+    // Written instead of a length for null strings
+    private static final int NULL_STRING = -1;
+
+    // Smallest number of bytes a movie can take up, the numbers plus seven null strings
+    private static final int MIN_MOVIE_BYTES = 4 + 8 + 8 + 4 + 4 + 7 * 4;
+
+    private static final String SNAPSHOT_SUFFIX = ".snapshot";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    // Directory the snapshots are kept in
+    private final File mDirectory;
+
+    /**
+     * Create a new MovieSnapshotStore
+     * @param directory Directory the snapshots are kept in, created when the first one is written
+     */
+    public MovieSnapshotStore(File directory) {
+        mDirectory = directory;
+    }
+
+    /**
+     * Reads the snapshot for the request type. Reads from disk, so don't call it on the main
+     * thread.
+     * @param requestType List that doesn't belong to a movie, such as POPULAR
+     * @return The page that was saved, or null if there is no usable snapshot
+     */
+    public MoviePage read(MovieRequestType requestType) {
+        File file = snapshotFile(requestType);
+        if(!file.isFile()) {
+            return null;
+        }
+
+        ByteBuffer buffer;
+        RandomAccessFile randomAccessFile = null;
+        try {
+            randomAccessFile = new RandomAccessFile(file, "r");
+            byte[] bytes = new byte[(int) randomAccessFile.length()];
+            randomAccessFile.readFully(bytes);
+            buffer = ByteBuffer.wrap(bytes);
+        } catch (IOException e) {
+            return null;
+        } finally {
+            closeQuietly(randomAccessFile);
+        }
+
+        try {
+            return readPage(buffer);
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            // Truncated or damaged, a new snapshot is written after the next successful load
+            file.delete();
+            return null;
+        }
+    }
+
+    /**
+     * Replaces the snapshot for the request type
+     * @param requestType List that doesn't belong to a movie, such as POPULAR
+     * @param page Page to save
+     * @throws IOException If the snapshot could not be written, the old snapshot is kept
+     */
+    public void write(MovieRequestType requestType, MoviePage page) throws IOException {
+        if(!mDirectory.isDirectory() && !mDirectory.mkdirs()) {
+            throw new IOException("Could not create " + mDirectory);
+        }
+
+        File file = snapshotFile(requestType);
+        File tempFile = new File(mDirectory, file.getName() + TEMP_SUFFIX);
+
+        FileOutputStream fileOut = new FileOutputStream(tempFile);
+        boolean written = false;
+        try {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fileOut));
+            writePage(out, page);
+            out.flush();
+
+            // Make sure the bytes are on disk before the rename makes them the snapshot
+            fileOut.getFD().sync();
+            written = true;
+        } finally {
+            closeQuietly(fileOut);
+            if(!written) {
+                tempFile.delete();
+            }
+        }
+
+        if(!tempFile.renameTo(file)) {
+            tempFile.delete();
+            throw new IOException("Could not replace " + file);
+        }
+    }
+
+    /**
+     * Deletes the snapshot for the request type
+     * @param requestType List that doesn't belong to a movie, such as POPULAR
+     */
+    public void delete(MovieRequestType requestType) {
+        snapshotFile(requestType).delete();
+    }
+
+    /**
+     * File that holds the snapshot for the request type
+     * @param requestType List that doesn't belong to a movie, such as POPULAR
+     * @return The snapshot file
+     */
+    private File snapshotFile(MovieRequestType requestType) {
+        return new File(mDirectory, requestType.name().toLowerCase(Locale.US) + SNAPSHOT_SUFFIX);
+    }
+
+    /**
+     * Writes the page in the snapshot layout
+     * @param out Stream to write to
+     * @param page Page to write
+     */
+    private static void writePage(DataOutputStream out, MoviePage page) throws IOException {
+        List<Movie> movies = page.movies;
+
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(page.page);
+        out.writeInt(page.total_pages);
+        out.writeInt(movies.size());
+
+        for(Movie movie : movies) {
+            out.writeInt(movie.moviedb_id);
+            out.writeDouble(movie.popularity);
+            out.writeDouble(movie.vote_average);
+            out.writeInt(movie.vote_count);
+            out.writeInt(movie.runtime);
+            writeString(out, movie.title);
+            writeString(out, movie.poster_path);
+            writeString(out, movie.backdrop_path);
+            writeString(out, movie.release_date);
+            writeString(out, movie.overview);
+            writeString(out, movie.tagline);
+            writeString(out, movie.homepage);
+        }
+    }
+
+    /**
+     * Reads a page that was written by writePage
+     * @param buffer Contents of the snapshot file
+     * @return The page
+     * @throws IllegalArgumentException If the snapshot isn't one this version can read
+     */
+    private static MoviePage readPage(ByteBuffer buffer) {
+        if(buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+            throw new IllegalArgumentException("Not a snapshot this version can read");
+        }
+
+        MoviePage page = new MoviePage();
+        page.page = buffer.getInt();
+        page.total_pages = buffer.getInt();
+
+        int count = buffer.getInt();
+        // A count that can't fit in the rest of the file means the file is damaged
+        if(count < 0 || count > buffer.remaining() / MIN_MOVIE_BYTES) {
+            throw new IllegalArgumentException("Bad movie count " + count);
+        }
+
+        page.movies = new ArrayList<>(count);
+
+        for(int i = 0; i < count; i++) {
+            Movie movie = new Movie();
+            movie.moviedb_id = buffer.getInt();
+            movie.popularity = buffer.getDouble();
+            movie.vote_average = buffer.getDouble();
+            movie.vote_count = buffer.getInt();
+            movie.runtime = buffer.getInt();
+            movie.title = readString(buffer);
+            movie.poster_path = readString(buffer);
+            movie.backdrop_path = readString(buffer);
+            movie.release_date = readString(buffer);
+            movie.overview = readString(buffer);
+            movie.tagline = readString(buffer);
+            movie.homepage = readString(buffer);
+            page.movies.add(movie);
+        }
+
+        return page;
+    }
+
+    /**
+     * Writes a length prefixed UTF-8 string. DataOutputStream.writeUTF() is not used because
+     * it can't write strings longer than 64K and isn't quite UTF-8.
+     * @param out Stream to write to
+     * @param value String to write, may be null
+     */
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if(value == null) {
+            out.writeInt(NULL_STRING);
+            return;
+        }
+
+        byte[] bytes = value.getBytes(UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Reads a string that was written by writeString
+     * @param buffer Buffer positioned at the string
+     * @return The string, may be null
+     */
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if(length == NULL_STRING) {
+            return null;
+        }
+        if(length < 0 || length > buffer.remaining()) {
+            throw new IllegalArgumentException("Bad string length " + length);
+        }
+
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, UTF_8);
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if(closeable == null) {
+            return;
+        }
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            // Nothing useful to do, the data has already been read or written
+        }
+    }
+}
@@ -0,0 +1,445 @@
+package software.level.udacity.popularmovies1.data;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Column oriented store for a list of movies. The numeric fields are kept in primitive arrays
+ * and the text in one String array per field. This keeps thousands of movies in a fraction of
+ * the memory that the same number of Movie objects would take, and sorting or filtering becomes
+ * a scan over a primitive array.
+ *
+ * Rows keep the order the movies were added in. Adding a movie that is already in the table
+ * updates its row instead of adding a new one.
+ *
+ * A MovieTable is not thread safe. Copies share the String instances but none of the arrays.
+ */
+public class MovieTable {
+
+    private static final int DEFAULT_CAPACITY = 20;
+
+    private int mSize;
+
+    // Incremented every time an existing row is overwritten with different sortable values
+    private int mUpdateCount;
+
+    private int[] mIds;
+    private double[] mPopularity;
+    private double[] mVoteAverage;
+    private int[] mVoteCount;
+    private int[] mRuntime;
+
+    // Text is nearly always unique to each movie, so it is stored as is rather than pooled
+    private String[] mPosterPath;
+    private String[] mBackdropPath;
+    private String[] mReleaseDate;
+    private String[] mTitle;
+    private String[] mTagline;
+    private String[] mOverview;
+    private String[] mHomepage;
+
+    // Open addressing hash table from moviedb_id to row + 1, zero marks an empty slot
+    private int[] mIndexKeys;
+    private int[] mIndexRows;
+
+    /**
+     * Create an empty MovieTable
+     */
+    public MovieTable() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Create an empty MovieTable with room for the given number of movies
+     * @param capacity Number of movies the table can hold before it has to grow
+     */
+    public MovieTable(int capacity) {
+        allocate(Math.max(capacity, 1));
+        mIndexKeys = new int[indexCapacityFor(capacity)];
+        mIndexRows = new int[mIndexKeys.length];
+    }
+
+    /**
+     * Create a MovieTable holding the given movies
+     * @param movies Movies to add to the table
+     * @return The new table
+     */
+    public static MovieTable of(List<Movie> movies) {
+        MovieTable table = new MovieTable(movies.size());
+        table.addAll(movies);
+        return table;
+    }
+
+    /**
+     * Number of movies in the table
+     * @return The number of rows
+     */
+    public int size() {
+        return mSize;
+    }
+
+    /**
+     * Checks if the table has any movies
+     * @return True if there are no rows
+     */
+    public boolean isEmpty() {
+        return mSize == 0;
+    }
+
+    /**
+     * Adds the movie to the end of the table, or updates its row if it is already in the table
+     * @param movie Movie to add
+     * @return The row that holds the movie
+     */
+    public int add(Movie movie) {
+        int row = indexOf(movie.moviedb_id);
+
+        if(row == -1) {
+            if(mSize == mIds.length) {
+                allocate(mSize * 2);
+            }
+            row = mSize++;
+            putIndex(movie.moviedb_id, row);
+        } else if(valuesChanged(row, movie)) {
+            mUpdateCount++;
+        }
+
+        set(row, movie);
+        return row;
+    }
+
+    /**
+     * Adds every movie in the list
+     * @param movies Movies to add
+     * @return The number of movies that were not already in the table
+     */
+    public int addAll(List<Movie> movies) {
+        int sizeBefore = mSize;
+        for(int i = 0; i < movies.size(); i++) {
+            add(movies.get(i));
+        }
+        return mSize - sizeBefore;
+    }
+
+    /**
+     * Adds every row of another table
+     * @param table Table to add the movies of
+     * @return The number of movies that were not already in this table
+     */
+    public int addAll(MovieTable table) {
+        int sizeBefore = mSize;
+        Movie movie = new Movie();
+        for(int row = 0; row < table.size(); row++) {
+            add(table.read(row, movie));
+        }
+        return mSize - sizeBefore;
+    }
+
+    /**
+     * Number of times a row has been overwritten with a different popularity, vote average, vote
+     * count or release date since the table was created. Anything derived
+     * from the values of the rows, such as a sort order, is out of date once this changes.
+     * @return The update count
+     */
+    public int getUpdateCount() {
+        return mUpdateCount;
+    }
+
+    /**
+     * Finds the row of a movie
+     * @param moviedbId Movie Database id of the movie
+     * @return The row of the movie or -1 if it isn't in the table
+     */
+    public int indexOf(int moviedbId) {
+        int mask = mIndexKeys.length - 1;
+        int slot = hash(moviedbId) & mask;
+
+        while(mIndexRows[slot] != 0) {
+            if(mIndexKeys[slot] == moviedbId) {
+                return mIndexRows[slot] - 1;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        return -1;
+    }
+
+    /**
+     * Checks if a movie is in the table
+     * @param moviedbId Movie Database id of the movie
+     * @return True if the movie has a row
+     */
+    public boolean contains(int moviedbId) {
+        return indexOf(moviedbId) != -1;
+    }
+
+    public int getId(int row) {
+        return mIds[row];
+    }
+
+    public double getPopularity(int row) {
+        return mPopularity[row];
+    }
+
+    public double getVoteAverage(int row) {
+        return mVoteAverage[row];
+    }
+
+    public int getVoteCount(int row) {
+        return mVoteCount[row];
+    }
+
+    public int getRuntime(int row) {
+        return mRuntime[row];
+    }
+
+    public String getPosterPath(int row) {
+        return mPosterPath[row];
+    }
+
+    public String getBackdropPath(int row) {
+        return mBackdropPath[row];
+    }
+
+    public String getReleaseDate(int row) {
+        return mReleaseDate[row];
+    }
+
+    public String getTitle(int row) {
+        return mTitle[row];
+    }
+
+    public String getTagline(int row) {
+        return mTagline[row];
+    }
+
+    public String getOverview(int row) {
+        return mOverview[row];
+    }
+
+    public String getHomepage(int row) {
+        return mHomepage[row];
+    }
+
+    /**
+     * Fills a reusable Movie with the data in a row. Lets callers such as the adapter look at
+     * a row as a Movie without allocating a new object for every row.
+     * @param row Row to read
+     * @param movie Movie to fill, its previous values are overwritten
+     * @return The movie that was passed in
+     */
+    public Movie read(int row, Movie movie) {
+        movie.moviedb_id = mIds[row];
+        movie.popularity = mPopularity[row];
+        movie.vote_average = mVoteAverage[row];
+        movie.vote_count = mVoteCount[row];
+        movie.runtime = mRuntime[row];
+        movie.poster_path = mPosterPath[row];
+        movie.backdrop_path = mBackdropPath[row];
+        movie.release_date = mReleaseDate[row];
+        movie.title = mTitle[row];
+        movie.tagline = mTagline[row];
+        movie.overview = mOverview[row];
+        movie.homepage = mHomepage[row];
+        return movie;
+    }
+
+    /**
+     * Creates a new Movie holding the data in a row
+     * @param row Row to read
+     * @return A Movie that is not connected to the table
+     */
+    public Movie get(int row) {
+        return read(row, new Movie());
+    }
+
+    /**
+     * Creates new Movie objects for every row
+     * @return The movies in row order
+     */
+    public ArrayList<Movie> toList() {
+        ArrayList<Movie> movies = new ArrayList<>(mSize);
+        for(int row = 0; row < mSize; row++) {
+            movies.add(get(row));
+        }
+        return movies;
+    }
+
+    /**
+     * Creates a copy of the table that can be changed independently
+     * @return The copy
+     */
+    public MovieTable copy() {
+        MovieTable copy = new MovieTable(mSize);
+        copy.mSize = mSize;
+
+        System.arraycopy(mIds, 0, copy.mIds, 0, mSize);
+        System.arraycopy(mPopularity, 0, copy.mPopularity, 0, mSize);
+        System.arraycopy(mVoteAverage, 0, copy.mVoteAverage, 0, mSize);
+        System.arraycopy(mVoteCount, 0, copy.mVoteCount, 0, mSize);
+        System.arraycopy(mRuntime, 0, copy.mRuntime, 0, mSize);
+        System.arraycopy(mPosterPath, 0, copy.mPosterPath, 0, mSize);
+        System.arraycopy(mBackdropPath, 0, copy.mBackdropPath, 0, mSize);
+        System.arraycopy(mReleaseDate, 0, copy.mReleaseDate, 0, mSize);
+        System.arraycopy(mTitle, 0, copy.mTitle, 0, mSize);
+        System.arraycopy(mTagline, 0, copy.mTagline, 0, mSize);
+        System.arraycopy(mOverview, 0, copy.mOverview, 0, mSize);
+        System.arraycopy(mHomepage, 0, copy.mHomepage, 0, mSize);
+
+        copy.mIndexKeys = mIndexKeys.clone();
+        copy.mIndexRows = mIndexRows.clone();
+
+        return copy;
+    }
+
+    /**
+     * Creates a new table holding the given rows in the given order
+     * @param rows Rows of this table to copy
+     * @return The new table
+     */
+    public MovieTable select(int[] rows) {
+        MovieTable selection = new MovieTable(rows.length);
+
+        for(int row : rows) {
+            int target = selection.mSize++;
+
+            selection.mIds[target] = mIds[row];
+            selection.mPopularity[target] = mPopularity[row];
+            selection.mVoteAverage[target] = mVoteAverage[row];
+            selection.mVoteCount[target] = mVoteCount[row];
+            selection.mRuntime[target] = mRuntime[row];
+            selection.mPosterPath[target] = mPosterPath[row];
+            selection.mBackdropPath[target] = mBackdropPath[row];
+            selection.mReleaseDate[target] = mReleaseDate[row];
+            selection.mTitle[target] = mTitle[row];
+            selection.mTagline[target] = mTagline[row];
+            selection.mOverview[target] = mOverview[row];
+            selection.mHomepage[target] = mHomepage[row];
+
+            selection.putIndex(mIds[row], target);
+        }
+
+        return selection;
+    }
+
+    /**
+     * Checks if writing the movie into the row would change any of the values that the rows
+     * can be sorted or filtered by
+     * @param row Row holding the movie
+     * @param movie New data for the movie
+     * @return True if a sortable value is different
+     */
+    private boolean valuesChanged(int row, Movie movie) {
+        String releaseDate = mReleaseDate[row];
+
+        return mPopularity[row] != movie.popularity
+                || mVoteAverage[row] != movie.vote_average
+                || mVoteCount[row] != movie.vote_count
+                || (releaseDate == null ? movie.release_date != null : !releaseDate.equals(movie.release_date));
+    }
+
+    /**
+     * Writes a movie into a row
+     * @param row Row to write
+     * @param movie Movie holding the data
+     */
+    private void set(int row, Movie movie) {
+        mIds[row] = movie.moviedb_id;
+        mPopularity[row] = movie.popularity;
+        mVoteAverage[row] = movie.vote_average;
+        mVoteCount[row] = movie.vote_count;
+        mRuntime[row] = movie.runtime;
+        mPosterPath[row] = movie.poster_path;
+        mBackdropPath[row] = movie.backdrop_path;
+        mReleaseDate[row] = movie.release_date;
+        mTitle[row] = movie.title;
+        mTagline[row] = movie.tagline;
+        mOverview[row] = movie.overview;
+        mHomepage[row] = movie.homepage;
+    }
+
+    /**
+     * Grows the columns to the given capacity, keeping the existing rows
+     * @param capacity Number of rows the columns can hold
+     */
+    private void allocate(int capacity) {
+        if(mIds == null) {
+            mIds = new int[capacity];
+            mPopularity = new double[capacity];
+            mVoteAverage = new double[capacity];
+            mVoteCount = new int[capacity];
+            mRuntime = new int[capacity];
+            mPosterPath = new String[capacity];
+            mBackdropPath = new String[capacity];
+            mReleaseDate = new String[capacity];
+            mTitle = new String[capacity];
+            mTagline = new String[capacity];
+            mOverview = new String[capacity];
+            mHomepage = new String[capacity];
+            return;
+        }
+
+        mIds = Arrays.copyOf(mIds, capacity);
+        mPopularity = Arrays.copyOf(mPopularity, capacity);
+        mVoteAverage = Arrays.copyOf(mVoteAverage, capacity);
+        mVoteCount = Arrays.copyOf(mVoteCount, capacity);
+        mRuntime = Arrays.copyOf(mRuntime, capacity);
+        mPosterPath = Arrays.copyOf(mPosterPath, capacity);
+        mBackdropPath = Arrays.copyOf(mBackdropPath, capacity);
+        mReleaseDate = Arrays.copyOf(mReleaseDate, capacity);
+        mTitle = Arrays.copyOf(mTitle, capacity);
+        mTagline = Arrays.copyOf(mTagline, capacity);
+        mOverview = Arrays.copyOf(mOverview, capacity);
+        mHomepage = Arrays.copyOf(mHomepage, capacity);
+    }
+
+    /**
+     * Adds a moviedb_id to the index, growing the index once it is half full
+     * @param moviedbId Movie Database id of the movie
+     * @param row Row holding the movie
+     */
+    private void putIndex(int moviedbId, int row) {
+        if(mSize * 2 > mIndexKeys.length) {
+            int[] oldKeys = mIndexKeys;
+            int[] oldRows = mIndexRows;
+
+            mIndexKeys = new int[oldKeys.length * 2];
+            mIndexRows = new int[oldKeys.length * 2];
+
+            for(int slot = 0; slot < oldKeys.length; slot++) {
+                if(oldRows[slot] != 0) {
+                    insertIndex(oldKeys[slot], oldRows[slot]);
+                }
+            }
+        }
+
+        insertIndex(moviedbId, row + 1);
+    }
+
+    private void insertIndex(int key, int rowPlusOne) {
+        int mask = mIndexKeys.length - 1;
+        int slot = hash(key) & mask;
+
+        while(mIndexRows[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+
+        mIndexKeys[slot] = key;
+        mIndexRows[slot] = rowPlusOne;
+    }
+
+    private static int indexCapacityFor(int rows) {
+        int capacity = 16;
+        while(capacity < rows * 2) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    private static int hash(int key) {
+        // Spread sequential ids across the table
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,67 @@
+package software.level.udacity.popularmovies1.data;
+
+import android.content.Context;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+
+import software.level.udacity.popularmovies1.utilities.MovieRequestType;
+import software.level.udacity.popularmovies1.utilities.NetworkUtils;
+
+/**
+ * Loads movie data from The Movie Database API, parsing the responses as they stream in.
+ */
+public class NetworkMovieDataSource implements MovieRepository.DataSource {
+
+    // The custom URL builder requires a context to be able to pull the api key from the strings
+    private final Context mContext;
+
+    /**
+     * Create a new NetworkMovieDataSource
+     * @param context Context used to build the request URLs
+     */
+    public NetworkMovieDataSource(Context context) {
+        mContext = context.getApplicationContext();
+    }
+
+    @Override
+    public MoviePage fetchMoviePage(MovieRequestType requestType, int movieId, int page) throws IOException {
+        URL requestURL = NetworkUtils.buildPageURL(mContext, requestType, movieId, page);
+        return fetch(requestURL, requestType);
+    }
+
+    @Override
+    public MoviePage searchMovies(String query, int page) throws IOException {
+        URL requestURL = NetworkUtils.buildSearchURL(mContext, query, page);
+        return fetch(requestURL, MovieRequestType.SEARCH);
+    }
+
+    @Override
+    public Movie fetchMovieDetails(int id) throws IOException {
+        URL requestURL = NetworkUtils.buildURL(mContext, MovieRequestType.DETAILS, id);
+        MoviePage moviePage = fetch(requestURL, MovieRequestType.DETAILS);
+
+        if(moviePage.movies.isEmpty()) {
+            throw new IOException("No details returned for movie " + id);
+        }
+
+        return moviePage.movies.get(0);
+    }
+
+    /**
+     * Execute the API call and parse the JSON data into a page of Movie objects
+     * @param requestURL URL to request
+     * @param requestType MovieDB request type
+     * @return Parsed page of movies
+     */
+    private MoviePage fetch(URL requestURL, final MovieRequestType requestType) throws IOException {
+        return NetworkUtils.getResponseFromHttpUrl(requestURL,
+                new NetworkUtils.ResponseHandler<MoviePage>() {
+                    @Override
+                    public MoviePage handleResponse(InputStream in) throws IOException {
+                        return MovieParser.parseMoviePage(in, requestType);
+                    }
+                });
+    }
+}
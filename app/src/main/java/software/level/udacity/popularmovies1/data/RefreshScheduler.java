@@ -0,0 +1,303 @@
+package software.level.udacity.popularmovies1.data;
+
+import android.content.Context;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Random;
+
+import software.level.udacity.popularmovies1.utilities.CancellationToken;
+import software.level.udacity.popularmovies1.utilities.MovieRequestType;
+import software.level.udacity.popularmovies1.utilities.TaskScheduler;
+
+/**
+ * Keeps the lists that are looked at fresh without making anyone wait for them. Screens keep
+ * showing the pages that were loaded, however old, and ask this to revalidate the list. Pages
+ * older than the time to live of their list are loaded again in the background and swapped in
+ * through the repository, which hands the refreshed list to everyone observing it.
+ *
+ * Pages that go stale close together are refreshed in a single batch, one request after
+ * another in the prefetch lane. The batch is queued with the batch window as its delay, so no
+ * worker is taken up while the pages are collected. When a refresh fails nothing is refreshed for a while, twice
+ * as long after every failure in a row and with some randomness so that many devices coming
+ * back online at once don't all retry at the same moment.
+ */
+public class RefreshScheduler {
+
+    private static final long MINUTE_MILLIS = 60 * 1000;
+    private static final long HOUR_MILLIS = 60 * MINUTE_MILLIS;
+
+    // How long stale pages are collected before the batch that refreshes them starts
+    private static final long DEFAULT_BATCH_WINDOW_MILLIS = 500;
+
+    // Time nothing is refreshed after the first failure, doubled after every failure after it
+    private static final long MIN_BACKOFF_MILLIS = 30 * 1000;
+
+    // Longest time nothing is refreshed after failures
+    private static final long MAX_BACKOFF_MILLIS = 30 * MINUTE_MILLIS;
+
+    private static RefreshScheduler sInstance;
+
+    private final MovieRepository mRepository;
+    private final TaskScheduler mScheduler;
+    private final TaskScheduler.Clock mClock;
+    private final Random mRandom;
+    private final long mBatchWindowMillis;
+
+    // Pages waiting to be refreshed in the order they went stale, keyed by page, guarded by this
+    private final LinkedHashMap<String, StalePage> mPending = new LinkedHashMap<>();
+
+    // The batch that is collecting or refreshing pages, null if there is none, guarded by this
+    private TaskScheduler.Job mBatchJob;
+
+    // Key of the page the batch is refreshing, which is stale until it is done, guarded by this
+    private String mRefreshingKey;
+
+    // Refreshes that failed in a row and when refreshing may be tried again, guarded by this
+    private int mFailures;
+    private long mRetryAt;
+
+    // Cancels every batch that was started, replaced by cancelAll, guarded by this
+    private CancellationToken mToken = new CancellationToken();
+
+    /**
+     * Get the shared scheduler
+     * @param context Context used to create the scheduler the first time
+     * @return The shared scheduler
+     */
+    public static synchronized RefreshScheduler getInstance(Context context) {
+        if(sInstance == null) {
+            sInstance = new RefreshScheduler(MovieRepository.getInstance(context), TaskScheduler.getInstance(),
+                    TaskScheduler.SYSTEM_CLOCK, new Random(), DEFAULT_BATCH_WINDOW_MILLIS);
+        }
+        return sInstance;
+    }
+
+    /**
+     * Create a new RefreshScheduler
+     * @param repository Repository the lists are refreshed in, must use the same clock
+     * @param scheduler Scheduler the batches run on
+     * @param clock Source of time for the backoff, the scheduler's clock times the batch window
+     * @param random Source of the randomness added to the backoff
+     * @param batchWindowMillis How long stale pages are collected before they are refreshed
+     */
+    public RefreshScheduler(MovieRepository repository, TaskScheduler scheduler, TaskScheduler.Clock clock,
+                            Random random, long batchWindowMillis) {
+        mRepository = repository;
+        mScheduler = scheduler;
+        mClock = clock;
+        mRandom = random;
+        mBatchWindowMillis = batchWindowMillis;
+    }
+
+    /**
+     * How long the first page of a list is fresh for. Later pages stay fresh that many times
+     * longer, the second page twice as long and so on, since they are seen less and the movies
+     * on them change less.
+     * @param requestType Any list request type
+     * @return Time to live in milliseconds
+     */
+    public static long getTimeToLive(MovieRequestType requestType) {
+        switch(requestType) {
+            case POPULAR:
+                return 15 * MINUTE_MILLIS;
+
+            case NOW_PLAYING:
+            case UPCOMING:
+                return HOUR_MILLIS;
+
+            case TOP_RATED:
+                return 6 * HOUR_MILLIS;
+
+            default:
+                return 12 * HOUR_MILLIS;
+        }
+    }
+
+    /**
+     * Refreshes the stale pages of the list in the background. The pages that are loaded can
+     * be shown as they are in the meantime. Does nothing while backing off after failures.
+     * @param requestType Any list request type
+     * @param movieId Id of the movie the list belongs to, ignored by lists that don't need one
+     * @return Number of pages that were added to the batch
+     */
+    public synchronized int revalidate(MovieRequestType requestType, int movieId) {
+        if(!requestType.isList() || requestType == MovieRequestType.SEARCH) {
+            throw new IllegalArgumentException(requestType + " is not a list that can be refreshed");
+        }
+
+        if(mClock.uptimeMillis() < mRetryAt) {
+            return 0;
+        }
+
+        int id = requestType.needsMovieId() ? movieId : 0;
+        long timeToLive = getTimeToLive(requestType);
+        int added = 0;
+
+        int pages = mRepository.getLoadedPageCount(requestType, id);
+        for(int page = 1; page <= pages; page++) {
+            long age = mRepository.getPageAge(requestType, id, page);
+            if(age < timeToLive * page) {
+                continue;
+            }
+
+            StalePage stale = new StalePage(requestType, id, page);
+            if(!mPending.containsKey(stale.mKey) && !stale.mKey.equals(mRefreshingKey)) {
+                mPending.put(stale.mKey, stale);
+                added++;
+            }
+        }
+
+        if(!mPending.isEmpty() && mBatchJob == null) {
+            mBatchJob = mScheduler.submitDelayed(TaskScheduler.Priority.PREFETCH, mToken, new BatchTask(mToken),
+                    mBatchWindowMillis);
+        }
+
+        return added;
+    }
+
+    /**
+     * Drops the pages waiting to be refreshed and cancels the batch that is running
+     */
+    public synchronized void cancelAll() {
+        mPending.clear();
+        mBatchJob = null;
+        mRefreshingKey = null;
+        mToken.cancel();
+        mToken = new CancellationToken();
+    }
+
+    /**
+     * Number of pages waiting to be refreshed
+     * @return Number of stale pages
+     */
+    public synchronized int getPendingCount() {
+        return mPending.size();
+    }
+
+    /**
+     * Time until refreshing is tried again after failures
+     * @return Milliseconds left to wait, 0 if refreshes aren't being held back
+     */
+    public synchronized long getBackoffRemaining() {
+        return Math.max(0, mRetryAt - mClock.uptimeMillis());
+    }
+
+    /**
+     * Takes the next page out of the batch. Once the batch is empty the batch is over, so the
+     * next stale page starts a new one.
+     * @param token Token the batch was started with
+     * @return The page to refresh, or null if the batch is over
+     */
+    private synchronized StalePage takeNext(CancellationToken token) {
+        // Everything was cancelled, the batch is no longer the current one
+        if(token != mToken) {
+            return null;
+        }
+
+        Iterator<StalePage> iterator = mPending.values().iterator();
+        if(!iterator.hasNext()) {
+            mBatchJob = null;
+            mRefreshingKey = null;
+            return null;
+        }
+
+        StalePage page = iterator.next();
+        iterator.remove();
+        mRefreshingKey = page.mKey;
+        return page;
+    }
+
+    /**
+     * Notes that refreshing works again
+     * @param token Token the batch was started with
+     */
+    private synchronized void onPageRefreshed(CancellationToken token) {
+        if(token == mToken) {
+            mFailures = 0;
+        }
+    }
+
+    /**
+     * Ends the batch after a refresh failed and stops refreshing for a while
+     * @param token Token the batch was started with
+     */
+    private synchronized void onBatchFailed(CancellationToken token) {
+        if(token != mToken) {
+            return;
+        }
+
+        // The pages are still stale, so they are found again once the backoff is over
+        mPending.clear();
+        mBatchJob = null;
+        mRefreshingKey = null;
+        mFailures++;
+        mRetryAt = mClock.uptimeMillis() + getBackoff(mFailures);
+    }
+
+    /**
+     * Picks how long to wait after failures. Half of the time grows with every failure, the
+     * other half is random so that retries spread out.
+     * @param failures Number of failures in a row, at least 1
+     * @return Milliseconds to wait
+     */
+    private long getBackoff(int failures) {
+        long limit = MIN_BACKOFF_MILLIS << Math.min(failures - 1, 16);
+        limit = Math.min(limit, MAX_BACKOFF_MILLIS);
+        return limit / 2 + (long) (mRandom.nextDouble() * (limit / 2));
+    }
+
+    /**
+     * A page of a list that is due to be refreshed
+     */
+    private static final class StalePage {
+
+        final MovieRequestType mRequestType;
+        final int mMovieId;
+        final int mPage;
+        final String mKey;
+
+        StalePage(MovieRequestType requestType, int movieId, int page) {
+            mRequestType = requestType;
+            mMovieId = movieId;
+            mPage = page;
+            mKey = requestType.name() + "/" + movieId + "#" + page;
+        }
+    }
+
+    /**
+     * Runs once the batch window has closed and refreshes pages one after another until there
+     * are none left, including pages that went stale while the batch was running
+     */
+    private final class BatchTask extends TaskScheduler.Task<Void> {
+
+        private final CancellationToken mStartToken;
+
+        BatchTask(CancellationToken startToken) {
+            mStartToken = startToken;
+        }
+
+        @Override
+        protected Void doInBackground(CancellationToken token) throws IOException {
+            StalePage page;
+            while((page = takeNext(mStartToken)) != null) {
+                CancellationToken.throwIfCurrentCancelled();
+                mRepository.refreshPage(page.mRequestType, page.mMovieId, page.mPage);
+                onPageRefreshed(mStartToken);
+            }
+
+            return null;
+        }
+
+        /**
+         * The pages that weren't refreshed keep being shown as they are, and are refreshed
+         * once the backoff is over
+         * @param e The exception thrown by the background task
+         */
+        @Override
+        protected void onError(Exception e) {
+            onBatchFailed(mStartToken);
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package software.level.udacity.popularmovies1.utilities;
+
+import android.graphics.Bitmap;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+
+/**
+ * Keeps bitmaps that are no longer shown anywhere so that the next poster of the same size can
+ * be decoded into one of them instead of allocating a new bitmap. Posters of one image size all
+ * have the same dimensions, so while scrolling the grid almost every decode can reuse a bitmap.
+ *
+ * Bitmaps are matched on exact width, height and config, which is what BitmapFactory requires
+ * for reuse before KitKat.
+ */
+public class BitmapPool {
+
+    // Maximum number of bytes of bitmaps kept in the pool
+    private final int mMaxSize;
+
+    // Pooled bitmaps grouped by dimensions and config, guarded by this
+    private final HashMap<String, ArrayDeque<Bitmap>> mBitmaps = new HashMap<>();
+
+    // Pooled bitmaps in the order they were added, the oldest is dropped first, guarded by this.
+    // Bitmaps compare by identity, so removing one is a hash lookup.
+    private final LinkedHashSet<Bitmap> mOrder = new LinkedHashSet<>();
+
+    // Guarded by this
+    private int mSize;
+    private int mHitCount;
+    private int mMissCount;
+
+    /**
+     * Create a new BitmapPool
+     * @param maxSize Maximum number of bytes of bitmaps kept in the pool
+     */
+    public BitmapPool(int maxSize) {
+        mMaxSize = maxSize;
+    }
+
+    /**
+     * Takes a bitmap with the given dimensions out of the pool
+     * @param width Width of the bitmap
+     * @param height Height of the bitmap
+     * @param config Config of the bitmap
+     * @return A mutable bitmap nobody else is using, or null if the pool doesn't have one
+     */
+    public synchronized Bitmap get(int width, int height, Bitmap.Config config) {
+        ArrayDeque<Bitmap> bitmaps = mBitmaps.get(keyFor(width, height, config));
+
+        if(bitmaps == null || bitmaps.isEmpty()) {
+            mMissCount++;
+            return null;
+        }
+
+        Bitmap bitmap = bitmaps.poll();
+        mOrder.remove(bitmap);
+        mSize -= sizeOf(bitmap);
+        mHitCount++;
+
+        return bitmap;
+    }
+
+    /**
+     * Puts a bitmap that isn't used anymore into the pool. Bitmaps that can't be decoded into
+     * are ignored.
+     * @param bitmap Bitmap that is no longer shown or cached anywhere
+     */
+    public synchronized void put(Bitmap bitmap) {
+        if(!canReuse(bitmap) || sizeOf(bitmap) > mMaxSize || mOrder.contains(bitmap)) {
+            return;
+        }
+
+        String key = keyOf(bitmap);
+        ArrayDeque<Bitmap> bitmaps = mBitmaps.get(key);
+        if(bitmaps == null) {
+            bitmaps = new ArrayDeque<>();
+            mBitmaps.put(key, bitmaps);
+        }
+
+        bitmaps.add(bitmap);
+        mOrder.add(bitmap);
+        mSize += sizeOf(bitmap);
+
+        Iterator<Bitmap> iterator = mOrder.iterator();
+        while(mSize > mMaxSize) {
+            Bitmap eldest = iterator.next();
+            iterator.remove();
+
+            // The eldest bitmap of the pool is also the eldest of its size
+            mBitmaps.get(keyOf(eldest)).poll();
+            mSize -= sizeOf(eldest);
+        }
+    }
+
+    /**
+     * Drops every pooled bitmap
+     */
+    public synchronized void clear() {
+        mBitmaps.clear();
+        mOrder.clear();
+        mSize = 0;
+    }
+
+    /**
+     * Number of bytes of bitmaps in the pool
+     * @return Size of the pool
+     */
+    public synchronized int size() {
+        return mSize;
+    }
+
+    /**
+     * Number of times a bitmap could be reused
+     * @return Number of hits since the pool was created
+     */
+    public synchronized int getHitCount() {
+        return mHitCount;
+    }
+
+    /**
+     * Number of times a new bitmap had to be allocated
+     * @return Number of misses since the pool was created
+     */
+    public synchronized int getMissCount() {
+        return mMissCount;
+    }
+
+    /**
+     * Size of a bitmap in bytes, overridden by tests since bitmaps can't be created there
+     * @param bitmap Bitmap to measure
+     * @return Number of bytes of the bitmap
+     */
+    protected int sizeOf(Bitmap bitmap) {
+        return bitmap.getByteCount();
+    }
+
+    /**
+     * Key of the bitmaps that can be decoded into in place of this one, overridden by tests
+     * @param bitmap Bitmap to get the key of
+     * @return Key made of the dimensions and config of the bitmap
+     */
+    protected String keyOf(Bitmap bitmap) {
+        return keyFor(bitmap.getWidth(), bitmap.getHeight(), bitmap.getConfig());
+    }
+
+    /**
+     * Checks if a bitmap can be decoded into, overridden by tests
+     * @param bitmap Bitmap to check
+     * @return True if the bitmap is mutable and hasn't been recycled
+     */
+    protected boolean canReuse(Bitmap bitmap) {
+        return !bitmap.isRecycled() && bitmap.isMutable();
+    }
+
+    /**
+     * Builds the key of bitmaps with the given dimensions and config
+     * @param width Width of the bitmap
+     * @param height Height of the bitmap
+     * @param config Config of the bitmap
+     * @return Key the bitmaps are pooled under
+     */
+    static String keyFor(int width, int height, Bitmap.Config config) {
+        return width + "x" + height + "/" + config;
+    }
+}
@@ -0,0 +1,138 @@
+package software.level.udacity.popularmovies1.utilities;
+
+import java.util.ArrayList;
+import java.util.concurrent.CancellationException;
+
+/**
+ * Signals that the result of some work is no longer wanted. Activities keep a token for their
+ * lifetime and cancel it when they are destroyed, every task they start gets a child of that
+ * token, and cancelling a token cancels all of its children.
+ *
+ * While the TaskScheduler runs a task, the token of the task is available to any code running
+ * on that thread through {@link #current()} so that code deep in the network layer can stop
+ * before doing work nobody is waiting for.
+ */
+public class CancellationToken {
+
+    // Token of the task running on the current thread
+    private static final ThreadLocal<CancellationToken> sCurrent = new ThreadLocal<>();
+
+    private final CancellationToken mParent;
+
+    // Tokens that are cancelled along with this one, guarded by itself
+    private final ArrayList<CancellationToken> mChildren = new ArrayList<>();
+
+    private volatile boolean mCancelled;
+
+    /**
+     * Create a token that is only cancelled by calling {@link #cancel()}
+     */
+    public CancellationToken() {
+        this(null);
+    }
+
+    private CancellationToken(CancellationToken parent) {
+        mParent = parent;
+    }
+
+    /**
+     * Create a token that is cancelled when this token is cancelled, or on its own
+     * @return The child token
+     */
+    public CancellationToken newChild() {
+        CancellationToken child = new CancellationToken(this);
+
+        synchronized (mChildren) {
+            if(mCancelled) {
+                child.mCancelled = true;
+            } else {
+                mChildren.add(child);
+            }
+        }
+
+        return child;
+    }
+
+    /**
+     * Cancel this token and all of its children
+     */
+    public void cancel() {
+        ArrayList<CancellationToken> children;
+
+        synchronized (mChildren) {
+            if(mCancelled) {
+                return;
+            }
+            mCancelled = true;
+
+            children = new ArrayList<>(mChildren);
+            mChildren.clear();
+        }
+
+        for(CancellationToken child : children) {
+            child.cancel();
+        }
+
+        detach();
+    }
+
+    /**
+     * Checks if the work should be stopped
+     * @return True if this token or any of its parents has been cancelled
+     */
+    public boolean isCancelled() {
+        return mCancelled;
+    }
+
+    /**
+     * Throws if the token has been cancelled
+     * @throws CancellationException If the token has been cancelled
+     */
+    public void throwIfCancelled() {
+        if(mCancelled) {
+            throw new CancellationException();
+        }
+    }
+
+    /**
+     * Stops the parent from keeping track of this token once the work it belongs to is done
+     */
+    public void detach() {
+        if(mParent != null) {
+            synchronized (mParent.mChildren) {
+                mParent.mChildren.remove(this);
+            }
+        }
+    }
+
+    /**
+     * Gets the token of the task running on the current thread
+     * @return The token, or null if the current thread isn't running a task
+     */
+    public static CancellationToken current() {
+        return sCurrent.get();
+    }
+
+    /**
+     * Throws if the task running on the current thread has been cancelled
+     * @throws CancellationException If the current task has been cancelled
+     */
+    public static void throwIfCurrentCancelled() {
+        CancellationToken token = sCurrent.get();
+        if(token != null) {
+            token.throwIfCancelled();
+        }
+    }
+
+    /**
+     * Sets the token of the task running on the current thread
+     * @param token Token of the task, or null once the task is finished
+     */
+    static void setCurrent(CancellationToken token) {
+        if(token == null) {
+            sCurrent.remove();
+        } else {
+            sCurrent.set(token);
+        }
+    }
+}
@@ -0,0 +1,326 @@
+package software.level.udacity.popularmovies1.utilities;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Manages the HTTP connections to each host so that bursts of requests, such as paging through
+ * a list or hydrating movie details, reuse kept-alive connections instead of paying for a new
+ * TCP connection and TLS handshake on every call.
+ *
+ * The sockets themselves are pooled by HttpURLConnection, which keeps a connection alive when
+ * its response body was read to the end and the connection wasn't disconnected. This class
+ * sizes that pool, only disconnects connections that can't be reused, bounds the number of
+ * connections in use per host, and mirrors the pool's idle connections per host to estimate how
+ * often connections were reused. The pool doesn't say which socket a request got, so the reuse
+ * numbers are an estimate: a connection counts as reused when a kept-alive connection to its
+ * host should have been waiting in the pool.
+ *
+ * {@link #installConnectionPool()} has to be called before the first connection is opened.
+ */
+public class ConnectionManager {
+
+    // Connections that can be in use at the same time for each host
+    private static final int DEFAULT_MAX_CONNECTIONS_PER_HOST = 4;
+
+    // How long an unused connection is kept alive
+    private static final long DEFAULT_KEEP_ALIVE_MILLIS = 5 * 60 * 1000;
+
+    private static final int DEFAULT_CONNECT_TIMEOUT_MILLIS = 15 * 1000;
+    private static final int DEFAULT_READ_TIMEOUT_MILLIS = 20 * 1000;
+
+    // Most bytes read from an unfinished body to make its connection reusable
+    private static final int MAX_DRAIN_BYTES = 8 * 1024;
+
+    private static ConnectionManager sInstance;
+
+    // Whether the platform connection pool was sized to match, guarded by the class
+    private static boolean sPoolInstalled;
+
+    private final int mMaxConnectionsPerHost;
+    private final long mKeepAliveMillis;
+    private final int mConnectTimeoutMillis;
+    private final int mReadTimeoutMillis;
+    private final TaskScheduler.Clock mClock;
+
+    // Connection state of each host, guarded by this
+    private final HashMap<String, Host> mHosts = new HashMap<>();
+
+    /**
+     * Get the shared manager
+     * @return The manager shared by all requests
+     */
+    public static synchronized ConnectionManager getInstance() {
+        if(sInstance == null) {
+            sInstance = new ConnectionManager(DEFAULT_MAX_CONNECTIONS_PER_HOST, DEFAULT_KEEP_ALIVE_MILLIS,
+                    DEFAULT_CONNECT_TIMEOUT_MILLIS, DEFAULT_READ_TIMEOUT_MILLIS, TaskScheduler.SYSTEM_CLOCK);
+        }
+        return sInstance;
+    }
+
+    /**
+     * Sizes the platform connection pool to match the shared manager. The pool reads these
+     * settings when it is first used, so this has to be called before the first connection is
+     * opened. Safe to call more than once, only the first call changes anything.
+     */
+    public static synchronized void installConnectionPool() {
+        if(sPoolInstalled) {
+            return;
+        }
+        sPoolInstalled = true;
+
+        System.setProperty("http.keepAlive", "true");
+        System.setProperty("http.maxConnections", String.valueOf(DEFAULT_MAX_CONNECTIONS_PER_HOST));
+        System.setProperty("http.keepAliveDuration", String.valueOf(DEFAULT_KEEP_ALIVE_MILLIS));
+    }
+
+    /**
+     * Create a new ConnectionManager
+     * @param maxConnectionsPerHost Connections that can be in use and kept alive for each host
+     * @param keepAliveMillis How long an unused connection is kept alive
+     * @param connectTimeoutMillis Timeout for connecting, also the longest wait for a connection
+     *                             when all connections to the host are in use
+     * @param readTimeoutMillis Timeout for reading from the connection
+     * @param clock Source of time used to evict idle connections
+     */
+    public ConnectionManager(int maxConnectionsPerHost, long keepAliveMillis, int connectTimeoutMillis,
+                             int readTimeoutMillis, TaskScheduler.Clock clock) {
+        mMaxConnectionsPerHost = maxConnectionsPerHost;
+        mKeepAliveMillis = keepAliveMillis;
+        mConnectTimeoutMillis = connectTimeoutMillis;
+        mReadTimeoutMillis = readTimeoutMillis;
+        mClock = clock;
+    }
+
+    /**
+     * Opens a connection to the URL, waiting while all connections to its host are in use. The
+     * connection must be handed back to {@link #release(Lease, boolean)} once it is done with.
+     * @param url URL to connect to
+     * @return Lease holding the connection
+     * @throws IOException If no connection became available in time or opening it failed
+     */
+    public Lease open(URL url) throws IOException {
+        String authority = url.getAuthority();
+        boolean reused;
+
+        synchronized (this) {
+            Host host = hostFor(authority);
+
+            long deadline = mClock.uptimeMillis() + mConnectTimeoutMillis;
+            while(host.mInUse >= mMaxConnectionsPerHost) {
+                long remaining = deadline - mClock.uptimeMillis();
+                if(remaining <= 0) {
+                    throw new SocketTimeoutException("Timed out waiting for a connection to " + authority);
+                }
+
+                try {
+                    wait(remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while waiting for a connection to " + authority, e);
+                }
+                CancellationToken.throwIfCurrentCancelled();
+            }
+
+            host.evictIdle(mClock.uptimeMillis() - mKeepAliveMillis);
+
+            // The pool hands out the connection that was used last
+            reused = host.mIdleSince.pollLast() != null;
+            if(reused) {
+                host.mEstimatedReused++;
+            } else {
+                host.mCreated++;
+            }
+            host.mInUse++;
+        }
+
+        HttpURLConnection connection;
+        try {
+            connection = (HttpURLConnection) url.openConnection();
+        } catch (IOException e) {
+            finish(authority, false);
+            throw e;
+        }
+
+        connection.setConnectTimeout(mConnectTimeoutMillis);
+        connection.setReadTimeout(mReadTimeoutMillis);
+
+        return new Lease(authority, connection, reused);
+    }
+
+    /**
+     * Hands back a connection. A connection whose response was read to the end is left open so
+     * that the next request to its host can reuse it, any other connection is disconnected.
+     * @param lease Lease returned by open
+     * @param reusable True if the response body was read to the end and closed
+     */
+    public void release(Lease lease, boolean reusable) {
+        if(lease.mReleased) {
+            return;
+        }
+        lease.mReleased = true;
+
+        if(!reusable) {
+            lease.mConnection.disconnect();
+        }
+
+        finish(lease.mAuthority, reusable);
+    }
+
+    /**
+     * Reads what is left of a response body, up to a small limit, so that its connection can be
+     * reused. Bodies with more left than that are cheaper to abandon with their connection.
+     * @param body Body of the response, not closed by this method
+     * @return True if the body was read to the end
+     */
+    public static boolean drain(InputStream body) {
+        byte[] buffer = new byte[1024];
+        int drained = 0;
+
+        try {
+            while(drained <= MAX_DRAIN_BYTES) {
+                int read = body.read(buffer);
+                if(read == -1) {
+                    return true;
+                }
+                drained += read;
+            }
+        } catch (IOException e) {
+            // The connection is broken so it can't be reused anyway
+        }
+
+        return false;
+    }
+
+    /**
+     * Estimated fraction of the connections to the host that were reused, based on whether a
+     * kept-alive connection should have been waiting in the pool when each one was opened
+     * @param authority Host and port, such as api.themoviedb.org
+     * @return Number between 0 and 1, 0 if nothing was requested from the host
+     */
+    public synchronized float getEstimatedReuseRate(String authority) {
+        Host host = mHosts.get(authority);
+        if(host == null || host.mEstimatedReused + host.mCreated == 0) {
+            return 0;
+        }
+        return (float) host.mEstimatedReused / (host.mEstimatedReused + host.mCreated);
+    }
+
+    /**
+     * Describes how well connections are reused
+     * @return Estimated reused and new connections and idle connections for every host
+     */
+    public synchronized String getStatsSummary() {
+        long idleCutoff = mClock.uptimeMillis() - mKeepAliveMillis;
+        StringBuilder summary = new StringBuilder();
+
+        for(Map.Entry<String, Host> entry : mHosts.entrySet()) {
+            Host host = entry.getValue();
+            host.evictIdle(idleCutoff);
+
+            if(summary.length() > 0) {
+                summary.append("; ");
+            }
+            summary.append(entry.getKey()).append(' ')
+                    .append(host.mEstimatedReused).append(" reused (estimated), ")
+                    .append(host.mCreated).append(" new, ")
+                    .append(host.mIdleSince.size()).append(" idle");
+        }
+
+        return summary.toString();
+    }
+
+    private Host hostFor(String authority) {
+        Host host = mHosts.get(authority);
+        if(host == null) {
+            host = new Host();
+            mHosts.put(authority, host);
+        }
+        return host;
+    }
+
+    /**
+     * Records that a connection is no longer in use and wakes up anyone waiting for one
+     * @param authority Host the connection was to
+     * @param keptAlive True if the connection went back to the pool
+     */
+    private synchronized void finish(String authority, boolean keptAlive) {
+        Host host = hostFor(authority);
+        host.mInUse--;
+
+        if(keptAlive) {
+            host.mIdleSince.addLast(mClock.uptimeMillis());
+
+            // The pool closes the connections that were idle longest once it is full
+            while(host.mIdleSince.size() > mMaxConnectionsPerHost) {
+                host.mIdleSince.pollFirst();
+            }
+        }
+
+        notifyAll();
+    }
+
+    /**
+     * A connection that is in use
+     */
+    public static final class Lease {
+
+        private final String mAuthority;
+        private final HttpURLConnection mConnection;
+        private final boolean mReused;
+        private boolean mReleased;
+
+        private Lease(String authority, HttpURLConnection connection, boolean reused) {
+            mAuthority = authority;
+            mConnection = connection;
+            mReused = reused;
+        }
+
+        /**
+         * The connection, which is connected once the request is made
+         * @return The connection
+         */
+        public HttpURLConnection getConnection() {
+            return mConnection;
+        }
+
+        /**
+         * Whether a kept-alive connection to the host was expected to be available
+         * @return True if the connection was counted as reused
+         */
+        public boolean isReused() {
+            return mReused;
+        }
+    }
+
+    /**
+     * Connections to a single host. Only accessed while holding the lock on the manager.
+     */
+    private static final class Host {
+
+        // When each kept-alive connection went idle, oldest first
+        final ArrayDeque<Long> mIdleSince = new ArrayDeque<>();
+
+        int mInUse;
+
+        // Connections opened while a kept-alive connection should have been in the pool
+        int mEstimatedReused;
+        int mCreated;
+
+        /**
+         * Drops the idle connections that the pool has closed by now
+         * @param cutoff Connections that went idle before this have been closed
+         */
+        void evictIdle(long cutoff) {
+            while(!mIdleSince.isEmpty() && mIdleSince.peekFirst() < cutoff) {
+                mIdleSince.pollFirst();
+            }
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package software.level.udacity.popularmovies1.utilities;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Stream that counts the bytes read through it and how long the reads took, which tells how
+ * much of the time spent consuming a response went into waiting for the body.
+ */
+public class CountingInputStream extends FilterInputStream {
+
+    private long mCount;
+    private long mReadNanos;
+
+    /**
+     * Create a new CountingInputStream
+     * @param in Stream to count the bytes of
+     */
+    public CountingInputStream(InputStream in) {
+        super(in);
+    }
+
+    @Override
+    public int read() throws IOException {
+        long start = System.nanoTime();
+        int b = super.read();
+        mReadNanos += System.nanoTime() - start;
+
+        if(b != -1) {
+            mCount++;
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        long start = System.nanoTime();
+        int read = super.read(buffer, offset, length);
+        mReadNanos += System.nanoTime() - start;
+
+        if(read > 0) {
+            mCount += read;
+        }
+        return read;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long start = System.nanoTime();
+        long skipped = super.skip(n);
+        mReadNanos += System.nanoTime() - start;
+
+        mCount += skipped;
+        return skipped;
+    }
+
+    @Override
+    public boolean markSupported() {
+        // Bytes read again after a reset would be counted twice
+        return false;
+    }
+
+    /**
+     * Number of bytes read so far
+     * @return Byte count
+     */
+    public long getCount() {
+        return mCount;
+    }
+
+    /**
+     * Time spent inside reads so far
+     * @return Time in nanoseconds
+     */
+    public long getReadNanos() {
+        return mReadNanos;
+    }
+}
@@ -0,0 +1,780 @@
+package software.level.udacity.popularmovies1.utilities;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Disk backed cache for responses from The Movie Database API. Entries are keyed by the request
+ * URL with the api_key removed, are considered fresh for the max-age sent by the server, and are
+ * revalidated with If-None-Match / If-Modified-Since once they go stale. The least recently used
+ * entries are evicted once the cache grows past its byte budget. The order the entries were used
+ * in is kept in memory and only saved to an index file every few writes, so looking an entry up
+ * never writes to disk.
+ *
+ * Each entry is stored as two files, a small metadata file holding the validators and expiry
+ * time and a body file holding the decoded response body. Every write goes to its own temporary
+ * files which are renamed into place while holding the lock, so writes of the same URL that
+ * overlap never mix their bodies. The metadata file is the commit marker: the old one is deleted
+ * before the body is replaced and the new one is renamed into place last, so after a crash a
+ * body is either paired with its own validators or thrown away. An entry can still be evicted
+ * or replaced between looking it up and opening its body, which callers treat as a miss.
+ */
+public final class DiskResponseCache {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    // Query parameter that is removed from the URL before it is used as a key
+    private static final String API_KEY_PARAMETER = "api_key";
+
+    // Bumped whenever the format of the metadata file changes
+    private static final int METADATA_VERSION = 1;
+
+    private static final String METADATA_SUFFIX = ".meta";
+    private static final String BODY_SUFFIX = ".body";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    // File that holds the order the entries were last used in when it was last saved
+    private static final String INDEX_FILE_NAME = "index";
+
+    // Bumped whenever the format of the index file changes
+    private static final int INDEX_VERSION = 1;
+
+    // Number of entries written to the cache between saves of the index
+    private static final int INDEX_WRITE_INTERVAL = 16;
+
+    // Directory that holds all of the cache files
+    private final File mDirectory;
+
+    // Maximum number of bytes the cache is allowed to use on disk
+    private final long mMaxSize;
+
+    // Size on disk of every entry in least recently used order, guarded by this
+    private final LinkedHashMap<String, Long> mEntries = new LinkedHashMap<>(32, 0.75f, true);
+
+    // Total size of every entry in mEntries and of the index file, guarded by this
+    private long mSize;
+
+    // Size of the index file, guarded by this
+    private long mIndexSize;
+
+    // Number of entries written since the index was last saved, guarded by this
+    private int mCommitsSinceIndexWrite;
+
+    // Number of lookups that found an entry and that didn't, guarded by this
+    private int mHitCount;
+    private int mMissCount;
+
+    /**
+     * Create a cache in the given directory. Existing entries in the directory are picked up
+     * in the order they were last used.
+     * @param directory Directory that will hold the cache files, created if it doesn't exist
+     * @param maxSize Maximum number of bytes the cache is allowed to use on disk
+     */
+    public DiskResponseCache(File directory, long maxSize) {
+        mDirectory = directory;
+        mMaxSize = maxSize;
+
+        if(!mDirectory.exists()) {
+            mDirectory.mkdirs();
+        }
+
+        loadIndex();
+    }
+
+    /**
+     * Builds the cache key for a request URL by removing the api_key query parameter so that the
+     * key doesn't change if the api key does.
+     * @param url Request URL created by NetworkUtils.buildURL
+     * @return Key used to store the response for the URL
+     */
+    public static String keyFor(URL url) {
+        String spec = url.toString();
+
+        int queryStart = spec.indexOf('?');
+        if(queryStart == -1) {
+            return spec;
+        }
+
+        StringBuilder key = new StringBuilder(spec.length());
+        key.append(spec, 0, queryStart);
+
+        char separator = '?';
+        for(String parameter : spec.substring(queryStart + 1).split("&")) {
+            if(parameter.equals(API_KEY_PARAMETER) || parameter.startsWith(API_KEY_PARAMETER + "=")) {
+                continue;
+            }
+            key.append(separator).append(parameter);
+            separator = '&';
+        }
+
+        return key.toString();
+    }
+
+    /**
+     * Looks up the cached response for the URL
+     * @param url Request URL
+     * @return The cached entry, which may be stale, or null if there is no entry for the URL
+     */
+    public Entry get(URL url) {
+        String fileName = fileNameFor(keyFor(url));
+
+        synchronized (this) {
+            // Marks the entry as recently used
+            if(mEntries.get(fileName) == null) {
+                mMissCount++;
+                return null;
+            }
+            mHitCount++;
+        }
+
+        File metadataFile = new File(mDirectory, fileName + METADATA_SUFFIX);
+        File bodyFile = new File(mDirectory, fileName + BODY_SUFFIX);
+
+        try {
+            return readMetadata(fileName, metadataFile, bodyFile);
+        } catch (FileNotFoundException e) {
+            // Evicted, or a new body for the URL is being committed
+            return null;
+        } catch (IOException e) {
+            remove(fileName);
+            return null;
+        }
+    }
+
+    /**
+     * Stores the response if the server allows it. The body is written to the cache as the
+     * returned stream is read, and the entry is only committed if the stream is read to the end
+     * before it is closed. Closing it earlier, such as for a cancelled request, throws the
+     * partial body away.
+     * @param url Request URL
+     * @param connection Connection that the response was received on
+     * @param body Decoded body of the response
+     * @return Stream that should be read instead of the body
+     */
+    public InputStream put(URL url, HttpURLConnection connection, InputStream body) {
+        CacheControl cacheControl = CacheControl.parse(connection.getHeaderField("Cache-Control"));
+        if(cacheControl.noStore) {
+            return body;
+        }
+
+        String etag = connection.getHeaderField("ETag");
+        String lastModified = connection.getHeaderField("Last-Modified");
+        long expires = System.currentTimeMillis() + cacheControl.maxAgeMillis();
+
+        // Without a max-age or a validator the entry could never be used
+        if(cacheControl.maxAgeSeconds <= 0 && etag == null && lastModified == null) {
+            return body;
+        }
+
+        String fileName = fileNameFor(keyFor(url));
+        Entry entry = new Entry(fileName, expires, etag, lastModified,
+                new File(mDirectory, fileName + BODY_SUFFIX));
+
+        try {
+            return new CacheWritingInputStream(body, entry);
+        } catch (IOException e) {
+            return body;
+        }
+    }
+
+    /**
+     * Refreshes a stale entry after the server confirmed with a 304 that it is still valid.
+     * @param entry Entry that was revalidated
+     * @param connection Connection that the 304 response was received on
+     * @return The updated entry
+     */
+    public Entry update(Entry entry, HttpURLConnection connection) {
+        CacheControl cacheControl = CacheControl.parse(connection.getHeaderField("Cache-Control"));
+
+        String etag = connection.getHeaderField("ETag");
+        String lastModified = connection.getHeaderField("Last-Modified");
+
+        Entry updated = new Entry(entry.mFileName,
+                System.currentTimeMillis() + cacheControl.maxAgeMillis(),
+                etag != null ? etag : entry.mEtag,
+                lastModified != null ? lastModified : entry.mLastModified,
+                entry.mBodyFile);
+
+        synchronized (this) {
+            // Evicted while it was being revalidated, the body is gone so there is nothing to keep
+            if(!mEntries.containsKey(entry.mFileName)) {
+                return updated;
+            }
+
+            try {
+                long metadataSize = writeMetadata(updated);
+                commit(entry.mFileName, metadataSize + entry.mBodyFile.length());
+            } catch (IOException e) {
+                // The old metadata is still usable, the entry will just be revalidated again
+            }
+        }
+
+        return updated;
+    }
+
+    /**
+     * Current size of the cache on disk
+     * @return Number of bytes used by all entries
+     */
+    public synchronized long size() {
+        return mSize;
+    }
+
+    /**
+     * Number of lookups that found an entry, fresh or stale
+     * @return Number of hits since the cache was created
+     */
+    public synchronized int getHitCount() {
+        return mHitCount;
+    }
+
+    /**
+     * Number of lookups that didn't find an entry
+     * @return Number of misses since the cache was created
+     */
+    public synchronized int getMissCount() {
+        return mMissCount;
+    }
+
+    /**
+     * Rebuilds the in-memory index from the files in the cache directory. Entries keep the order
+     * they had when the index file was last saved, and entries written after that come after
+     * them in the order they were written.
+     */
+    private void loadIndex() {
+        File[] metadataFiles = mDirectory.listFiles();
+        if(metadataFiles == null) {
+            return;
+        }
+
+        File indexFile = new File(mDirectory, INDEX_FILE_NAME);
+        ArrayList<String> savedOrder = readIndex(indexFile);
+
+        Arrays.sort(metadataFiles, new Comparator<File>() {
+            @Override
+            public int compare(File a, File b) {
+                long difference = a.lastModified() - b.lastModified();
+                return difference < 0 ? -1 : (difference > 0 ? 1 : 0);
+            }
+        });
+
+        synchronized (this) {
+            LinkedHashMap<String, Long> sizes = new LinkedHashMap<>();
+            for(File file : metadataFiles) {
+                String name = file.getName();
+
+                // Left over from a write that never finished
+                if(name.endsWith(TEMP_SUFFIX)) {
+                    file.delete();
+                    continue;
+                }
+
+                // Left over from a write that crashed before its metadata was committed
+                if(name.endsWith(BODY_SUFFIX)) {
+                    String fileName = name.substring(0, name.length() - BODY_SUFFIX.length());
+                    if(!new File(mDirectory, fileName + METADATA_SUFFIX).exists()) {
+                        file.delete();
+                    }
+                    continue;
+                }
+
+                if(!name.endsWith(METADATA_SUFFIX)) {
+                    continue;
+                }
+
+                String fileName = name.substring(0, name.length() - METADATA_SUFFIX.length());
+                File bodyFile = new File(mDirectory, fileName + BODY_SUFFIX);
+
+                if(!bodyFile.exists()) {
+                    file.delete();
+                    continue;
+                }
+
+                sizes.put(fileName, file.length() + bodyFile.length());
+            }
+
+            for(String fileName : savedOrder) {
+                Long size = sizes.remove(fileName);
+                if(size != null) {
+                    mEntries.put(fileName, size);
+                    mSize += size;
+                }
+            }
+            for(Map.Entry<String, Long> entry : sizes.entrySet()) {
+                mEntries.put(entry.getKey(), entry.getValue());
+                mSize += entry.getValue();
+            }
+
+            mIndexSize = indexFile.length();
+            mSize += mIndexSize;
+        }
+
+        trimToSize();
+    }
+
+    /**
+     * Adds a committed entry to the index, or updates its size if it is already there, and
+     * evicts entries if the cache is over budget. Every few commits the order of the entries is
+     * saved as well, so the disk is only written to when the cache is being written to anyway.
+     * @param fileName File name of the entry
+     * @param size Size of the entry on disk
+     */
+    private synchronized void commit(String fileName, long size) {
+        Long previous = mEntries.put(fileName, size);
+        if(previous != null) {
+            mSize -= previous;
+        }
+        mSize += size;
+
+        trimToSize();
+
+        if(++mCommitsSinceIndexWrite >= INDEX_WRITE_INTERVAL) {
+            mCommitsSinceIndexWrite = 0;
+            writeIndex();
+        }
+    }
+
+    /**
+     * Evicts the least recently used entries until the cache is within its byte budget
+     */
+    private synchronized void trimToSize() {
+        Iterator<Map.Entry<String, Long>> iterator = mEntries.entrySet().iterator();
+
+        while(mSize > mMaxSize && iterator.hasNext()) {
+            Map.Entry<String, Long> eldest = iterator.next();
+            iterator.remove();
+
+            mSize -= eldest.getValue();
+            deleteFiles(eldest.getKey());
+        }
+    }
+
+    /**
+     * Removes an entry from the cache
+     * @param fileName File name of the entry
+     */
+    private synchronized void remove(String fileName) {
+        Long size = mEntries.remove(fileName);
+        if(size != null) {
+            mSize -= size;
+        }
+        deleteFiles(fileName);
+    }
+
+    private void deleteFiles(String fileName) {
+        new File(mDirectory, fileName + METADATA_SUFFIX).delete();
+        new File(mDirectory, fileName + BODY_SUFFIX).delete();
+    }
+
+    /**
+     * Reads the order the entries were in when the index was last saved
+     * @param indexFile The index file
+     * @return File names of the entries from least to most recently used, empty if the index
+     * is missing or can't be read
+     */
+    private static ArrayList<String> readIndex(File indexFile) {
+        ArrayList<String> fileNames = new ArrayList<>();
+        if(!indexFile.exists()) {
+            return fileNames;
+        }
+
+        try {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)));
+            try {
+                if(in.readInt() != INDEX_VERSION) {
+                    return fileNames;
+                }
+
+                int count = in.readInt();
+                for(int i = 0; i < count; i++) {
+                    fileNames.add(in.readUTF());
+                }
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            // The entries are still there, they just lose the order they were used in
+        }
+
+        return fileNames;
+    }
+
+    /**
+     * Saves the order the entries were last used in so that it survives a restart. Written to
+     * a temporary file and renamed like the metadata. Must be called while holding the lock.
+     */
+    private void writeIndex() {
+        File indexFile = new File(mDirectory, INDEX_FILE_NAME);
+
+        try {
+            File tempFile = File.createTempFile(INDEX_FILE_NAME, TEMP_SUFFIX, mDirectory);
+
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+            try {
+                out.writeInt(INDEX_VERSION);
+                out.writeInt(mEntries.size());
+                for(String fileName : mEntries.keySet()) {
+                    out.writeUTF(fileName);
+                }
+            } finally {
+                out.close();
+            }
+
+            if(!tempFile.renameTo(indexFile)) {
+                tempFile.delete();
+                return;
+            }
+        } catch (IOException e) {
+            // The order is saved again with a later commit
+            return;
+        }
+
+        mSize -= mIndexSize;
+        mIndexSize = indexFile.length();
+        mSize += mIndexSize;
+    }
+
+    private Entry readMetadata(String fileName, File metadataFile, File bodyFile) throws IOException {
+        DataInputStream in = new DataInputStream(new FileInputStream(metadataFile));
+        try {
+            if(in.readInt() != METADATA_VERSION) {
+                throw new IOException("Unknown cache metadata version");
+            }
+
+            long expires = in.readLong();
+            String etag = in.readBoolean() ? in.readUTF() : null;
+            String lastModified = in.readBoolean() ? in.readUTF() : null;
+
+            return new Entry(fileName, expires, etag, lastModified, bodyFile);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Writes the metadata to a temporary file of its own and renames it so that a crash never
+     * leaves a partially written metadata file behind. Must be called while holding the lock.
+     * @param entry Entry to write the metadata of
+     * @return Size of the metadata file
+     */
+    private long writeMetadata(Entry entry) throws IOException {
+        return commitMetadata(entry, writeMetadataTempFile(entry));
+    }
+
+    /**
+     * Writes the metadata to a temporary file of its own, which doesn't need the lock
+     * @param entry Entry to write the metadata of
+     * @return The temporary file, to be renamed into place with commitMetadata
+     */
+    private File writeMetadataTempFile(Entry entry) throws IOException {
+        File tempFile = File.createTempFile(entry.mFileName + METADATA_SUFFIX, TEMP_SUFFIX, mDirectory);
+
+        DataOutputStream out = new DataOutputStream(new FileOutputStream(tempFile));
+        try {
+            out.writeInt(METADATA_VERSION);
+            out.writeLong(entry.mExpires);
+            out.writeBoolean(entry.mEtag != null);
+            if(entry.mEtag != null) {
+                out.writeUTF(entry.mEtag);
+            }
+            out.writeBoolean(entry.mLastModified != null);
+            if(entry.mLastModified != null) {
+                out.writeUTF(entry.mLastModified);
+            }
+        } finally {
+            out.close();
+        }
+
+        return tempFile;
+    }
+
+    /**
+     * Renames the metadata written by writeMetadataTempFile into place, which commits the entry.
+     * Must be called while holding the lock.
+     * @param entry Entry the metadata is for
+     * @param tempFile File written by writeMetadataTempFile
+     * @return Size of the metadata file
+     */
+    private long commitMetadata(Entry entry, File tempFile) throws IOException {
+        File metadataFile = new File(mDirectory, entry.mFileName + METADATA_SUFFIX);
+
+        if(!tempFile.renameTo(metadataFile)) {
+            tempFile.delete();
+            throw new IOException("Unable to commit cache metadata");
+        }
+
+        return metadataFile.length();
+    }
+
+    /**
+     * Hashes the key so it can be safely used as a file name
+     * @param key Cache key
+     * @return Hex encoded SHA-1 of the key
+     */
+    private static String fileNameFor(String key) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            byte[] hash = digest.digest(key.getBytes(UTF_8));
+
+            StringBuilder hex = new StringBuilder(hash.length * 2);
+            for(byte b : hash) {
+                hex.append(Character.forDigit((b >> 4) & 0xf, 16));
+                hex.append(Character.forDigit(b & 0xf, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    /**
+     * A cached response
+     */
+    public static final class Entry {
+
+        private final String mFileName;
+        private final long mExpires;
+        private final String mEtag;
+        private final String mLastModified;
+        private final File mBodyFile;
+
+        private Entry(String fileName, long expires, String etag, String lastModified, File bodyFile) {
+            mFileName = fileName;
+            mExpires = expires;
+            mEtag = etag;
+            mLastModified = lastModified;
+            mBodyFile = bodyFile;
+        }
+
+        /**
+         * Checks if the entry can be used without revalidating it with the server
+         * @return True if the max-age of the response has not passed
+         */
+        public boolean isFresh() {
+            return System.currentTimeMillis() < mExpires;
+        }
+
+        /**
+         * Adds the validators of this entry to a request so the server can answer with a 304
+         * if the response hasn't changed
+         * @param connection Connection that has not been connected yet
+         */
+        public void addConditionalHeaders(HttpURLConnection connection) {
+            if(mEtag != null) {
+                connection.setRequestProperty("If-None-Match", mEtag);
+            }
+            if(mLastModified != null) {
+                connection.setRequestProperty("If-Modified-Since", mLastModified);
+            }
+        }
+
+        /**
+         * Opens the cached body. The body of an evicted entry can't be opened, but one that is
+         * open can be read to the end even if the entry is evicted in the meantime.
+         * @return Stream containing the body of the response
+         * @throws IOException If the body could not be opened, such as after it was evicted
+         */
+        public FileInputStream openBody() throws IOException {
+            return new FileInputStream(mBodyFile);
+        }
+
+        /**
+         * Size of a body opened with openBody, which is the body that was opened even if the
+         * entry was replaced since
+         * @param body Stream returned by openBody
+         * @return Number of bytes in the body
+         * @throws IOException If the size could not be read
+         */
+        public static int bodyLength(FileInputStream body) throws IOException {
+            return (int) body.getChannel().size();
+        }
+    }
+
+    /**
+     * Copies everything read from the body into a temporary file and commits it to the cache
+     * when the stream is closed. If the body was not read to the end, or reading it failed, the
+     * temporary file is thrown away instead, so a cancelled request never keeps downloading a
+     * body just to cache it.
+     */
+    private final class CacheWritingInputStream extends FilterInputStream {
+
+        private final Entry mEntry;
+        private final File mTempFile;
+        private final OutputStream mOut;
+        private boolean mFailed;
+        private boolean mComplete;
+        private boolean mClosed;
+
+        CacheWritingInputStream(InputStream in, Entry entry) throws IOException {
+            super(in);
+            mEntry = entry;
+
+            // Another response for the same URL may be written at the same time
+            mTempFile = File.createTempFile(entry.mFileName + BODY_SUFFIX, TEMP_SUFFIX, mDirectory);
+            mOut = new FileOutputStream(mTempFile);
+        }
+
+        @Override
+        public int read() throws IOException {
+            try {
+                int b = super.read();
+                if(b != -1) {
+                    mOut.write(b);
+                } else {
+                    mComplete = true;
+                }
+                return b;
+            } catch (IOException e) {
+                mFailed = true;
+                throw e;
+            }
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int count) throws IOException {
+            try {
+                int read = super.read(buffer, offset, count);
+                if(read > 0) {
+                    mOut.write(buffer, offset, read);
+                } else if(read == -1) {
+                    mComplete = true;
+                }
+                return read;
+            } catch (IOException e) {
+                mFailed = true;
+                throw e;
+            }
+        }
+
+        @Override
+        public long skip(long count) throws IOException {
+            // Skipped bytes still need to be written to the cache
+            byte[] buffer = new byte[(int) Math.min(count, 4096)];
+            long skipped = 0;
+            while(skipped < count) {
+                int read = read(buffer, 0, (int) Math.min(buffer.length, count - skipped));
+                if(read == -1) {
+                    break;
+                }
+                skipped += read;
+            }
+            return skipped;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if(mClosed) {
+                return;
+            }
+            mClosed = true;
+
+            try {
+                mOut.close();
+            } catch (IOException e) {
+                mFailed = true;
+            } finally {
+                super.close();
+            }
+
+            if(mFailed || !mComplete) {
+                mTempFile.delete();
+                return;
+            }
+
+            File metadataTempFile;
+            try {
+                metadataTempFile = writeMetadataTempFile(mEntry);
+            } catch (IOException e) {
+                mTempFile.delete();
+                return;
+            }
+
+            // The body and metadata of one write go in together, with the metadata last
+            synchronized (DiskResponseCache.this) {
+                File bodyFile = mEntry.mBodyFile;
+                new File(mDirectory, mEntry.mFileName + METADATA_SUFFIX).delete();
+
+                if(!mTempFile.renameTo(bodyFile)) {
+                    mTempFile.delete();
+                    metadataTempFile.delete();
+                    remove(mEntry.mFileName);
+                    return;
+                }
+
+                try {
+                    long metadataSize = commitMetadata(mEntry, metadataTempFile);
+                    commit(mEntry.mFileName, metadataSize + bodyFile.length());
+                } catch (IOException e) {
+                    remove(mEntry.mFileName);
+                }
+            }
+        }
+    }
+
+    /**
+     * The parts of the Cache-Control header that the cache cares about
+     */
+    private static final class CacheControl {
+
+        boolean noStore;
+        boolean noCache;
+        long maxAgeSeconds = -1;
+
+        static CacheControl parse(String header) {
+            CacheControl cacheControl = new CacheControl();
+            if(header == null) {
+                return cacheControl;
+            }
+
+            for(String directive : header.split(",")) {
+                directive = directive.trim().toLowerCase();
+
+                if(directive.equals("no-store")) {
+                    cacheControl.noStore = true;
+                } else if(directive.equals("no-cache")) {
+                    cacheControl.noCache = true;
+                } else if(directive.startsWith("max-age=")) {
+                    try {
+                        cacheControl.maxAgeSeconds = Long.parseLong(directive.substring(8).trim());
+                    } catch (NumberFormatException e) {
+                        cacheControl.maxAgeSeconds = -1;
+                    }
+                }
+            }
+
+            return cacheControl;
+        }
+
+        /**
+         * How long a response stays fresh, no-cache responses always have to be revalidated
+         * @return Freshness lifetime in milliseconds
+         */
+        long maxAgeMillis() {
+            if(noCache || maxAgeSeconds <= 0) {
+                return 0;
+            }
+            return maxAgeSeconds * 1000;
+        }
+    }
+}
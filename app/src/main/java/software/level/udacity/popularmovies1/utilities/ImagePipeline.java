@@ -0,0 +1,166 @@
+package software.level.udacity.popularmovies1.utilities;
+
+import android.app.ActivityManager;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.drawable.BitmapDrawable;
+import android.graphics.drawable.Drawable;
+import android.widget.ImageView;
+
+import com.squareup.picasso.Picasso;
+
+import java.io.File;
+
+import software.level.udacity.popularmovies1.R;
+
+/**
+ * Sets Picasso up to load posters through caches the app controls. Decoded posters are kept in
+ * a PosterMemoryCache, bitmaps that aren't shown anymore are decoded into again through a
+ * BitmapPool, and the encoded images are kept on disk across restarts in a DiskResponseCache
+ * with its own byte budget.
+ */
+public final class ImagePipeline {
+
+    // Directory inside the app cache directory that holds the encoded images
+    private static final String IMAGE_CACHE_DIRECTORY = "tmdb-images";
+
+    // Maximum number of bytes the encoded images can use on disk
+    private static final long IMAGE_CACHE_SIZE = 20 * 1024 * 1024;
+
+    // Part of the app's memory class used for decoded posters
+    private static final int MEMORY_CACHE_DIVISOR = 7;
+
+    // Part of the memory cache size used for bitmaps waiting to be reused
+    private static final int BITMAP_POOL_DIVISOR = 4;
+
+    private static ImagePipeline sInstance;
+
+    private final PosterMemoryCache mMemoryCache;
+    private final BitmapPool mBitmapPool;
+    private final DiskResponseCache mDiskCache;
+
+    private ImagePipeline(PosterMemoryCache memoryCache, BitmapPool bitmapPool, DiskResponseCache diskCache) {
+        mMemoryCache = memoryCache;
+        mBitmapPool = bitmapPool;
+        mDiskCache = diskCache;
+    }
+
+    /**
+     * Sets up the caches and makes Picasso.with() use them. Safe to call more than once, only
+     * the first call does anything. Must be called before Picasso is used for the first time.
+     * @param context Context used to size the caches and find the cache directory
+     * @return The pipeline
+     */
+    public static synchronized ImagePipeline install(Context context) {
+        if(sInstance != null) {
+            return sInstance;
+        }
+
+        Context appContext = context.getApplicationContext();
+
+        ActivityManager activityManager = (ActivityManager) appContext.getSystemService(Context.ACTIVITY_SERVICE);
+        int memoryCacheSize = activityManager.getMemoryClass() * 1024 * 1024 / MEMORY_CACHE_DIVISOR;
+
+        BitmapPool bitmapPool = new BitmapPool(memoryCacheSize / BITMAP_POOL_DIVISOR);
+        PosterMemoryCache memoryCache = new PosterMemoryCache(memoryCacheSize, bitmapPool);
+        DiskResponseCache diskCache = new DiskResponseCache(
+                new File(appContext.getCacheDir(), IMAGE_CACHE_DIRECTORY), IMAGE_CACHE_SIZE);
+
+        Picasso picasso = new Picasso.Builder(appContext)
+                .memoryCache(memoryCache)
+                .addRequestHandler(new PosterRequestHandler(diskCache, bitmapPool))
+                .build();
+        Picasso.setSingletonInstance(picasso);
+
+        sInstance = new ImagePipeline(memoryCache, bitmapPool, diskCache);
+        return sInstance;
+    }
+
+    /**
+     * Gets the pipeline
+     * @return The pipeline, or null if install hasn't been called
+     */
+    public static synchronized ImagePipeline getInstance() {
+        return sInstance;
+    }
+
+    /**
+     * Records that the view now shows the bitmap of its drawable, and that it no longer shows
+     * the bitmap it showed before. Called whenever Picasso finishes loading into the view.
+     * @param imageView View that was loaded into
+     */
+    public void onBitmapShown(ImageView imageView) {
+        Bitmap bitmap = bitmapOf(imageView.getDrawable());
+        Bitmap previous = (Bitmap) imageView.getTag(R.id.tag_shown_bitmap);
+
+        if(bitmap == previous) {
+            return;
+        }
+
+        if(bitmap != null) {
+            mMemoryCache.retain(bitmap);
+        }
+        imageView.setTag(R.id.tag_shown_bitmap, bitmap);
+
+        if(previous != null) {
+            mMemoryCache.release(previous);
+        }
+    }
+
+    /**
+     * Records that the view no longer shows the bitmap it was showing. Called before anything
+     * else is loaded into the view or when the view goes away.
+     * @param imageView View that is being cleared
+     */
+    public void onBitmapCleared(ImageView imageView) {
+        Bitmap previous = (Bitmap) imageView.getTag(R.id.tag_shown_bitmap);
+        if(previous != null) {
+            imageView.setTag(R.id.tag_shown_bitmap, null);
+            mMemoryCache.release(previous);
+        }
+    }
+
+    /**
+     * Cache of decoded posters
+     * @return The memory cache
+     */
+    public PosterMemoryCache getMemoryCache() {
+        return mMemoryCache;
+    }
+
+    /**
+     * Bitmaps waiting to be decoded into
+     * @return The bitmap pool
+     */
+    public BitmapPool getBitmapPool() {
+        return mBitmapPool;
+    }
+
+    /**
+     * Cache of encoded images
+     * @return The disk cache
+     */
+    public DiskResponseCache getDiskCache() {
+        return mDiskCache;
+    }
+
+    /**
+     * Describes how well the caches are doing
+     * @return Hit and miss counts and sizes of every cache
+     */
+    public String getStatsSummary() {
+        return "memory " + mMemoryCache.getHitCount() + " hits, " + mMemoryCache.getMissCount()
+                + " misses, " + mMemoryCache.size() + "/" + mMemoryCache.maxSize() + " bytes; "
+                + "pool " + mBitmapPool.getHitCount() + " hits, " + mBitmapPool.getMissCount()
+                + " misses, " + mBitmapPool.size() + " bytes; "
+                + "disk " + mDiskCache.getHitCount() + " hits, " + mDiskCache.getMissCount()
+                + " misses, " + mDiskCache.size() + " bytes";
+    }
+
+    private static Bitmap bitmapOf(Drawable drawable) {
+        if(drawable instanceof BitmapDrawable) {
+            return ((BitmapDrawable) drawable).getBitmap();
+        }
+        return null;
+    }
+}
@@ -0,0 +1,100 @@
+package software.level.udacity.popularmovies1.utilities;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Remembers the URLs of images so that binding a poster doesn't build its URL again. The start
+ * of the URL is built once for every size, and the full URL is kept for the most recently used
+ * paths of each size. Looking up a URL that is already known allocates nothing, which keeps
+ * binding cheap while the grid is flung.
+ */
+public class ImageUrlCache {
+
+    // Number of URLs kept for each size, several pages of the grid
+    private static final int DEFAULT_MAX_ENTRIES_PER_SIZE = 500;
+
+    private static ImageUrlCache sInstance;
+
+    private final int mMaxEntriesPerSize;
+
+    // URLs of each size by path, guarded by this
+    private final HashMap<String, Urls> mUrlsBySize = new HashMap<>();
+
+    /**
+     * Get the cache shared by the whole app
+     * @return The shared cache
+     */
+    public static synchronized ImageUrlCache getInstance() {
+        if(sInstance == null) {
+            sInstance = new ImageUrlCache(DEFAULT_MAX_ENTRIES_PER_SIZE);
+        }
+        return sInstance;
+    }
+
+    /**
+     * Create a new ImageUrlCache
+     * @param maxEntriesPerSize Number of URLs kept for each image size
+     */
+    public ImageUrlCache(int maxEntriesPerSize) {
+        mMaxEntriesPerSize = maxEntriesPerSize;
+    }
+
+    /**
+     * Gets the URL for downloading an image from The Movie DB image service
+     * @param path API supplied poster_path or backdrop_path
+     * @param size Size of image required (w92, w154, w185, w342, w500, w780, original)
+     * @return URL for downloading image, the same as TmdbUrls.imageUrl returns
+     */
+    public synchronized String get(String path, String size) {
+        Urls urls = mUrlsBySize.get(size);
+        if(urls == null) {
+            urls = new Urls(TmdbUrls.imageUrlPrefix(size), mMaxEntriesPerSize);
+            mUrlsBySize.put(size, urls);
+        }
+
+        String url = urls.get(path);
+        if(url == null) {
+            url = TmdbUrls.imageUrlWithPrefix(urls.mPrefix, path);
+            urls.put(path, url);
+        }
+
+        return url;
+    }
+
+    /**
+     * Gets the number of URLs that are kept
+     * @return Number of URLs of all sizes
+     */
+    public synchronized int size() {
+        int size = 0;
+        for(Urls urls : mUrlsBySize.values()) {
+            size += urls.size();
+        }
+        return size;
+    }
+
+    /**
+     * URLs of one image size by path in least recently used order
+     */
+    private static final class Urls extends LinkedHashMap<String, String> {
+
+        // Never serialized, but LinkedHashMap is Serializable so every subclass needs one
+        private static final long serialVersionUID = 1L;
+
+        private final String mPrefix;
+        private final int mMaxEntries;
+
+        Urls(String prefix, int maxEntries) {
+            super(16, 0.75f, true);
+            mPrefix = prefix;
+            mMaxEntries = maxEntries;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+            return size() > mMaxEntries;
+        }
+    }
+}
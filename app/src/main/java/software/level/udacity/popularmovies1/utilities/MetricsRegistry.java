@@ -0,0 +1,178 @@
+package software.level.udacity.popularmovies1.utilities;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps the measurements of recent requests in memory, along with running totals for each
+ * host, so that a debug screen or a test can see where the time of a load went.
+ */
+public class MetricsRegistry {
+
+    // Number of requests kept in full
+    private static final int DEFAULT_MAX_RECENT = 100;
+
+    private static MetricsRegistry sInstance;
+
+    private final int mMaxRecent;
+
+    // Latest requests last, guarded by this
+    private final ArrayDeque<RequestMetrics> mRecent = new ArrayDeque<>();
+
+    // Guarded by this
+    private final LinkedHashMap<String, Totals> mTotals = new LinkedHashMap<>();
+
+    /**
+     * Get the registry that all requests are recorded in
+     * @return The shared registry
+     */
+    public static synchronized MetricsRegistry getInstance() {
+        if(sInstance == null) {
+            sInstance = new MetricsRegistry(DEFAULT_MAX_RECENT);
+        }
+        return sInstance;
+    }
+
+    /**
+     * Create a new MetricsRegistry
+     * @param maxRecent Number of requests that are kept in full
+     */
+    public MetricsRegistry(int maxRecent) {
+        mMaxRecent = maxRecent;
+    }
+
+    /**
+     * Records a request that has finished
+     * @param metrics Measurements of the request
+     */
+    public synchronized void record(RequestMetrics metrics) {
+        mRecent.addLast(metrics);
+        if(mRecent.size() > mMaxRecent) {
+            mRecent.pollFirst();
+        }
+
+        Totals totals = mTotals.get(metrics.getHost());
+        if(totals == null) {
+            totals = new Totals();
+            mTotals.put(metrics.getHost(), totals);
+        }
+        totals.add(metrics);
+    }
+
+    /**
+     * Gets the latest requests
+     * @return Copy of the recent requests, oldest first
+     */
+    public synchronized List<RequestMetrics> getRecent() {
+        return new ArrayList<>(mRecent);
+    }
+
+    /**
+     * Gets the totals of every request made to a host
+     * @param host Host such as api.themoviedb.org
+     * @return Copy of the totals, empty if nothing was requested from the host
+     */
+    public synchronized Totals getTotals(String host) {
+        Totals totals = mTotals.get(host);
+        return totals != null ? totals.copy() : new Totals();
+    }
+
+    /**
+     * Forgets everything that was recorded
+     */
+    public synchronized void clear() {
+        mRecent.clear();
+        mTotals.clear();
+    }
+
+    /**
+     * Describes the totals of every host
+     * @return One line per host
+     */
+    public synchronized String getSummary() {
+        StringBuilder summary = new StringBuilder();
+        for(Map.Entry<String, Totals> entry : mTotals.entrySet()) {
+            if(summary.length() > 0) {
+                summary.append('\n');
+            }
+            summary.append(entry.getKey()).append(": ").append(entry.getValue());
+        }
+        return summary.toString();
+    }
+
+    /**
+     * Sums of the measurements of the requests made to a host
+     */
+    public static final class Totals {
+
+        private int mRequests;
+        private int mCached;
+        private long mWireBytes;
+        private long mDecodedBytes;
+        private long mTimeToFirstByteMillis;
+        private long mTotalMillis;
+        private long mParseMillis;
+
+        void add(RequestMetrics metrics) {
+            mRequests++;
+            if(metrics.isFromCache()) {
+                mCached++;
+            }
+            mWireBytes += metrics.getWireBytes();
+            mDecodedBytes += metrics.getDecodedBytes();
+            mTimeToFirstByteMillis += Math.max(0, metrics.getTimeToFirstByteMillis());
+            mTotalMillis += Math.max(0, metrics.getTotalMillis());
+            mParseMillis += Math.max(0, metrics.getParseMillis());
+        }
+
+        Totals copy() {
+            Totals copy = new Totals();
+            copy.mRequests = mRequests;
+            copy.mCached = mCached;
+            copy.mWireBytes = mWireBytes;
+            copy.mDecodedBytes = mDecodedBytes;
+            copy.mTimeToFirstByteMillis = mTimeToFirstByteMillis;
+            copy.mTotalMillis = mTotalMillis;
+            copy.mParseMillis = mParseMillis;
+            return copy;
+        }
+
+        public int getRequests() {
+            return mRequests;
+        }
+
+        public int getCached() {
+            return mCached;
+        }
+
+        public long getWireBytes() {
+            return mWireBytes;
+        }
+
+        public long getDecodedBytes() {
+            return mDecodedBytes;
+        }
+
+        public long getTimeToFirstByteMillis() {
+            return mTimeToFirstByteMillis;
+        }
+
+        public long getTotalMillis() {
+            return mTotalMillis;
+        }
+
+        public long getParseMillis() {
+            return mParseMillis;
+        }
+
+        @Override
+        public String toString() {
+            return mRequests + " requests (" + mCached + " cached), " + mWireBytes + " wire bytes, "
+                    + mDecodedBytes + " decoded bytes, " + mTimeToFirstByteMillis + "ms ttfb, "
+                    + mParseMillis + "ms parse, " + mTotalMillis + "ms total";
+        }
+    }
+}
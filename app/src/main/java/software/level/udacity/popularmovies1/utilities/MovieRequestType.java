@@ -14,9 +14,49 @@ public enum MovieRequestType {
      */
     TOP_RATED,
 
+    /**
+     * Request movies that are in theatres
+     */
+    NOW_PLAYING,
+
+    /**
+     * Request movies that are about to be released
+     */
+    UPCOMING,
+
+    /**
+     * Request movies similar to a specific movie id
+     */
+    SIMILAR,
+
+    /**
+     * Request movies recommended for viewers of a specific movie id
+     */
+    RECOMMENDATIONS,
+
+    /**
+     * Search movies by title, the URL is built from the text that is searched for
+     */
+    SEARCH,
+
     /**
      * Request details about a specific movie id
      */
-    DETAILS
+    DETAILS;
 
+    /**
+     * Checks if the request returns a paged list of movies rather than a single movie
+     * @return True for every request type except DETAILS
+     */
+    public boolean isList() {
+        return this != DETAILS;
+    }
+
+    /**
+     * Checks if the request is about a specific movie and needs its id
+     * @return True for SIMILAR, RECOMMENDATIONS and DETAILS
+     */
+    public boolean needsMovieId() {
+        return this == SIMILAR || this == RECOMMENDATIONS || this == DETAILS;
+    }
 }
@@ -1,15 +1,15 @@
 package software.level.udacity.popularmovies1.utilities;
 
 import android.content.Context;
-import android.net.Uri;
 import android.util.Log;
 
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URL;
-import java.util.Scanner;
 
 import software.level.udacity.popularmovies1.R;
 
@@ -22,51 +22,59 @@ public final class NetworkUtils {
 
     private static final String TAG = NetworkUtils.class.getSimpleName();
 
-    // Base scheme for the Uri builder
-    private static final String API_SCHEME = "https";
-
-    // Base Uri for the Movie Database API
-    private static final String API_AUTHORITY = "api.themoviedb.org";
+    // Base Uri for the images
+    static final String IMAGE_AUTHORITY = TmdbUrls.IMAGE_AUTHORITY;
 
-    // Version string appended to the path of the Movie Database API
-    private static final String API_VERSION = "3";
+    // Directory inside the app cache directory that holds cached API responses
+    private static final String RESPONSE_CACHE_DIRECTORY = "tmdb-responses";
 
-    // Path appended to all movie requests
-    private static final String API_PATH = "movie";
+    // Maximum number of bytes the API response cache can use on disk
+    private static final long RESPONSE_CACHE_SIZE = 5 * 1024 * 1024;
 
-    // Language code used for requests
-    private static final String API_LANGUAGE = "en-US";
+    // Compression asked for on every request, gzip is the only encoding that is decoded
+    private static final String ACCEPT_ENCODING = "gzip";
 
-    // Base Uri for the images
-    private static final String IMAGE_AUTHORITY = "image.tmdb.org";
+    // Cache for API responses, null until installResponseCache is called
+    private static DiskResponseCache sResponseCache;
 
 
     /**
-     * Create the base Uri for any API request
+     * Creates the request URL for the request type. This should only be used
+     * to retrieve lists that don't belong to a movie, not for detail requests.
      *
-     * @return Uri.Builder that can be appended to complete the Uri
+     * @param context Context for calling activity
+     * @param requestType MovieRequestType
+     * @return URL to call for API request
      */
-    private static Uri.Builder buildBaseUri() {
-        Uri.Builder builder = new Uri.Builder();
-
-        builder.scheme(API_SCHEME)
-                .authority(API_AUTHORITY)
-                .appendPath(API_VERSION)
-                .appendPath(API_PATH);
+    public static URL buildURL(Context context, MovieRequestType requestType) {
+        return buildURL(context, requestType, 0);
+    }
 
-        return builder;
+    /**
+     * Creates the request URL for a page of a list that doesn't belong to a movie, such as
+     * popular movies or top rated movies.
+     *
+     * @param context Context for calling activity
+     * @param requestType MovieRequestType
+     * @param page Page of results to request, starting at 1
+     * @return URL to call for API request
+     */
+    public static URL buildPageURL(Context context, MovieRequestType requestType, int page) {
+        return buildURL(context, requestType, 0, page);
     }
 
     /**
-     * Creates the request URL for the request type. This should only be used
-     * to retrieve popular movies and top rated movies not for detail requests.
+     * Creates the request URL for a page of a list that belongs to a movie, such as similar
+     * movies or recommendations.
      *
      * @param context Context for calling activity
      * @param requestType MovieRequestType
+     * @param id Id of the movie the list belongs to, ignored by lists that don't need one
+     * @param page Page of results to request, starting at 1
      * @return URL to call for API request
      */
-    public static URL buildURL(Context context, MovieRequestType requestType) {
-        return buildURL(context, requestType, 0);
+    public static URL buildPageURL(Context context, MovieRequestType requestType, int id, int page) {
+        return buildURL(context, requestType, id, page);
     }
 
     /**
@@ -78,97 +86,347 @@ public final class NetworkUtils {
      * @return URL to call for API request
      */
     public static URL buildURL(Context context, MovieRequestType requestType, int id) {
+        return buildURL(context, requestType, id, 0);
+    }
 
-        Uri.Builder builder = buildBaseUri();
-
-        switch(requestType) {
-            case POPULAR:
-                builder.appendPath("popular");
-                break;
+    /**
+     * Creates the request URL for the given request type.
+     *
+     * @param context Context for calling activity
+     * @param requestType MovieRequestType
+     * @param id For detail requests, id of movie
+     * @param page For list requests, page of results or 0 to leave it up to the API
+     * @return URL to call for API request
+     */
+    private static URL buildURL(Context context, MovieRequestType requestType, int id, int page) {
+        long startNanos = System.nanoTime();
 
-            case TOP_RATED:
-                builder.appendPath("top_rated");
-                break;
+        String spec = TmdbUrls.apiUrl(requestType, id, page, context.getString(R.string.API_KEY));
 
-            case DETAILS:
-                builder.appendPath(String.valueOf(id));
-                break;
+        URL url = null;
+        try {
+            url = new URL(spec);
+        } catch (MalformedURLException e) {
+            Log.e(TAG, "Problem with constructing URL -- " + spec);
         }
 
-        Uri uri = builder.appendQueryParameter("language", API_LANGUAGE)
-                .appendQueryParameter("api_key", context.getString(R.string.API_KEY))
-                .build();
+        Tracer.getInstance().end(Tracer.Span.URL_BUILD, startNanos, id);
+
+        return url;
+    }
+
+    /**
+     * Creates the URL for searching movies by title.
+     *
+     * @param context Context for calling activity
+     * @param query Text to search for
+     * @param page Page of results to request, starting at 1
+     * @return URL to call for API request
+     */
+    public static URL buildSearchURL(Context context, String query, int page) {
+        long startNanos = System.nanoTime();
+
+        String spec = TmdbUrls.searchUrl(query, page, context.getString(R.string.API_KEY));
 
         URL url = null;
         try {
-            url = new URL(uri.toString());
+            url = new URL(spec);
         } catch (MalformedURLException e) {
-            Log.e(TAG, "Problem with constructing URL -- " + uri.toString());
+            Log.e(TAG, "Problem with constructing URL -- " + spec);
         }
 
-        Log.d(TAG, url.toString());
+        Tracer.getInstance().end(Tracer.Span.URL_BUILD, startNanos, Tracer.NO_TAG);
 
         return url;
     }
 
     /**
-     * Generates a URL for downloading an image from The Movie DB image service
+     * Generates a URL for downloading an image from The Movie DB image service. Posters that
+     * are bound into views use ImageUrlCache directly, which skips creating a URL object.
      * @param path API supplied poster_path or backdrop_path
      * @param size Size of image required (w92, w154, w185, w342, w500, w780, original)
      * @return URL for downloading image
      */
     public static URL buildImageURL(String path, String size) {
-        // Strip any preceeding slash out of the path
-        path = path.replace("/", "");
-
-        Uri.Builder builder = new Uri.Builder();
-
-        builder.scheme(API_SCHEME)
-                .authority(IMAGE_AUTHORITY)
-                .appendPath("t")
-                .appendPath("p")
-                .appendPath(size)
-                .appendPath(path);
+        long startNanos = System.nanoTime();
 
-        Uri uri = builder.build();
+        String spec = ImageUrlCache.getInstance().get(path, size);
 
         URL url = null;
         try {
-            url = new URL(uri.toString());
+            url = new URL(spec);
         } catch (MalformedURLException e) {
-            Log.e(TAG, "Problem with constructing URL -- " + url.toString());
+            Log.e(TAG, "Problem with constructing URL -- " + spec);
         }
 
-        Log.d(TAG, url.toString());
+        Tracer.getInstance().end(Tracer.Span.URL_BUILD, startNanos, Tracer.NO_TAG);
 
         return url;
     }
 
     /**
-     * This method returns the entire result from the HTTP response.
+     * Sets up the disk cache used for API responses. Safe to call more than once, only the
+     * first call creates the cache.
+     *
+     * @param context Context used to find the cache directory
+     */
+    public static synchronized void installResponseCache(Context context) {
+        if(sResponseCache == null) {
+            File directory = new File(context.getCacheDir(), RESPONSE_CACHE_DIRECTORY);
+            sResponseCache = new DiskResponseCache(directory, RESPONSE_CACHE_SIZE);
+        }
+    }
+
+    /**
+     * This method hands the body of the HTTP response to the handler as a stream so that it
+     * can be consumed without first being buffered into a String. If the task running on this
+     * thread is cancelled while the response is being fetched, the body is never handed to
+     * the handler.
      *
      * @param url The URL to fetch the HTTP response from.
-     * @return The contents of the HTTP response.
+     * @param handler Consumes the response body and produces the result
+     * @return The result created by the handler
      * @throws IOException Related to network and stream reading
      */
-    public static String getResponseFromHttpUrl(URL url) throws IOException {
-        HttpURLConnection urlConnection = (HttpURLConnection) url.openConnection();
+    public static <T> T getResponseFromHttpUrl(URL url, ResponseHandler<T> handler) throws IOException {
+        Response response = openResponse(url);
+        try {
+            // Nobody is waiting for the result anymore so don't bother parsing it
+            CancellationToken.throwIfCurrentCancelled();
+
+            // Parse time leaves out the time spent waiting for the body to arrive
+            long parseStart = System.nanoTime();
+            long readNanosBefore = response.mBody.getReadNanos();
+
+            T result = handler.handleResponse(response.mBody);
+
+            long readNanos = response.mBody.getReadNanos() - readNanosBefore;
+            long parseNanos = System.nanoTime() - parseStart - readNanos;
+            response.mMetrics.setParseMillis(parseNanos / 1000000);
+            Tracer.getInstance().record(Tracer.Span.PARSE, parseStart, parseNanos, Tracer.NO_TAG);
+
+            return result;
+        } finally {
+            response.close();
+        }
+    }
+
+    /**
+     * Opens the body of the response for the URL. Fresh responses are served from the response
+     * cache without touching the network, stale ones are revalidated with the server and new
+     * responses are written to the cache as they are read.
+     *
+     * @param url The URL to fetch the HTTP response from.
+     * @return The response, which must be closed once the body has been read
+     * @throws IOException Related to network and stream reading
+     */
+    private static Response openResponse(URL url) throws IOException {
+        DiskResponseCache cache;
+        synchronized (NetworkUtils.class) {
+            cache = sResponseCache;
+        }
+
+        return openResponse(url, cache);
+    }
+
+    /**
+     * Opens the body of the response for the URL using the given cache, which lets other kinds
+     * of downloads such as images keep their own cache with its own size. The request asks for
+     * a compressed body, which is decompressed as it is read, and its measurements are recorded
+     * in the MetricsRegistry once the response is closed.
+     *
+     * @param url The URL to fetch the HTTP response from.
+     * @param cache Cache to serve the response from and write it to, or null to not cache
+     * @return The response, which must be closed once the body has been read
+     * @throws IOException Related to network and stream reading
+     */
+    static Response openResponse(URL url, DiskResponseCache cache) throws IOException {
+        return openResponse(url, cache, true);
+    }
+
+    /**
+     * Opens the body of the response for the URL, see openResponse(URL, DiskResponseCache)
+     *
+     * @param url The URL to fetch the HTTP response from.
+     * @param cache Cache to serve the response from and write it to, or null to not cache
+     * @param useCachedEntry False to ignore the cached entry and fetch the whole response
+     * @return The response, which must be closed once the body has been read
+     * @throws IOException Related to network and stream reading
+     */
+    private static Response openResponse(URL url, DiskResponseCache cache, boolean useCachedEntry)
+            throws IOException {
+        long startNanos = System.nanoTime();
+        RequestMetrics metrics = new RequestMetrics(url);
+
+        DiskResponseCache.Entry entry = cache != null && useCachedEntry ? cache.get(url) : null;
+
+        if(entry != null && entry.isFresh()) {
+            Response response = openCachedResponse(entry, metrics, startNanos);
+            if(response != null) {
+                return response;
+            }
+
+            // Evicted since it was looked up, so it has to be fetched again
+            entry = null;
+        }
+
+        CancellationToken.throwIfCurrentCancelled();
+
+        ConnectionManager connectionManager = ConnectionManager.getInstance();
+        ConnectionManager.Lease lease = connectionManager.open(url);
+        HttpURLConnection urlConnection = lease.getConnection();
+        try {
+            // Setting this ourselves turns off transparent decompression, which lets the bytes
+            // be counted as they came over the network
+            urlConnection.setRequestProperty("Accept-Encoding", ACCEPT_ENCODING);
+
+            if(entry != null) {
+                entry.addConditionalHeaders(urlConnection);
+            }
+
+            int responseCode = urlConnection.getResponseCode();
+
+            long headersNanos = System.nanoTime() - startNanos;
+            metrics.setTimeToFirstByteMillis(headersNanos / 1000000);
+            Tracer.getInstance().record(Tracer.Span.NETWORK, startNanos, headersNanos, Tracer.NO_TAG);
+
+            // The cached body is still valid, only the headers were sent
+            if(responseCode == HttpURLConnection.HTTP_NOT_MODIFIED && entry != null) {
+                entry = cache.update(entry, urlConnection);
+                connectionManager.release(lease, closeEmptyBody(urlConnection));
+
+                Response response = openCachedResponse(entry, metrics, startNanos);
+                if(response != null) {
+                    return response;
+                }
+
+                // Evicted while it was being revalidated, ask for the whole response instead
+                return openResponse(url, cache, false);
+            }
+
+            CountingInputStream wire = new CountingInputStream(urlConnection.getInputStream());
+            InputStream in = ResponseBodyReader.decodeBody(urlConnection, wire);
+
+            // Content-Length counts the compressed bytes so it says nothing about the body size
+            int contentLength = in == wire ? urlConnection.getContentLength() : -1;
+
+            if(cache != null && responseCode == HttpURLConnection.HTTP_OK) {
+                in = cache.put(url, urlConnection, in);
+            }
+
+            return new Response(connectionManager, lease, metrics, startNanos, wire, in, contentLength);
+        } catch (IOException e) {
+            connectionManager.release(lease, false);
+            throw e;
+        }
+    }
+
+    /**
+     * Opens the body of a cached response
+     * @param entry Entry to read the body of
+     * @param metrics Measurements of the request
+     * @param startNanos When the request started
+     * @return The response, or null if the entry was evicted and its body is gone
+     */
+    private static Response openCachedResponse(DiskResponseCache.Entry entry, RequestMetrics metrics,
+                                               long startNanos) {
+        FileInputStream body;
+        int length;
+        try {
+            body = entry.openBody();
+        } catch (IOException e) {
+            return null;
+        }
+
+        try {
+            length = DiskResponseCache.Entry.bodyLength(body);
+        } catch (IOException e) {
+            length = -1;
+        }
+
+        metrics.setFromCache(true);
+        return new Response(null, null, metrics, startNanos, null, body, length);
+    }
+
+    /**
+     * Closes the body of a response that has no content, such as a 304, so that the connection
+     * goes back to the pool
+     * @param urlConnection Connection the response was read from
+     * @return True if the connection can be reused
+     */
+    private static boolean closeEmptyBody(HttpURLConnection urlConnection) {
         try {
             InputStream in = urlConnection.getInputStream();
+            boolean drained = ConnectionManager.drain(in);
+            in.close();
+            return drained;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Body of a response along with the connection it is being read from, if any, and the
+     * measurements of the request.
+     */
+    static final class Response {
+
+        // Null when the body is being read from the cache
+        private final ConnectionManager mConnectionManager;
+        private final ConnectionManager.Lease mLease;
+        private final CountingInputStream mWire;
+
+        private final long mStartNanos;
+        final RequestMetrics mMetrics;
+        final CountingInputStream mBody;
+        final int mContentLength;
+
+        Response(ConnectionManager connectionManager, ConnectionManager.Lease lease, RequestMetrics metrics,
+                 long startNanos, CountingInputStream wire, InputStream body, int contentLength) {
+            mConnectionManager = connectionManager;
+            mLease = lease;
+            mMetrics = metrics;
+            mStartNanos = startNanos;
+            mWire = wire;
+            mBody = new CountingInputStream(body);
+            mContentLength = contentLength;
+        }
 
-            Scanner scanner = new Scanner(in);
-            scanner.useDelimiter("\\A");
+        boolean isFromCache() {
+            return mLease == null;
+        }
 
-            boolean hasInput = scanner.hasNext();
-            if (hasInput) {
-                return scanner.next();
-            } else {
-                return null;
+        /**
+         * Closes the body. The connection is kept alive for the next request if the body was
+         * read to the end, or close enough to the end to finish reading it here.
+         */
+        void close() throws IOException {
+            boolean reusable = false;
+            try {
+                boolean drained = mLease != null && ConnectionManager.drain(mBody);
+                mBody.close();
+                reusable = drained;
+            } finally {
+                if(mLease != null) {
+                    mConnectionManager.release(mLease, reusable);
+                }
+
+                mMetrics.finish(mWire != null ? mWire.getCount() : 0, mBody.getCount(),
+                        (System.nanoTime() - mStartNanos) / 1000000);
+                MetricsRegistry.getInstance().record(mMetrics);
+
+                Tracer.getInstance().record(Tracer.Span.BODY_READ, mStartNanos, mBody.getReadNanos(), Tracer.NO_TAG);
             }
-        } finally {
-            urlConnection.disconnect();
         }
     }
+
+    /**
+     * Interface that defines how the body of an HTTP response is consumed
+     * @param <T> Type of the result produced from the response body
+     */
+    public interface ResponseHandler<T> {
+        T handleResponse(InputStream in) throws IOException;
+    }
 }
 
 
@@ -0,0 +1,285 @@
+package software.level.udacity.popularmovies1.utilities;
+
+import android.graphics.Bitmap;
+
+import com.squareup.picasso.Cache;
+
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Memory cache of decoded posters that Picasso is set up to use. Posters are keyed by image size
+ * and poster_path rather than by Picasso's full request key, and the cache is bounded by the
+ * number of bytes of its bitmaps.
+ *
+ * Views that show a poster retain its bitmap until they show something else. Once a bitmap
+ * that has been shown is both evicted and no longer shown it goes to the BitmapPool so it can
+ * be decoded into again. Bitmaps that were never shown, such as prefetched posters, are left to
+ * the garbage collector since Picasso may still be about to deliver them. The same goes for a
+ * bitmap that is evicted after a lookup handed it out but before a view retained it.
+ */
+public class PosterMemoryCache implements Cache {
+
+    // Picasso's key for a plain image request is the URL followed by a line break
+    private static final char KEY_SEPARATOR = '\n';
+
+    // Start of the URL of every poster, the rest is "<size>/<poster_path>"
+    private static final String IMAGE_URL_PREFIX = "https://" + NetworkUtils.IMAGE_AUTHORITY + "/t/p/";
+
+    // Maximum number of bytes of bitmaps held by the cache
+    private final int mMaxSize;
+
+    // Where evicted bitmaps go
+    private final BitmapPool mBitmapPool;
+
+    // Decoded posters in least recently used order, guarded by this
+    private final LinkedHashMap<String, Bitmap> mBitmaps = new LinkedHashMap<>(32, 0.75f, true);
+
+    // How each bitmap that is cached or shown is used, guarded by this
+    private final IdentityHashMap<Bitmap, Usage> mUsages = new IdentityHashMap<>();
+
+    // Guarded by this
+    private int mSize;
+    private int mHitCount;
+    private int mMissCount;
+
+    /**
+     * Create a new PosterMemoryCache
+     * @param maxSize Maximum number of bytes of bitmaps held by the cache
+     * @param bitmapPool Where evicted bitmaps go
+     */
+    public PosterMemoryCache(int maxSize, BitmapPool bitmapPool) {
+        mMaxSize = maxSize;
+        mBitmapPool = bitmapPool;
+    }
+
+    /**
+     * Builds the cache key for a poster
+     * @param posterPath API supplied poster_path
+     * @param size Image size the poster was loaded at
+     * @return Key the poster is cached under
+     */
+    public static String keyFor(String posterPath, String size) {
+        return size + "/" + posterPath.replace("/", "");
+    }
+
+    /**
+     * Turns Picasso's key for a request into the key a poster is cached under. Requests that
+     * aren't for a plain poster, such as resized ones, keep Picasso's key.
+     * @param picassoKey Key Picasso created for the request
+     * @return Key to cache the bitmap under
+     */
+    static String keyForPicassoKey(String picassoKey) {
+        int separator = picassoKey.indexOf(KEY_SEPARATOR);
+
+        if(picassoKey.startsWith(IMAGE_URL_PREFIX) && separator == picassoKey.length() - 1) {
+            return picassoKey.substring(IMAGE_URL_PREFIX.length(), separator);
+        }
+
+        return picassoKey;
+    }
+
+    /**
+     * Gets a poster without going through Picasso
+     * @param posterPath API supplied poster_path
+     * @param size Image size the poster was loaded at
+     * @return The bitmap, or null if it isn't cached
+     */
+    public synchronized Bitmap getPoster(String posterPath, String size) {
+        return getCached(keyFor(posterPath, size));
+    }
+
+    @Override
+    public synchronized Bitmap get(String key) {
+        return getCached(keyForPicassoKey(key));
+    }
+
+    @Override
+    public synchronized void set(String key, Bitmap bitmap) {
+        Bitmap previous = mBitmaps.put(keyForPicassoKey(key), bitmap);
+        if(previous == bitmap) {
+            return;
+        }
+
+        mSize += sizeOf(bitmap);
+        usageOf(bitmap).mCached++;
+
+        if(previous != null) {
+            onRemoved(previous);
+        }
+
+        trimToSize(mMaxSize);
+    }
+
+    @Override
+    public synchronized int size() {
+        return mSize;
+    }
+
+    @Override
+    public synchronized int maxSize() {
+        return mMaxSize;
+    }
+
+    @Override
+    public synchronized void clear() {
+        trimToSize(-1);
+    }
+
+    @Override
+    public synchronized void clearKeyUri(String uri) {
+        String prefix = keyForPicassoKey(uri + KEY_SEPARATOR);
+
+        Iterator<Map.Entry<String, Bitmap>> iterator = mBitmaps.entrySet().iterator();
+        while(iterator.hasNext()) {
+            Map.Entry<String, Bitmap> entry = iterator.next();
+            if(entry.getKey().startsWith(prefix)) {
+                iterator.remove();
+                onRemoved(entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * Marks a bitmap as shown in a view so that it isn't decoded into after being evicted
+     * @param bitmap Bitmap the view shows
+     */
+    public synchronized void retain(Bitmap bitmap) {
+        Usage usage = usageOf(bitmap);
+        if(usage.mHandedOut > 0) {
+            usage.mHandedOut--;
+        }
+        usage.mShown++;
+        usage.mWasShown = true;
+    }
+
+    /**
+     * Marks a bitmap as no longer shown in a view
+     * @param bitmap Bitmap the view showed
+     */
+    public synchronized void release(Bitmap bitmap) {
+        Usage usage = mUsages.get(bitmap);
+        if(usage == null || usage.mShown == 0) {
+            return;
+        }
+
+        usage.mShown--;
+        recycleIfUnused(bitmap, usage);
+    }
+
+    /**
+     * Number of lookups that found a bitmap
+     * @return Number of hits since the cache was created
+     */
+    public synchronized int getHitCount() {
+        return mHitCount;
+    }
+
+    /**
+     * Number of lookups that didn't find a bitmap
+     * @return Number of misses since the cache was created
+     */
+    public synchronized int getMissCount() {
+        return mMissCount;
+    }
+
+    /**
+     * Looks up a bitmap and marks it as handed out, so that it isn't pooled if it is evicted
+     * before the view it is for retains it
+     * @param key Key the poster is cached under
+     * @return The bitmap, or null if it isn't cached
+     */
+    private Bitmap getCached(String key) {
+        Bitmap bitmap = mBitmaps.get(key);
+        if(bitmap == null) {
+            mMissCount++;
+            return null;
+        }
+
+        mHitCount++;
+        mUsages.get(bitmap).mHandedOut++;
+        return bitmap;
+    }
+
+    /**
+     * Size of a bitmap in bytes, overridden by tests since bitmaps can't be created there
+     * @param bitmap Bitmap to measure
+     * @return Number of bytes of the bitmap
+     */
+    protected int sizeOf(Bitmap bitmap) {
+        return bitmap.getByteCount();
+    }
+
+    /**
+     * Evicts the least recently used bitmaps until the cache is no larger than the given size
+     * @param maxSize Size to trim to, -1 to evict everything
+     */
+    private void trimToSize(int maxSize) {
+        Iterator<Bitmap> iterator = mBitmaps.values().iterator();
+        while(mSize > maxSize && iterator.hasNext()) {
+            Bitmap eldest = iterator.next();
+            iterator.remove();
+            onRemoved(eldest);
+        }
+    }
+
+    /**
+     * Updates the size and usage of a bitmap that was just removed from mBitmaps
+     * @param bitmap Bitmap that was removed
+     */
+    private void onRemoved(Bitmap bitmap) {
+        mSize -= sizeOf(bitmap);
+
+        Usage usage = mUsages.get(bitmap);
+        usage.mCached--;
+        recycleIfUnused(bitmap, usage);
+    }
+
+    /**
+     * Forgets a bitmap that is neither cached nor shown anymore. If it has been shown it goes
+     * to the pool, unless a lookup handed it out to a view that hasn't retained it yet.
+     * @param bitmap Bitmap that is no longer cached or shown by a view
+     * @param usage Usage of the bitmap
+     */
+    private void recycleIfUnused(Bitmap bitmap, Usage usage) {
+        if(usage.mCached > 0 || usage.mShown > 0) {
+            return;
+        }
+
+        // A view retaining the bitmap later starts counting from scratch
+        mUsages.remove(bitmap);
+
+        if(usage.mWasShown && usage.mHandedOut == 0) {
+            mBitmapPool.put(bitmap);
+        }
+    }
+
+    private Usage usageOf(Bitmap bitmap) {
+        Usage usage = mUsages.get(bitmap);
+        if(usage == null) {
+            usage = new Usage();
+            mUsages.put(bitmap, usage);
+        }
+        return usage;
+    }
+
+    /**
+     * How a bitmap is used
+     */
+    private static final class Usage {
+
+        // Number of keys the bitmap is cached under
+        int mCached;
+
+        // Number of views that show the bitmap
+        int mShown;
+
+        // Number of lookups that returned the bitmap whose view hasn't retained it yet
+        int mHandedOut;
+
+        // True once a view showed the bitmap, until then Picasso may still be delivering it
+        boolean mWasShown;
+    }
+}
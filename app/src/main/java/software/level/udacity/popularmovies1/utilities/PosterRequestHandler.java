@@ -0,0 +1,118 @@
+package software.level.udacity.popularmovies1.utilities;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+
+import com.squareup.picasso.NetworkPolicy;
+import com.squareup.picasso.Picasso;
+import com.squareup.picasso.Request;
+import com.squareup.picasso.RequestHandler;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.net.URL;
+
+/**
+ * Loads images from The Movie DB image service for Picasso. The encoded images are kept in a
+ * disk cache of their own, read into pooled buffers, and decoded into bitmaps taken from the
+ * BitmapPool whenever one of the right size is available.
+ */
+public class PosterRequestHandler extends RequestHandler {
+
+    // Keeps the encoded images
+    private final DiskResponseCache mDiskCache;
+
+    // Bitmaps that images can be decoded into
+    private final BitmapPool mBitmapPool;
+
+    /**
+     * Create a new PosterRequestHandler
+     * @param diskCache Disk cache that holds the encoded images
+     * @param bitmapPool Bitmaps that images can be decoded into
+     */
+    public PosterRequestHandler(DiskResponseCache diskCache, BitmapPool bitmapPool) {
+        mDiskCache = diskCache;
+        mBitmapPool = bitmapPool;
+    }
+
+    @Override
+    public boolean canHandleRequest(Request data) {
+        return data.uri != null && NetworkUtils.IMAGE_AUTHORITY.equals(data.uri.getHost());
+    }
+
+    @Override
+    public Result load(final Request request, int networkPolicy) throws IOException {
+        URL url = new URL(request.uri.toString());
+
+        BitmapDecoder decoder = new BitmapDecoder(request.config);
+
+        // Only look at the disk, even if the entry is stale
+        if(NetworkPolicy.isOfflineOnly(networkPolicy)) {
+            DiskResponseCache.Entry entry = mDiskCache.get(url);
+            if(entry == null) {
+                throw new IOException("Not cached: " + url);
+            }
+
+            FileInputStream in = entry.openBody();
+            try {
+                int length = DiskResponseCache.Entry.bodyLength(in);
+                return new Result(ResponseBodyReader.readBody(in, length, decoder), Picasso.LoadedFrom.DISK);
+            } finally {
+                in.close();
+            }
+        }
+
+        NetworkUtils.Response response = NetworkUtils.openResponse(url, mDiskCache);
+        try {
+            Bitmap bitmap = ResponseBodyReader.readBody(response.mBody, response.mContentLength, decoder);
+            return new Result(bitmap, response.isFromCache() ? Picasso.LoadedFrom.DISK : Picasso.LoadedFrom.NETWORK);
+        } finally {
+            response.close();
+        }
+    }
+
+    /**
+     * Decodes the bytes of an image, reusing a pooled bitmap when one of the same size exists
+     */
+    private final class BitmapDecoder implements ResponseBodyReader.BodyConsumer<Bitmap> {
+
+        private final Bitmap.Config mConfig;
+
+        BitmapDecoder(Bitmap.Config config) {
+            mConfig = config != null ? config : Bitmap.Config.ARGB_8888;
+        }
+
+        @Override
+        public Bitmap consumeBody(byte[] buffer, int length) throws IOException {
+            BitmapFactory.Options options = new BitmapFactory.Options();
+
+            // Read the dimensions first to find a bitmap that can be reused
+            options.inJustDecodeBounds = true;
+            BitmapFactory.decodeByteArray(buffer, 0, length, options);
+            if(options.outWidth <= 0 || options.outHeight <= 0) {
+                throw new IOException("Not an image");
+            }
+
+            options.inJustDecodeBounds = false;
+            options.inPreferredConfig = mConfig;
+            options.inMutable = true;
+            options.inSampleSize = 1;
+            options.inBitmap = mBitmapPool.get(options.outWidth, options.outHeight, mConfig);
+
+            Bitmap bitmap;
+            try {
+                bitmap = BitmapFactory.decodeByteArray(buffer, 0, length, options);
+            } catch (IllegalArgumentException e) {
+                // The pooled bitmap couldn't be reused after all, decode into a new one
+                options.inBitmap = null;
+                bitmap = BitmapFactory.decodeByteArray(buffer, 0, length, options);
+            }
+
+            if(bitmap == null) {
+                throw new IOException("Could not decode image");
+            }
+
+            return bitmap;
+        }
+    }
+}
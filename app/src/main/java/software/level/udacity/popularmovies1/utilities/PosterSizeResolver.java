@@ -0,0 +1,180 @@
+package software.level.udacity.popularmovies1.utilities;
+
+import android.content.Context;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
+import android.os.Build;
+import android.telephony.TelephonyManager;
+
+/**
+ * Picks which of the image sizes offered by The Movie DB to download for a poster. The smallest
+ * size that is at least as wide as the view it is shown in is used, and smaller sizes are used
+ * on connections where data costs money or is slow.
+ */
+public class PosterSizeResolver {
+
+    /**
+     * How much the current connection can be used for images
+     */
+    public enum ConnectionQuality {
+        /**
+         * Unmetered and reasonably fast, posters are loaded at full size
+         */
+        FAST,
+
+        /**
+         * The user pays for data, posters are loaded one size smaller
+         */
+        METERED,
+
+        /**
+         * 2G class mobile data, posters are loaded two sizes smaller
+         */
+        SLOW
+    }
+
+    // Size used when the view is wider than the widest fixed size
+    public static final String SIZE_ORIGINAL = "original";
+
+    // Fixed width sizes offered by the image service, from small to large
+    private static final String[] SIZES = {"w92", "w154", "w185", "w342", "w500", "w780"};
+
+    // Width in pixels of each of the SIZES
+    private static final int[] WIDTHS = {92, 154, 185, 342, 500, 780};
+
+    private final Context mContext;
+
+    /**
+     * Create a new PosterSizeResolver
+     * @param context Context used to check the display and the connection
+     */
+    public PosterSizeResolver(Context context) {
+        mContext = context.getApplicationContext();
+    }
+
+    /**
+     * Picks the size for a view of the given width on the current connection
+     * @param widthPx Width of the view in pixels
+     * @return Size to pass to ImageUrlCache.get
+     */
+    public String resolve(int widthPx) {
+        return selectSize(widthPx, getConnectionQuality());
+    }
+
+    /**
+     * Picks the size for a view of the given width on the current connection
+     * @param widthDp Width of the view in density independent pixels
+     * @return Size to pass to ImageUrlCache.get
+     */
+    public String resolveDp(float widthDp) {
+        float density = mContext.getResources().getDisplayMetrics().density;
+        return resolve(Math.round(widthDp * density));
+    }
+
+    /**
+     * Checks how much the current connection should be used for images
+     * @return The quality of the active connection, FAST if it can't be determined
+     */
+    public ConnectionQuality getConnectionQuality() {
+        ConnectivityManager connectivityManager =
+                (ConnectivityManager) mContext.getSystemService(Context.CONNECTIVITY_SERVICE);
+        NetworkInfo networkInfo = connectivityManager.getActiveNetworkInfo();
+
+        if(networkInfo == null) {
+            return ConnectionQuality.FAST;
+        }
+
+        if(networkInfo.getType() == ConnectivityManager.TYPE_MOBILE && isSlowMobileNetwork(networkInfo.getSubtype())) {
+            return ConnectionQuality.SLOW;
+        }
+
+        boolean metered;
+        if(Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            metered = connectivityManager.isActiveNetworkMetered();
+        } else {
+            metered = networkInfo.getType() == ConnectivityManager.TYPE_MOBILE;
+        }
+
+        return metered ? ConnectionQuality.METERED : ConnectionQuality.FAST;
+    }
+
+    /**
+     * Picks the smallest size that is at least as wide as the view, then steps down to smaller
+     * sizes depending on the connection
+     * @param widthPx Width of the view in pixels
+     * @param quality Quality of the connection the image will be downloaded on
+     * @return Size to pass to ImageUrlCache.get
+     */
+    public static String selectSize(int widthPx, ConnectionQuality quality) {
+        int index = bucketIndex(widthPx);
+
+        if(quality == ConnectionQuality.METERED) {
+            index -= 1;
+        } else if(quality == ConnectionQuality.SLOW) {
+            index -= 2;
+        }
+
+        return sizeAt(Math.max(0, index));
+    }
+
+    /**
+     * Checks if one size is smaller than another
+     * @param size Size to check
+     * @param other Size to compare against
+     * @return True if size is a smaller image than other, false if either isn't a known size
+     */
+    public static boolean isSmaller(String size, String other) {
+        int index = indexOf(size);
+        int otherIndex = indexOf(other);
+        return index != -1 && otherIndex != -1 && index < otherIndex;
+    }
+
+    /**
+     * Index of the smallest size that is at least as wide as the view. SIZES.length stands for
+     * SIZE_ORIGINAL.
+     * @param widthPx Width of the view in pixels
+     * @return Index of the size
+     */
+    private static int bucketIndex(int widthPx) {
+        for(int i = 0; i < WIDTHS.length; i++) {
+            if(WIDTHS[i] >= widthPx) {
+                return i;
+            }
+        }
+        return SIZES.length;
+    }
+
+    private static String sizeAt(int index) {
+        return index < SIZES.length ? SIZES[index] : SIZE_ORIGINAL;
+    }
+
+    private static int indexOf(String size) {
+        if(SIZE_ORIGINAL.equals(size)) {
+            return SIZES.length;
+        }
+        for(int i = 0; i < SIZES.length; i++) {
+            if(SIZES[i].equals(size)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Checks if the mobile network type is one where downloading large images takes seconds
+     * @param subtype Subtype of the mobile network
+     * @return True for 2G class networks
+     */
+    private static boolean isSlowMobileNetwork(int subtype) {
+        switch(subtype) {
+            case TelephonyManager.NETWORK_TYPE_GPRS:
+            case TelephonyManager.NETWORK_TYPE_EDGE:
+            case TelephonyManager.NETWORK_TYPE_CDMA:
+            case TelephonyManager.NETWORK_TYPE_1xRTT:
+            case TelephonyManager.NETWORK_TYPE_IDEN:
+                return true;
+            default:
+                return false;
+        }
+    }
+}
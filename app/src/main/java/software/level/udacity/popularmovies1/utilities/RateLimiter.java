@@ -0,0 +1,88 @@
+package software.level.udacity.popularmovies1.utilities;
+
+/**
+ * Token bucket that limits how many requests are made per period. Up to a burst of requests can
+ * be made right away, after which permits become available at a steady rate. Callers that have
+ * to wait reserve their permit up front, so waiting callers are served in the order they came.
+ * Rather than blocking, a caller schedules its request for when its permit can be used, and
+ * hands the permit back if the request is cancelled before then.
+ */
+public class RateLimiter {
+
+    private final TaskScheduler.Clock mClock;
+
+    // Time it takes for a single permit to become available
+    private final double mMillisPerPermit;
+
+    // Maximum number of permits that can be saved up
+    private final int mBurst;
+
+    // Guarded by this, may go below zero when permits have been reserved ahead of time
+    private double mAvailable;
+    private long mLastRefill;
+
+    /**
+     * Create a new RateLimiter that starts with a full bucket
+     * @param permits Number of permits that become available every period
+     * @param periodMillis Length of the period
+     * @param burst Maximum number of permits that can be used at once
+     * @param clock Source of time, replaced by a fake clock in tests
+     */
+    public RateLimiter(int permits, long periodMillis, int burst, TaskScheduler.Clock clock) {
+        mMillisPerPermit = (double) periodMillis / permits;
+        mBurst = burst;
+        mClock = clock;
+        mAvailable = burst;
+        mLastRefill = clock.uptimeMillis();
+    }
+
+    /**
+     * Takes a permit if one is available right now
+     * @return True if a permit was taken
+     */
+    public synchronized boolean tryAcquire() {
+        refill();
+        if(mAvailable < 1) {
+            return false;
+        }
+        mAvailable--;
+        return true;
+    }
+
+    /**
+     * Takes a permit, reserving a future one if none is available right now
+     * @return How many milliseconds the caller has to wait before its permit can be used
+     */
+    public synchronized long reserve() {
+        refill();
+        mAvailable--;
+
+        if(mAvailable >= 0) {
+            return 0;
+        }
+        return (long) Math.ceil(-mAvailable * mMillisPerPermit);
+    }
+
+    /**
+     * Hands back a permit that was reserved but never used, so that later reservations don't
+     * have to wait for it
+     */
+    public synchronized void cancelReservation() {
+        refill();
+        mAvailable = Math.min(mBurst, mAvailable + 1);
+    }
+
+    /**
+     * Adds the permits that became available since the last refill, up to the burst
+     */
+    private void refill() {
+        long now = mClock.uptimeMillis();
+        long elapsed = now - mLastRefill;
+        if(elapsed <= 0) {
+            return;
+        }
+
+        mAvailable = Math.min(mBurst, mAvailable + elapsed / mMillisPerPermit);
+        mLastRefill = now;
+    }
+}
@@ -0,0 +1,109 @@
+package software.level.udacity.popularmovies1.utilities;
+
+import java.net.URL;
+
+/**
+ * Measurements of a single request, recorded in the MetricsRegistry once its response has been
+ * consumed. Times are -1 when they don't apply, such as the time to first byte of a response
+ * that was served from the cache.
+ */
+public final class RequestMetrics {
+
+    private final String mHost;
+    private final String mPath;
+    private boolean mFromCache;
+    private long mWireBytes;
+    private long mDecodedBytes;
+    private long mTimeToFirstByteMillis = -1;
+    private long mTotalMillis = -1;
+    private long mParseMillis = -1;
+
+    /**
+     * Create a new RequestMetrics
+     * @param url Requested URL, the query is left out since it holds the API key
+     */
+    public RequestMetrics(URL url) {
+        mHost = url.getHost();
+        mPath = url.getPath();
+    }
+
+    /**
+     * Create a new RequestMetrics with all measurements filled in
+     * @param host Host the request was sent to
+     * @param path Path of the request
+     * @param fromCache True if the response came from the response cache
+     * @param wireBytes Bytes of the body as they came over the network
+     * @param decodedBytes Bytes of the body after decompression
+     * @param timeToFirstByteMillis Time until the response headers arrived
+     * @param totalMillis Time until the response was consumed
+     * @param parseMillis Time spent parsing the body, not counting waiting for it
+     */
+    public RequestMetrics(String host, String path, boolean fromCache, long wireBytes, long decodedBytes,
+                          long timeToFirstByteMillis, long totalMillis, long parseMillis) {
+        mHost = host;
+        mPath = path;
+        mFromCache = fromCache;
+        mWireBytes = wireBytes;
+        mDecodedBytes = decodedBytes;
+        mTimeToFirstByteMillis = timeToFirstByteMillis;
+        mTotalMillis = totalMillis;
+        mParseMillis = parseMillis;
+    }
+
+    void setFromCache(boolean fromCache) {
+        mFromCache = fromCache;
+    }
+
+    void setTimeToFirstByteMillis(long timeToFirstByteMillis) {
+        mTimeToFirstByteMillis = timeToFirstByteMillis;
+    }
+
+    void setParseMillis(long parseMillis) {
+        mParseMillis = parseMillis;
+    }
+
+    void finish(long wireBytes, long decodedBytes, long totalMillis) {
+        mWireBytes = wireBytes;
+        mDecodedBytes = decodedBytes;
+        mTotalMillis = totalMillis;
+    }
+
+    public String getHost() {
+        return mHost;
+    }
+
+    public String getPath() {
+        return mPath;
+    }
+
+    public boolean isFromCache() {
+        return mFromCache;
+    }
+
+    public long getWireBytes() {
+        return mWireBytes;
+    }
+
+    public long getDecodedBytes() {
+        return mDecodedBytes;
+    }
+
+    public long getTimeToFirstByteMillis() {
+        return mTimeToFirstByteMillis;
+    }
+
+    public long getTotalMillis() {
+        return mTotalMillis;
+    }
+
+    public long getParseMillis() {
+        return mParseMillis;
+    }
+
+    @Override
+    public String toString() {
+        return mHost + mPath + (mFromCache ? " (cached)" : "") + ": " + mWireBytes + "/" + mDecodedBytes
+                + " bytes, ttfb " + mTimeToFirstByteMillis + "ms, parse " + mParseMillis
+                + "ms, total " + mTotalMillis + "ms";
+    }
+}
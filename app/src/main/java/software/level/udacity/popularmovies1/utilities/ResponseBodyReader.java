@@ -0,0 +1,177 @@
+package software.level.udacity.popularmovies1.utilities;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Reads HTTP response bodies into Strings, or hands the raw bytes to a consumer. The body is
+ * read into a byte buffer that is sized from the Content-Length header when one is present,
+ * and the buffers are kept in a small pool so that consecutive requests don't allocate new
+ * ones. The bytes are decoded to UTF-8 exactly once after the whole body has been read.
+ */
+public final class ResponseBodyReader {
+
+    // All responses from The Movie Database are UTF-8 encoded
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    // Size of the buffer used when the length of the body is not known up front
+    private static final int DEFAULT_BUFFER_SIZE = 16 * 1024;
+
+    // Buffers larger than this are used once and then dropped instead of being pooled
+    private static final int MAX_POOLED_BUFFER_SIZE = 256 * 1024;
+
+    // Maximum number of buffers held by the pool
+    private static final int MAX_POOLED_BUFFERS = 4;
+
+    // Pool of buffers that can be reused between requests, guarded by itself
+    private static final ArrayDeque<byte[]> sBufferPool = new ArrayDeque<>(MAX_POOLED_BUFFERS);
+
+    private ResponseBodyReader() {
+    }
+
+    /**
+     * Decompresses the body of the response as it is read if the server sent it gzip encoded.
+     *
+     * @param connection Connection the response was received on
+     * @param in Body of the response as it comes over the network
+     * @return Stream containing the decoded body, which is the given stream if it wasn't encoded
+     * @throws IOException Related to network and stream reading
+     */
+    public static InputStream decodeBody(HttpURLConnection connection, InputStream in) throws IOException {
+        if("gzip".equalsIgnoreCase(connection.getContentEncoding())) {
+            return new GZIPInputStream(in);
+        }
+
+        return in;
+    }
+
+    /**
+     * Reads the entire stream and decodes it as UTF-8.
+     *
+     * @param in Stream to read, not closed by this method
+     * @param expectedLength Expected number of bytes in the stream or -1 if unknown
+     * @return The contents of the stream, or null if the stream was empty
+     * @throws IOException Related to stream reading
+     */
+    public static String readBody(InputStream in, int expectedLength) throws IOException {
+        return readBody(in, expectedLength, new BodyConsumer<String>() {
+            @Override
+            public String consumeBody(byte[] buffer, int length) {
+                if(length == 0) {
+                    return null;
+                }
+                return new String(buffer, 0, length, UTF_8);
+            }
+        });
+    }
+
+    /**
+     * Reads the entire stream into a pooled buffer and hands it to the consumer. The buffer
+     * goes back to the pool once the consumer returns so it must not be kept.
+     *
+     * @param in Stream to read, not closed by this method
+     * @param expectedLength Expected number of bytes in the stream or -1 if unknown
+     * @param consumer Turns the bytes into the result
+     * @return The result created by the consumer
+     * @throws IOException Related to stream reading
+     */
+    public static <T> T readBody(InputStream in, int expectedLength, BodyConsumer<T> consumer) throws IOException {
+        // The length comes from the server, so it only sizes the first buffer up to the largest
+        // one the pool keeps and the buffer grows from there if the body really is that long
+        byte[] buffer = acquireBuffer(expectedLength > 0
+                ? Math.min(expectedLength, MAX_POOLED_BUFFER_SIZE) : DEFAULT_BUFFER_SIZE);
+        int length = 0;
+
+        try {
+            while(true) {
+                // Grow the buffer if it has been filled before the end of the stream. When the
+                // length was known and fit the first buffer this only happens if we're reading
+                // one byte past the end.
+                if(length == buffer.length) {
+                    int next = in.read();
+                    if(next == -1) {
+                        break;
+                    }
+
+                    byte[] larger = new byte[buffer.length * 2];
+                    System.arraycopy(buffer, 0, larger, 0, length);
+                    buffer = larger;
+                    buffer[length++] = (byte) next;
+                }
+
+                int read = in.read(buffer, length, buffer.length - length);
+                if(read == -1) {
+                    break;
+                }
+                length += read;
+            }
+
+            return consumer.consumeBody(buffer, length);
+        } finally {
+            releaseBuffer(buffer);
+        }
+    }
+
+    /**
+     * Interface that defines how the bytes of a body that was read into a buffer are consumed
+     * @param <T> Type of the result produced from the bytes
+     */
+    public interface BodyConsumer<T> {
+        T consumeBody(byte[] buffer, int length) throws IOException;
+    }
+
+    /**
+     * Takes a buffer with at least the requested capacity from the pool, or creates one if the
+     * pool doesn't have one that is large enough.
+     *
+     * @param capacity Minimum size of the buffer
+     * @return A buffer that is not in use by anyone else
+     */
+    private static byte[] acquireBuffer(int capacity) {
+        synchronized (sBufferPool) {
+            for(byte[] buffer : sBufferPool) {
+                if(buffer.length >= capacity) {
+                    sBufferPool.remove(buffer);
+                    return buffer;
+                }
+            }
+        }
+
+        return new byte[capacity];
+    }
+
+    /**
+     * Returns a buffer to the pool so it can be used by the next request. When the pool is
+     * full the smallest buffer is dropped so that the pool tends towards holding buffers that
+     * fit the largest responses.
+     *
+     * @param buffer Buffer that is no longer in use
+     */
+    private static void releaseBuffer(byte[] buffer) {
+        if(buffer.length > MAX_POOLED_BUFFER_SIZE) {
+            return;
+        }
+
+        synchronized (sBufferPool) {
+            if(sBufferPool.size() == MAX_POOLED_BUFFERS) {
+                byte[] smallest = null;
+                for(byte[] pooled : sBufferPool) {
+                    if(smallest == null || pooled.length < smallest.length) {
+                        smallest = pooled;
+                    }
+                }
+
+                if(smallest.length >= buffer.length) {
+                    return;
+                }
+                sBufferPool.remove(smallest);
+            }
+
+            sBufferPool.add(buffer);
+        }
+    }
+}
@@ -0,0 +1,453 @@
+package software.level.udacity.popularmovies1.utilities;
+
+import java.util.Comparator;
+import java.util.PriorityQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Executor;
+
+/**
+ * Runs background work on a small, bounded pool of worker threads. Work is queued in priority
+ * lanes so that the list the user is looking at is loaded before a detail screen, and both are
+ * loaded before anything that is only being prefetched. Prefetch work is never allowed to take
+ * the last worker, so a burst of prefetching can't hold up a user visible load.
+ *
+ * Every task runs under a CancellationToken. Cancelled tasks are dropped from the queue, and a
+ * task whose token is cancelled while it runs never has its result delivered.
+ *
+ * Tasks that should only start after a delay, such as a debounced search, wait in a separate
+ * queue ordered by time and are moved to their lane once the delay is over, so waiting never
+ * takes up a worker.
+ */
+public class TaskScheduler {
+
+    /**
+     * Lanes that tasks are queued in, earlier lanes always run first
+     */
+    public enum Priority {
+        /**
+         * Loading the list that is on screen
+         */
+        LIST,
+
+        /**
+         * Loading the detail screen
+         */
+        DETAIL,
+
+        /**
+         * Loading data the user might look at soon
+         */
+        PREFETCH
+    }
+
+    /**
+     * Source of time for the scheduler, replaced by a fake clock in tests
+     */
+    public interface Clock {
+        long uptimeMillis();
+    }
+
+    /**
+     * Clock based on System.nanoTime() which is not affected by changes to the wall clock
+     */
+    public static final Clock SYSTEM_CLOCK = new Clock() {
+        @Override
+        public long uptimeMillis() {
+            return System.nanoTime() / 1000000;
+        }
+    };
+
+    // Passed as the maximum wait for tasks that should never be dropped for waiting too long
+    public static final long NO_MAX_WAIT = -1;
+
+    // Number of workers used by the shared scheduler
+    private static final int DEFAULT_MAX_WORKERS = 3;
+
+    // How long an idle worker thread waits for work before it exits
+    private static final long WORKER_KEEP_ALIVE_MILLIS = 30 * 1000;
+
+    private static TaskScheduler sInstance;
+
+    private final int mMaxWorkers;
+    private final Clock mClock;
+    private final Executor mCallbackExecutor;
+
+    // Jobs waiting to run, guarded by this
+    private final PriorityQueue<Job> mQueue = new PriorityQueue<>();
+
+    // Jobs waiting for their delay to pass, soonest first, guarded by this
+    private final PriorityQueue<Job> mDelayed = new PriorityQueue<>(11, new Comparator<Job>() {
+        @Override
+        public int compare(Job first, Job second) {
+            if(first.mNotBefore != second.mNotBefore) {
+                return first.mNotBefore < second.mNotBefore ? -1 : 1;
+            }
+            return first.compareTo(second);
+        }
+    });
+
+    // Guarded by this
+    private int mWorkers;
+    private int mIdleWorkers;
+    private int mRunningPrefetch;
+    private long mSequence;
+
+    /**
+     * Get the shared scheduler, which delivers results on the main thread
+     * @return The scheduler shared by all screens
+     */
+    public static synchronized TaskScheduler getInstance() {
+        if(sInstance == null) {
+            sInstance = new TaskScheduler(DEFAULT_MAX_WORKERS, SYSTEM_CLOCK, new MainThreadExecutor());
+        }
+        return sInstance;
+    }
+
+    /**
+     * Create a new TaskScheduler
+     * @param maxWorkers Maximum number of worker threads. With no workers nothing runs until
+     *                   {@link #runNextTask()} is called, which lets tests run tasks one at a time.
+     * @param clock Source of time used to drop tasks that waited too long
+     * @param callbackExecutor Executor that results are delivered on
+     */
+    public TaskScheduler(int maxWorkers, Clock clock, Executor callbackExecutor) {
+        mMaxWorkers = maxWorkers;
+        mClock = clock;
+        mCallbackExecutor = callbackExecutor;
+    }
+
+    /**
+     * Queue a task
+     * @param priority Lane to queue the task in
+     * @param token Token that cancels the task, usually the token of the activity
+     * @param task Work to run
+     * @return Handle that can be used to cancel just this task
+     */
+    public Job submit(Priority priority, CancellationToken token, Task<?> task) {
+        return submit(priority, token, task, NO_MAX_WAIT);
+    }
+
+    /**
+     * Queue a task that is dropped if it can't start within the given time, which keeps
+     * prefetch work from running long after it stopped being useful
+     * @param priority Lane to queue the task in
+     * @param token Token that cancels the task, usually the token of the activity
+     * @param task Work to run
+     * @param maxWaitMillis How long the task may wait in the queue, or NO_MAX_WAIT
+     * @return Handle that can be used to cancel just this task
+     */
+    public Job submit(Priority priority, CancellationToken token, Task<?> task, long maxWaitMillis) {
+        Job job;
+
+        synchronized (this) {
+            long deadline = maxWaitMillis == NO_MAX_WAIT ? Long.MAX_VALUE : mClock.uptimeMillis() + maxWaitMillis;
+            job = new Job(priority, token.newChild(), task, deadline, 0, mSequence++);
+
+            mQueue.add(job);
+            wakeWorker();
+        }
+
+        return job;
+    }
+
+    /**
+     * Queue a task that can't start until the delay has passed. Until then it waits outside of
+     * the lanes without holding up a worker, and cancelling it drops it before it ever runs.
+     * @param priority Lane the task is moved to once the delay has passed
+     * @param token Token that cancels the task, usually the token of the activity
+     * @param task Work to run
+     * @param delayMillis How long to wait before the task can start, 0 or less to queue it now
+     * @return Handle that can be used to cancel just this task
+     */
+    public Job submitDelayed(Priority priority, CancellationToken token, Task<?> task, long delayMillis) {
+        if(delayMillis <= 0) {
+            return submit(priority, token, task);
+        }
+
+        Job job;
+
+        synchronized (this) {
+            long notBefore = mClock.uptimeMillis() + delayMillis;
+            job = new Job(priority, token.newChild(), task, Long.MAX_VALUE, notBefore, mSequence++);
+
+            // Idle workers are woken up so that they wait for this job if it is due soonest
+            mDelayed.add(job);
+            wakeWorker();
+        }
+
+        return job;
+    }
+
+    /**
+     * Number of tasks that are waiting to run, including tasks that are waiting for their delay
+     * @return Size of the queue
+     */
+    public synchronized int getQueuedCount() {
+        return mQueue.size() + mDelayed.size();
+    }
+
+    /**
+     * Wakes up an idle worker for a job that was just queued, or starts a new worker if none is
+     * idle and there is room for one. Must be called while holding the lock.
+     */
+    private void wakeWorker() {
+        if(mIdleWorkers > 0) {
+            notifyAll();
+        } else if(mWorkers < mMaxWorkers) {
+            mWorkers++;
+            startWorker();
+        }
+    }
+
+    /**
+     * Runs the next task that is allowed to run on the calling thread
+     * @return False if there was no task to run
+     */
+    public boolean runNextTask() {
+        Job job;
+        synchronized (this) {
+            job = nextJob();
+        }
+
+        if(job == null) {
+            return false;
+        }
+
+        runJob(job);
+        return true;
+    }
+
+    /**
+     * Takes the next job off the queue, dropping jobs that were cancelled or waited too long.
+     * Must be called while holding the lock.
+     * @return The job to run or null if no job can run right now
+     */
+    private Job nextJob() {
+        long now = mClock.uptimeMillis();
+
+        // Jobs whose delay has passed join their lane, cancelled ones are dropped on the way
+        while(!mDelayed.isEmpty() && mDelayed.peek().mNotBefore <= now) {
+            Job delayed = mDelayed.poll();
+            if(delayed.mToken.isCancelled()) {
+                delayed.mToken.detach();
+            } else {
+                mQueue.add(delayed);
+            }
+        }
+
+        while(true) {
+            Job job = mQueue.peek();
+
+            if(job == null) {
+                return null;
+            }
+
+            if(job.mToken.isCancelled()) {
+                mQueue.poll();
+                job.mToken.detach();
+                continue;
+            }
+
+            if(now > job.mDeadline) {
+                mQueue.poll();
+                job.mToken.cancel();
+                continue;
+            }
+
+            // Keep one worker free for work the user is waiting on
+            if(job.mPriority == Priority.PREFETCH && mMaxWorkers > 1 && mRunningPrefetch >= mMaxWorkers - 1) {
+                return null;
+            }
+
+            mQueue.poll();
+            if(job.mPriority == Priority.PREFETCH) {
+                mRunningPrefetch++;
+            }
+            return job;
+        }
+    }
+
+    /**
+     * Runs the task of a job and hands the result to the callback executor
+     * @param job Job to run
+     */
+    private void runJob(final Job job) {
+        final CancellationToken token = job.mToken;
+        @SuppressWarnings("unchecked")
+        final Task<Object> task = (Task<Object>) job.mTask;
+
+        Object result = null;
+        Exception error = null;
+
+        CancellationToken.setCurrent(token);
+        try {
+            token.throwIfCancelled();
+            result = task.doInBackground(token);
+        } catch (CancellationException e) {
+            token.cancel();
+        } catch (Exception e) {
+            error = e;
+        } finally {
+            CancellationToken.setCurrent(null);
+
+            synchronized (this) {
+                if(job.mPriority == Priority.PREFETCH) {
+                    mRunningPrefetch--;
+                    notifyAll();
+                }
+            }
+        }
+
+        if(token.isCancelled()) {
+            token.detach();
+            return;
+        }
+
+        final Object finalResult = result;
+        final Exception finalError = error;
+
+        mCallbackExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                // Checked again since the token could be cancelled while this was waiting
+                if(token.isCancelled()) {
+                    return;
+                }
+                token.detach();
+
+                if(finalError != null) {
+                    task.onError(finalError);
+                } else {
+                    task.onPostExecute(finalResult);
+                }
+            }
+        });
+    }
+
+    /**
+     * Starts a worker thread that runs jobs until it has been idle for a while
+     */
+    private void startWorker() {
+        Thread worker = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                while(true) {
+                    Job job;
+
+                    synchronized (TaskScheduler.this) {
+                        long idleSince = System.nanoTime();
+                        job = nextJob();
+
+                        while(job == null) {
+                            long idleMillis = (System.nanoTime() - idleSince) / 1000000;
+                            long waitMillis = WORKER_KEEP_ALIVE_MILLIS - idleMillis;
+
+                            // A worker stays around for delayed jobs so that they run when due
+                            if(!mDelayed.isEmpty()) {
+                                long untilDue = Math.max(1, mDelayed.peek().mNotBefore - mClock.uptimeMillis());
+                                waitMillis = waitMillis > 0 ? Math.min(waitMillis, untilDue) : untilDue;
+                            } else if(waitMillis <= 0) {
+                                mWorkers--;
+                                return;
+                            }
+
+                            mIdleWorkers++;
+                            try {
+                                TaskScheduler.this.wait(waitMillis);
+                            } catch (InterruptedException e) {
+                                // Treated the same as being woken up for new work
+                            } finally {
+                                mIdleWorkers--;
+                            }
+                            job = nextJob();
+                        }
+                    }
+
+                    runJob(job);
+                }
+            }
+        }, "TaskScheduler-" + mWorkers);
+
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    /**
+     * Handle for a queued or running task
+     */
+    public static final class Job implements Comparable<Job> {
+
+        private final Priority mPriority;
+        private final CancellationToken mToken;
+        private final Task<?> mTask;
+        private final long mDeadline;
+
+        // Clock time before which the job can't start, 0 for jobs that were queued right away
+        private final long mNotBefore;
+
+        private final long mSequence;
+
+        private Job(Priority priority, CancellationToken token, Task<?> task, long deadline, long notBefore,
+                    long sequence) {
+            mPriority = priority;
+            mToken = token;
+            mTask = task;
+            mDeadline = deadline;
+            mNotBefore = notBefore;
+            mSequence = sequence;
+        }
+
+        /**
+         * Cancel the task. If it hasn't started it never will, if it is running its result is
+         * thrown away.
+         */
+        public void cancel() {
+            mToken.cancel();
+        }
+
+        /**
+         * Checks if the task was cancelled
+         * @return True if the task was cancelled or dropped for waiting too long
+         */
+        public boolean isCancelled() {
+            return mToken.isCancelled();
+        }
+
+        @Override
+        public int compareTo(Job other) {
+            if(mPriority != other.mPriority) {
+                return mPriority.ordinal() - other.mPriority.ordinal();
+            }
+            return mSequence < other.mSequence ? -1 : (mSequence == other.mSequence ? 0 : 1);
+        }
+    }
+
+    /**
+     * Work that runs in the background and delivers its result on the callback executor
+     * @param <T> Type of the result
+     */
+    public abstract static class Task<T> {
+
+        /**
+         * Does the work on a worker thread
+         * @param token Token of the task, long running work should check it regularly
+         * @return The result
+         * @throws Exception Delivered to onError
+         */
+        protected abstract T doInBackground(CancellationToken token) throws Exception;
+
+        /**
+         * Receives the result unless the task was cancelled
+         * @param result The result returned by doInBackground
+         */
+        protected void onPostExecute(T result) {
+        }
+
+        /**
+         * Receives the exception thrown by doInBackground unless the task was cancelled
+         * @param e The exception
+         */
+        protected void onError(Exception e) {
+        }
+    }
+}
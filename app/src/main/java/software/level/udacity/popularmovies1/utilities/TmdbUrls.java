@@ -0,0 +1,207 @@
+package software.level.udacity.popularmovies1.utilities;
+
+import java.nio.charset.Charset;
+
+/**
+ * Builds the URLs of The Movie Database API and image service as Strings. Kept free of the
+ * Android framework so that it can be benchmarked on the JVM, and encodes path segments and
+ * query parameters the same way android.net.Uri.Builder does.
+ */
+public final class TmdbUrls {
+
+    // Base scheme of every URL
+    static final String SCHEME = "https";
+
+    // Base Uri for the Movie Database API
+    static final String API_AUTHORITY = "api.themoviedb.org";
+
+    // Base Uri for the images
+    static final String IMAGE_AUTHORITY = "image.tmdb.org";
+
+    // Version string appended to the path of the Movie Database API
+    private static final String API_VERSION = "3";
+
+    // Path appended to all movie requests
+    private static final String API_PATH = "movie";
+
+    // Language code used for requests
+    private static final String API_LANGUAGE = "en-US";
+
+    // Characters that are left as they are when encoding, besides letters and digits
+    private static final String UNRESERVED = "_-!.~'()*";
+
+    private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private TmdbUrls() {
+    }
+
+    /**
+     * Creates the request URL for the given request type.
+     *
+     * @param requestType MovieRequestType
+     * @param id For detail, similar and recommendation requests, id of movie
+     * @param page For list requests, page of results or 0 to leave it up to the API
+     * @param apiKey Key the request is made with
+     * @return URL to call for API request
+     */
+    public static String apiUrl(MovieRequestType requestType, int id, int page, String apiKey) {
+        StringBuilder builder = new StringBuilder(128);
+
+        builder.append(SCHEME).append("://").append(API_AUTHORITY)
+                .append('/').append(API_VERSION)
+                .append('/').append(API_PATH)
+                .append('/');
+
+        switch(requestType) {
+            case POPULAR:
+                builder.append("popular");
+                break;
+
+            case TOP_RATED:
+                builder.append("top_rated");
+                break;
+
+            case NOW_PLAYING:
+                builder.append("now_playing");
+                break;
+
+            case UPCOMING:
+                builder.append("upcoming");
+                break;
+
+            case SIMILAR:
+                builder.append(id).append("/similar");
+                break;
+
+            case RECOMMENDATIONS:
+                builder.append(id).append("/recommendations");
+                break;
+
+            case DETAILS:
+                builder.append(id);
+                break;
+
+            case SEARCH:
+                throw new IllegalArgumentException("Search URLs are built by searchUrl");
+        }
+
+        builder.append("?language=");
+        appendEncoded(builder, API_LANGUAGE);
+
+        if(page > 0) {
+            builder.append("&page=").append(page);
+        }
+
+        builder.append("&api_key=");
+        appendEncoded(builder, apiKey);
+
+        return builder.toString();
+    }
+
+    /**
+     * Creates the URL for searching movies by title.
+     *
+     * @param query Text to search for
+     * @param page Page of results, starting at 1
+     * @param apiKey Key the request is made with
+     * @return URL to call for API request
+     */
+    public static String searchUrl(String query, int page, String apiKey) {
+        StringBuilder builder = new StringBuilder(128);
+
+        builder.append(SCHEME).append("://").append(API_AUTHORITY)
+                .append('/').append(API_VERSION)
+                .append("/search/movie");
+
+        builder.append("?language=");
+        appendEncoded(builder, API_LANGUAGE);
+
+        builder.append("&query=");
+        appendEncoded(builder, query);
+
+        builder.append("&page=").append(page);
+
+        builder.append("&api_key=");
+        appendEncoded(builder, apiKey);
+
+        return builder.toString();
+    }
+
+    /**
+     * Generates a URL for downloading an image from The Movie DB image service
+     * @param path API supplied poster_path or backdrop_path
+     * @param size Size of image required (w92, w154, w185, w342, w500, w780, original)
+     * @return URL for downloading image
+     */
+    public static String imageUrl(String path, String size) {
+        return imageUrlWithPrefix(imageUrlPrefix(size), path);
+    }
+
+    /**
+     * Generates the start of the URL of every image of a size, up to and including the slash
+     * before the path
+     * @param size Size of image required (w92, w154, w185, w342, w500, w780, original)
+     * @return Prefix to pass to imageUrlWithPrefix
+     */
+    static String imageUrlPrefix(String size) {
+        StringBuilder builder = new StringBuilder(32);
+
+        builder.append(SCHEME).append("://").append(IMAGE_AUTHORITY).append("/t/p/");
+        appendEncoded(builder, size);
+        builder.append('/');
+
+        return builder.toString();
+    }
+
+    /**
+     * Generates a URL for downloading an image from a prefix created by imageUrlPrefix
+     * @param prefix Prefix for the size of the image
+     * @param path API supplied poster_path or backdrop_path
+     * @return URL for downloading image
+     */
+    static String imageUrlWithPrefix(String prefix, String path) {
+        StringBuilder builder = new StringBuilder(prefix.length() + path.length() + 8);
+        builder.append(prefix);
+
+        // Any preceding slash is dropped from the path
+        appendEncoded(builder, path.replace("/", ""));
+
+        return builder.toString();
+    }
+
+    /**
+     * Appends the value with every character other than letters, digits and "_-!.~'()*"
+     * percent encoded as UTF-8
+     * @param builder Builder to append to
+     * @param value Value to encode
+     */
+    static void appendEncoded(StringBuilder builder, String value) {
+        int length = value.length();
+        for(int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+
+            if(isUnreserved(c)) {
+                builder.append(c);
+                continue;
+            }
+
+            // Encode the run of characters that need it at once so surrogate pairs stay whole
+            int end = i + 1;
+            while(end < length && !isUnreserved(value.charAt(end))) {
+                end++;
+            }
+
+            for(byte b : value.substring(i, end).getBytes(UTF_8)) {
+                builder.append('%').append(HEX_DIGITS[(b >> 4) & 0xf]).append(HEX_DIGITS[b & 0xf]);
+            }
+            i = end - 1;
+        }
+    }
+
+    private static boolean isUnreserved(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')
+                || UNRESERVED.indexOf(c) != -1;
+    }
+}
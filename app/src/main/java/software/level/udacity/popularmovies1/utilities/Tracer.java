@@ -0,0 +1,302 @@
+package software.level.udacity.popularmovies1.utilities;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Records how long each step of getting movies on screen takes, from building the request URL
+ * to the first poster being drawn. Spans are written into a fixed size ring buffer without
+ * taking a lock, so recording one costs a few array writes, and the oldest spans are
+ * overwritten once the buffer is full. The buffer can be exported to a file on demand along
+ * with latency percentiles for every kind of span.
+ */
+public class Tracer {
+
+    /**
+     * Kinds of spans that are recorded
+     */
+    public enum Span {
+        /**
+         * Building a request URL
+         */
+        URL_BUILD,
+
+        /**
+         * Sending a request until the response headers arrived
+         */
+        NETWORK,
+
+        /**
+         * Time spent waiting for the bytes of a response body
+         */
+        BODY_READ,
+
+        /**
+         * Parsing a response body, not counting waiting for its bytes
+         */
+        PARSE,
+
+        /**
+         * Handing new movies to the grid until the grid was updated
+         */
+        ADAPTER_UPDATE,
+
+        /**
+         * Opening the grid until the first poster was drawn
+         */
+        FIRST_POSTER,
+
+        /**
+         * Opening a detail screen until all details were shown
+         */
+        DETAIL_SCREEN
+    }
+
+    // Passed as the tag of spans that don't belong to anything in particular
+    public static final long NO_TAG = 0;
+
+    // Number of spans kept, must be a power of two
+    private static final int DEFAULT_CAPACITY = 1024;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final double[] EXPORTED_PERCENTILES = {50, 90, 99};
+
+    private static Tracer sInstance;
+
+    private final int mCapacity;
+    private final int mMask;
+
+    // One slot per span, the slot of a span is its sequence number modulo the capacity
+    private final int[] mSpans;
+    private final long[] mStarts;
+    private final long[] mDurations;
+    private final long[] mTags;
+
+    // Sequence number of the span in each slot, -1 while the slot is being written
+    private final AtomicLongArray mSequences;
+
+    // Sequence number of the next span
+    private final AtomicLong mCursor = new AtomicLong();
+
+    // Start of each span that is ended somewhere else, 0 if it isn't running
+    private final AtomicLongArray mPendingStarts = new AtomicLongArray(Span.values().length);
+
+    /**
+     * Get the tracer shared by the whole app
+     * @return The shared tracer
+     */
+    public static synchronized Tracer getInstance() {
+        if(sInstance == null) {
+            sInstance = new Tracer(DEFAULT_CAPACITY);
+        }
+        return sInstance;
+    }
+
+    /**
+     * Create a new Tracer
+     * @param capacity Number of spans kept, must be a power of two
+     */
+    public Tracer(int capacity) {
+        if(Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Capacity must be a power of two: " + capacity);
+        }
+
+        mCapacity = capacity;
+        mMask = capacity - 1;
+        mSpans = new int[capacity];
+        mStarts = new long[capacity];
+        mDurations = new long[capacity];
+        mTags = new long[capacity];
+        mSequences = new AtomicLongArray(capacity);
+
+        for(int i = 0; i < capacity; i++) {
+            mSequences.set(i, -1);
+        }
+    }
+
+    /**
+     * Records a span that started at the given time and ends now
+     * @param span Kind of span
+     * @param startNanos When the span started, from System.nanoTime()
+     * @param tag Id of what the span belongs to, such as a movie id, or NO_TAG
+     */
+    public void end(Span span, long startNanos, long tag) {
+        record(span, startNanos, System.nanoTime() - startNanos, tag);
+    }
+
+    /**
+     * Records a span
+     * @param span Kind of span
+     * @param startNanos When the span started, from System.nanoTime()
+     * @param durationNanos How long the span took
+     * @param tag Id of what the span belongs to, such as a movie id, or NO_TAG
+     */
+    public void record(Span span, long startNanos, long durationNanos, long tag) {
+        long sequence = mCursor.getAndIncrement();
+        int slot = (int) (sequence & mMask);
+
+        // Readers skip the slot until it has been written completely
+        mSequences.set(slot, -1);
+        mSpans[slot] = span.ordinal();
+        mStarts[slot] = startNanos;
+        mDurations[slot] = durationNanos;
+        mTags[slot] = tag;
+        mSequences.set(slot, sequence);
+    }
+
+    /**
+     * Starts a span that is ended by a different part of the app, such as a screen being opened
+     * and its content being drawn. Starting it again restarts it.
+     * @param span Kind of span
+     */
+    public void startPending(Span span) {
+        mPendingStarts.set(span.ordinal(), System.nanoTime());
+    }
+
+    /**
+     * Ends a span started with startPending. Nothing is recorded if the span isn't running, so
+     * this can be called every time the end might have been reached.
+     * @param span Kind of span
+     * @param tag Id of what the span belongs to, or NO_TAG
+     */
+    public void endPending(Span span, long tag) {
+        long start = mPendingStarts.getAndSet(span.ordinal(), 0);
+        if(start != 0) {
+            end(span, start, tag);
+        }
+    }
+
+    /**
+     * Gets the spans that are still in the buffer. Spans that are overwritten while they are
+     * being read are left out.
+     * @return The spans, oldest first
+     */
+    public List<Record> getRecords() {
+        long end = mCursor.get();
+        long start = Math.max(0, end - mCapacity);
+        Span[] spans = Span.values();
+
+        ArrayList<Record> records = new ArrayList<>((int) (end - start));
+        for(long sequence = start; sequence < end; sequence++) {
+            int slot = (int) (sequence & mMask);
+            if(mSequences.get(slot) != sequence) {
+                continue;
+            }
+
+            Record record = new Record(spans[mSpans[slot]], mStarts[slot], mDurations[slot], mTags[slot]);
+
+            // Checked again in case a writer took over the slot while it was being read
+            if(mSequences.get(slot) == sequence) {
+                records.add(record);
+            }
+        }
+
+        return records;
+    }
+
+    /**
+     * Calculates a percentile of the durations of a kind of span in the buffer
+     * @param span Kind of span
+     * @param percentile Percentile between 0 and 100
+     * @return Duration in nanoseconds, or -1 if there are no such spans
+     */
+    public long getPercentile(Span span, double percentile) {
+        return percentile(durationsOf(getRecords(), span), percentile);
+    }
+
+    /**
+     * Writes the percentiles of every kind of span followed by every span in the buffer to a
+     * tab separated file, replacing the file if it exists
+     * @param file File to write to
+     * @throws IOException If the file couldn't be written
+     */
+    public void export(File file) throws IOException {
+        List<Record> records = getRecords();
+
+        Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), UTF_8));
+        try {
+            writer.write("# span\tcount");
+            for(double percentile : EXPORTED_PERCENTILES) {
+                writer.write("\tp" + (int) percentile + "_us");
+            }
+            writer.write('\n');
+
+            for(Span span : Span.values()) {
+                long[] durations = durationsOf(records, span);
+                if(durations.length == 0) {
+                    continue;
+                }
+
+                writer.write("# " + span + "\t" + durations.length);
+                for(double percentile : EXPORTED_PERCENTILES) {
+                    writer.write("\t" + percentile(durations, percentile) / 1000);
+                }
+                writer.write('\n');
+            }
+
+            writer.write("span\tstart_us\tduration_us\ttag\n");
+            for(Record record : records) {
+                writer.write(record.span + "\t" + record.start_nanos / 1000 + "\t"
+                        + record.duration_nanos / 1000 + "\t" + record.tag + "\n");
+            }
+        } finally {
+            writer.close();
+        }
+    }
+
+    private static long[] durationsOf(List<Record> records, Span span) {
+        int count = 0;
+        long[] durations = new long[records.size()];
+        for(Record record : records) {
+            if(record.span == span) {
+                durations[count++] = record.duration_nanos;
+            }
+        }
+        return Arrays.copyOf(durations, count);
+    }
+
+    /**
+     * Nearest rank percentile of the durations
+     * @param durations Durations in any order, sorted by this method
+     * @param percentile Percentile between 0 and 100
+     * @return The percentile, or -1 if there are no durations
+     */
+    private static long percentile(long[] durations, double percentile) {
+        if(durations.length == 0) {
+            return -1;
+        }
+
+        Arrays.sort(durations);
+        int rank = (int) Math.ceil(percentile / 100 * durations.length);
+        return durations[Math.max(0, Math.min(durations.length - 1, rank - 1))];
+    }
+
+    /**
+     * A span read back from the buffer
+     */
+    public static final class Record {
+
+        public final Span span;
+        public final long start_nanos;
+        public final long duration_nanos;
+        public final long tag;
+
+        Record(Span span, long startNanos, long durationNanos, long tag) {
+            this.span = span;
+            this.start_nanos = startNanos;
+            this.duration_nanos = durationNanos;
+            this.tag = tag;
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package software.level.udacity.popularmovies1.data;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.concurrent.Executor;
+
+import software.level.udacity.popularmovies1.utilities.MovieRequestType;
+import software.level.udacity.popularmovies1.utilities.TaskScheduler;
+
+import static org.junit.Assert.*;
+
+/**
+ * Loads lists from a fake data source whose lists share some of their movies. The scheduler
+ * has no worker threads so the tests decide when each load runs.
+ */
+public class CategoryLoaderTest {
+
+    // Number of pages every list has
+    private static final int TOTAL_PAGES = 3;
+
+    private final Executor mDirectExecutor = new Executor() {
+        @Override
+        public void execute(Runnable runnable) {
+            runnable.run();
+        }
+    };
+
+    private final TaskScheduler mScheduler = new TaskScheduler(0, TaskScheduler.SYSTEM_CLOCK, mDirectExecutor);
+
+    // Pages requested from the data source, guarded by itself
+    private final ArrayList<String> mRequests = new ArrayList<>();
+
+    private final MovieRepository mRepository = new MovieRepository(new MovieRepository.DataSource() {
+        @Override
+        public MoviePage fetchMoviePage(MovieRequestType requestType, int movieId, int page) throws IOException {
+            synchronized (mRequests) {
+                mRequests.add(requestType + "/" + movieId + "#" + page);
+            }
+
+            if(requestType == MovieRequestType.UPCOMING) {
+                throw new IOException("Upcoming is down");
+            }
+
+            // Each page has two movies of its own and one that is in every list
+            MoviePage moviePage = new MoviePage();
+            moviePage.page = page;
+            moviePage.total_pages = TOTAL_PAGES;
+            moviePage.movies = new ArrayList<>();
+            moviePage.movies.add(movie(page));
+            moviePage.movies.add(movie(1000 * (requestType.ordinal() + 1) + movieId + page * 10));
+            moviePage.movies.add(movie(1000 * (requestType.ordinal() + 1) + movieId + page * 10 + 1));
+            return moviePage;
+        }
+
+        @Override
+        public MoviePage searchMovies(String query, int page) throws IOException {
+            throw new IOException("Searches are not served by the fake");
+        }
+
+        @Override
+        public Movie fetchMovieDetails(int id) throws IOException {
+            throw new IOException("Details are not served by the fake");
+        }
+    });
+
+    @Test
+    public void load_loadsListsAFewAtATimeAndKeepsSharedMoviesOnce() throws IOException {
+        CategoryLoader loader = new CategoryLoader(mRepository, mScheduler, 2);
+
+        loader.load(new MovieRequestType[] {MovieRequestType.POPULAR, MovieRequestType.TOP_RATED,
+                MovieRequestType.NOW_PLAYING}, 0, 2);
+
+        // Only as many lists as allowed are handed to the scheduler at once
+        assertEquals(2, mScheduler.getQueuedCount());
+        assertEquals(3, loader.getOutstandingCount());
+        runAll();
+        assertEquals(0, loader.getOutstandingCount());
+
+        assertEquals("[POPULAR/0#1, POPULAR/0#2, TOP_RATED/0#1, TOP_RATED/0#2, NOW_PLAYING/0#1, NOW_PLAYING/0#2]",
+                mRequests.toString());
+
+        // Every list is available without loading anything
+        assertEquals(6, mRepository.getCachedMovies(MovieRequestType.POPULAR).size());
+        assertEquals(6, mRepository.getCachedMovies(MovieRequestType.NOW_PLAYING).size());
+        assertEquals(2, mRepository.getLoadedPageCount(MovieRequestType.TOP_RATED, 0));
+
+        // Movies in several lists are kept once: 2 shared plus 4 of each of the 3 lists
+        assertEquals(14, mRepository.queryLoadedMovies(new MovieQuery()).size());
+        assertNotNull(mRepository.getCachedMovie(1));
+    }
+
+    @Test
+    public void load_skipsListsThatAreLoadedOrQueued() {
+        CategoryLoader loader = new CategoryLoader(mRepository, mScheduler, 1);
+
+        loader.load(new MovieRequestType[] {MovieRequestType.POPULAR}, 0, 1);
+        loader.load(new MovieRequestType[] {MovieRequestType.POPULAR, MovieRequestType.TOP_RATED,
+                MovieRequestType.TOP_RATED}, 0, 1);
+        runAll();
+
+        loader.load(new MovieRequestType[] {MovieRequestType.TOP_RATED}, 0, 1);
+        runAll();
+
+        assertEquals("[POPULAR/0#1, TOP_RATED/0#1]", mRequests.toString());
+    }
+
+    @Test
+    public void load_keepsListsOfEachMovieApart() {
+        CategoryLoader loader = new CategoryLoader(mRepository, mScheduler, 2);
+
+        loader.load(new MovieRequestType[] {MovieRequestType.SIMILAR, MovieRequestType.RECOMMENDATIONS}, 5, 1);
+        loader.load(new MovieRequestType[] {MovieRequestType.SIMILAR}, 7, 1);
+        runAll();
+
+        assertEquals("[SIMILAR/5#1, RECOMMENDATIONS/5#1, SIMILAR/7#1]", mRequests.toString());
+        assertEquals(3, mRepository.getCachedMovies(MovieRequestType.SIMILAR, 5).size());
+        assertNull(mRepository.getCachedMovies(MovieRequestType.SIMILAR, 6));
+        assertEquals(mRepository.getCachedMovies(MovieRequestType.SIMILAR, 5).getId(1) + 2,
+                mRepository.getCachedMovies(MovieRequestType.SIMILAR, 7).getId(1));
+    }
+
+    @Test
+    public void load_movesOnWhenAListFails() {
+        CategoryLoader loader = new CategoryLoader(mRepository, mScheduler, 1);
+
+        loader.load(new MovieRequestType[] {MovieRequestType.UPCOMING, MovieRequestType.POPULAR}, 0, 1);
+        runAll();
+
+        assertEquals("[UPCOMING/0#1, POPULAR/0#1]", mRequests.toString());
+        assertNull(mRepository.getCachedMovies(MovieRequestType.UPCOMING));
+        assertNotNull(mRepository.getCachedMovies(MovieRequestType.POPULAR));
+        assertEquals(0, loader.getOutstandingCount());
+    }
+
+    @Test
+    public void cancelAll_dropsQueuedLoads() {
+        CategoryLoader loader = new CategoryLoader(mRepository, mScheduler, 2);
+
+        loader.load(new MovieRequestType[] {MovieRequestType.POPULAR, MovieRequestType.TOP_RATED}, 0, 1);
+        loader.cancelAll();
+        runAll();
+
+        assertTrue(mRequests.isEmpty());
+        assertEquals(0, loader.getOutstandingCount());
+    }
+
+    private static Movie movie(int id) {
+        Movie movie = new Movie();
+        movie.moviedb_id = id;
+        movie.title = "Movie " + id;
+        movie.poster_path = "/" + id + ".jpg";
+        movie.release_date = "2017-01-01";
+        return movie;
+    }
+
+    private void runAll() {
+        while(mScheduler.runNextTask()) {
+            // Each finished load queues the next one
+        }
+    }
+}
@@ -0,0 +1,267 @@
+package software.level.udacity.popularmovies1.data;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.concurrent.Executor;
+
+import software.level.udacity.popularmovies1.utilities.CancellationToken;
+import software.level.udacity.popularmovies1.utilities.MovieRequestType;
+
+import static org.junit.Assert.*;
+
+/**
+ * Delivers values on an executor that only runs what it was given when the test says so, the
+ * way the main thread only gets to deliveries once it is done with what it is doing.
+ */
+public class DataStreamTest {
+
+    // Number of pages every list of the fake data source has
+    private static final int TOTAL_PAGES = 3;
+
+    private final QueuedExecutor mExecutor = new QueuedExecutor();
+
+    private final CancellationToken mToken = new CancellationToken();
+
+    // Values delivered to the observers
+    private final ArrayList<String> mDelivered = new ArrayList<>();
+
+    private final DataStream.Observer<String> mObserver = new DataStream.Observer<String>() {
+        @Override
+        public void onChanged(String value) {
+            mDelivered.add(value);
+        }
+    };
+
+    private final MovieRepository mRepository = new MovieRepository(new MovieRepository.DataSource() {
+        @Override
+        public MoviePage fetchMoviePage(MovieRequestType requestType, int movieId, int page) {
+            MoviePage moviePage = new MoviePage();
+            moviePage.page = page;
+            moviePage.total_pages = TOTAL_PAGES;
+            moviePage.movies = new ArrayList<>();
+            moviePage.movies.add(movie(page * 10));
+            moviePage.movies.add(movie(page * 10 + 1));
+            return moviePage;
+        }
+
+        @Override
+        public MoviePage searchMovies(String query, int page) throws IOException {
+            throw new IOException("Searches are not served by the fake");
+        }
+
+        @Override
+        public Movie fetchMovieDetails(int id) {
+            Movie movie = movie(id);
+            movie.tagline = "Tagline " + id;
+            movie.runtime = 100;
+            return movie;
+        }
+    });
+
+    @Test
+    public void subscribe_deliversTheLatestValueRightAway() {
+        DataStream<String> stream = new DataStream<>("cached");
+
+        stream.subscribe(mExecutor, mToken, mObserver);
+        assertEquals("[cached]", mDelivered.toString());
+
+        stream.emit("loaded");
+        assertEquals("[cached]", mDelivered.toString());
+        mExecutor.runAll();
+        assertEquals("[cached, loaded]", mDelivered.toString());
+    }
+
+    @Test
+    public void emit_combinesValuesThatAreWaitingToBeDelivered() {
+        DataStream<String> stream = new DataStream<String>() {
+            @Override
+            protected String combine(String older, String newer) {
+                return older + "+" + newer;
+            }
+        };
+        stream.subscribe(mExecutor, mToken, mObserver);
+
+        stream.emit("a");
+        stream.emit("b");
+        stream.emit("c");
+
+        // A slow observer has a single delivery queued, not one per value
+        assertEquals(1, mExecutor.mQueue.size());
+        mExecutor.runAll();
+        assertEquals("[a+b+c]", mDelivered.toString());
+
+        stream.emit("d");
+        mExecutor.runAll();
+        assertEquals("[a+b+c, d]", mDelivered.toString());
+    }
+
+    @Test
+    public void cancel_stopsDeliveriesIncludingQueuedOnes() {
+        final ArrayList<String> inactive = new ArrayList<>();
+        DataStream<String> stream = new DataStream<String>() {
+            @Override
+            protected void onInactive() {
+                inactive.add("inactive");
+            }
+        };
+
+        DataStream.Subscription first = stream.subscribe(mExecutor, mToken, mObserver);
+        DataStream.Subscription second = stream.subscribe(mExecutor, mToken, mObserver);
+        stream.emit("a");
+
+        first.cancel();
+        mExecutor.runAll();
+        assertEquals("[a]", mDelivered.toString());
+        assertEquals(1, stream.getSubscriberCount());
+
+        second.cancel();
+        second.cancel();
+        assertEquals("[inactive]", inactive.toString());
+        assertEquals(0, stream.getSubscriberCount());
+    }
+
+    @Test
+    public void cancelledToken_dropsTheObserver() {
+        DataStream<String> stream = new DataStream<>();
+        CancellationToken token = mToken.newChild();
+        stream.subscribe(mExecutor, token, mObserver);
+
+        stream.emit("a");
+        token.cancel();
+        stream.emit("b");
+        mExecutor.runAll();
+
+        assertTrue(mDelivered.isEmpty());
+        assertEquals(0, stream.getSubscriberCount());
+        assertTrue(mExecutor.mQueue.isEmpty());
+    }
+
+    @Test
+    public void observeMovies_deliversPagesAsTheyAreLoaded() throws IOException {
+        final ArrayList<MovieListUpdate> updates = new ArrayList<>();
+        DataStream.Observer<MovieListUpdate> observer = new DataStream.Observer<MovieListUpdate>() {
+            @Override
+            public void onChanged(MovieListUpdate update) {
+                updates.add(update);
+            }
+        };
+
+        // Nothing is loaded yet so there is nothing to deliver
+        DataStream.Subscription subscription =
+                mRepository.observeMovies(MovieRequestType.POPULAR, 0, mExecutor, mToken, observer);
+        assertTrue(updates.isEmpty());
+
+        mRepository.getMovies(MovieRequestType.POPULAR);
+        mExecutor.runAll();
+        assertEquals(1, updates.size());
+        assertEquals(MovieListUpdate.Change.REPLACED, updates.get(0).change);
+        assertEquals(2, updates.get(0).movies.size());
+
+        // Two pages that arrive before the first is delivered are appended together
+        mRepository.loadNextPage(MovieRequestType.POPULAR);
+        mRepository.loadNextPage(MovieRequestType.POPULAR);
+        mExecutor.runAll();
+        assertEquals(2, updates.size());
+        assertEquals(MovieListUpdate.Change.APPENDED, updates.get(1).change);
+        assertEquals(6, updates.get(1).movies.size());
+        assertEquals(4, updates.get(1).added.size());
+        assertEquals(20, updates.get(1).added.get(0).moviedb_id);
+
+        // Someone who starts observing now gets the whole list at once
+        subscription.cancel();
+        updates.clear();
+        mRepository.observeMovies(MovieRequestType.POPULAR, 0, mExecutor, mToken, observer);
+        assertEquals(1, updates.size());
+        assertEquals(MovieListUpdate.Change.REPLACED, updates.get(0).change);
+        assertEquals(6, updates.get(0).movies.size());
+
+        // A refresh replaces the list
+        mRepository.loadMovies(MovieRequestType.POPULAR);
+        mExecutor.runAll();
+        assertEquals(MovieListUpdate.Change.REPLACED, updates.get(1).change);
+        assertEquals(2, updates.get(1).movies.size());
+    }
+
+    @Test
+    public void observeMovie_deliversTheMovieThenItsDetails() throws IOException {
+        mRepository.getMovies(MovieRequestType.POPULAR);
+
+        final ArrayList<String> shown = new ArrayList<>();
+        mRepository.observeMovie(10, mExecutor, mToken, new DataStream.Observer<Movie>() {
+            @Override
+            public void onChanged(Movie movie) {
+                shown.add(movie.title + (MovieRepository.hasDetails(movie) ? " with details" : ""));
+            }
+        });
+        assertEquals("[Movie 10]", shown.toString());
+
+        // Another movie being loaded doesn't concern this observer
+        mRepository.getMovieDetails(11);
+        mRepository.getMovieDetails(10);
+        mExecutor.runAll();
+
+        assertEquals("[Movie 10, Movie 10 with details]", shown.toString());
+    }
+
+    @Test
+    public void offerMovie_keepsTheNewerMovieAndAddsMissingDetails() throws IOException {
+        mRepository.getMovies(MovieRequestType.POPULAR);
+
+        final ArrayList<String> shown = new ArrayList<>();
+        mRepository.observeMovie(10, mExecutor, mToken, new DataStream.Observer<Movie>() {
+            @Override
+            public void onChanged(Movie movie) {
+                shown.add(movie.title + (MovieRepository.hasDetails(movie) ? " with details" : ""));
+            }
+        });
+
+        // A movie handed over from an older screen doesn't replace what was loaded since
+        Movie handedOver = movie(10);
+        handedOver.title = "Old title";
+        handedOver.tagline = "Tagline 10";
+        handedOver.runtime = 90;
+        Movie kept = mRepository.offerMovie(handedOver);
+        mExecutor.runAll();
+
+        assertSame(mRepository.getCachedMovie(10), kept);
+        assertEquals("Movie 10", kept.title);
+        assertEquals(90, kept.runtime);
+        assertEquals("[Movie 10, Movie 10 with details]", shown.toString());
+
+        // A movie that isn't in memory is kept as it is
+        Movie unknown = movie(99);
+        assertSame(unknown, mRepository.offerMovie(unknown));
+        assertSame(unknown, mRepository.getCachedMovie(99));
+    }
+
+    private static Movie movie(int id) {
+        Movie movie = new Movie();
+        movie.moviedb_id = id;
+        movie.title = "Movie " + id;
+        movie.poster_path = "/" + id + ".jpg";
+        movie.release_date = "2017-01-01";
+        return movie;
+    }
+
+    /**
+     * Executor that holds on to everything until runAll is called
+     */
+    private static class QueuedExecutor implements Executor {
+
+        final ArrayDeque<Runnable> mQueue = new ArrayDeque<>();
+
+        @Override
+        public void execute(Runnable runnable) {
+            mQueue.add(runnable);
+        }
+
+        void runAll() {
+            while(!mQueue.isEmpty()) {
+                mQueue.poll().run();
+            }
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package software.level.udacity.popularmovies1.data;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.concurrent.Executor;
+
+import software.level.udacity.popularmovies1.utilities.FakeClock;
+import software.level.udacity.popularmovies1.utilities.MovieRequestType;
+import software.level.udacity.popularmovies1.utilities.NetworkUtils;
+import software.level.udacity.popularmovies1.utilities.RateLimiter;
+import software.level.udacity.popularmovies1.utilities.TaskScheduler;
+
+import static org.junit.Assert.*;
+
+/**
+ * Hydrates movies from a local HTTP server that stands in for the detail API. The scheduler has
+ * no worker threads so the tests decide when each request runs.
+ */
+public class DetailHydratorTest {
+
+    // Movie the stub server answers with an error
+    private static final int BROKEN_ID = 13;
+
+    private final Executor mDirectExecutor = new Executor() {
+        @Override
+        public void execute(Runnable runnable) {
+            runnable.run();
+        }
+    };
+
+    private final TaskScheduler mScheduler = new TaskScheduler(0, TaskScheduler.SYSTEM_CLOCK, mDirectExecutor);
+
+    // Generous enough that the tests never wait
+    private final RateLimiter mRateLimiter = new RateLimiter(1000, 1000, 100, TaskScheduler.SYSTEM_CLOCK);
+
+    // Paths requested from the stub server, guarded by itself
+    private final ArrayList<String> mRequests = new ArrayList<>();
+
+    private HttpServer mServer;
+    private MovieRepository mRepository;
+
+    @Before
+    public void startServer() throws IOException {
+        mServer = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        mServer.createContext("/3/movie/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                String path = exchange.getRequestURI().getPath();
+                synchronized (mRequests) {
+                    mRequests.add(path);
+                }
+
+                int id = Integer.parseInt(path.substring(path.lastIndexOf('/') + 1));
+                if(id == BROKEN_ID) {
+                    exchange.sendResponseHeaders(500, -1);
+                    exchange.close();
+                    return;
+                }
+
+                byte[] body = ("{\"id\":" + id + ",\"title\":\"Movie " + id + "\",\"runtime\":" + (90 + id)
+                        + ",\"release_date\":\"2017-01-0" + (id % 9 + 1) + "\",\"tagline\":\"Tagline " + id
+                        + "\",\"homepage\":null}").getBytes("UTF-8");
+                exchange.getResponseHeaders().set("Content-Type", "application/json");
+                exchange.sendResponseHeaders(200, body.length);
+                OutputStream out = exchange.getResponseBody();
+                out.write(body);
+                out.close();
+            }
+        });
+        mServer.start();
+
+        final String baseUrl = "http://127.0.0.1:" + mServer.getAddress().getPort() + "/3/movie/";
+        mRepository = new MovieRepository(new MovieRepository.DataSource() {
+            @Override
+            public MoviePage fetchMoviePage(MovieRequestType requestType, int movieId, int page) throws IOException {
+                throw new IOException("Lists are not served by the stub");
+            }
+
+            @Override
+            public MoviePage searchMovies(String query, int page) throws IOException {
+                throw new IOException("Searches are not served by the stub");
+            }
+
+            @Override
+            public Movie fetchMovieDetails(int id) throws IOException {
+                MoviePage page = NetworkUtils.getResponseFromHttpUrl(new URL(baseUrl + id),
+                        new NetworkUtils.ResponseHandler<MoviePage>() {
+                            @Override
+                            public MoviePage handleResponse(InputStream in) throws IOException {
+                                return MovieParser.parseMoviePage(in, MovieRequestType.DETAILS);
+                            }
+                        });
+                return page.movies.get(0);
+            }
+        });
+    }
+
+    @After
+    public void stopServer() {
+        mServer.stop(0);
+    }
+
+    @Test
+    public void hydrate_loadsEachMovieOnceIntoRepository() {
+        DetailHydrator hydrator = new DetailHydrator(mRepository, mScheduler, mRateLimiter, 2);
+
+        hydrator.hydrate(new int[] {1, 2, 2, 3, 1});
+
+        // Only as many requests as allowed are handed to the scheduler at once
+        assertEquals(2, mScheduler.getQueuedCount());
+        runAll();
+
+        assertEquals("[/3/movie/1, /3/movie/2, /3/movie/3]", mRequests.toString());
+        assertEquals(0, hydrator.getOutstandingCount());
+
+        Movie movie = mRepository.getCachedMovie(2);
+        assertNotNull(movie);
+        assertTrue(MovieRepository.hasDetails(movie));
+        assertEquals(92, movie.runtime);
+        assertEquals("2017-01-03", movie.release_date);
+
+        // Already hydrated movies are served from the repository
+        hydrator.hydrate(new int[] {3, 2, 4});
+        runAll();
+        assertEquals("[/3/movie/1, /3/movie/2, /3/movie/3, /3/movie/4]", mRequests.toString());
+    }
+
+    @Test
+    public void hydrate_dropsMoviesThatScrolledAway() {
+        DetailHydrator hydrator = new DetailHydrator(mRepository, mScheduler, mRateLimiter, 1);
+
+        hydrator.hydrate(new int[] {1, 2, 3, 4});
+        assertTrue(mScheduler.runNextTask());
+
+        hydrator.hydrate(new int[] {7, 8});
+        runAll();
+
+        assertEquals("[/3/movie/1, /3/movie/7, /3/movie/8]", mRequests.toString());
+        assertNull(mRepository.getCachedMovie(2));
+    }
+
+    @Test
+    public void hydrate_movesOnWhenRequestFails() {
+        DetailHydrator hydrator = new DetailHydrator(mRepository, mScheduler, mRateLimiter, 1);
+
+        hydrator.hydrate(new int[] {BROKEN_ID, 5});
+        runAll();
+
+        assertEquals("[/3/movie/13, /3/movie/5]", mRequests.toString());
+        assertNull(mRepository.getCachedMovie(BROKEN_ID));
+        assertTrue(MovieRepository.hasDetails(mRepository.getCachedMovie(5)));
+    }
+
+    @Test
+    public void hydrate_handsBackPermitsOfRequestsThatScrolledAway() {
+        // A single permit and the next one only after a minute, on a clock that stands still
+        RateLimiter rateLimiter = new RateLimiter(1, 60 * 1000, 1, new FakeClock());
+        DetailHydrator hydrator = new DetailHydrator(mRepository, mScheduler, rateLimiter, 2);
+
+        // The second request waits for its permit without running
+        hydrator.hydrate(new int[] {1, 2});
+        assertTrue(mScheduler.runNextTask());
+        assertFalse(mScheduler.runNextTask());
+
+        // Scrolling on hands the waiting permit back, so the new movie takes its place in line
+        // instead of queueing up behind it
+        hydrator.hydrate(new int[] {3});
+        assertEquals(1, hydrator.getOutstandingCount());
+        assertEquals(2 * 60 * 1000, rateLimiter.reserve());
+        assertEquals("[/3/movie/1]", mRequests.toString());
+    }
+
+    @Test
+    public void cancelAll_dropsQueuedRequests() {
+        DetailHydrator hydrator = new DetailHydrator(mRepository, mScheduler, mRateLimiter, 2);
+
+        hydrator.hydrate(new int[] {1, 2, 3});
+        hydrator.cancelAll();
+        runAll();
+
+        assertTrue(mRequests.isEmpty());
+        assertEquals(0, hydrator.getOutstandingCount());
+    }
+
+    private void runAll() {
+        while(mScheduler.runNextTask()) {
+            // Each finished request queues the next one
+        }
+    }
+}
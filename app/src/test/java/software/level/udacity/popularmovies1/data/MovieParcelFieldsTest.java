@@ -0,0 +1,146 @@
+package software.level.udacity.popularmovies1.data;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Writes movies into a list of fields instead of a Parcel, which is a stub on the JVM, to check
+ * which fields are written in which order and that reading them back restores every field.
+ * MovieParcelTest does the same with a real Parcel on a device.
+ */
+public class MovieParcelFieldsTest {
+
+    @Test
+    public void movieFromAList_leavesOutMissingStringsAndDetails() {
+        Movie movie = listMovie();
+
+        Fields fields = new Fields();
+        MovieParcel.write(movie, fields);
+
+        // Id, flags without the backdrop, homepage or details, then the strings that are set
+        assertEquals(Arrays.<Object>asList(278, 1 | 2 | 8 | 16,
+                movie.title, movie.poster_path, movie.release_date, movie.overview,
+                movie.popularity, movie.vote_average, movie.vote_count), fields.mValues);
+
+        Movie copy = MovieParcel.read(fields);
+
+        assertTrue(fields.isRead());
+        assertEquals(278, copy.moviedb_id);
+        assertEquals(movie.title, copy.title);
+        assertEquals(movie.poster_path, copy.poster_path);
+        assertNull(copy.backdrop_path);
+        assertEquals(movie.release_date, copy.release_date);
+        assertEquals(movie.overview, copy.overview);
+        assertNull(copy.homepage);
+        assertEquals(movie.popularity, copy.popularity, 0);
+        assertEquals(movie.vote_average, copy.vote_average, 0);
+        assertEquals(movie.vote_count, copy.vote_count);
+        assertFalse(MovieRepository.hasDetails(copy));
+    }
+
+    @Test
+    public void movieWithDetails_keepsRuntimeTaglineAndHomepage() {
+        Movie movie = new Movie();
+        movie.moviedb_id = 550;
+        movie.title = "Fight Club";
+        movie.backdrop_path = "/87hTDiay2N2qWyX4Ds7ybXi9h8I.jpg";
+        movie.runtime = 139;
+        movie.tagline = "";
+        movie.homepage = "http://www.foxmovies.com/movies/fight-club";
+
+        Fields fields = new Fields();
+        MovieParcel.write(movie, fields);
+
+        // The runtime and tagline come last
+        int size = fields.mValues.size();
+        assertEquals(139, fields.mValues.get(size - 2));
+        assertEquals("", fields.mValues.get(size - 1));
+
+        Movie copy = MovieParcel.read(fields);
+
+        assertTrue(fields.isRead());
+        assertTrue(MovieRepository.hasDetails(copy));
+        assertEquals(139, copy.runtime);
+        assertEquals("", copy.tagline);
+        assertEquals(movie.homepage, copy.homepage);
+        assertEquals(movie.backdrop_path, copy.backdrop_path);
+        assertNull(copy.poster_path);
+        assertNull(copy.overview);
+    }
+
+    @Test
+    public void emptyMovie_roundTrips() {
+        Movie movie = new Movie();
+        movie.moviedb_id = 1;
+
+        Fields fields = new Fields();
+        MovieParcel.write(movie, fields);
+        Movie copy = MovieParcel.read(fields);
+
+        assertTrue(fields.isRead());
+        assertEquals(1, copy.moviedb_id);
+        assertNull(copy.title);
+        assertEquals(MovieRepository.hasDetails(movie), MovieRepository.hasDetails(copy));
+    }
+
+    private static Movie listMovie() {
+        Movie movie = new Movie();
+        movie.moviedb_id = 278;
+        movie.title = "The Shawshank Redemption";
+        movie.poster_path = "/9O7gLzmreU0nGkIB6K3BsJbzvNv.jpg";
+        movie.release_date = "1994-09-23";
+        movie.overview = "Framed in the 1940s for the double murder of his wife and her lover.";
+        movie.popularity = 6.741296;
+        movie.vote_average = 8.5;
+        movie.vote_count = 8358;
+        return movie;
+    }
+
+    /**
+     * Keeps the written fields in order and reads them back from the start, failing when a
+     * field is read as a different type than it was written as
+     */
+    private static final class Fields implements MovieParcel.Writer, MovieParcel.Reader {
+
+        final ArrayList<Object> mValues = new ArrayList<>();
+        private int mPosition;
+
+        @Override
+        public void writeInt(int value) {
+            mValues.add(value);
+        }
+
+        @Override
+        public void writeDouble(double value) {
+            mValues.add(value);
+        }
+
+        @Override
+        public void writeString(String value) {
+            mValues.add(value);
+        }
+
+        @Override
+        public int readInt() {
+            return (Integer) mValues.get(mPosition++);
+        }
+
+        @Override
+        public double readDouble() {
+            return (Double) mValues.get(mPosition++);
+        }
+
+        @Override
+        public String readString() {
+            return (String) mValues.get(mPosition++);
+        }
+
+        boolean isRead() {
+            return mPosition == mValues.size();
+        }
+    }
+}
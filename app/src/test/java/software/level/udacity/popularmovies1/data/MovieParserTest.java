@@ -0,0 +1,82 @@
+package software.level.udacity.popularmovies1.data;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+
+import software.level.udacity.popularmovies1.utilities.MovieRequestType;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that the streaming parser produces the same movies as the JSONObject tree parser.
+ */
+public class MovieParserTest {
+
+    @Test
+    public void streamingParser_matchesTreeParser_forList() throws Exception {
+        ArrayList<Movie> movies = assertSameMovies("popular.json", MovieRequestType.POPULAR, 3);
+
+        assertEquals("1994-09-23", movies.get(0).release_date);
+        assertNull(movies.get(0).tagline);
+    }
+
+    @Test
+    public void streamingParser_matchesTreeParser_forDetails() throws Exception {
+        ArrayList<Movie> movies = assertSameMovies("details.json", MovieRequestType.DETAILS, 1);
+
+        assertEquals(142, movies.get(0).runtime);
+        assertEquals("1994-09-23", movies.get(0).release_date);
+        assertEquals("Fear can hold you prisoner. Hope can set you free.", movies.get(0).tagline);
+    }
+
+    private ArrayList<Movie> assertSameMovies(String resource, MovieRequestType requestType,
+                                              int expectedCount) throws Exception {
+        String json = new String(readResource(resource), "UTF-8");
+
+        ArrayList<Movie> expected = MovieParser.parseMovieData(json, requestType);
+        ArrayList<Movie> actual = MovieParser.parseMovieData(open(resource), requestType);
+
+        assertEquals(expectedCount, expected.size());
+        assertEquals(expected.size(), actual.size());
+
+        for(int i = 0; i < expected.size(); i++) {
+            Movie e = expected.get(i);
+            Movie a = actual.get(i);
+
+            assertEquals(e.moviedb_id, a.moviedb_id);
+            assertEquals(e.title, a.title);
+            assertEquals(e.poster_path, a.poster_path);
+            assertEquals(e.backdrop_path, a.backdrop_path);
+            assertEquals(e.overview, a.overview);
+            assertEquals(e.popularity, a.popularity, 0);
+            assertEquals(e.vote_average, a.vote_average, 0);
+            assertEquals(e.vote_count, a.vote_count);
+            assertEquals(e.runtime, a.runtime);
+            assertEquals(e.release_date, a.release_date);
+            assertEquals(e.tagline, a.tagline);
+            assertEquals(e.homepage, a.homepage);
+        }
+
+        return actual;
+    }
+
+    private InputStream open(String resource) {
+        return getClass().getClassLoader().getResourceAsStream(resource);
+    }
+
+    private byte[] readResource(String resource) throws IOException {
+        InputStream in = open(resource);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int read;
+        while((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        in.close();
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,91 @@
+package software.level.udacity.popularmovies1.data;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks the sort orders and filters of the MovieQueryEngine, including rows appended after
+ * a sort order was first computed.
+ */
+public class MovieQueryEngineTest {
+
+    @Test
+    public void query_sortsHighestFirst() {
+        MovieTable table = new MovieTable();
+        table.add(movie(1, 5.0, 7.0, 300, "1994-09-23"));
+        table.add(movie(2, 9.0, 8.5, 100, "2010-07-16"));
+        table.add(movie(3, 7.0, 6.0, 900, "1972-03-15"));
+
+        MovieQueryEngine engine = new MovieQueryEngine(table);
+
+        assertIds(table, engine.query(query(MovieQuery.SortOrder.POPULARITY)), 2, 3, 1);
+        assertIds(table, engine.query(query(MovieQuery.SortOrder.VOTE_AVERAGE)), 2, 1, 3);
+        assertIds(table, engine.query(query(MovieQuery.SortOrder.VOTE_COUNT)), 3, 1, 2);
+        assertIds(table, engine.query(query(MovieQuery.SortOrder.RELEASE_DATE)), 2, 1, 3);
+    }
+
+    @Test
+    public void query_mergesAppendedRowsAndSeesUpdates() {
+        MovieTable table = new MovieTable();
+        table.add(movie(1, 5.0, 7.0, 300, "1994-09-23"));
+        table.add(movie(2, 9.0, 8.5, 100, "2010-07-16"));
+
+        MovieQueryEngine engine = new MovieQueryEngine(table);
+        MovieQuery popularity = query(MovieQuery.SortOrder.POPULARITY);
+        assertIds(table, engine.query(popularity), 2, 1);
+
+        table.add(movie(3, 7.0, 6.0, 900, "1972-03-15"));
+        assertIds(table, engine.query(popularity), 2, 3, 1);
+
+        table.add(movie(1, 10.0, 7.0, 300, "1994-09-23"));
+        assertIds(table, engine.query(popularity), 1, 2, 3);
+    }
+
+    @Test
+    public void query_filtersByVoteCountAndYear() {
+        MovieTable table = new MovieTable();
+        table.add(movie(1, 5.0, 7.0, 300, "1994-09-23"));
+        table.add(movie(2, 9.0, 8.5, 100, "2010-07-16"));
+        table.add(movie(3, 7.0, 6.0, 900, "1972-03-15"));
+        table.add(movie(4, 8.0, 6.0, 900, null));
+
+        MovieQueryEngine engine = new MovieQueryEngine(table);
+
+        MovieQuery query = query(MovieQuery.SortOrder.POPULARITY);
+        query.minVoteCount = 200;
+        assertIds(table, engine.query(query), 4, 3, 1);
+
+        query.minYear = 1980;
+        assertIds(table, engine.query(query), 1);
+
+        query.minVoteCount = 0;
+        query.minYear = 0;
+        query.maxYear = 1999;
+        assertIds(table, engine.query(query), 3, 1);
+    }
+
+    private static void assertIds(MovieTable table, int[] rows, int... ids) {
+        assertEquals(ids.length, rows.length);
+        for(int i = 0; i < ids.length; i++) {
+            assertEquals(ids[i], table.getId(rows[i]));
+        }
+    }
+
+    private static MovieQuery query(MovieQuery.SortOrder sortOrder) {
+        MovieQuery query = new MovieQuery();
+        query.sortOrder = sortOrder;
+        return query;
+    }
+
+    private static Movie movie(int id, double popularity, double voteAverage, int voteCount, String releaseDate) {
+        Movie movie = new Movie();
+        movie.moviedb_id = id;
+        movie.title = "Movie " + id;
+        movie.popularity = popularity;
+        movie.vote_average = voteAverage;
+        movie.vote_count = voteCount;
+        movie.release_date = releaseDate;
+        return movie;
+    }
+}
@@ -0,0 +1,331 @@
+package software.level.udacity.popularmovies1.data;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import software.level.udacity.popularmovies1.utilities.CancellationToken;
+import software.level.udacity.popularmovies1.utilities.MovieRequestType;
+
+import static org.junit.Assert.*;
+
+/**
+ * Loads movies from a fake data source that counts its fetches and can hold them until the
+ * test lets them finish, so that the tests can line up loads that overlap.
+ */
+public class MovieRepositoryTest {
+
+    // Number of movies on every page of the fake lists
+    private static final int PAGE_SIZE = 20;
+
+    // Fetches the data source got as "<request type>#<page>" or "details/<id>", guarded by itself
+    private final ArrayList<String> mFetches = new ArrayList<>();
+
+    // Counted down once a fetch that is held started
+    private final CountDownLatch mFetchStarted = new CountDownLatch(1);
+
+    // First pages and details are held until this is counted down, when the test holds them
+    private CountDownLatch mFetchGate;
+
+    private final MovieRepository mRepository = new MovieRepository(new MovieRepository.DataSource() {
+        @Override
+        public MoviePage fetchMoviePage(MovieRequestType requestType, int movieId, int page) throws IOException {
+            synchronized (mFetches) {
+                mFetches.add(requestType + "#" + page);
+            }
+
+            if(page == 1) {
+                hold();
+            }
+
+            MoviePage moviePage = new MoviePage();
+            moviePage.page = page;
+            moviePage.total_pages = 3;
+            moviePage.movies = new ArrayList<>();
+            for(int i = 0; i < PAGE_SIZE; i++) {
+                moviePage.movies.add(movie((page - 1) * PAGE_SIZE + i + 1));
+            }
+            return moviePage;
+        }
+
+        @Override
+        public MoviePage searchMovies(String query, int page) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Movie fetchMovieDetails(int id) throws IOException {
+            synchronized (mFetches) {
+                mFetches.add("details/" + id);
+            }
+            hold();
+
+            Movie movie = movie(id);
+            movie.runtime = 100 + id;
+            movie.tagline = "Tagline " + id;
+            return movie;
+        }
+    });
+
+    @After
+    public void tearDown() {
+        // Never leave a loader thread waiting on the gate
+        if(mFetchGate != null) {
+            mFetchGate.countDown();
+        }
+    }
+
+    @Test
+    public void nextPageOfAListThatIsLoading_sharesTheFirstPageLoad() throws Exception {
+        mFetchGate = new CountDownLatch(1);
+
+        Loader<MovieTable> movies = new Loader<MovieTable>() {
+            @Override
+            MovieTable load() throws IOException {
+                return mRepository.loadMovies(MovieRequestType.POPULAR);
+            }
+        };
+        movies.start();
+        assertTrue(mFetchStarted.await(5, TimeUnit.SECONDS));
+
+        Loader<MoviePage> nextPage = new Loader<MoviePage>() {
+            @Override
+            MoviePage load() throws IOException {
+                return mRepository.loadNextPage(MovieRequestType.POPULAR);
+            }
+        };
+        nextPage.start();
+        nextPage.awaitBlocked();
+
+        mFetchGate.countDown();
+
+        assertEquals(PAGE_SIZE, movies.get().size());
+        MoviePage page = nextPage.get();
+        assertEquals(1, page.page);
+        assertEquals(3, page.total_pages);
+        assertEquals(PAGE_SIZE, page.movies.size());
+        assertEquals("[POPULAR#1]", mFetches.toString());
+
+        // The list goes on after the page both of them shared
+        assertEquals(2, mRepository.loadNextPage(MovieRequestType.POPULAR).page);
+    }
+
+    @Test
+    public void listThatIsLoadingAsNextPage_sharesTheFirstPageLoad() throws Exception {
+        mFetchGate = new CountDownLatch(1);
+
+        Loader<MoviePage> nextPage = new Loader<MoviePage>() {
+            @Override
+            MoviePage load() throws IOException {
+                return mRepository.loadNextPage(MovieRequestType.TOP_RATED);
+            }
+        };
+        nextPage.start();
+        assertTrue(mFetchStarted.await(5, TimeUnit.SECONDS));
+
+        Loader<MovieTable> movies = new Loader<MovieTable>() {
+            @Override
+            MovieTable load() throws IOException {
+                return mRepository.loadMovies(MovieRequestType.TOP_RATED);
+            }
+        };
+        movies.start();
+        movies.awaitBlocked();
+
+        mFetchGate.countDown();
+
+        assertEquals(PAGE_SIZE, nextPage.get().movies.size());
+        assertEquals(PAGE_SIZE, movies.get().size());
+        assertEquals("[TOP_RATED#1]", mFetches.toString());
+        assertEquals(1, mRepository.getLoadedPageCount(MovieRequestType.TOP_RATED, 0));
+    }
+
+    @Test
+    public void concurrentDetailLoads_shareOneFetch() throws Exception {
+        mFetchGate = new CountDownLatch(1);
+
+        ArrayList<Loader<Movie>> loaders = new ArrayList<>();
+        for(int i = 0; i < 3; i++) {
+            Loader<Movie> loader = new Loader<Movie>() {
+                @Override
+                Movie load() throws IOException {
+                    return mRepository.getMovieDetails(7);
+                }
+            };
+            loader.start();
+            loaders.add(loader);
+
+            // The first one fetches, the others wait for it
+            if(i == 0) {
+                assertTrue(mFetchStarted.await(5, TimeUnit.SECONDS));
+            } else {
+                loader.awaitBlocked();
+            }
+        }
+
+        mFetchGate.countDown();
+
+        Movie first = loaders.get(0).get();
+        for(Loader<Movie> loader : loaders) {
+            assertSame(first, loader.get());
+        }
+        assertEquals("Tagline 7", first.tagline);
+        assertEquals("[details/7]", mFetches.toString());
+
+        // Once loaded the details come from memory
+        assertSame(first, mRepository.getMovieDetails(7));
+        assertEquals(1, mFetches.size());
+    }
+
+    @Test
+    public void details_areMergedIntoTheMovieFromTheList() throws IOException {
+        mRepository.loadMovies(MovieRequestType.POPULAR);
+        Movie fromList = mRepository.getCachedMovie(3);
+        assertFalse(MovieRepository.hasDetails(fromList));
+
+        Movie details = mRepository.getMovieDetails(3);
+
+        // Everyone holding the movie from the list sees the details
+        assertSame(fromList, details);
+        assertEquals(103, fromList.runtime);
+        assertEquals("Tagline 3", fromList.tagline);
+        assertEquals("Movie 3", fromList.title);
+
+        // Loading the list again updates the movie without dropping the details
+        mRepository.loadMovies(MovieRequestType.POPULAR);
+        assertSame(fromList, mRepository.getCachedMovie(3));
+        assertTrue(MovieRepository.hasDetails(fromList));
+        assertEquals("[POPULAR#1, details/3, POPULAR#1]", mFetches.toString());
+    }
+
+    @Test
+    public void cache_evictsTheLeastRecentlyUsedMovieOnceFull() throws IOException {
+        // The cache holds 500 movies
+        for(int id = 1; id <= 500; id++) {
+            mRepository.getMovieDetails(id);
+        }
+
+        // Looking at the oldest movie makes the second oldest the one to go
+        assertNotNull(mRepository.getCachedMovie(1));
+        mRepository.getMovieDetails(501);
+
+        assertNotNull(mRepository.getCachedMovie(1));
+        assertNull(mRepository.getCachedMovie(2));
+        assertNotNull(mRepository.getCachedMovie(3));
+        assertNotNull(mRepository.getCachedMovie(501));
+
+        // An evicted movie is loaded again, evicting the movie that was used longest ago, which
+        // is 4 now that 1 and 3 were looked at
+        mRepository.getMovieDetails(2);
+        assertEquals(502, mFetches.size());
+        assertNull(mRepository.getCachedMovie(4));
+    }
+
+    @Test
+    public void observeMovie_deliversCopiesThatLaterLoadsDontChange() throws IOException {
+        mRepository.loadMovies(MovieRequestType.POPULAR);
+
+        final ArrayList<Movie> delivered = new ArrayList<>();
+        mRepository.observeMovie(5, new Executor() {
+            @Override
+            public void execute(Runnable runnable) {
+                runnable.run();
+            }
+        }, new CancellationToken(), new DataStream.Observer<Movie>() {
+            @Override
+            public void onChanged(Movie movie) {
+                delivered.add(movie);
+            }
+        });
+
+        mRepository.getMovieDetails(5);
+
+        // The movie from the list stays as it was delivered, the details come as a new movie
+        assertEquals(2, delivered.size());
+        assertNotSame(mRepository.getCachedMovie(5), delivered.get(0));
+        assertFalse(MovieRepository.hasDetails(delivered.get(0)));
+        assertEquals("Movie 5", delivered.get(0).title);
+        assertNotSame(mRepository.getCachedMovie(5), delivered.get(1));
+        assertEquals("Tagline 5", delivered.get(1).tagline);
+        assertEquals(105, delivered.get(1).runtime);
+    }
+
+    private static Movie movie(int id) {
+        Movie movie = new Movie();
+        movie.moviedb_id = id;
+        movie.title = "Movie " + id;
+        movie.poster_path = "/" + id + ".jpg";
+        movie.overview = "Overview " + id;
+        movie.vote_count = id;
+        return movie;
+    }
+
+    private void hold() throws IOException {
+        if(mFetchGate == null) {
+            return;
+        }
+
+        mFetchStarted.countDown();
+        try {
+            if(!mFetchGate.await(5, TimeUnit.SECONDS)) {
+                throw new IOException("The test never let the fetch finish");
+            }
+        } catch (InterruptedException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Runs a load on its own thread and hands its result or exception to the test
+     */
+    private abstract static class Loader<T> {
+
+        private final Thread mThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    mResult = load();
+                } catch (Throwable t) {
+                    mError = t;
+                }
+            }
+        });
+
+        private volatile T mResult;
+        private volatile Throwable mError;
+
+        abstract T load() throws IOException;
+
+        void start() {
+            mThread.start();
+        }
+
+        /**
+         * Waits until the load is waiting on another load to finish
+         */
+        void awaitBlocked() throws InterruptedException {
+            long deadline = System.currentTimeMillis() + 5000;
+            while(mThread.getState() != Thread.State.WAITING && mThread.getState() != Thread.State.TERMINATED) {
+                assertTrue("The load never waited", System.currentTimeMillis() < deadline);
+                Thread.sleep(1);
+            }
+        }
+
+        T get() throws Exception {
+            mThread.join(5000);
+            assertFalse("The load never finished", mThread.isAlive());
+            if(mError instanceof Exception) {
+                throw (Exception) mError;
+            }
+            if(mError != null) {
+                throw new AssertionError(mError);
+            }
+            return mResult;
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package software.level.udacity.popularmovies1.data;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Searches a handful of movies whose titles, taglines and overviews share words
+ */
+public class MovieSearchIndexTest {
+
+    @Test
+    public void search_matchesPrefixesOfWords() {
+        MovieSearchIndex index = new MovieSearchIndex();
+        index.add(movie(1, "Interstellar", null, "A team travels through a wormhole.", 50, 8));
+        index.add(movie(2, "Inception", null, "A thief steals secrets from dreams.", 40, 8));
+        index.add(movie(3, "Arrival", null, "Linguists meet visitors.", 30, 7));
+
+        assertArrayEquals(new int[] {1}, index.search("inter", 10));
+        assertArrayEquals(new int[] {3}, index.search("LING", 10));
+        assertEquals(3, index.size());
+    }
+
+    @Test
+    public void search_toleratesTyposInLongerWords() {
+        MovieSearchIndex index = new MovieSearchIndex();
+        index.add(movie(1, "Interstellar", null, null, 50, 8));
+        index.add(movie(2, "Gravity", null, null, 40, 7));
+
+        // A swap of two letters counts as one typo
+        assertArrayEquals(new int[] {1}, index.search("intersetllar", 10));
+        assertArrayEquals(new int[] {2}, index.search("gravty", 10));
+
+        // Short words have to be spelled right
+        assertArrayEquals(new int[0], index.search("grx", 10));
+    }
+
+    @Test
+    public void search_needsEveryWordToMatch() {
+        MovieSearchIndex index = new MovieSearchIndex();
+        index.add(movie(1, "The Dark Knight", null, null, 50, 8));
+        index.add(movie(2, "The Dark Tower", null, null, 40, 6));
+        index.add(movie(3, "Knight and Day", null, null, 30, 6));
+
+        assertArrayEquals(new int[] {1}, index.search("dark knight", 10));
+        assertEquals(2, index.search("dark", 10).length);
+        assertArrayEquals(new int[0], index.search("dark day", 10));
+    }
+
+    @Test
+    public void search_ranksTitlesFirstThenPopularity() {
+        MovieSearchIndex index = new MovieSearchIndex();
+        index.add(movie(1, "Ocean Drive", null, null, 5, 5));
+        index.add(movie(2, "Heist", null, "A crew robs a casino by the ocean.", 900, 9));
+        index.add(movie(3, "Ocean Deep", null, null, 400, 7));
+
+        // Both titles beat the overview however popular it is, then the popular title wins
+        assertArrayEquals(new int[] {3, 1, 2}, index.search("ocean", 10));
+        assertArrayEquals(new int[] {3, 1}, index.search("ocean", 2));
+    }
+
+    @Test
+    public void add_reindexesChangedText() {
+        MovieSearchIndex index = new MovieSearchIndex();
+        index.add(movie(1, "Alien", null, null, 50, 8));
+        assertArrayEquals(new int[0], index.search("scream", 10));
+
+        // Details came in with a tagline
+        index.add(movie(1, "Alien", "In space no one can hear you scream.", null, 50, 8));
+        assertArrayEquals(new int[] {1}, index.search("scream", 10));
+        assertEquals(1, index.size());
+
+        index.add(movie(1, "Aliens", null, null, 50, 8));
+        assertArrayEquals(new int[0], index.search("scream", 10));
+        assertArrayEquals(new int[] {1}, index.search("aliens", 10));
+    }
+
+    @Test
+    public void search_ignoresAccentsAndCase() {
+        MovieSearchIndex index = new MovieSearchIndex();
+        index.add(movie(1, "Am\u00e9lie", null, null, 50, 8));
+
+        assertArrayEquals(new int[] {1}, index.search("amelie", 10));
+        assertArrayEquals(new int[] {1}, index.search("AM\u00c9LIE", 10));
+    }
+
+    @Test
+    public void tokenize_splitsOnAnythingButLettersAndDigits() {
+        ArrayList<String> words = new ArrayList<>();
+        MovieSearchIndex.tokenize("Spider-Man: Far From Home (2019) a", words, 2);
+
+        assertEquals(Arrays.asList("spider", "man", "far", "from", "home", "2019"), words);
+    }
+
+    private static Movie movie(int id, String title, String tagline, String overview,
+                               double popularity, double voteAverage) {
+        Movie movie = new Movie();
+        movie.moviedb_id = id;
+        movie.title = title;
+        movie.tagline = tagline;
+        movie.overview = overview;
+        movie.popularity = popularity;
+        movie.vote_average = voteAverage;
+        return movie;
+    }
+}
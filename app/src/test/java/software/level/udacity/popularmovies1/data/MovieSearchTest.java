@@ -0,0 +1,227 @@
+package software.level.udacity.popularmovies1.data;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.Executor;
+
+import software.level.udacity.popularmovies1.utilities.CancellationToken;
+import software.level.udacity.popularmovies1.utilities.FakeClock;
+import software.level.udacity.popularmovies1.utilities.MovieRequestType;
+import software.level.udacity.popularmovies1.utilities.TaskScheduler;
+
+import static org.junit.Assert.*;
+
+/**
+ * Searches the popular list of a fake data source, which also answers searches with movies
+ * that aren't in the list. The scheduler has no worker threads and a clock the tests move, so
+ * the tests decide when the debounce has passed.
+ */
+public class MovieSearchTest {
+
+    // How long the query has to stay the same before the API is asked
+    private static final long DEBOUNCE_MILLIS = 300;
+
+    // Number of movies the fake finds for "sequel", more than the repository keeps loaded
+    private static final int SEQUEL_COUNT = 2500;
+
+    private final FakeClock mClock = new FakeClock();
+
+    private final Executor mDirectExecutor = new Executor() {
+        @Override
+        public void execute(Runnable runnable) {
+            runnable.run();
+        }
+    };
+
+    private final TaskScheduler mScheduler = new TaskScheduler(0, mClock, mDirectExecutor);
+
+    // Queries sent to the data source, guarded by itself
+    private final ArrayList<String> mSearches = new ArrayList<>();
+
+    private final MovieRepository mRepository = new MovieRepository(new MovieRepository.DataSource() {
+        @Override
+        public MoviePage fetchMoviePage(MovieRequestType requestType, int movieId, int page) {
+            // Twelve Star Trek movies and a single Alien
+            MoviePage moviePage = new MoviePage();
+            moviePage.page = page;
+            moviePage.total_pages = 1;
+            moviePage.movies = new ArrayList<>();
+            for(int i = 1; i <= 12; i++) {
+                moviePage.movies.add(movie(i, "Star Trek " + i));
+            }
+            moviePage.movies.add(movie(20, "Alien"));
+            return moviePage;
+        }
+
+        @Override
+        public MoviePage searchMovies(String query, int page) throws IOException {
+            synchronized (mSearches) {
+                mSearches.add(query);
+            }
+
+            if(query.equals("offline")) {
+                throw new IOException("No connection");
+            }
+
+            MoviePage moviePage = new MoviePage();
+            moviePage.page = page;
+            moviePage.total_pages = 1;
+            moviePage.movies = new ArrayList<>();
+
+            if(query.equals("sequel")) {
+                for(int i = 1; i <= SEQUEL_COUNT; i++) {
+                    moviePage.movies.add(movie(1000 + i, "Sequel " + i));
+                }
+                return moviePage;
+            }
+            moviePage.movies.add(movie(21, "Aliens"));
+            moviePage.movies.add(movie(22, "Alien 3"));
+            return moviePage;
+        }
+
+        @Override
+        public Movie fetchMovieDetails(int id) throws IOException {
+            throw new IOException("Details are not served by the fake");
+        }
+    });
+
+    private final CancellationToken mToken = new CancellationToken();
+
+    // Results handed to the listener, as "query: ids"
+    private final ArrayList<String> mResults = new ArrayList<>();
+
+    private final MovieSearch.Listener mListener = new MovieSearch.Listener() {
+        @Override
+        public void onSearchResults(String query, MovieTable movies) {
+            mResults.add(query + ": " + ids(movies));
+        }
+    };
+
+    @Test
+    public void search_doesNotAskTheApiWhenEnoughMoviesAreLoaded() throws IOException {
+        mRepository.getMovies(MovieRequestType.POPULAR);
+        MovieSearch search = new MovieSearch(mRepository, mScheduler, DEBOUNCE_MILLIS, 60);
+
+        MovieTable movies = search.search("star", mToken, mListener);
+
+        assertEquals(12, movies.size());
+        assertEquals(0, mScheduler.getQueuedCount());
+    }
+
+    @Test
+    public void search_asksTheApiOnceTypingStops() throws IOException {
+        mRepository.getMovies(MovieRequestType.POPULAR);
+        MovieSearch search = new MovieSearch(mRepository, mScheduler, DEBOUNCE_MILLIS, 60);
+
+        assertEquals("[20]", ids(search.search("ali", mToken, mListener)));
+        mClock.advance(100);
+        assertEquals("[20]", ids(search.search("alie", mToken, mListener)));
+        mClock.advance(100);
+        assertEquals("[20]", ids(search.search("alien", mToken, mListener)));
+
+        // Nothing runs while the debounce is waited out
+        mClock.advance(DEBOUNCE_MILLIS - 1);
+        assertFalse(mScheduler.runNextTask());
+
+        mClock.advance(1);
+        runAll();
+
+        // Only the last query was sent and its results include the movies found before
+        assertEquals("[alien]", mSearches.toString());
+        assertEquals(1, mResults.size());
+        assertTrue(mResults.get(0).startsWith("alien: ["));
+        assertTrue(mResults.get(0).contains("20") && mResults.get(0).contains("21")
+                && mResults.get(0).contains("22"));
+        assertEquals(3, search.search("alien", mToken, mListener).size());
+    }
+
+    @Test
+    public void search_asksTheApiAboutAQueryOnlyOnce() {
+        MovieSearch search = new MovieSearch(mRepository, mScheduler, DEBOUNCE_MILLIS, 60);
+
+        search.search("aliens", mToken, mListener);
+        mClock.advance(DEBOUNCE_MILLIS);
+        runAll();
+
+        // Aliens plus Alien 3, which is a typo away
+        assertEquals(2, search.search("Aliens ", mToken, mListener).size());
+        assertEquals(0, mScheduler.getQueuedCount());
+        assertEquals("[aliens]", mSearches.toString());
+    }
+
+    @Test
+    public void search_doesNotAskTheApiAboutShortQueries() {
+        MovieSearch search = new MovieSearch(mRepository, mScheduler, DEBOUNCE_MILLIS, 60);
+
+        assertEquals(0, search.search("al", mToken, mListener).size());
+        assertEquals(0, mScheduler.getQueuedCount());
+    }
+
+    @Test
+    public void cancel_dropsTheRequestAndItsResults() {
+        MovieSearch search = new MovieSearch(mRepository, mScheduler, DEBOUNCE_MILLIS, 60);
+
+        search.search("alien", mToken, mListener);
+        search.cancel();
+        mClock.advance(DEBOUNCE_MILLIS);
+        runAll();
+
+        assertTrue(mSearches.isEmpty());
+        assertTrue(mResults.isEmpty());
+    }
+
+    @Test
+    public void search_keepsLocalResultsWhenTheApiFails() throws IOException {
+        mRepository.getMovies(MovieRequestType.POPULAR);
+        MovieSearch search = new MovieSearch(mRepository, mScheduler, DEBOUNCE_MILLIS, 60);
+
+        search.search("offline", mToken, mListener);
+        mClock.advance(DEBOUNCE_MILLIS);
+        runAll();
+
+        assertEquals("[offline]", mSearches.toString());
+        assertTrue(mResults.isEmpty());
+    }
+
+    @Test
+    public void searchRemote_dropsOldResultsOnceTooManyMoviesAreLoaded() throws IOException {
+        mRepository.getMovies(MovieRequestType.POPULAR);
+        assertEquals(SEQUEL_COUNT, mRepository.searchRemote("sequel"));
+
+        // Only the results that are still cached and the movies of the list are left
+        MovieTable loaded = mRepository.queryLoadedMovies(new MovieQuery());
+        assertTrue(loaded.size() < SEQUEL_COUNT);
+        assertFalse(loaded.contains(1001));
+        assertTrue(loaded.contains(1000 + SEQUEL_COUNT));
+        assertTrue(loaded.contains(20));
+
+        assertEquals("[20]", ids(mRepository.searchLoadedMovies("Alien", 5)));
+        assertEquals(13, mRepository.getCachedMovies(MovieRequestType.POPULAR).size());
+    }
+
+    private static Movie movie(int id, String title) {
+        Movie movie = new Movie();
+        movie.moviedb_id = id;
+        movie.title = title;
+        movie.poster_path = "/" + id + ".jpg";
+        movie.release_date = "2017-01-01";
+        return movie;
+    }
+
+    private static String ids(MovieTable movies) {
+        int[] ids = new int[movies.size()];
+        for(int i = 0; i < ids.length; i++) {
+            ids[i] = movies.getId(i);
+        }
+        return Arrays.toString(ids);
+    }
+
+    private void runAll() {
+        while(mScheduler.runNextTask()) {
+            // Runs whatever search is left
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package software.level.udacity.popularmovies1.data;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+
+import software.level.udacity.popularmovies1.utilities.MovieRequestType;
+
+import static org.junit.Assert.*;
+
+/**
+ * Writes snapshots to a temporary directory and reads them back, including snapshots that were
+ * damaged after being written.
+ */
+public class MovieSnapshotStoreTest {
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void read_returnsWhatWasWritten() throws Exception {
+        MovieSnapshotStore store = new MovieSnapshotStore(new File(mFolder.getRoot(), "snapshots"));
+
+        Movie withNulls = movie(2, "Am\u00e9lie");
+        withNulls.poster_path = null;
+        withNulls.homepage = null;
+
+        store.write(MovieRequestType.POPULAR, page(movie(1, "Inception"), withNulls));
+
+        MoviePage read = store.read(MovieRequestType.POPULAR);
+        assertNotNull(read);
+        assertEquals(1, read.page);
+        assertEquals(40, read.total_pages);
+        assertEquals(2, read.movies.size());
+
+        Movie first = read.movies.get(0);
+        assertEquals(1, first.moviedb_id);
+        assertEquals("Inception", first.title);
+        assertEquals("/poster1.jpg", first.poster_path);
+        assertEquals("2010-07-16", first.release_date);
+        assertEquals(12.5, first.popularity, 0);
+        assertEquals(8.1, first.vote_average, 0);
+        assertEquals(1001, first.vote_count);
+
+        Movie second = read.movies.get(1);
+        assertEquals("Am\u00e9lie", second.title);
+        assertNull(second.poster_path);
+        assertNull(second.homepage);
+
+        assertNull(store.read(MovieRequestType.TOP_RATED));
+    }
+
+    @Test
+    public void write_replacesSnapshotWithoutLeavingTempFiles() throws Exception {
+        File directory = mFolder.getRoot();
+        MovieSnapshotStore store = new MovieSnapshotStore(directory);
+
+        store.write(MovieRequestType.TOP_RATED, page(movie(1, "Old")));
+        store.write(MovieRequestType.TOP_RATED, page(movie(2, "New")));
+
+        assertEquals("New", store.read(MovieRequestType.TOP_RATED).movies.get(0).title);
+
+        String[] files = directory.list();
+        assertEquals(1, files.length);
+        assertEquals("top_rated.snapshot", files[0]);
+    }
+
+    @Test
+    public void read_ignoresDamagedSnapshot() throws Exception {
+        MovieSnapshotStore store = new MovieSnapshotStore(mFolder.getRoot());
+        store.write(MovieRequestType.POPULAR, page(movie(1, "Inception"), movie(2, "Heat")));
+
+        // Cut the file off in the middle of the second movie
+        File file = new File(mFolder.getRoot(), "popular.snapshot");
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        randomAccessFile.setLength(randomAccessFile.length() - 10);
+        randomAccessFile.close();
+
+        assertNull(store.read(MovieRequestType.POPULAR));
+        assertFalse(file.exists());
+    }
+
+    @Test
+    public void read_ignoresFileThatIsNotASnapshot() throws Exception {
+        File file = new File(mFolder.getRoot(), "popular.snapshot");
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        randomAccessFile.writeBytes("{\"results\":[]}");
+        randomAccessFile.close();
+
+        assertNull(new MovieSnapshotStore(mFolder.getRoot()).read(MovieRequestType.POPULAR));
+    }
+
+    private static MoviePage page(Movie... movies) {
+        MoviePage page = new MoviePage();
+        page.page = 1;
+        page.total_pages = 40;
+        page.movies = new ArrayList<>();
+        for(Movie movie : movies) {
+            page.movies.add(movie);
+        }
+        return page;
+    }
+
+    private static Movie movie(int id, String title) {
+        Movie movie = new Movie();
+        movie.moviedb_id = id;
+        movie.title = title;
+        movie.poster_path = "/poster" + id + ".jpg";
+        movie.backdrop_path = "/backdrop" + id + ".jpg";
+        movie.release_date = "2010-07-16";
+        movie.overview = "Overview of " + title;
+        movie.popularity = 12.5;
+        movie.vote_average = 8.1;
+        movie.vote_count = 1001;
+        movie.homepage = "http://example.com/" + id;
+        return movie;
+    }
+}
@@ -0,0 +1,95 @@
+package software.level.udacity.popularmovies1.data;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that movies survive the round trip through the columns of a MovieTable.
+ */
+public class MovieTableTest {
+
+    @Test
+    public void add_thenRead_returnsSameFields() {
+        MovieTable table = new MovieTable();
+        Movie movie = movie(278);
+        movie.runtime = 142;
+        movie.release_date = "1994-09-23";
+        movie.tagline = "Fear can hold you prisoner.";
+
+        int row = table.add(movie);
+        Movie read = table.read(row, new Movie());
+
+        assertEquals(278, read.moviedb_id);
+        assertEquals(movie.title, read.title);
+        assertEquals(movie.poster_path, read.poster_path);
+        assertEquals(movie.backdrop_path, read.backdrop_path);
+        assertEquals(movie.popularity, read.popularity, 0);
+        assertEquals(movie.vote_average, read.vote_average, 0);
+        assertEquals(movie.vote_count, read.vote_count);
+        assertEquals(142, read.runtime);
+        assertEquals("1994-09-23", read.release_date);
+        assertEquals(movie.tagline, read.tagline);
+        assertNull(read.homepage);
+    }
+
+    @Test
+    public void add_existingId_updatesRowInPlace() {
+        MovieTable table = new MovieTable();
+        table.add(movie(1));
+        table.add(movie(2));
+
+        Movie updated = movie(1);
+        updated.vote_count = 99;
+
+        assertEquals(0, table.add(updated));
+        assertEquals(2, table.size());
+        assertEquals(99, table.getVoteCount(0));
+    }
+
+    @Test
+    public void addAll_growsPastInitialCapacity() {
+        ArrayList<Movie> movies = new ArrayList<>();
+        for(int i = 0; i < 1000; i++) {
+            movies.add(movie(i * 31));
+        }
+
+        MovieTable table = new MovieTable(4);
+        assertEquals(1000, table.addAll(movies));
+
+        for(int i = 0; i < 1000; i++) {
+            assertEquals(i, table.indexOf(i * 31));
+            assertEquals(i * 31, table.getId(i));
+        }
+        assertEquals(-1, table.indexOf(7));
+    }
+
+    @Test
+    public void copy_isIndependentAndSharesPooledStrings() {
+        MovieTable table = new MovieTable();
+        table.add(movie(1));
+
+        MovieTable copy = table.copy();
+        copy.add(movie(2));
+
+        assertEquals(1, table.size());
+        assertEquals(2, copy.size());
+        assertFalse(table.contains(2));
+        assertSame(table.getPosterPath(0), copy.getPosterPath(0));
+    }
+
+    private static Movie movie(int id) {
+        Movie movie = new Movie();
+        movie.moviedb_id = id;
+        movie.title = "Movie " + id;
+        movie.poster_path = "/poster" + id + ".jpg";
+        movie.backdrop_path = "/backdrop" + id + ".jpg";
+        movie.popularity = id / 10.0;
+        movie.vote_average = 7.5;
+        movie.vote_count = id * 2;
+        movie.overview = "Overview " + id;
+        return movie;
+    }
+}
@@ -0,0 +1,228 @@
+package software.level.udacity.popularmovies1.data;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.Executor;
+
+import software.level.udacity.popularmovies1.utilities.CancellationToken;
+import software.level.udacity.popularmovies1.utilities.FakeClock;
+import software.level.udacity.popularmovies1.utilities.MovieRequestType;
+import software.level.udacity.popularmovies1.utilities.TaskScheduler;
+
+import static org.junit.Assert.*;
+
+/**
+ * Refreshes lists of a fake data source whose pages change every time they are loaded. The
+ * repository and the scheduler share a fake clock, so the tests decide how old each page is.
+ */
+public class RefreshSchedulerTest {
+
+    private static final long MINUTE_MILLIS = 60 * 1000;
+
+    // How long stale pages are collected before they are refreshed
+    private static final long BATCH_WINDOW_MILLIS = 500;
+
+    private final FakeClock mClock = new FakeClock();
+
+    private final Executor mDirectExecutor = new Executor() {
+        @Override
+        public void execute(Runnable runnable) {
+            runnable.run();
+        }
+    };
+
+    private final TaskScheduler mScheduler = new TaskScheduler(0, mClock, mDirectExecutor);
+
+    // Pages requested from the data source, guarded by itself
+    private final ArrayList<String> mRequests = new ArrayList<>();
+
+    // Number of times each page has been loaded, which changes the movies on it
+    private int mLoads;
+
+    // True while the data source can't be reached
+    private boolean mOffline;
+
+    private final MovieRepository mRepository = new MovieRepository(new MovieRepository.DataSource() {
+        @Override
+        public MoviePage fetchMoviePage(MovieRequestType requestType, int movieId, int page) throws IOException {
+            synchronized (mRequests) {
+                mRequests.add(requestType + "#" + page);
+            }
+
+            if(mOffline) {
+                throw new IOException("Offline");
+            }
+
+            // The second movie of each page is new every time the page is loaded
+            MoviePage moviePage = new MoviePage();
+            moviePage.page = page;
+            moviePage.total_pages = 5;
+            moviePage.movies = new ArrayList<>();
+            moviePage.movies.add(movie(page * 100));
+            moviePage.movies.add(movie(page * 100 + 1 + mLoads++));
+            return moviePage;
+        }
+
+        @Override
+        public MoviePage searchMovies(String query, int page) throws IOException {
+            throw new IOException("Searches are not served by the fake");
+        }
+
+        @Override
+        public Movie fetchMovieDetails(int id) throws IOException {
+            throw new IOException("Details are not served by the fake");
+        }
+    }, null, mClock);
+
+    // Always picks the middle of the random part of the backoff
+    private final Random mRandom = new Random() {
+        @Override
+        public double nextDouble() {
+            return 0.5;
+        }
+    };
+
+    private final RefreshScheduler mRefreshScheduler =
+            new RefreshScheduler(mRepository, mScheduler, mClock, mRandom, BATCH_WINDOW_MILLIS);
+
+    @Test
+    public void revalidate_leavesFreshPagesAlone() throws IOException {
+        mRepository.getMovies(MovieRequestType.POPULAR);
+        mClock.advance(5 * MINUTE_MILLIS);
+
+        assertEquals(0, mRefreshScheduler.revalidate(MovieRequestType.POPULAR, 0));
+        assertEquals(0, mScheduler.getQueuedCount());
+    }
+
+    @Test
+    public void revalidate_refreshesStalePagesInOneBatch() throws IOException {
+        mRepository.getMovies(MovieRequestType.POPULAR);
+        mRepository.loadNextPage(MovieRequestType.POPULAR);
+        mRepository.getMovies(MovieRequestType.NOW_PLAYING);
+        mRequests.clear();
+
+        // Later pages stay fresh longer, so only the first page of popular is stale
+        mClock.advance(RefreshScheduler.getTimeToLive(MovieRequestType.POPULAR));
+        assertEquals(1, mRefreshScheduler.revalidate(MovieRequestType.POPULAR, 0));
+        assertEquals(0, mRefreshScheduler.revalidate(MovieRequestType.POPULAR, 0));
+
+        mClock.advance(RefreshScheduler.getTimeToLive(MovieRequestType.NOW_PLAYING));
+        assertEquals(1, mRefreshScheduler.revalidate(MovieRequestType.NOW_PLAYING, 0));
+
+        // Both lists went out in the batch that was started first
+        assertEquals(1, mScheduler.getQueuedCount());
+        runAll();
+        assertEquals("[POPULAR#1, NOW_PLAYING#1]", mRequests.toString());
+        assertEquals(0, mRefreshScheduler.getPendingCount());
+
+        // The refreshed pages are fresh again, while the second page of popular went stale
+        assertEquals(0, mRefreshScheduler.revalidate(MovieRequestType.NOW_PLAYING, 0));
+        assertEquals(1, mRefreshScheduler.revalidate(MovieRequestType.POPULAR, 0));
+
+        // The batch doesn't start until the window has closed
+        assertFalse(mScheduler.runNextTask());
+        runAll();
+        assertEquals("[POPULAR#1, NOW_PLAYING#1, POPULAR#2]", mRequests.toString());
+    }
+
+    @Test
+    public void refresh_replacesThePageInPlace() throws IOException {
+        mRepository.getMovies(MovieRequestType.POPULAR);
+        mRepository.loadNextPage(MovieRequestType.POPULAR);
+        assertEquals("[100, 101, 200, 202]", ids(mRepository.getCachedMovies(MovieRequestType.POPULAR)));
+
+        final ArrayList<MovieListUpdate> updates = new ArrayList<>();
+        mRepository.observeMovies(MovieRequestType.POPULAR, 0, mDirectExecutor, new CancellationToken(),
+                new DataStream.Observer<MovieListUpdate>() {
+                    @Override
+                    public void onChanged(MovieListUpdate update) {
+                        updates.add(update);
+                    }
+                });
+        updates.clear();
+
+        mClock.advance(RefreshScheduler.getTimeToLive(MovieRequestType.POPULAR));
+        mRefreshScheduler.revalidate(MovieRequestType.POPULAR, 0);
+        runAll();
+
+        // The new movie of the first page comes before the second page, which is kept
+        assertEquals("[100, 103, 200, 202]", ids(mRepository.getCachedMovies(MovieRequestType.POPULAR)));
+        assertEquals(2, mRepository.getLoadedPageCount(MovieRequestType.POPULAR, 0));
+        assertEquals(1, updates.size());
+        assertEquals(MovieListUpdate.Change.REPLACED, updates.get(0).change);
+        assertEquals("[100, 103, 200, 202]", ids(updates.get(0).movies));
+    }
+
+    @Test
+    public void failedRefresh_backsOffWithJitter() throws IOException {
+        mRepository.getMovies(MovieRequestType.POPULAR);
+        mClock.advance(RefreshScheduler.getTimeToLive(MovieRequestType.POPULAR));
+
+        mOffline = true;
+        mRefreshScheduler.revalidate(MovieRequestType.POPULAR, 0);
+        runAll();
+
+        // Half of 30 seconds plus half of the random half
+        assertEquals(22500, mRefreshScheduler.getBackoffRemaining());
+        assertEquals(0, mRefreshScheduler.revalidate(MovieRequestType.POPULAR, 0));
+        assertEquals(0, mScheduler.getQueuedCount());
+
+        // The second failure in a row waits twice as long
+        mClock.advance(22500);
+        mRefreshScheduler.revalidate(MovieRequestType.POPULAR, 0);
+        runAll();
+        assertEquals(45000, mRefreshScheduler.getBackoffRemaining());
+
+        // The stale page is still shown and gets refreshed once the network is back
+        assertEquals(2, mRepository.getCachedMovies(MovieRequestType.POPULAR).size());
+        mOffline = false;
+        mClock.advance(45000);
+        assertEquals(1, mRefreshScheduler.revalidate(MovieRequestType.POPULAR, 0));
+        runAll();
+        assertEquals("[POPULAR#1, POPULAR#1, POPULAR#1, POPULAR#1]", mRequests.toString());
+        assertEquals(0, mRefreshScheduler.getBackoffRemaining());
+    }
+
+    @Test
+    public void cancelAll_dropsTheBatch() throws IOException {
+        mRepository.getMovies(MovieRequestType.POPULAR);
+        mRequests.clear();
+        mClock.advance(RefreshScheduler.getTimeToLive(MovieRequestType.POPULAR));
+
+        mRefreshScheduler.revalidate(MovieRequestType.POPULAR, 0);
+        mRefreshScheduler.cancelAll();
+        runAll();
+
+        assertTrue(mRequests.isEmpty());
+        assertEquals(0, mRefreshScheduler.getPendingCount());
+    }
+
+    private static Movie movie(int id) {
+        Movie movie = new Movie();
+        movie.moviedb_id = id;
+        movie.title = "Movie " + id;
+        movie.poster_path = "/" + id + ".jpg";
+        movie.release_date = "2017-01-01";
+        return movie;
+    }
+
+    private static String ids(MovieTable movies) {
+        int[] ids = new int[movies.size()];
+        for(int i = 0; i < ids.length; i++) {
+            ids[i] = movies.getId(i);
+        }
+        return Arrays.toString(ids);
+    }
+
+    private void runAll() {
+        // The batch window has passed by the time the queued batch runs
+        mClock.advance(BATCH_WINDOW_MILLIS);
+        while(mScheduler.runNextTask()) {
+            // Runs the batch
+        }
+    }
+}
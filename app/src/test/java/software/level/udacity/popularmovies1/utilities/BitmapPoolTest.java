@@ -0,0 +1,73 @@
+package software.level.udacity.popularmovies1.utilities;
+
+import android.graphics.Bitmap;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Pools bitmaps of a few sizes and takes them out again. A 10x10 bitmap takes 400 bytes.
+ */
+public class BitmapPoolTest {
+
+    private final FakeBitmaps mBitmaps = new FakeBitmaps();
+
+    @Test
+    public void get_onlyReusesBitmapsOfTheSameSize() {
+        BitmapPool pool = mBitmaps.newPool(10 * 1024);
+        Bitmap small = mBitmaps.create(10, 10);
+        Bitmap large = mBitmaps.create(20, 20);
+
+        pool.put(small);
+        pool.put(large);
+        assertEquals(400 + 1600, pool.size());
+
+        assertNull(pool.get(10, 20, Bitmap.Config.ARGB_8888));
+        assertSame(large, pool.get(20, 20, Bitmap.Config.ARGB_8888));
+        assertSame(small, pool.get(10, 10, Bitmap.Config.ARGB_8888));
+        assertNull(pool.get(10, 10, Bitmap.Config.ARGB_8888));
+
+        assertEquals(0, pool.size());
+        assertEquals(2, pool.getHitCount());
+        assertEquals(2, pool.getMissCount());
+    }
+
+    @Test
+    public void put_dropsTheOldestBitmapsOnceFull() {
+        BitmapPool pool = mBitmaps.newPool(3 * 400);
+        Bitmap first = mBitmaps.create(10, 10);
+        Bitmap second = mBitmaps.create(10, 10);
+        Bitmap third = mBitmaps.create(10, 10);
+        Bitmap fourth = mBitmaps.create(10, 10);
+
+        pool.put(first);
+        pool.put(second);
+        pool.put(third);
+
+        // Taking one out and putting it back makes it the newest
+        assertSame(first, pool.get(10, 10, Bitmap.Config.ARGB_8888));
+        pool.put(first);
+        pool.put(fourth);
+
+        assertEquals(3 * 400, pool.size());
+        assertSame(third, pool.get(10, 10, Bitmap.Config.ARGB_8888));
+        assertSame(first, pool.get(10, 10, Bitmap.Config.ARGB_8888));
+        assertSame(fourth, pool.get(10, 10, Bitmap.Config.ARGB_8888));
+        assertNull(pool.get(10, 10, Bitmap.Config.ARGB_8888));
+    }
+
+    @Test
+    public void put_ignoresBitmapsThatAreAlreadyPooledOrTooLarge() {
+        BitmapPool pool = mBitmaps.newPool(1000);
+        Bitmap bitmap = mBitmaps.create(10, 10);
+
+        pool.put(bitmap);
+        pool.put(bitmap);
+        pool.put(mBitmaps.create(20, 20));
+
+        assertEquals(400, pool.size());
+        assertSame(bitmap, pool.get(10, 10, Bitmap.Config.ARGB_8888));
+        assertNull(pool.get(10, 10, Bitmap.Config.ARGB_8888));
+    }
+}
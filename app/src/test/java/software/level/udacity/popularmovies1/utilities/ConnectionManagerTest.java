@@ -0,0 +1,132 @@
+package software.level.udacity.popularmovies1.utilities;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.util.ArrayList;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks the connection accounting on a fake clock, and that responses read through
+ * NetworkUtils leave their connection to a local server open for the next request.
+ */
+public class ConnectionManagerTest {
+
+    private final FakeClock mClock = new FakeClock();
+
+    // Two connections per host, kept alive for a minute, no waiting for a connection
+    private final ConnectionManager mManager = new ConnectionManager(2, 60 * 1000, 0, 1000, mClock);
+
+    @Test
+    public void open_reusesConnectionsThatWereReleasedReusable() throws IOException {
+        URL url = new URL("http://api.example.com/3/movie/1");
+
+        ConnectionManager.Lease first = mManager.open(url);
+        assertFalse(first.isReused());
+        mManager.release(first, true);
+
+        ConnectionManager.Lease second = mManager.open(url);
+        assertTrue(second.isReused());
+        mManager.release(second, false);
+
+        // The disconnected connection is gone
+        ConnectionManager.Lease third = mManager.open(url);
+        assertFalse(third.isReused());
+        mManager.release(third, true);
+
+        assertEquals(1 / 3f, mManager.getEstimatedReuseRate("api.example.com"), 0.001f);
+        assertEquals(0, mManager.getEstimatedReuseRate("image.example.com"), 0);
+        assertEquals("api.example.com 1 reused (estimated), 2 new, 1 idle", mManager.getStatsSummary());
+    }
+
+    @Test
+    public void open_evictsConnectionsIdleLongerThanKeepAlive() throws IOException {
+        URL url = new URL("http://api.example.com/3/movie/1");
+
+        mManager.release(mManager.open(url), true);
+        mClock.advance(60 * 1000 + 1);
+
+        assertFalse(mManager.open(url).isReused());
+    }
+
+    @Test
+    public void open_boundsConnectionsPerHost() throws IOException {
+        URL url = new URL("http://api.example.com/3/movie/1");
+
+        ConnectionManager.Lease first = mManager.open(url);
+        mManager.open(url);
+
+        try {
+            mManager.open(url);
+            fail("Expected a timeout while both connections are in use");
+        } catch (SocketTimeoutException expected) {
+            // Nobody released a connection within the connect timeout
+        }
+
+        // Other hosts have connections of their own
+        mManager.open(new URL("http://image.example.com/t/p/w185/a.jpg"));
+
+        mManager.release(first, true);
+        assertTrue(mManager.open(url).isReused());
+    }
+
+    @Test
+    public void drain_onlyFinishesShortBodies() {
+        assertTrue(ConnectionManager.drain(new ByteArrayInputStream(new byte[100])));
+        assertFalse(ConnectionManager.drain(new ByteArrayInputStream(new byte[64 * 1024])));
+    }
+
+    @Test
+    public void getResponseFromHttpUrl_keepsConnectionAlive() throws IOException {
+        final ArrayList<Integer> clientPorts = new ArrayList<>();
+
+        HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                synchronized (clientPorts) {
+                    clientPorts.add(exchange.getRemoteAddress().getPort());
+                }
+
+                byte[] body = "{\"page\":1}".getBytes("UTF-8");
+                exchange.sendResponseHeaders(200, body.length);
+                OutputStream out = exchange.getResponseBody();
+                out.write(body);
+                out.close();
+            }
+        });
+        server.start();
+
+        try {
+            String base = "http://127.0.0.1:" + server.getAddress().getPort();
+            assertEquals("{\"page\":1}", fetch(new URL(base + "/3/movie/popular")));
+            assertEquals("{\"page\":1}", fetch(new URL(base + "/3/movie/top_rated")));
+        } finally {
+            server.stop(0);
+        }
+
+        assertEquals(2, clientPorts.size());
+        assertEquals("Both requests went over the same socket", clientPorts.get(0), clientPorts.get(1));
+    }
+
+    private static String fetch(URL url) throws IOException {
+        return NetworkUtils.getResponseFromHttpUrl(url, new NetworkUtils.ResponseHandler<String>() {
+            @Override
+            public String handleResponse(InputStream in) throws IOException {
+                return ResponseBodyReader.readBody(in, -1);
+            }
+        });
+    }
+}
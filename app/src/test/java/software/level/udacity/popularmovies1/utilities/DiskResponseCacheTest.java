@@ -0,0 +1,296 @@
+package software.level.udacity.popularmovies1.utilities;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.ArrayList;
+
+import static org.junit.Assert.*;
+
+/**
+ * Requests responses through the cache from a local HTTP server that counts the requests it
+ * gets, answers with the cache headers the test asks for and honours If-None-Match.
+ */
+public class DiskResponseCacheTest {
+
+    // Size of every body the server sends
+    private static final int BODY_LENGTH = 1000;
+
+    private static final String LAST_MODIFIED = "Sat, 01 Jul 2017 12:00:00 GMT";
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    // Requests the server got as "<path> <If-None-Match>", guarded by itself
+    private final ArrayList<String> mRequests = new ArrayList<>();
+
+    // Cache-Control and ETag the server answers with, set before the requests they are for
+    private String mCacheControl = "max-age=60";
+    private String mEtag = "\"v1\"";
+
+    private HttpServer mServer;
+    private File mDirectory;
+
+    @Before
+    public void setUp() throws IOException {
+        mDirectory = mFolder.newFolder("responses");
+
+        mServer = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        mServer.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                String path = exchange.getRequestURI().getPath();
+                String ifNoneMatch = exchange.getRequestHeaders().getFirst("If-None-Match");
+
+                String cacheControl;
+                String etag;
+                synchronized (mRequests) {
+                    mRequests.add(path + " " + ifNoneMatch);
+                    cacheControl = mCacheControl;
+                    etag = mEtag;
+                }
+
+                exchange.getResponseHeaders().set("Cache-Control", cacheControl);
+                exchange.getResponseHeaders().set("ETag", etag);
+                exchange.getResponseHeaders().set("Last-Modified", LAST_MODIFIED);
+
+                if(ifNoneMatch != null) {
+                    exchange.sendResponseHeaders(304, -1);
+                    exchange.close();
+                    return;
+                }
+
+                byte[] body = bodyFor(path).getBytes("UTF-8");
+                exchange.sendResponseHeaders(200, body.length);
+                OutputStream out = exchange.getResponseBody();
+                out.write(body);
+                out.close();
+            }
+        });
+        mServer.start();
+    }
+
+    @After
+    public void tearDown() {
+        mServer.stop(0);
+    }
+
+    @Test
+    public void freshEntry_isServedWithoutARequest() throws IOException {
+        DiskResponseCache cache = new DiskResponseCache(mDirectory, 100 * 1024);
+
+        assertEquals(bodyFor("/a"), fetch(cache, "/a", false));
+        assertEquals(bodyFor("/a"), fetch(cache, "/a", true));
+
+        assertEquals("[/a null]", mRequests.toString());
+        assertEquals(1, cache.getHitCount());
+    }
+
+    @Test
+    public void staleEntry_isRevalidatedAndKept() throws IOException {
+        DiskResponseCache cache = new DiskResponseCache(mDirectory, 100 * 1024);
+        mCacheControl = "no-cache";
+
+        fetch(cache, "/a", false);
+
+        // The server confirms the body and hands out a longer validator
+        mEtag = "\"v1-but-with-a-longer-validator\"";
+        assertEquals(bodyFor("/a"), fetch(cache, "/a", true));
+        assertEquals("[/a null, /a \"v1\"]", mRequests.toString());
+
+        // The size follows the rewritten metadata and the new validator is sent next time
+        assertEquals(sizeOnDisk(), cache.size());
+        fetch(cache, "/a", true);
+        assertEquals("/a \"v1-but-with-a-longer-validator\"", mRequests.get(2));
+    }
+
+    @Test
+    public void overBudget_evictsLeastRecentlyUsed() throws IOException {
+        // Room for two entries but not three
+        DiskResponseCache cache = new DiskResponseCache(mDirectory, 5 * BODY_LENGTH / 2);
+
+        fetch(cache, "/a", false);
+        fetch(cache, "/b", false);
+        fetch(cache, "/a", true);
+        fetch(cache, "/c", false);
+
+        assertNull(cache.get(url("/b")));
+        assertNotNull(cache.get(url("/a")));
+        assertNotNull(cache.get(url("/c")));
+        assertTrue(cache.size() <= 5 * BODY_LENGTH / 2);
+        assertEquals(sizeOnDisk(), cache.size());
+
+        // A new cache picks up the same entries from the directory
+        DiskResponseCache reopened = new DiskResponseCache(mDirectory, 5 * BODY_LENGTH / 2);
+        assertEquals(cache.size(), reopened.size());
+        assertNull(reopened.get(url("/b")));
+    }
+
+    @Test
+    public void reopenedCache_keepsTheOrderEntriesWereUsedIn() throws IOException {
+        DiskResponseCache cache = new DiskResponseCache(mDirectory, 100 * 1024);
+
+        fetch(cache, "/a", false);
+        fetch(cache, "/b", false);
+        String lastModified = lastModifiedTimes();
+
+        // Looking an entry up leaves its files alone
+        fetch(cache, "/a", true);
+        assertEquals(lastModified, lastModifiedTimes());
+
+        // Enough entries are written after it for the order to be saved
+        for(char path = 'c'; path < 'q'; path++) {
+            fetch(cache, "/" + path, false);
+        }
+        assertEquals(sizeOnDisk(), cache.size());
+
+        // Only the least recently used entry has to go, which is /b even though /a was written first
+        DiskResponseCache reopened = new DiskResponseCache(mDirectory, cache.size() - 1);
+        assertNull(reopened.get(url("/b")));
+        assertNotNull(reopened.get(url("/a")));
+        assertNotNull(reopened.get(url("/c")));
+        assertEquals(sizeOnDisk(), reopened.size());
+    }
+
+    @Test
+    public void evictedBody_isFetchedAgain() throws IOException {
+        DiskResponseCache cache = new DiskResponseCache(mDirectory, 100 * 1024);
+        fetch(cache, "/a", false);
+
+        // The files go away after the entry was looked up, as if it was evicted in between
+        for(File file : mDirectory.listFiles()) {
+            assertTrue(file.delete());
+        }
+
+        assertEquals(bodyFor("/a"), fetch(cache, "/a", false));
+        assertEquals(2, mRequests.size());
+    }
+
+    @Test
+    public void overlappingWrites_ofTheSameUrlDontMix() throws IOException {
+        DiskResponseCache cache = new DiskResponseCache(mDirectory, 100 * 1024);
+
+        // Both miss the cache, so both bodies are written to it while they are read
+        NetworkUtils.Response first = NetworkUtils.openResponse(url("/a"), cache);
+        NetworkUtils.Response second = NetworkUtils.openResponse(url("/a"), cache);
+
+        byte[] buffer = new byte[BODY_LENGTH / 4];
+        assertEquals(buffer.length, first.mBody.read(buffer));
+        assertEquals(buffer.length, second.mBody.read(buffer));
+        assertEquals(buffer.length, first.mBody.read(buffer));
+        readToEnd(second);
+        readToEnd(first);
+
+        DiskResponseCache.Entry entry = cache.get(url("/a"));
+        InputStream in = entry.openBody();
+        try {
+            assertEquals(bodyFor("/a"), ResponseBodyReader.readBody(in, -1));
+        } finally {
+            in.close();
+        }
+
+        // No temporary files are left behind
+        assertEquals(2, mDirectory.listFiles().length);
+        assertEquals(sizeOnDisk(), cache.size());
+    }
+
+    @Test
+    public void bodyClosedBeforeTheEnd_isNotCached() throws IOException {
+        DiskResponseCache cache = new DiskResponseCache(mDirectory, 100 * 1024);
+
+        // Like a request that is cancelled while its body is being read. Response.close would
+        // finish reading a body this short to keep the connection, so the body is closed first.
+        NetworkUtils.Response response = NetworkUtils.openResponse(url("/a"), cache);
+        assertEquals(BODY_LENGTH / 4, response.mBody.read(new byte[BODY_LENGTH / 4]));
+        response.mBody.close();
+        response.close();
+
+        assertNull(cache.get(url("/a")));
+        assertEquals(0, mDirectory.listFiles().length);
+        assertEquals(0, cache.size());
+
+        assertEquals(bodyFor("/a"), fetch(cache, "/a", false));
+        assertEquals(bodyFor("/a"), fetch(cache, "/a", true));
+    }
+
+    @Test
+    public void bodyWithoutMetadata_isThrownAwayOnReopen() throws IOException {
+        DiskResponseCache cache = new DiskResponseCache(mDirectory, 100 * 1024);
+        fetch(cache, "/a", false);
+
+        // As if the app died after the body was renamed into place but before the metadata was
+        for(File file : mDirectory.listFiles()) {
+            if(file.getName().endsWith(".meta")) {
+                assertTrue(file.delete());
+            }
+        }
+
+        DiskResponseCache reopened = new DiskResponseCache(mDirectory, 100 * 1024);
+        assertNull(reopened.get(url("/a")));
+        assertEquals(0, mDirectory.listFiles().length);
+        assertEquals(0, reopened.size());
+    }
+
+    private void readToEnd(NetworkUtils.Response response) throws IOException {
+        try {
+            byte[] buffer = new byte[BODY_LENGTH];
+            while(response.mBody.read(buffer) != -1) {
+                // Everything read goes into the cache
+            }
+        } finally {
+            response.close();
+        }
+    }
+
+    private String fetch(DiskResponseCache cache, String path, boolean expectFromCache) throws IOException {
+        NetworkUtils.Response response = NetworkUtils.openResponse(url(path), cache);
+        try {
+            assertEquals(expectFromCache, response.isFromCache());
+            return ResponseBodyReader.readBody(response.mBody, response.mContentLength);
+        } finally {
+            response.close();
+        }
+    }
+
+    private URL url(String path) throws IOException {
+        return new URL("http://127.0.0.1:" + mServer.getAddress().getPort() + path + "?api_key=test");
+    }
+
+    private String lastModifiedTimes() {
+        StringBuilder times = new StringBuilder();
+        for(File file : mDirectory.listFiles()) {
+            times.append(file.getName()).append('=').append(file.lastModified()).append(' ');
+        }
+        return times.toString();
+    }
+
+    private long sizeOnDisk() {
+        long size = 0;
+        for(File file : mDirectory.listFiles()) {
+            size += file.length();
+        }
+        return size;
+    }
+
+    private static String bodyFor(String path) {
+        StringBuilder body = new StringBuilder(BODY_LENGTH);
+        while(body.length() < BODY_LENGTH) {
+            body.append(path.charAt(1));
+        }
+        return body.toString();
+    }
+}
@@ -0,0 +1,90 @@
+package software.level.udacity.popularmovies1.utilities;
+
+import android.graphics.Bitmap;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.IdentityHashMap;
+
+/**
+ * Bitmaps for tests running on the JVM, where the framework can't create real ones. The bitmaps
+ * are empty objects whose dimensions are kept here, and the pool and cache created here look
+ * them up instead of asking the bitmaps.
+ */
+class FakeBitmaps {
+
+    // Dimensions of every bitmap that was created
+    private final IdentityHashMap<Bitmap, int[]> mDimensions = new IdentityHashMap<>();
+
+    /**
+     * Creates a mutable ARGB_8888 bitmap
+     * @param width Width of the bitmap
+     * @param height Height of the bitmap
+     * @return The bitmap, which has no pixels
+     */
+    Bitmap create(int width, int height) {
+        Bitmap bitmap = allocate();
+        mDimensions.put(bitmap, new int[] {width, height});
+        return bitmap;
+    }
+
+    /**
+     * Creates a pool that measures the bitmaps created here
+     * @param maxSize Maximum number of bytes of bitmaps kept in the pool
+     * @return The pool
+     */
+    BitmapPool newPool(int maxSize) {
+        return new BitmapPool(maxSize) {
+            @Override
+            protected int sizeOf(Bitmap bitmap) {
+                return FakeBitmaps.this.sizeOf(bitmap);
+            }
+
+            @Override
+            protected String keyOf(Bitmap bitmap) {
+                int[] dimensions = mDimensions.get(bitmap);
+                return keyFor(dimensions[0], dimensions[1], Bitmap.Config.ARGB_8888);
+            }
+
+            @Override
+            protected boolean canReuse(Bitmap bitmap) {
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Creates a memory cache that measures the bitmaps created here
+     * @param maxSize Maximum number of bytes of bitmaps held by the cache
+     * @param pool Where evicted bitmaps go
+     * @return The cache
+     */
+    PosterMemoryCache newCache(int maxSize, BitmapPool pool) {
+        return new PosterMemoryCache(maxSize, pool) {
+            @Override
+            protected int sizeOf(Bitmap bitmap) {
+                return FakeBitmaps.this.sizeOf(bitmap);
+            }
+        };
+    }
+
+    private int sizeOf(Bitmap bitmap) {
+        int[] dimensions = mDimensions.get(bitmap);
+        return dimensions[0] * dimensions[1] * 4;
+    }
+
+    /**
+     * Creates a Bitmap without running its constructor, which only exists inside the framework
+     */
+    private static Bitmap allocate() {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field field = unsafeClass.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            Method allocateInstance = unsafeClass.getMethod("allocateInstance", Class.class);
+            return (Bitmap) allocateInstance.invoke(field.get(null), Bitmap.class);
+        } catch (Exception e) {
+            throw new AssertionError(e);
+        }
+    }
+}
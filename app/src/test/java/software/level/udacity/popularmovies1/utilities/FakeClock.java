@@ -0,0 +1,23 @@
+package software.level.udacity.popularmovies1.utilities;
+
+/**
+ * Clock for tests that only moves when the test says so. Starts a little after zero so that
+ * times computed by subtracting from it don't go below zero.
+ */
+public class FakeClock implements TaskScheduler.Clock {
+
+    private long mNow = 1000;
+
+    @Override
+    public synchronized long uptimeMillis() {
+        return mNow;
+    }
+
+    /**
+     * Moves the clock forward
+     * @param millis Milliseconds to move it by
+     */
+    public synchronized void advance(long millis) {
+        mNow += millis;
+    }
+}
@@ -0,0 +1,41 @@
+package software.level.udacity.popularmovies1.utilities;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that cached image URLs match freshly built ones and that the cache stays bounded.
+ */
+public class ImageUrlCacheTest {
+
+    @Test
+    public void get_returnsTheSameUrlAsTmdbUrls() {
+        ImageUrlCache cache = new ImageUrlCache(10);
+
+        String url = cache.get("/9O7gLzmreU0nGkIB6K3BsJbzvNv.jpg", "w185");
+
+        assertEquals(TmdbUrls.imageUrl("/9O7gLzmreU0nGkIB6K3BsJbzvNv.jpg", "w185"), url);
+        assertEquals("https://image.tmdb.org/t/p/w342/9O7gLzmreU0nGkIB6K3BsJbzvNv.jpg",
+                cache.get("/9O7gLzmreU0nGkIB6K3BsJbzvNv.jpg", "w342"));
+
+        // Known URLs are handed out again rather than rebuilt
+        assertSame(url, cache.get("/9O7gLzmreU0nGkIB6K3BsJbzvNv.jpg", "w185"));
+    }
+
+    @Test
+    public void get_forgetsTheLeastRecentlyUsedPathsOfASize() {
+        ImageUrlCache cache = new ImageUrlCache(2);
+
+        String first = cache.get("/a.jpg", "w185");
+        cache.get("/b.jpg", "w185");
+        cache.get("/a.jpg", "w185");
+        String third = cache.get("/c.jpg", "w185");
+        cache.get("/a.jpg", "w342");
+
+        assertEquals(3, cache.size());
+        assertSame(first, cache.get("/a.jpg", "w185"));
+        assertSame(third, cache.get("/c.jpg", "w185"));
+        assertEquals(3, cache.size());
+    }
+}
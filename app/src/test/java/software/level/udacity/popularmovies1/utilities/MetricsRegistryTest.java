@@ -0,0 +1,120 @@
+package software.level.udacity.popularmovies1.utilities;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks the totals kept by the MetricsRegistry, and the measurements NetworkUtils records for
+ * a gzip encoded response from a local server.
+ */
+public class MetricsRegistryTest {
+
+    @Test
+    public void record_keepsRecentRequestsAndTotalsPerHost() {
+        MetricsRegistry registry = new MetricsRegistry(2);
+
+        registry.record(new RequestMetrics("api.example.com", "/3/movie/popular", false, 100, 400, 30, 50, 10));
+        registry.record(new RequestMetrics("api.example.com", "/3/movie/1", true, 0, 200, -1, 5, 2));
+        registry.record(new RequestMetrics("image.example.com", "/t/p/w185/a.jpg", false, 900, 900, 20, 40, -1));
+
+        List<RequestMetrics> recent = registry.getRecent();
+        assertEquals(2, recent.size());
+        assertEquals("/3/movie/1", recent.get(0).getPath());
+        assertEquals("/t/p/w185/a.jpg", recent.get(1).getPath());
+
+        MetricsRegistry.Totals api = registry.getTotals("api.example.com");
+        assertEquals(2, api.getRequests());
+        assertEquals(1, api.getCached());
+        assertEquals(100, api.getWireBytes());
+        assertEquals(600, api.getDecodedBytes());
+        assertEquals(30, api.getTimeToFirstByteMillis());
+        assertEquals(55, api.getTotalMillis());
+        assertEquals(12, api.getParseMillis());
+
+        assertEquals(0, registry.getTotals("other.example.com").getRequests());
+
+        registry.clear();
+        assertTrue(registry.getRecent().isEmpty());
+        assertEquals("", registry.getSummary());
+    }
+
+    @Test
+    public void getResponseFromHttpUrl_decodesGzipAndRecordsMetrics() throws IOException {
+        StringBuilder json = new StringBuilder("{\"results\":[");
+        for(int i = 0; i < 200; i++) {
+            json.append(i == 0 ? "" : ",").append("{\"id\":").append(i).append(",\"title\":\"Movie\"}");
+        }
+        final byte[] body = json.append("]}").toString().getBytes("UTF-8");
+
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        GZIPOutputStream gzip = new GZIPOutputStream(compressed);
+        gzip.write(body);
+        gzip.close();
+        final byte[] encoded = compressed.toByteArray();
+
+        final String[] acceptEncoding = new String[1];
+
+        HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                acceptEncoding[0] = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+
+                exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+                exchange.sendResponseHeaders(200, encoded.length);
+                OutputStream out = exchange.getResponseBody();
+                out.write(encoded);
+                out.close();
+            }
+        });
+        server.start();
+
+        MetricsRegistry.getInstance().clear();
+
+        String result;
+        try {
+            URL url = new URL("http://127.0.0.1:" + server.getAddress().getPort() + "/3/movie/popular?api_key=secret");
+            result = NetworkUtils.getResponseFromHttpUrl(url, new NetworkUtils.ResponseHandler<String>() {
+                @Override
+                public String handleResponse(InputStream in) throws IOException {
+                    return ResponseBodyReader.readBody(in, -1);
+                }
+            });
+        } finally {
+            server.stop(0);
+        }
+
+        assertEquals("gzip", acceptEncoding[0]);
+        assertEquals(new String(body, "UTF-8"), result);
+
+        List<RequestMetrics> recent = MetricsRegistry.getInstance().getRecent();
+        assertEquals(1, recent.size());
+
+        RequestMetrics metrics = recent.get(0);
+        assertEquals("127.0.0.1", metrics.getHost());
+        assertEquals("/3/movie/popular", metrics.getPath());
+        assertFalse(metrics.isFromCache());
+        assertEquals(encoded.length, metrics.getWireBytes());
+        assertEquals(body.length, metrics.getDecodedBytes());
+        assertTrue(metrics.getWireBytes() < metrics.getDecodedBytes());
+        assertTrue(metrics.getTimeToFirstByteMillis() >= 0);
+        assertTrue(metrics.getParseMillis() >= 0);
+        assertTrue(metrics.getTotalMillis() >= metrics.getTimeToFirstByteMillis());
+        assertFalse(metrics.toString().contains("secret"));
+    }
+}
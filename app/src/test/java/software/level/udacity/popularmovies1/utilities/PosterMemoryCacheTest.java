@@ -0,0 +1,133 @@
+package software.level.udacity.popularmovies1.utilities;
+
+import android.graphics.Bitmap;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that Picasso's request keys map onto the (size, poster_path) keys the memory cache uses,
+ * and that evicted bitmaps only reach the pool once no view shows them. The cache has room for
+ * two 10x10 posters.
+ */
+public class PosterMemoryCacheTest {
+
+    private final FakeBitmaps mBitmaps = new FakeBitmaps();
+
+    private final BitmapPool mPool = mBitmaps.newPool(10 * 1024);
+
+    private final PosterMemoryCache mCache = mBitmaps.newCache(2 * 400, mPool);
+
+    @Test
+    public void keyForPicassoKey_usesSizeAndPathOfPlainPosterRequests() {
+        String picassoKey = "https://image.tmdb.org/t/p/w185/9O7gLzmreU0nGkIB6K3BsJbzvNv.jpg\n";
+
+        assertEquals("w185/9O7gLzmreU0nGkIB6K3BsJbzvNv.jpg", PosterMemoryCache.keyForPicassoKey(picassoKey));
+        assertEquals(PosterMemoryCache.keyFor("/9O7gLzmreU0nGkIB6K3BsJbzvNv.jpg", "w185"),
+                PosterMemoryCache.keyForPicassoKey(picassoKey));
+    }
+
+    @Test
+    public void keyForPicassoKey_keepsKeysOfOtherRequests() {
+        // Resized requests add the target size after the separator
+        String resized = "https://image.tmdb.org/t/p/w185/abc.jpg\nresize:100x150\n";
+        assertEquals(resized, PosterMemoryCache.keyForPicassoKey(resized));
+
+        String otherHost = "https://example.com/t/p/w185/abc.jpg\n";
+        assertEquals(otherHost, PosterMemoryCache.keyForPicassoKey(otherHost));
+    }
+
+    @Test
+    public void keyFor_separatesSizes() {
+        assertNotEquals(PosterMemoryCache.keyFor("/abc.jpg", "w185"), PosterMemoryCache.keyFor("/abc.jpg", "w342"));
+    }
+
+    @Test
+    public void shownBitmap_isPooledOnceEvictedAndReleased() {
+        Bitmap shown = cache("/a.jpg");
+        mCache.retain(mCache.getPoster("/a.jpg", "w185"));
+
+        cache("/b.jpg");
+        cache("/c.jpg");
+        assertNull(mCache.getPoster("/a.jpg", "w185"));
+        assertEquals(2 * 400, mCache.size());
+
+        // Evicted but still shown
+        assertEquals(0, mPool.size());
+
+        mCache.release(shown);
+        assertSame(shown, mPool.get(10, 10, Bitmap.Config.ARGB_8888));
+    }
+
+    @Test
+    public void releasedBitmap_staysCachedWithoutBeingPooled() {
+        Bitmap bitmap = cache("/a.jpg");
+        mCache.retain(mCache.getPoster("/a.jpg", "w185"));
+        mCache.release(bitmap);
+        mCache.release(bitmap);
+
+        assertEquals(0, mPool.size());
+        assertSame(bitmap, mCache.getPoster("/a.jpg", "w185"));
+    }
+
+    @Test
+    public void bitmapShownTwice_isPooledAfterBothViewsReleaseIt() {
+        Bitmap bitmap = cache("/a.jpg");
+        mCache.retain(mCache.getPoster("/a.jpg", "w185"));
+        mCache.retain(mCache.getPoster("/a.jpg", "w185"));
+        mCache.clear();
+
+        mCache.release(bitmap);
+        assertEquals(0, mPool.size());
+        mCache.release(bitmap);
+        assertEquals(400, mPool.size());
+    }
+
+    @Test
+    public void neverShownBitmap_isNotPooled() {
+        cache("/a.jpg");
+        mCache.clear();
+
+        assertEquals(0, mCache.size());
+        assertEquals(0, mPool.size());
+    }
+
+    @Test
+    public void handedOutBitmap_isNotPooledWhenEvictedBeforeItIsShown() {
+        Bitmap bitmap = cache("/a.jpg");
+        mCache.retain(mCache.getPoster("/a.jpg", "w185"));
+        mCache.release(bitmap);
+
+        // Another view looks it up, and it is evicted before that view retains it
+        assertSame(bitmap, mCache.get("https://image.tmdb.org/t/p/w185/a.jpg\n"));
+        mCache.clear();
+        assertEquals(0, mPool.size());
+
+        // Once that view is done with it nothing else can have it
+        mCache.retain(bitmap);
+        assertEquals(0, mPool.size());
+        mCache.release(bitmap);
+        assertSame(bitmap, mPool.get(10, 10, Bitmap.Config.ARGB_8888));
+    }
+
+    @Test
+    public void replacedBitmap_isPooledOnceReleased() {
+        Bitmap old = cache("/a.jpg");
+        mCache.retain(mCache.getPoster("/a.jpg", "w185"));
+
+        Bitmap replacement = mBitmaps.create(10, 10);
+        mCache.set("https://image.tmdb.org/t/p/w185/a.jpg\n", replacement);
+        assertEquals(400, mCache.size());
+        assertSame(replacement, mCache.getPoster("/a.jpg", "w185"));
+
+        mCache.release(old);
+        assertSame(old, mPool.get(10, 10, Bitmap.Config.ARGB_8888));
+    }
+
+    private Bitmap cache(String posterPath) {
+        Bitmap bitmap = mBitmaps.create(10, 10);
+        mCache.set("https://image.tmdb.org/t/p/w185" + posterPath + "\n", bitmap);
+        return bitmap;
+    }
+}
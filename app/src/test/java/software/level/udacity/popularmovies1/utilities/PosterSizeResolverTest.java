@@ -0,0 +1,59 @@
+package software.level.udacity.popularmovies1.utilities;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import static software.level.udacity.popularmovies1.utilities.PosterSizeResolver.ConnectionQuality.FAST;
+import static software.level.udacity.popularmovies1.utilities.PosterSizeResolver.ConnectionQuality.METERED;
+import static software.level.udacity.popularmovies1.utilities.PosterSizeResolver.ConnectionQuality.SLOW;
+
+/**
+ * Checks which image size is picked for a view width on each kind of connection.
+ */
+public class PosterSizeResolverTest {
+
+    @Test
+    public void selectSize_picksSmallestSizeThatCoversTheWidth() {
+        assertEquals("w92", PosterSizeResolver.selectSize(1, FAST));
+        assertEquals("w92", PosterSizeResolver.selectSize(92, FAST));
+        assertEquals("w154", PosterSizeResolver.selectSize(93, FAST));
+        assertEquals("w185", PosterSizeResolver.selectSize(185, FAST));
+        assertEquals("w342", PosterSizeResolver.selectSize(186, FAST));
+        assertEquals("w500", PosterSizeResolver.selectSize(500, FAST));
+        assertEquals("w780", PosterSizeResolver.selectSize(540, FAST));
+        assertEquals("w780", PosterSizeResolver.selectSize(780, FAST));
+        assertEquals("original", PosterSizeResolver.selectSize(781, FAST));
+    }
+
+    @Test
+    public void selectSize_handlesViewsThatHaveNoWidthYet() {
+        assertEquals("w92", PosterSizeResolver.selectSize(0, FAST));
+    }
+
+    @Test
+    public void selectSize_stepsDownOnMeteredAndSlowConnections() {
+        // A two column grid on a 1080px wide screen
+        assertEquals("w780", PosterSizeResolver.selectSize(540, FAST));
+        assertEquals("w500", PosterSizeResolver.selectSize(540, METERED));
+        assertEquals("w342", PosterSizeResolver.selectSize(540, SLOW));
+
+        assertEquals("w780", PosterSizeResolver.selectSize(1440, METERED));
+        assertEquals("w500", PosterSizeResolver.selectSize(1440, SLOW));
+    }
+
+    @Test
+    public void selectSize_neverStepsBelowTheSmallestSize() {
+        assertEquals("w92", PosterSizeResolver.selectSize(92, METERED));
+        assertEquals("w92", PosterSizeResolver.selectSize(154, SLOW));
+    }
+
+    @Test
+    public void isSmaller_comparesKnownSizes() {
+        assertTrue(PosterSizeResolver.isSmaller("w185", "w342"));
+        assertTrue(PosterSizeResolver.isSmaller("w780", "original"));
+        assertFalse(PosterSizeResolver.isSmaller("w342", "w342"));
+        assertFalse(PosterSizeResolver.isSmaller("original", "w92"));
+        assertFalse(PosterSizeResolver.isSmaller("w200", "w342"));
+        assertFalse(PosterSizeResolver.isSmaller(null, "w342"));
+    }
+}
@@ -0,0 +1,75 @@
+package software.level.udacity.popularmovies1.utilities;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs the RateLimiter on a fake clock so that permits only come back when the test says so.
+ */
+public class RateLimiterTest {
+
+    private final FakeClock mClock = new FakeClock();
+
+    // Two permits a second with a burst of three
+    private final RateLimiter mLimiter = new RateLimiter(2, 1000, 3, mClock);
+
+    @Test
+    public void tryAcquire_allowsBurstThenRefillsAtRate() {
+        assertTrue(mLimiter.tryAcquire());
+        assertTrue(mLimiter.tryAcquire());
+        assertTrue(mLimiter.tryAcquire());
+        assertFalse(mLimiter.tryAcquire());
+
+        mClock.advance(499);
+        assertFalse(mLimiter.tryAcquire());
+
+        mClock.advance(1);
+        assertTrue(mLimiter.tryAcquire());
+        assertFalse(mLimiter.tryAcquire());
+
+        // Saved up permits never go past the burst
+        mClock.advance(60 * 1000);
+        assertTrue(mLimiter.tryAcquire());
+        assertTrue(mLimiter.tryAcquire());
+        assertTrue(mLimiter.tryAcquire());
+        assertFalse(mLimiter.tryAcquire());
+    }
+
+    @Test
+    public void reserve_queuesWaitingCallersBehindEachOther() {
+        assertEquals(0, mLimiter.reserve());
+        assertEquals(0, mLimiter.reserve());
+        assertEquals(0, mLimiter.reserve());
+
+        assertEquals(500, mLimiter.reserve());
+        assertEquals(1000, mLimiter.reserve());
+
+        // Reserved permits are used up as they become available
+        mClock.advance(1000);
+        assertFalse(mLimiter.tryAcquire());
+        assertEquals(500, mLimiter.reserve());
+    }
+
+    @Test
+    public void cancelReservation_handsThePermitBackForLaterCallers() {
+        mLimiter.reserve();
+        mLimiter.reserve();
+        mLimiter.reserve();
+        assertEquals(500, mLimiter.reserve());
+        assertEquals(1000, mLimiter.reserve());
+
+        // Both waiting callers were cancelled, so the next one only waits for a single permit
+        mLimiter.cancelReservation();
+        mLimiter.cancelReservation();
+        assertEquals(500, mLimiter.reserve());
+
+        // Handing back permits never saves up more than the burst
+        mClock.advance(60 * 1000);
+        mLimiter.cancelReservation();
+        assertTrue(mLimiter.tryAcquire());
+        assertTrue(mLimiter.tryAcquire());
+        assertTrue(mLimiter.tryAcquire());
+        assertFalse(mLimiter.tryAcquire());
+    }
+}
@@ -0,0 +1,153 @@
+package software.level.udacity.popularmovies1.utilities;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.*;
+
+/**
+ * Reads the same body from a local HTTP stub using each of the transfer styles the reader has
+ * to deal with and checks that the bytes come through unchanged. The bodies are fetched the way
+ * the app fetches them, through NetworkUtils.openResponse with the length it reports.
+ */
+public class ResponseBodyReaderTest {
+
+    private HttpServer mServer;
+    private byte[] mBody;
+
+    @Before
+    public void setUp() throws IOException {
+        // Larger than the default buffer and full of multi-byte characters
+        StringBuilder builder = new StringBuilder();
+        for(int i = 0; i < 4000; i++) {
+            builder.append("{\"title\":\"L\u00e9on ").append(i).append(" \u2013 \u00e9\u00e8\"},");
+        }
+        mBody = builder.toString().getBytes("UTF-8");
+
+        mServer = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        mServer.createContext("/fixed", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                exchange.sendResponseHeaders(200, mBody.length);
+                write(exchange, mBody);
+            }
+        });
+        mServer.createContext("/chunked", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                exchange.sendResponseHeaders(200, 0);
+                write(exchange, mBody);
+            }
+        });
+        mServer.createContext("/gzip", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+                GZIPOutputStream gzip = new GZIPOutputStream(compressed);
+                gzip.write(mBody);
+                gzip.close();
+
+                exchange.getResponseHeaders().add("Content-Encoding", "gzip");
+                exchange.sendResponseHeaders(200, compressed.size());
+                write(exchange, compressed.toByteArray());
+            }
+        });
+        mServer.createContext("/large", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                // More than the largest buffer the pool keeps
+                byte[] large = new byte[mBody.length * 3];
+                for(int i = 0; i < 3; i++) {
+                    System.arraycopy(mBody, 0, large, i * mBody.length, mBody.length);
+                }
+
+                exchange.sendResponseHeaders(200, large.length);
+                write(exchange, large);
+            }
+        });
+        mServer.createContext("/empty", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                exchange.sendResponseHeaders(200, -1);
+                exchange.close();
+            }
+        });
+        mServer.start();
+    }
+
+    @After
+    public void tearDown() {
+        mServer.stop(0);
+    }
+
+    @Test
+    public void readBody_fixedLength() throws Exception {
+        assertBodyMatches("/fixed");
+    }
+
+    @Test
+    public void readBody_chunked() throws Exception {
+        assertBodyMatches("/chunked");
+    }
+
+    @Test
+    public void readBody_gzip() throws Exception {
+        assertBodyMatches("/gzip");
+    }
+
+    @Test
+    public void readBody_repeatedRequestsReuseBuffers() throws Exception {
+        for(int i = 0; i < 10; i++) {
+            assertBodyMatches(i % 2 == 0 ? "/fixed" : "/chunked");
+        }
+    }
+
+    @Test
+    public void readBody_longerThanTheLargestPooledBuffer() throws Exception {
+        byte[] body = read("/large").getBytes("UTF-8");
+
+        assertTrue(body.length > 256 * 1024);
+        assertEquals(mBody.length * 3, body.length);
+        for(int i = 0; i < 3; i++) {
+            assertArrayEquals(mBody, Arrays.copyOfRange(body, i * mBody.length, (i + 1) * mBody.length));
+        }
+    }
+
+    @Test
+    public void readBody_emptyBodyReturnsNull() throws Exception {
+        assertNull(read("/empty"));
+    }
+
+    private void assertBodyMatches(String path) throws IOException {
+        assertArrayEquals(mBody, read(path).getBytes("UTF-8"));
+    }
+
+    private String read(String path) throws IOException {
+        URL url = new URL("http://127.0.0.1:" + mServer.getAddress().getPort() + path);
+        NetworkUtils.Response response = NetworkUtils.openResponse(url, null);
+        try {
+            return ResponseBodyReader.readBody(response.mBody, response.mContentLength);
+        } finally {
+            response.close();
+        }
+    }
+
+    private static void write(HttpExchange exchange, byte[] bytes) throws IOException {
+        OutputStream out = exchange.getResponseBody();
+        out.write(bytes);
+        out.close();
+    }
+}
@@ -0,0 +1,209 @@
+package software.level.udacity.popularmovies1.utilities;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs the TaskScheduler without worker threads so the tests decide when each task runs, and
+ * with a fake clock so that tasks can be made to wait as long as needed.
+ */
+public class TaskSchedulerTest {
+
+    private final FakeClock mClock = new FakeClock();
+
+    private final Executor mDirectExecutor = new Executor() {
+        @Override
+        public void execute(Runnable runnable) {
+            runnable.run();
+        }
+    };
+
+    private final TaskScheduler mScheduler = new TaskScheduler(0, mClock, mDirectExecutor);
+
+    private final ArrayList<String> mDelivered = new ArrayList<>();
+
+    @Test
+    public void runNextTask_runsHigherPrioritiesFirst() {
+        CancellationToken token = new CancellationToken();
+
+        mScheduler.submit(TaskScheduler.Priority.PREFETCH, token, new RecordingTask("prefetch"));
+        mScheduler.submit(TaskScheduler.Priority.DETAIL, token, new RecordingTask("detail"));
+        mScheduler.submit(TaskScheduler.Priority.LIST, token, new RecordingTask("list 1"));
+        mScheduler.submit(TaskScheduler.Priority.LIST, token, new RecordingTask("list 2"));
+
+        runAll();
+
+        assertEquals("[list 1, list 2, detail, prefetch]", mDelivered.toString());
+    }
+
+    @Test
+    public void cancel_dropsQueuedTask() {
+        CancellationToken token = new CancellationToken();
+
+        TaskScheduler.Job job = mScheduler.submit(TaskScheduler.Priority.LIST, token, new RecordingTask("first"));
+        mScheduler.submit(TaskScheduler.Priority.LIST, token, new RecordingTask("second"));
+
+        job.cancel();
+        runAll();
+
+        assertTrue(job.isCancelled());
+        assertFalse(token.isCancelled());
+        assertEquals("[second]", mDelivered.toString());
+        assertEquals(0, mScheduler.getQueuedCount());
+    }
+
+    @Test
+    public void cancel_parentTokenDropsResultOfRunningTask() {
+        final CancellationToken lifecycle = new CancellationToken();
+
+        mScheduler.submit(TaskScheduler.Priority.DETAIL, lifecycle, new RecordingTask("detail") {
+            @Override
+            protected String doInBackground(CancellationToken token) {
+                // The activity is destroyed while the task is running
+                lifecycle.cancel();
+                assertTrue(token.isCancelled());
+                assertSame(token, CancellationToken.current());
+                return super.doInBackground(token);
+            }
+        });
+
+        assertTrue(mScheduler.runNextTask());
+        assertTrue(mDelivered.isEmpty());
+        assertNull(CancellationToken.current());
+    }
+
+    @Test
+    public void cancel_currentTokenStopsNetworkWorkBeforeParsing() {
+        final CancellationToken lifecycle = new CancellationToken();
+
+        mScheduler.submit(TaskScheduler.Priority.LIST, lifecycle, new RecordingTask("list") {
+            @Override
+            protected String doInBackground(CancellationToken token) {
+                lifecycle.cancel();
+
+                // What NetworkUtils does before handing the body to the parser
+                CancellationToken.throwIfCurrentCancelled();
+                fail("Should have stopped before parsing");
+                return null;
+            }
+
+            @Override
+            protected void onError(Exception e) {
+                fail("Cancellation isn't an error");
+            }
+        });
+
+        assertTrue(mScheduler.runNextTask());
+        assertTrue(mDelivered.isEmpty());
+    }
+
+    @Test
+    public void submit_dropsTaskThatWaitedTooLong() {
+        CancellationToken token = new CancellationToken();
+
+        TaskScheduler.Job stale = mScheduler.submit(TaskScheduler.Priority.PREFETCH, token, new RecordingTask("stale"), 500);
+        mClock.advance(200);
+        mScheduler.submit(TaskScheduler.Priority.PREFETCH, token, new RecordingTask("fresh"), 500);
+        mClock.advance(400);
+
+        runAll();
+
+        assertTrue(stale.isCancelled());
+        assertEquals("[fresh]", mDelivered.toString());
+    }
+
+    @Test
+    public void submitDelayed_waitsWithoutHoldingUpOtherTasks() {
+        CancellationToken token = new CancellationToken();
+
+        mScheduler.submitDelayed(TaskScheduler.Priority.LIST, token, new RecordingTask("delayed"), 300);
+        TaskScheduler.Job dropped = mScheduler.submitDelayed(TaskScheduler.Priority.LIST, token,
+                new RecordingTask("dropped"), 100);
+        mScheduler.submit(TaskScheduler.Priority.PREFETCH, token, new RecordingTask("prefetch"));
+        assertEquals(3, mScheduler.getQueuedCount());
+
+        // Only the task that was queued right away can run before the delays pass
+        dropped.cancel();
+        runAll();
+        assertEquals("[prefetch]", mDelivered.toString());
+
+        mClock.advance(299);
+        assertFalse(mScheduler.runNextTask());
+
+        // Once due the task runs in its lane, while the cancelled one never runs
+        mClock.advance(1);
+        mScheduler.submit(TaskScheduler.Priority.PREFETCH, token, new RecordingTask("later prefetch"));
+        runAll();
+        assertEquals("[prefetch, delayed, later prefetch]", mDelivered.toString());
+        assertTrue(dropped.isCancelled());
+        assertEquals(0, mScheduler.getQueuedCount());
+    }
+
+    @Test
+    public void runNextTask_deliversErrors() {
+        mScheduler.submit(TaskScheduler.Priority.LIST, new CancellationToken(), new RecordingTask("list") {
+            @Override
+            protected String doInBackground(CancellationToken token) {
+                throw new IllegalStateException("boom");
+            }
+        });
+
+        assertTrue(mScheduler.runNextTask());
+        assertEquals("[error boom]", mDelivered.toString());
+    }
+
+    @Test
+    public void newChild_ofCancelledTokenIsCancelled() {
+        CancellationToken parent = new CancellationToken();
+        CancellationToken child = parent.newChild();
+        CancellationToken grandchild = child.newChild();
+
+        parent.cancel();
+
+        assertTrue(child.isCancelled());
+        assertTrue(grandchild.isCancelled());
+        assertTrue(parent.newChild().isCancelled());
+
+        try {
+            grandchild.throwIfCancelled();
+            fail();
+        } catch (CancellationException e) {
+            // Expected
+        }
+    }
+
+    private void runAll() {
+        while(mScheduler.runNextTask()) {
+            // Keep going until the queue is empty
+        }
+    }
+
+
+    private class RecordingTask extends TaskScheduler.Task<String> {
+        private final String mName;
+
+        RecordingTask(String name) {
+            mName = name;
+        }
+
+        @Override
+        protected String doInBackground(CancellationToken token) {
+            return mName;
+        }
+
+        @Override
+        protected void onPostExecute(String result) {
+            mDelivered.add(result);
+        }
+
+        @Override
+        protected void onError(Exception e) {
+            mDelivered.add("error " + e.getMessage());
+        }
+    }
+}
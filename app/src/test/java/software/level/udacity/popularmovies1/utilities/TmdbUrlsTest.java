@@ -0,0 +1,51 @@
+package software.level.udacity.popularmovies1.utilities;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that the URLs match the ones android.net.Uri.Builder produced before.
+ */
+public class TmdbUrlsTest {
+
+    @Test
+    public void apiUrl_buildsListAndDetailRequests() {
+        assertEquals("https://api.themoviedb.org/3/movie/popular?language=en-US&page=2&api_key=KEY",
+                TmdbUrls.apiUrl(MovieRequestType.POPULAR, 0, 2, "KEY"));
+        assertEquals("https://api.themoviedb.org/3/movie/top_rated?language=en-US&api_key=KEY",
+                TmdbUrls.apiUrl(MovieRequestType.TOP_RATED, 0, 0, "KEY"));
+        assertEquals("https://api.themoviedb.org/3/movie/278?language=en-US&api_key=KEY",
+                TmdbUrls.apiUrl(MovieRequestType.DETAILS, 278, 0, "KEY"));
+    }
+
+    @Test
+    public void apiUrl_buildsListsOfAMovie() {
+        assertEquals("https://api.themoviedb.org/3/movie/now_playing?language=en-US&page=1&api_key=KEY",
+                TmdbUrls.apiUrl(MovieRequestType.NOW_PLAYING, 0, 1, "KEY"));
+        assertEquals("https://api.themoviedb.org/3/movie/278/similar?language=en-US&page=1&api_key=KEY",
+                TmdbUrls.apiUrl(MovieRequestType.SIMILAR, 278, 1, "KEY"));
+        assertEquals("https://api.themoviedb.org/3/movie/278/recommendations?language=en-US&api_key=KEY",
+                TmdbUrls.apiUrl(MovieRequestType.RECOMMENDATIONS, 278, 0, "KEY"));
+    }
+
+    @Test
+    public void searchUrl_encodesTheQuery() {
+        assertEquals("https://api.themoviedb.org/3/search/movie?language=en-US&query=star%20wars%3A%20a&page=1&api_key=KEY",
+                TmdbUrls.searchUrl("star wars: a", 1, "KEY"));
+    }
+
+    @Test
+    public void imageUrl_stripsSlashesFromThePath() {
+        assertEquals("https://image.tmdb.org/t/p/w185/9O7gLzmreU0nGkIB6K3BsJbzvNv.jpg",
+                TmdbUrls.imageUrl("/9O7gLzmreU0nGkIB6K3BsJbzvNv.jpg", "w185"));
+    }
+
+    @Test
+    public void appendEncoded_encodesLikeUri() {
+        StringBuilder builder = new StringBuilder();
+        TmdbUrls.appendEncoded(builder, "a b&c=d/e_-!.~'()*\u00e9\ud83c\udfac");
+
+        assertEquals("a%20b%26c%3Dd%2Fe_-!.~'()*%C3%A9%F0%9F%8E%AC", builder.toString());
+    }
+}
@@ -0,0 +1,143 @@
+package software.level.udacity.popularmovies1.utilities;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Records spans into small ring buffers, including from several threads at once, and reads
+ * them back through the records, percentiles and the exported file.
+ */
+public class TracerTest {
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void getRecords_keepsNewestSpansOnceFull() {
+        Tracer tracer = new Tracer(4);
+
+        for(int i = 1; i <= 6; i++) {
+            tracer.record(Tracer.Span.NETWORK, i * 1000, i, i);
+        }
+
+        List<Tracer.Record> records = tracer.getRecords();
+        assertEquals(4, records.size());
+        assertEquals(3, records.get(0).tag);
+        assertEquals(6, records.get(3).tag);
+        assertEquals(Tracer.Span.NETWORK, records.get(3).span);
+        assertEquals(6000, records.get(3).start_nanos);
+        assertEquals(6, records.get(3).duration_nanos);
+    }
+
+    @Test
+    public void getPercentile_usesNearestRankPerSpan() {
+        Tracer tracer = new Tracer(256);
+
+        for(int i = 1; i <= 100; i++) {
+            tracer.record(Tracer.Span.PARSE, 0, i, Tracer.NO_TAG);
+        }
+        tracer.record(Tracer.Span.NETWORK, 0, 5000, Tracer.NO_TAG);
+
+        assertEquals(50, tracer.getPercentile(Tracer.Span.PARSE, 50));
+        assertEquals(90, tracer.getPercentile(Tracer.Span.PARSE, 90));
+        assertEquals(100, tracer.getPercentile(Tracer.Span.PARSE, 100));
+        assertEquals(5000, tracer.getPercentile(Tracer.Span.NETWORK, 99));
+        assertEquals(-1, tracer.getPercentile(Tracer.Span.FIRST_POSTER, 50));
+    }
+
+    @Test
+    public void endPending_onlyRecordsOncePerStart() {
+        Tracer tracer = new Tracer(16);
+
+        tracer.endPending(Tracer.Span.FIRST_POSTER, Tracer.NO_TAG);
+        assertTrue(tracer.getRecords().isEmpty());
+
+        tracer.startPending(Tracer.Span.FIRST_POSTER);
+        tracer.endPending(Tracer.Span.FIRST_POSTER, Tracer.NO_TAG);
+        tracer.endPending(Tracer.Span.FIRST_POSTER, Tracer.NO_TAG);
+
+        List<Tracer.Record> records = tracer.getRecords();
+        assertEquals(1, records.size());
+        assertEquals(Tracer.Span.FIRST_POSTER, records.get(0).span);
+        assertTrue(records.get(0).duration_nanos >= 0);
+    }
+
+    @Test
+    public void record_keepsSpansOfConcurrentWritersIntact() throws InterruptedException {
+        final Tracer tracer = new Tracer(1024);
+        Thread[] writers = new Thread[4];
+
+        for(int t = 0; t < writers.length; t++) {
+            final int writer = t;
+            writers[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for(int i = 0; i < 10000; i++) {
+                        long tag = writer * 100000 + i;
+                        // Every field is derived from the tag so torn spans can be spotted
+                        tracer.record(Tracer.Span.BODY_READ, tag * 2, tag * 3, tag);
+                    }
+                }
+            });
+            writers[t].start();
+        }
+
+        // Reading while the buffer is being written must never see a half written span
+        for(int i = 0; i < 50; i++) {
+            assertIntact(tracer.getRecords());
+        }
+
+        for(Thread writer : writers) {
+            writer.join();
+        }
+
+        List<Tracer.Record> records = tracer.getRecords();
+        assertEquals(1024, records.size());
+        assertIntact(records);
+    }
+
+    @Test
+    public void export_writesPercentilesAndSpans() throws Exception {
+        Tracer tracer = new Tracer(16);
+        tracer.record(Tracer.Span.URL_BUILD, 1000, 2000, 550);
+        tracer.record(Tracer.Span.URL_BUILD, 5000, 4000, 551);
+
+        File file = mFolder.newFile("trace.tsv");
+        tracer.export(file);
+
+        ArrayList<String> lines = new ArrayList<>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+        try {
+            String line;
+            while((line = reader.readLine()) != null) {
+                lines.add(line);
+            }
+        } finally {
+            reader.close();
+        }
+
+        assertEquals("# span\tcount\tp50_us\tp90_us\tp99_us", lines.get(0));
+        assertEquals("# URL_BUILD\t2\t2\t4\t4", lines.get(1));
+        assertEquals("span\tstart_us\tduration_us\ttag", lines.get(2));
+        assertEquals("URL_BUILD\t1\t2\t550", lines.get(3));
+        assertEquals("URL_BUILD\t5\t4\t551", lines.get(4));
+        assertEquals(5, lines.size());
+    }
+
+    private static void assertIntact(List<Tracer.Record> records) {
+        for(Tracer.Record record : records) {
+            assertEquals(record.tag * 2, record.start_nanos);
+            assertEquals(record.tag * 3, record.duration_nanos);
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package software.level.udacity.popularmovies1.benchmark;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+import software.level.udacity.popularmovies1.data.MoviePage;
+import software.level.udacity.popularmovies1.data.MovieParser;
+import software.level.udacity.popularmovies1.utilities.CountingInputStream;
+import software.level.udacity.popularmovies1.utilities.MovieRequestType;
+import software.level.udacity.popularmovies1.utilities.ResponseBodyReader;
+
+/**
+ * Fetches a page of movies from a local HTTP server and reads its body the same way
+ * NetworkUtils does: gzip is asked for, the body is decoded by ResponseBodyReader and counted
+ * on the way through, then either buffered into a String or parsed straight from the stream.
+ * NetworkUtils itself needs the Android framework so its read path is replayed here. Loopback
+ * takes the network out of the result, which leaves the cost of decoding and reading.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class BodyReadBenchmark {
+
+    @Param({"20", "200", "2000"})
+    public int movieCount;
+
+    @Param({"true", "false"})
+    public boolean gzip;
+
+    private HttpServer mServer;
+    private URL mUrl;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        final byte[] body = Payloads.moviePage(movieCount).getBytes(Payloads.UTF_8);
+        final byte[] gzipped = gzip(body);
+
+        mServer = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        mServer.createContext("/3/movie/popular", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+                byte[] response = body;
+                if(gzip && acceptEncoding != null && acceptEncoding.contains("gzip")) {
+                    exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+                    response = gzipped;
+                }
+
+                exchange.getResponseHeaders().set("Content-Type", "application/json;charset=utf-8");
+                exchange.sendResponseHeaders(HttpURLConnection.HTTP_OK, response.length);
+                OutputStream out = exchange.getResponseBody();
+                out.write(response);
+                out.close();
+            }
+        });
+        mServer.start();
+
+        mUrl = new URL("http", "127.0.0.1", mServer.getAddress().getPort(), "/3/movie/popular?page=1");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        mServer.stop(0);
+    }
+
+    @Benchmark
+    public String readBody() throws IOException {
+        HttpURLConnection connection = open();
+        CountingInputStream wire = new CountingInputStream(connection.getInputStream());
+        InputStream in = ResponseBodyReader.decodeBody(connection, wire);
+        try {
+            int contentLength = in == wire ? connection.getContentLength() : -1;
+            return ResponseBodyReader.readBody(new CountingInputStream(in), contentLength);
+        } finally {
+            in.close();
+        }
+    }
+
+    @Benchmark
+    public MoviePage parseBody() throws IOException {
+        HttpURLConnection connection = open();
+        CountingInputStream wire = new CountingInputStream(connection.getInputStream());
+        InputStream in = ResponseBodyReader.decodeBody(connection, wire);
+        try {
+            return MovieParser.parseMoviePage(new CountingInputStream(in), MovieRequestType.POPULAR);
+        } finally {
+            in.close();
+        }
+    }
+
+    private HttpURLConnection open() throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) mUrl.openConnection();
+        connection.setRequestProperty("Accept-Encoding", "gzip");
+        return connection;
+    }
+
+    private static byte[] gzip(byte[] body) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        GZIPOutputStream out = new GZIPOutputStream(bytes);
+        out.write(body);
+        out.close();
+        return bytes.toByteArray();
+    }
+}
@@ -0,0 +1,59 @@
+package software.level.udacity.popularmovies1.benchmark;
+
+import org.json.JSONException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import software.level.udacity.popularmovies1.data.Movie;
+import software.level.udacity.popularmovies1.data.MoviePage;
+import software.level.udacity.popularmovies1.data.MovieParser;
+import software.level.udacity.popularmovies1.utilities.MovieRequestType;
+
+/**
+ * Compares the JSONObject tree parser with the streaming parser. Both benchmarks start from the
+ * raw response bytes so the tree parser also pays for decoding the full body into a String, the
+ * same as it does in the app. parseStreamingPage is the path the paged grid uses. Run with
+ * "-prof gc" to compare allocation rates.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class MovieParserBenchmark {
+
+    @Param({"20", "200", "2000"})
+    public int movieCount;
+
+    private byte[] mPayload;
+
+    @Setup
+    public void setUp() {
+        mPayload = Payloads.moviePage(movieCount).getBytes(Payloads.UTF_8);
+    }
+
+    @Benchmark
+    public ArrayList<Movie> parseTree() throws JSONException {
+        String body = new String(mPayload, Payloads.UTF_8);
+        return MovieParser.parseMovieData(body, MovieRequestType.POPULAR);
+    }
+
+    @Benchmark
+    public ArrayList<Movie> parseStreaming() throws IOException {
+        return MovieParser.parseMovieData(new ByteArrayInputStream(mPayload), MovieRequestType.POPULAR);
+    }
+
+    @Benchmark
+    public MoviePage parseStreamingPage() throws IOException {
+        return MovieParser.parseMoviePage(new ByteArrayInputStream(mPayload), MovieRequestType.POPULAR);
+    }
+}
@@ -0,0 +1,129 @@
+package software.level.udacity.popularmovies1.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import software.level.udacity.popularmovies1.data.Movie;
+import software.level.udacity.popularmovies1.data.MovieSearchIndex;
+
+/**
+ * Measures the search that runs on every key press against the movies that are loaded, and
+ * building the index as movies come in. The movies are made up of words from a fixed
+ * vocabulary so that the number of matches grows with the number of movies, as it does with
+ * real titles and overviews.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class MovieSearchBenchmark {
+
+    // Number of different words the movies are made of
+    private static final int VOCABULARY_SIZE = 5000;
+
+    // Number of movies returned by a search, as in the app
+    private static final int LIMIT = 60;
+
+    @Param({"1000", "20000"})
+    public int movieCount;
+
+    private ArrayList<Movie> mMovies;
+    private MovieSearchIndex mIndex;
+
+    // A common word with two letters swapped, which is a single typo
+    private String mTypoQuery;
+
+    private String mPrefixQuery;
+    private String mMultiWordQuery;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+
+        String[] vocabulary = new String[VOCABULARY_SIZE];
+        for(int i = 0; i < vocabulary.length; i++) {
+            vocabulary[i] = word(random);
+        }
+
+        mMovies = new ArrayList<>(movieCount);
+        for(int i = 0; i < movieCount; i++) {
+            Movie movie = new Movie();
+            movie.moviedb_id = i + 1;
+            movie.title = sentence(random, vocabulary, 3);
+            movie.tagline = sentence(random, vocabulary, 6);
+            movie.overview = sentence(random, vocabulary, 40);
+            movie.popularity = random.nextDouble() * 100;
+            movie.vote_average = random.nextDouble() * 10;
+            mMovies.add(movie);
+        }
+
+        mIndex = new MovieSearchIndex();
+        for(Movie movie : mMovies) {
+            mIndex.add(movie);
+        }
+
+        // Typed as far as the first three letters of a common word
+        mPrefixQuery = vocabulary[0].substring(0, 3);
+
+        String typo = vocabulary[1];
+        mTypoQuery = typo.substring(0, 2) + typo.charAt(3) + typo.charAt(2) + typo.substring(4);
+
+        mMultiWordQuery = vocabulary[2] + " " + vocabulary[3].substring(0, 4);
+    }
+
+    @Benchmark
+    public MovieSearchIndex buildIndex() {
+        MovieSearchIndex index = new MovieSearchIndex();
+        for(Movie movie : mMovies) {
+            index.add(movie);
+        }
+        return index;
+    }
+
+    @Benchmark
+    public int[] searchPrefix() {
+        return mIndex.search(mPrefixQuery, LIMIT);
+    }
+
+    @Benchmark
+    public int[] searchTypo() {
+        return mIndex.search(mTypoQuery, LIMIT);
+    }
+
+    @Benchmark
+    public int[] searchMultiWord() {
+        return mIndex.search(mMultiWordQuery, LIMIT);
+    }
+
+    private static String word(Random random) {
+        // Between 5 and 10 letters so every word allows a typo
+        char[] letters = new char[5 + random.nextInt(6)];
+        for(int i = 0; i < letters.length; i++) {
+            letters[i] = (char) ('a' + random.nextInt(26));
+        }
+        return new String(letters);
+    }
+
+    private static String sentence(Random random, String[] vocabulary, int words) {
+        StringBuilder builder = new StringBuilder();
+        for(int i = 0; i < words; i++) {
+            if(i > 0) {
+                builder.append(' ');
+            }
+
+            // Squaring favours the start of the vocabulary, so some words are far more common
+            double skewed = random.nextDouble();
+            builder.append(vocabulary[(int) (skewed * skewed * vocabulary.length)]);
+        }
+        return builder.toString();
+    }
+}
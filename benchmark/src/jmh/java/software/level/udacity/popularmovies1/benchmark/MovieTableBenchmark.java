@@ -0,0 +1,105 @@
+package software.level.udacity.popularmovies1.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import software.level.udacity.popularmovies1.data.Movie;
+import software.level.udacity.popularmovies1.data.MovieParser;
+import software.level.udacity.popularmovies1.data.MovieQuery;
+import software.level.udacity.popularmovies1.data.MovieQueryEngine;
+import software.level.udacity.popularmovies1.data.MovieTable;
+import software.level.udacity.popularmovies1.utilities.MovieRequestType;
+
+/**
+ * Measures the collection work the grid does on movies that are already loaded: appending a
+ * page that overlaps the loaded movies, sorting and filtering them, and the copy the adapter
+ * hands to DiffUtil. DiffUtil lives in the support library, which doesn't run on the JVM, so
+ * the difference itself is not measured here.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class MovieTableBenchmark {
+
+    @Param({"20", "200", "2000"})
+    public int movieCount;
+
+    private ArrayList<Movie> mMovies;
+
+    // Next page, with the first half overlapping the end of mMovies
+    private ArrayList<Movie> mNextPage;
+
+    private MovieTable mTable;
+    private MovieQueryEngine mWarmEngine;
+    private MovieQuery mPopular;
+    private MovieQuery mTopRatedInRange;
+
+    @Setup
+    public void setUp() throws IOException {
+        mMovies = parse(Payloads.moviePage(movieCount, 1000));
+        mNextPage = parse(Payloads.moviePage(movieCount, 1000 + movieCount / 2));
+
+        mTable = MovieTable.of(mMovies);
+
+        mPopular = MovieQuery.forRequestType(MovieRequestType.POPULAR);
+        mTopRatedInRange = MovieQuery.forRequestType(MovieRequestType.TOP_RATED);
+        mTopRatedInRange.minYear = 1990;
+        mTopRatedInRange.maxYear = 1999;
+
+        mWarmEngine = new MovieQueryEngine(mTable);
+        mWarmEngine.query(mPopular);
+        mWarmEngine.query(mTopRatedInRange);
+    }
+
+    @Benchmark
+    public MovieTable buildTable() {
+        return MovieTable.of(mMovies);
+    }
+
+    @Benchmark
+    public int appendOverlappingPage() {
+        MovieTable table = MovieTable.of(mMovies);
+        return table.addAll(mNextPage);
+    }
+
+    @Benchmark
+    public int[] sortCold() {
+        return new MovieQueryEngine(mTable).query(mPopular);
+    }
+
+    @Benchmark
+    public int[] sortWarm() {
+        return mWarmEngine.query(mPopular);
+    }
+
+    @Benchmark
+    public int[] filterAndSortCold() {
+        return new MovieQueryEngine(mTable).query(mTopRatedInRange);
+    }
+
+    @Benchmark
+    public MovieTable copyForDiff() {
+        return mTable.copy();
+    }
+
+    @Benchmark
+    public MovieTable selectSorted() {
+        return mTable.select(mWarmEngine.query(mPopular));
+    }
+
+    private static ArrayList<Movie> parse(String payload) throws IOException {
+        return MovieParser.parseMovieData(new ByteArrayInputStream(payload.getBytes(Payloads.UTF_8)),
+                MovieRequestType.POPULAR);
+    }
+}
@@ -0,0 +1,94 @@
+package software.level.udacity.popularmovies1.benchmark;
+
+import java.nio.charset.Charset;
+
+/**
+ * Generates JSON payloads shaped like the responses returned by The Movie Database so that the
+ * benchmarks can run at any page size without network access.
+ */
+public final class Payloads {
+
+    public static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final String OVERVIEW = "Framed in the 1940s for the double murder of his wife "
+            + "and her lover, upstanding banker Andy Dufresne begins a new life at the Shawshank "
+            + "prison, where he puts his accounting skills to work for an amoral warden. During his "
+            + "long stretch in prison, Dufresne comes to be admired by the other inmates -- "
+            + "including an older prisoner named Red -- for his integrity and unquenchable sense "
+            + "of hope.";
+
+    private Payloads() {
+    }
+
+    /**
+     * Builds a list response (popular or top rated) containing the given number of movies
+     * @param movieCount Number of entries in the results array
+     * @return JSON body of the response
+     */
+    public static String moviePage(int movieCount) {
+        return moviePage(movieCount, 1000);
+    }
+
+    /**
+     * Builds a list response containing movies with consecutive ids, so that pages which
+     * overlap like they do while the API reorders its lists can be generated
+     * @param movieCount Number of entries in the results array
+     * @param firstId Movie Database id of the first entry
+     * @return JSON body of the response
+     */
+    public static String moviePage(int movieCount, int firstId) {
+        StringBuilder builder = new StringBuilder(movieCount * 900);
+
+        builder.append("{\"page\":1,\"results\":[");
+        for(int i = 0; i < movieCount; i++) {
+            if(i > 0) {
+                builder.append(',');
+            }
+            appendMovie(builder, firstId + i, false);
+        }
+        builder.append("],\"total_results\":19629,\"total_pages\":982}");
+
+        return builder.toString();
+    }
+
+    /**
+     * Builds a detail response for a single movie
+     * @param id Movie Database id of the movie
+     * @return JSON body of the response
+     */
+    public static String movieDetails(int id) {
+        StringBuilder builder = new StringBuilder(1400);
+        appendMovie(builder, id, true);
+        return builder.toString();
+    }
+
+    private static void appendMovie(StringBuilder builder, int id, boolean details) {
+        builder.append("{\"poster_path\":\"/9O7gLzmreU0nGkIB6K3BsJbzvNv").append(id).append(".jpg\",")
+                .append("\"adult\":false,")
+                .append("\"overview\":\"").append(OVERVIEW).append("\",")
+                .append("\"release_date\":\"1994-09-23\",")
+                .append("\"genre_ids\":[18,80],")
+                .append("\"id\":").append(id).append(',')
+                .append("\"original_title\":\"The Shawshank Redemption ").append(id).append("\",")
+                .append("\"original_language\":\"en\",")
+                .append("\"title\":\"The Shawshank Redemption ").append(id).append("\",")
+                .append("\"backdrop_path\":\"/xBKGJQsAIeweesB79KC89FpBrVr").append(id).append(".jpg\",")
+                .append("\"popularity\":").append(6.741296 + id % 97).append(',')
+                .append("\"vote_count\":").append(5238 + id).append(',')
+                .append("\"video\":false,")
+                .append("\"vote_average\":").append(8.32 - (id % 50) / 100.0);
+
+        if(details) {
+            builder.append(",\"budget\":25000000,")
+                    .append("\"homepage\":\"\",")
+                    .append("\"imdb_id\":\"tt0111161\",")
+                    .append("\"production_companies\":[{\"name\":\"Castle Rock Entertainment\",\"id\":97}],")
+                    .append("\"revenue\":28341469,")
+                    .append("\"runtime\":142,")
+                    .append("\"status\":\"Released\",")
+                    .append("\"tagline\":\"Fear can hold you prisoner. Hope can set you free.\"");
+        }
+
+        builder.append('}');
+    }
+}
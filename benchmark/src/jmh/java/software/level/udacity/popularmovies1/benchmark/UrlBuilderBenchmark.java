@@ -0,0 +1,61 @@
+package software.level.udacity.popularmovies1.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.concurrent.TimeUnit;
+
+import software.level.udacity.popularmovies1.utilities.ImageUrlCache;
+import software.level.udacity.popularmovies1.utilities.MovieRequestType;
+import software.level.udacity.popularmovies1.utilities.TmdbUrls;
+
+/**
+ * Measures building request and poster URLs. Poster URLs are needed every time a cell is bound,
+ * so building the String is compared against looking it up in the ImageUrlCache used while
+ * binding, and against also wrapping it in a java.net.URL the way NetworkUtils.buildImageURL does.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class UrlBuilderBenchmark {
+
+    private static final String API_KEY = "0123456789abcdef0123456789abcdef";
+
+    public String posterPath = "/9O7gLzmreU0nGkIB6K3BsJbzvNv.jpg";
+    public String posterSize = "w185";
+    public int movieId = 278;
+    public int page = 3;
+
+    private final ImageUrlCache mImageUrlCache = new ImageUrlCache(500);
+
+    @Benchmark
+    public String imageUrlString() {
+        return TmdbUrls.imageUrl(posterPath, posterSize);
+    }
+
+    @Benchmark
+    public String imageUrlCached() {
+        return mImageUrlCache.get(posterPath, posterSize);
+    }
+
+    @Benchmark
+    public URL imageUrl() throws MalformedURLException {
+        return new URL(TmdbUrls.imageUrl(posterPath, posterSize));
+    }
+
+    @Benchmark
+    public URL pageUrl() throws MalformedURLException {
+        return new URL(TmdbUrls.apiUrl(MovieRequestType.POPULAR, 0, page, API_KEY));
+    }
+
+    @Benchmark
+    public URL detailUrl() throws MalformedURLException {
+        return new URL(TmdbUrls.apiUrl(MovieRequestType.DETAILS, movieId, 0, API_KEY));
+    }
+}